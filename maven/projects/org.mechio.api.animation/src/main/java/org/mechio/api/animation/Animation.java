@@ -21,6 +21,7 @@ import org.jflux.api.common.rk.playable.Playable;
 import org.jflux.api.common.rk.services.addon.ServiceAddOn;
 import org.mechio.api.animation.compiled.CompiledMap;
 import org.mechio.api.animation.compiled.CompiledPath;
+import org.mechio.api.animation.compiled.ParallelMapCompiler;
 import org.mechio.api.animation.editor.features.SyncPointGroupConfig.SyncGroupConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -316,6 +317,25 @@ public class Animation {
 		return cm;
 	}
 
+	/**
+	 * Creates a composite CompiledPath from all MotionPaths for given times,
+	 * compiling Channels and their MotionPaths in parallel.
+	 * Start and end constraints ignored only when (start == -1 && end == -1).
+	 *
+	 * @param start      path start time
+	 * @param end        path end time
+	 * @param stepLength milliseconds between positions
+	 * @param compiler   ParallelMapCompiler to compile with
+	 * @return combined path from MotionPaths for given times
+	 */
+	public CompiledMap compileMap(long start, long end, long stepLength,
+			ParallelMapCompiler compiler) {
+		if (compiler == null) {
+			return compileMap(start, end, stepLength);
+		}
+		return compiler.compileMap(myChannelMap, start, end, stepLength);
+	}
+
 	public long getLength() {
 		double max = 0;
 		for (Channel c : myChannels) {
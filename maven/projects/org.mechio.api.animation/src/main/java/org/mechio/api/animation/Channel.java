@@ -20,11 +20,13 @@ import java.awt.geom.Point2D;
 import org.mechio.api.animation.compiled.CompiledPath;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.ListIterator;
 import org.jflux.api.common.rk.utils.Utils;
 
 /**
  * Holds a list of MotionPaths, and can build a composite CompiledPath.
+ * A MotionPath is only used outside the span of the MotionPaths before it.
+ * The time ranges of the MotionPaths are indexed, so the MotionPaths used
+ * for a time or range are found without searching every MotionPath.
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
@@ -32,6 +34,7 @@ public class Channel {
     private List<MotionPath> myPaths;
     private int myId;
     private String myName;
+    private MotionPathIndex myIndex;
 
     /**
      * Create an empty Channel for given ServoParameters.
@@ -133,6 +136,7 @@ public class Channel {
             throw new NullPointerException("Cannot add null MotionPaths.");
         }
         myPaths.addAll(paths);
+        myIndex = null;
     }
     /**
      * Adds a MotionPath to the list.
@@ -145,6 +149,7 @@ public class Channel {
             throw new NullPointerException("Cannot add null MotionPath.");
         }
         myPaths.add(p);
+        myIndex = null;
     }
     /**
      * Adds a MotionPath to the list at the given index.
@@ -161,6 +166,7 @@ public class Channel {
         }
         Utils.bound(i, 0, myPaths.size());
         myPaths.add(i, p);
+        myIndex = null;
     }
     /**
      * Returns the list of MotionPaths belonging to this Channel.
@@ -192,6 +198,7 @@ public class Channel {
         if(i < -1 || i > myPaths.size()){
             return null;
         }
+        myIndex = null;
         return myPaths.remove(i);
     }
     /**
@@ -205,9 +212,58 @@ public class Channel {
         int i = myPaths.indexOf(mp);
         if(i != -1){
             myPaths.remove(i);
+            myIndex = null;
         }
         return i;
     }
+    /**
+     * Returns the MotionPath used at the given time.  A MotionPath is only
+     * used outside the span of the MotionPaths before it.
+     *
+     * @param time time in milliseconds
+     * @return MotionPath used at the given time, null if no MotionPath is
+     * used
+     */
+    public MotionPath getMotionPathAt(double time){
+        int i = getIndex().getPathAt(time);
+        return i == -1 ? null : myPaths.get(i);
+    }
+    /**
+     * Returns the MotionPaths with control points overlapping the given range,
+     * whether or not they are used in the range.
+     *
+     * @param start range start time
+     * @param end range end time
+     * @return MotionPaths overlapping the range, in Channel order
+     */
+    public List<MotionPath> getMotionPaths(double start, double end){
+        List<Integer> indices = getIndex().getPaths(start, end);
+        List<MotionPath> paths = new ArrayList<MotionPath>(indices.size());
+        for(Integer i : indices){
+            paths.add(myPaths.get(i));
+        }
+        return paths;
+    }
+    /**
+     * Returns the indices of the MotionPaths with control points overlapping
+     * the given range.
+     *
+     * @param start range start time
+     * @param end range end time
+     * @return indices of the MotionPaths overlapping the range, in order
+     */
+    public List<Integer> getMotionPathIndices(double start, double end){
+        return getIndex().getPaths(start, end);
+    }
+
+    private MotionPathIndex getIndex(){
+        MotionPathIndex index = myIndex;
+        if(index == null || !index.isCurrent(myPaths)){
+            index = new MotionPathIndex(myPaths);
+            myIndex = index;
+        }
+        return index;
+    }
     /**
      * Creates a composite CompiledPath from all MotionPaths.
      *
@@ -246,6 +302,21 @@ public class Channel {
         end += add;
         return CompiledPath.compilePath(start, end, points, stepLength);
     }
+    /**
+     * Returns the position at the given time, evaluated directly from the
+     * MotionPaths without compiling.  As with compilePath, a MotionPath is
+     * only used outside the span of the MotionPaths before it.
+     *
+     * @param time time in milliseconds
+     * @return position at the given time, or -1 if no MotionPath covers it
+     */
+    public double evaluate(double time){
+        MotionPath p = getMotionPathAt(time);
+        if(p == null){
+            return -1.0;
+        }
+        return p.evaluate(time);
+    }
     /**
      * Combines the interpolations from each motion path, omitting overlaps.
      * Start and end constraints ignored only when (start == -1 && end == -1).
@@ -255,127 +326,32 @@ public class Channel {
      * @return combined interpolation from MotionPaths for given times
      */
     public List<Point2D> getInterpolatedPoints(long start, long end){
-        List<Point2D> paths = new ArrayList();
-        for(MotionPath p : myPaths){
-            List<Point2D> path = p.getInterpolatedPoints();
-            combineInterpolations(paths, path);
-        }
-        int iStart = 0, iEnd = paths.size();
         if(start == -1 && end == -1){
-            return paths;
-        }
+            return getIndex().getInterpolatedPoints(
+                    Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+        List<Point2D> paths = getIndex().getInterpolatedPoints(
+                start == -1 ? Double.NEGATIVE_INFINITY : start,
+                end == -1 ? Double.POSITIVE_INFINITY : end);
+        //keep one point on either side of the range
+        int size = paths.size();
+        int iStart = 0, iEnd = size;
         if(start != -1){
-            for(Point2D p : paths){
-                if(p.getX() >= start){
-                    iStart--;
-                    break;
-                }
-                iStart++;
-            }
-            iStart = Math.max(iStart, 0);
-            if(iStart > iEnd){
-                return new ArrayList();
-            }
+            int i = MotionPathIndex.findFirstAtOrAfter(paths, start);
+            iStart = i == size ? size : Math.max(i-1, 0);
         }
         if(end != -1){
-            ListIterator<Point2D> rit = paths.listIterator(iEnd);
-            while(rit.hasPrevious()){
-                Point2D p = rit.previous();
-                if(p.getX() <= end){
-                    iEnd++;
-                    break;
-                }
-                iEnd--;
-            }
-            iEnd = Math.min(iEnd, paths.size());
+            int i = MotionPathIndex.findFirstAfter(paths, end);
+            iEnd = i == 0 ? 0 : Math.min(i+1, size);
             if(iEnd < iStart){
                 return new ArrayList();
             }
         }
-        if(iEnd == iStart && iEnd < paths.size()){
+        if(iEnd == iStart && iEnd < size){
             iEnd++;
         }
         return paths.subList(iStart, iEnd);
     }
-    /**
-     * Combines two Lists of points, omitting overlaps.
-     * The points in b, which do not overlap a, are added to a.
-     * @param a list of points
-     * @param b list of points to add to a
-     */
-    private void combineInterpolations(List<Point2D> a, List<Point2D> b){
-        if(a == null || b == null || b.isEmpty()){
-            return;
-        }
-        if(a.isEmpty()){
-            a.addAll(b);
-            return;
-        }
-        double min = a.get(0).getX();
-        double max = a.get(a.size()-1).getX();
-        int lenB = b.size();
-        int iB = 0;
-        double x = 0;
-        for(; iB<lenB; iB++){
-            Point2D p = b.get(iB);
-            x = p.getX();
-            if(x >= min){
-                break;
-            }
-        }
-        if(iB > 0){
-            a.addAll(0, b.subList(0, iB));
-            if(iB < lenB){
-                Point2D pI = findInterpolatedValue(b.get(iB-1), b.get(iB), min-1);
-                if(pI != null){
-                    a.add(iB, pI);
-                }
-            }
-        }
-        if(iB == lenB && x+2 < min){
-            a.add(iB, new Point2D.Double(x+1, -1.0));
-            a.add(iB, new Point2D.Double(min-1, -1.0));
-        }
-        if(iB == 0 && b.get(0).getX()-1 > max){
-            a.add(new Point2D.Double(max+1, -1.0));
-            a.add(new Point2D.Double(x-1, -1.0));
-        }
-        for(; iB<lenB; iB++){
-            Point2D p = b.get(iB);
-            x = p.getX();
-            if(x > max){
-                break;
-            }
-        }
-        if(iB < lenB){
-            if(iB > 0){
-                Point2D pI = findInterpolatedValue(b.get(iB-1), b.get(iB), max+1);
-                if(pI != null){
-                    a.add(pI);
-                }
-            }
-            a.addAll(b.subList(iB, lenB));
-        }
-    }
-    /**
-     * Returns the point along the line (a, b) at x.
-     *
-     * @param a the first line endpoint
-     * @param b the second line endpoint
-     * @param x the x-value of the point to find
-     * @return the point along the line (a, b) at x, returns null if x is not
-     * between a and b
-     */
-    private Point2D findInterpolatedValue(Point2D a, Point2D b, double x){
-        double aX = a.getX();
-        if(aX >= x){
-            return null;
-        }
-        double yRange = b.getY() - a.getY();
-        double ratio = (x-aX)/(b.getX() - aX);
-        double y = ratio*yRange + a.getY();
-        return new Point2D.Double(x, y);
-    }
 
     /**
      * Returns a deep copy of the Channel.
@@ -18,17 +18,25 @@ package org.mechio.api.animation;
 
 import org.mechio.api.animation.compiled.CompiledPath;
 import java.awt.geom.Point2D;
+import java.util.List;
 import org.mechio.api.interpolation.InterpolatorDirectory;
 import org.mechio.api.interpolation.InterpolatorFactory;
 
 /**
  * An extended PathInterpolator which can generate a CompiledPath from the
  * interpolated positions.
+ * <p>
+ * The CompiledPath of the full MotionPath is cached.  When the control
+ * points are edited, only the time window covered by the interpolated points
+ * which changed is recompiled, into a copy of the cached path.  Paths
+ * compiled for other times are not cached.
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
 public class MotionPath extends PathInterpolator{
     private CompiledPath myCache = null;
+    private List<Point2D> myCachePoints = null;
+    private boolean myCacheChangedFlag;
     private String myName;
     private Long myStartTime;
     private Long myStopTime;
@@ -121,37 +129,63 @@ public class MotionPath extends PathInterpolator{
      */
     public boolean compilePath(long stepLength){
         interpolate();
-        if(myCache != null || getInterpolatedPoints().isEmpty()){
-            return false;
+        boolean changed = myCacheChangedFlag;
+        myCacheChangedFlag = false;
+        if(getInterpolatedPoints().isEmpty()){
+            return changed;
         }
         int len = getInterpolatedPoints().size();
         long start = myStartTime != null ? myStartTime :
                 (long)getInterpolatedPoints().get(0).getX();
         long end = myStopTime != null ? myStopTime :
                 (long)getInterpolatedPoints().get(len-1).getX();
-        myCache = compilePath(start, end, stepLength);
+        if(stepLength < 1){
+            return changed;
+        }
+        start = alignStart(start, stepLength);
+        end = alignEnd(end, stepLength);
+        if(myCache != null && myCache.matches(start, end, stepLength)){
+            return changed;
+        }
+        myCache = CompiledPath.compilePath(
+                start, end, getInterpolatedPoints(), stepLength);
+        myCachePoints = getInterpolatedPoints();
         return true;
     }
     /**
-     * Creates a CompiledPath from the interpolated points.
+     * Creates a CompiledPath from the interpolated points.  If the times
+     * match the cached path of the full MotionPath, a copy of it is returned.
      *
      * @param start path start time
      * @param end path end time
      * @param stepLength milliseconds between positions
-     * @return CompiledPath from this MotionPath's interpolated points
+     * @return new CompiledPath from this MotionPath's interpolated points
      */
     public CompiledPath compilePath(long start, long end, long stepLength) {
         interpolate();
-        //adjust times to be multiples of stepLength
-        start -= start%stepLength;
-		long add = stepLength - end%stepLength;
-		add = add == stepLength ? 0 : add;
-        end += add;
-        boolean cached = myCache != null && myCache.matches(start, end, stepLength);
-        if(stepLength < 1 || getInterpolatedPoints().isEmpty() || cached){
-            return myCache;
+        start = alignStart(start, stepLength);
+        end = alignEnd(end, stepLength);
+        if(myCache != null && myCache.matches(start, end, stepLength)){
+            return myCache.clone();
+        }
+        if(stepLength < 1 || getInterpolatedPoints().isEmpty()){
+            return null;
+        }
+        return CompiledPath.compilePath(
+                start, end, getInterpolatedPoints(), stepLength);
+    }
+
+    //adjust times to be multiples of stepLength
+    private static long alignStart(long start, long stepLength){
+        return stepLength < 1 ? start : start - start%stepLength;
+    }
+
+    private static long alignEnd(long end, long stepLength){
+        if(stepLength < 1){
+            return end;
         }
-        return CompiledPath.compilePath(start, end, getInterpolatedPoints(), stepLength);
+        long add = stepLength - end%stepLength;
+        return add == stepLength ? end : end + add;
     }
     /**
      * Returns a deep copy of the Channel.
@@ -169,22 +203,66 @@ public class MotionPath extends PathInterpolator{
         mp.myStopTime = myStopTime;
         if(myCache != null){
             mp.myCache = myCache.clone();
+            mp.myCachePoints = myCachePoints;
         }
         return mp;
     }
     /**
      * Calls interpolate for PathInterpolator.  If there is a change, the
-     * cached CompiledPath is cleared.
+     * window of the cached CompiledPath covered by the changed interpolated
+     * points is recompiled.
      *
      * @return true if there was an interpolation change, otherwise false
      */
     @Override
     protected boolean interpolate(){
-        if(super.interpolate()){
-            myCache = null;
+        if(!super.interpolate()){
+            return false;
+        }
+        CompiledPath cache = myCache;
+        List<Point2D> prevPoints = myCachePoints;
+        myCache = null;
+        myCachePoints = null;
+        if(cache == null || prevPoints == null){
             return true;
         }
-        return false;
+        List<Point2D> points = getInterpolatedPoints();
+        myCache = recompile(cache, prevPoints, points);
+        myCachePoints = myCache == null ? null : points;
+        myCacheChangedFlag = myCache != cache;
+        return true;
+    }
+
+    /**
+     * Recompiles the window of a CompiledPath between the last interpolated
+     * point before the changed points and the first point after them.
+     * Positions outside the window only depend on unchanged points.
+     */
+    private static CompiledPath recompile(CompiledPath cache,
+            List<Point2D> prevPoints, List<Point2D> points){
+        if(points.isEmpty()){
+            return null;
+        }
+        int prevLen = prevPoints.size();
+        int len = points.size();
+        int min = Math.min(prevLen, len);
+        int head = 0;
+        while(head < min && prevPoints.get(head).equals(points.get(head))){
+            head++;
+        }
+        if(head == prevLen && head == len){
+            return cache;
+        }
+        int tail = 0;
+        while(tail < min - head && prevPoints.get(prevLen-1-tail).equals(
+                points.get(len-1-tail))){
+            tail++;
+        }
+        long from = head == 0 ? Long.MIN_VALUE :
+                (long)Math.floor(points.get(head-1).getX());
+        long to = tail == 0 ? Long.MAX_VALUE :
+                (long)Math.ceil(points.get(len-tail).getX());
+        return cache.recompile(points, from, to);
     }
 
     @Override
@@ -0,0 +1,453 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of the time ranges of the MotionPaths in a Channel.
+ * <p>
+ * A Channel only uses a MotionPath outside the span of the MotionPaths before
+ * it.  The index divides the span of the Channel into segments, each used by
+ * a single MotionPath or left as a gap between MotionPaths, so the MotionPath
+ * used at a time is found with a binary search, and the points for a range of
+ * time are combined without visiting every MotionPath.  The time ranges are
+ * also kept in an implicit interval tree to find every MotionPath
+ * overlapping a range.
+ * <p>
+ * MotionPaths are edited in place, so the index records the modification
+ * count of each of its MotionPaths, and is checked against their control
+ * points when one of the counts has changed.  The list returned by
+ * Channel.getMotionPaths() may also be changed directly, so the MotionPaths
+ * themselves are compared on every check.
+ *
+ * @see Channel
+ */
+class MotionPathIndex {
+    private final static int GAP = -1;
+    private final MotionPath[] myPaths;
+    private final double[] myStarts;
+    private final double[] myEnds;
+    private final Segment[] mySegments;
+    private final int[] myTreePaths;
+    private final double[] myTreeMaxEnds;
+    private volatile long[] myCounts;
+
+    /**
+     * Builds an index of the given MotionPaths.
+     *
+     * @param paths MotionPaths in Channel order
+     */
+    MotionPathIndex(List<MotionPath> paths){
+        int len = paths.size();
+        myPaths = paths.toArray(new MotionPath[len]);
+        myCounts = getCounts();
+        myStarts = new double[len];
+        myEnds = new double[len];
+        int count = 0;
+        for(int i=0; i<len; i++){
+            List<Point2D> points = myPaths[i].getControlPoints();
+            if(points.isEmpty()){
+                myStarts[i] = Double.NaN;
+                myEnds[i] = Double.NaN;
+                continue;
+            }
+            myStarts[i] = points.get(0).getX();
+            myEnds[i] = points.get(points.size()-1).getX();
+            count++;
+        }
+        mySegments = buildSegments();
+        myTreePaths = new int[count];
+        myTreeMaxEnds = new double[count];
+        buildTree();
+    }
+
+    /**
+     * Returns true if the index still matches the given MotionPaths.
+     *
+     * @param paths MotionPaths in Channel order
+     * @return true if the index matches the MotionPaths
+     */
+    boolean isCurrent(List<MotionPath> paths){
+        if(paths.size() != myPaths.length){
+            return false;
+        }
+        for(int i=0; i<myPaths.length; i++){
+            if(paths.get(i) != myPaths[i]){
+                return false;
+            }
+        }
+        long[] counts = getCounts();
+        if(Arrays.equals(counts, myCounts)){
+            return true;
+        }
+        for(int i=0; i<myPaths.length; i++){
+            List<Point2D> points = myPaths[i].getControlPoints();
+            if(points.isEmpty()){
+                if(!Double.isNaN(myStarts[i])){
+                    return false;
+                }
+                continue;
+            }
+            if(points.get(0).getX() != myStarts[i]
+                    || points.get(points.size()-1).getX() != myEnds[i]){
+                return false;
+            }
+        }
+        myCounts = counts;
+        return true;
+    }
+
+    private long[] getCounts(){
+        long[] counts = new long[myPaths.length];
+        for(int i=0; i<myPaths.length; i++){
+            counts[i] = myPaths[i].getModificationCount();
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the index of the MotionPath used at the given time.
+     *
+     * @param time time in milliseconds
+     * @return index of the MotionPath used at the given time, -1 if no
+     * MotionPath is used
+     */
+    int getPathAt(double time){
+        int i = findSegment(time);
+        return i == -1 ? -1 : mySegments[i].myPath;
+    }
+
+    /**
+     * Returns the indices of the MotionPaths with control points overlapping
+     * the given range, in Channel order.
+     *
+     * @param start range start time
+     * @param end range end time
+     * @return indices of the MotionPaths overlapping the range
+     */
+    List<Integer> getPaths(double start, double end){
+        List<Integer> paths = new ArrayList<Integer>();
+        if(start <= end){
+            findPaths(0, myTreePaths.length, start, end, paths);
+            Collections.sort(paths);
+        }
+        return paths;
+    }
+
+    /**
+     * Combines the interpolated points of the MotionPaths, omitting overlaps.
+     * Only the segments around the given range are combined, with enough
+     * points on either side to interpolate to the range boundaries.
+     * Gaps between MotionPaths are filled with points at -1.
+     *
+     * @param start range start time
+     * @param end range end time
+     * @return combined interpolated points, ordered by time
+     */
+    List<Point2D> getInterpolatedPoints(double start, double end){
+        List<Point2D> points = new ArrayList();
+        if(mySegments.length == 0){
+            return points;
+        }
+        int first = 0, last = mySegments.length - 1;
+        if(start != Double.NEGATIVE_INFINITY){
+            //the segment before the one containing start may be a gap with
+            //no points, so a second segment is included
+            first = Math.max(0, findFirstEndingAfter(start) - 2);
+        }
+        if(end != Double.POSITIVE_INFINITY){
+            last = Math.min(last, findLastStartingBefore(end) + 2);
+        }
+        for(int i=first; i<=last; i++){
+            Segment seg = mySegments[i];
+            if(seg.myPath == GAP){
+                seg.addGapPoints(points);
+            }else{
+                seg.addPoints(myPaths[seg.myPath].getInterpolatedPoints(), points);
+            }
+        }
+        return points;
+    }
+
+    private Segment[] buildSegments(){
+        //segments before the span are found in reverse time order
+        List<Segment> before = new ArrayList<Segment>();
+        List<Segment> after = new ArrayList<Segment>();
+        double min = 0, max = 0;
+        boolean empty = true;
+        for(int i=0; i<myPaths.length; i++){
+            double s = myStarts[i];
+            double e = myEnds[i];
+            if(Double.isNaN(s)){
+                continue;
+            }
+            if(empty){
+                after.add(new Segment(s, e, false, false, i));
+                min = s;
+                max = e;
+                empty = false;
+                continue;
+            }
+            if(s < min){
+                if(e < min){
+                    before.add(new Segment(e, min, true, true, GAP));
+                    before.add(new Segment(s, e, false, false, i));
+                }else{
+                    before.add(new Segment(s, min, false, true, i));
+                }
+                min = s;
+            }
+            if(e > max){
+                if(s > max){
+                    after.add(new Segment(max, s, true, true, GAP));
+                    after.add(new Segment(s, e, false, false, i));
+                }else{
+                    after.add(new Segment(max, e, true, false, i));
+                }
+                max = e;
+            }
+        }
+        Segment[] segments = new Segment[before.size() + after.size()];
+        int j = 0;
+        for(int i=before.size()-1; i>=0; i--){
+            segments[j++] = before.get(i);
+        }
+        for(Segment seg : after){
+            segments[j++] = seg;
+        }
+        return segments;
+    }
+
+    private void buildTree(){
+        Integer[] order = new Integer[myTreePaths.length];
+        int j = 0;
+        for(int i=0; i<myPaths.length; i++){
+            if(!Double.isNaN(myStarts[i])){
+                order[j++] = i;
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(myStarts[a], myStarts[b]);
+            }
+        });
+        for(int i=0; i<order.length; i++){
+            myTreePaths[i] = order[i];
+        }
+        buildMaxEnds(0, myTreePaths.length);
+    }
+
+    /**
+     * Stores the latest end time of the paths in [lo, hi) at the middle
+     * index, which is the root of that subtree.
+     */
+    private double buildMaxEnds(int lo, int hi){
+        if(lo >= hi){
+            return Double.NEGATIVE_INFINITY;
+        }
+        int mid = (lo + hi) >>> 1;
+        double max = Math.max(myEnds[myTreePaths[mid]],
+                Math.max(buildMaxEnds(lo, mid), buildMaxEnds(mid+1, hi)));
+        myTreeMaxEnds[mid] = max;
+        return max;
+    }
+
+    private void findPaths(int lo, int hi, double start, double end, List<Integer> paths){
+        if(lo >= hi){
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if(myTreeMaxEnds[mid] < start){
+            return;
+        }
+        findPaths(lo, mid, start, end, paths);
+        int path = myTreePaths[mid];
+        if(myStarts[path] > end){
+            return;
+        }
+        if(myEnds[path] >= start){
+            paths.add(path);
+        }
+        findPaths(mid+1, hi, start, end, paths);
+    }
+
+    private int findSegment(double time){
+        int lo = 0, hi = mySegments.length - 1, i = -1;
+        while(lo <= hi){
+            int mid = (lo + hi) >>> 1;
+            if(mySegments[mid].myStart <= time){
+                i = mid;
+                lo = mid + 1;
+            }else{
+                hi = mid - 1;
+            }
+        }
+        //a segment may start where a single point segment ends
+        if(i != -1 && mySegments[i].contains(time)){
+            return i;
+        }else if(i > 0 && mySegments[i-1].contains(time)){
+            return i-1;
+        }
+        return -1;
+    }
+
+    private int findFirstEndingAfter(double time){
+        int lo = 0, hi = mySegments.length;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(mySegments[mid].myEnd < time){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int findLastStartingBefore(double time){
+        int lo = 0, hi = mySegments.length;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(mySegments[mid].myStart <= time){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    /**
+     * Returns the index of the first point at or after the given time.
+     *
+     * @param points points ordered by time
+     * @param time time to find
+     * @return index of the first point at or after the time, points.size()
+     * if there is none
+     */
+    static int findFirstAtOrAfter(List<Point2D> points, double time){
+        int lo = 0, hi = points.size();
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(points.get(mid).getX() < time){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the index of the first point after the given time.
+     *
+     * @param points points ordered by time
+     * @param time time to find
+     * @return index of the first point after the time, points.size() if
+     * there is none
+     */
+    static int findFirstAfter(List<Point2D> points, double time){
+        int lo = 0, hi = points.size();
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(points.get(mid).getX() <= time){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * A span of time used by a single MotionPath, or a gap.
+     * Open ends are used by the neighboring segment.
+     */
+    private static class Segment {
+        private final double myStart;
+        private final double myEnd;
+        private final boolean myStartOpen;
+        private final boolean myEndOpen;
+        private final int myPath;
+
+        Segment(double start, double end,
+                boolean startOpen, boolean endOpen, int path){
+            myStart = start;
+            myEnd = end;
+            myStartOpen = startOpen;
+            myEndOpen = endOpen;
+            myPath = path;
+        }
+
+        boolean contains(double time){
+            return (time > myStart || (time == myStart && !myStartOpen))
+                    && (time < myEnd || (time == myEnd && !myEndOpen));
+        }
+
+        /**
+         * Adds the path points within the segment.  A point is interpolated
+         * one millisecond inside each open end, so the path is followed up
+         * to where the neighboring segment takes over.
+         */
+        void addPoints(List<Point2D> path, List<Point2D> points){
+            int lo = myStartOpen ?
+                    findFirstAfter(path, myStart) : findFirstAtOrAfter(path, myStart);
+            int hi = myEndOpen ?
+                    findFirstAtOrAfter(path, myEnd) : findFirstAfter(path, myEnd);
+            if(myStartOpen && lo > 0 && lo < path.size()){
+                addInterpolatedPoint(path.get(lo-1), path.get(lo), myStart+1, points);
+            }
+            if(lo < hi){
+                points.addAll(path.subList(lo, hi));
+            }
+            if(myEndOpen && hi > 0 && hi < path.size()){
+                addInterpolatedPoint(path.get(hi-1), path.get(hi), myEnd-1, points);
+            }
+        }
+
+        /**
+         * Adds points at -1 one millisecond inside each end of a gap.
+         */
+        void addGapPoints(List<Point2D> points){
+            if(myStart + 2 < myEnd){
+                points.add(new Point2D.Double(myStart+1, -1.0));
+                points.add(new Point2D.Double(myEnd-1, -1.0));
+            }
+        }
+
+        /**
+         * Adds the point along the line (a, b) at x, if x is between a and b.
+         */
+        private static void addInterpolatedPoint(
+                Point2D a, Point2D b, double x, List<Point2D> points){
+            double aX = a.getX();
+            if(aX >= x || b.getX() <= x){
+                return;
+            }
+            double ratio = (x-aX)/(b.getX() - aX);
+            double y = ratio*(b.getY() - a.getY()) + a.getY();
+            points.add(new Point2D.Double(x, y));
+        }
+    }
+}
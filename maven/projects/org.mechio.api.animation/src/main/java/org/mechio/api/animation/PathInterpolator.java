@@ -24,6 +24,8 @@ import java.util.Iterator;
 import java.util.List;
 import org.jflux.api.common.rk.config.VersionProperty;
 import org.jflux.api.common.rk.utils.Utils;
+import org.mechio.api.interpolation.EvaluableInterpolator;
+import org.mechio.api.interpolation.InterpolationHelper;
 import org.mechio.api.interpolation.Interpolator;
 import org.mechio.api.interpolation.InterpolatorDirectory;
 import org.mechio.api.interpolation.InterpolatorFactory;
@@ -38,7 +40,7 @@ import org.mechio.api.interpolation.InterpolatorFactory;
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
-public class PathInterpolator implements Interpolator {
+public class PathInterpolator implements EvaluableInterpolator {
     InterpolatorFactory myFactory;
     private Interpolator myInterpolator;
     /**
@@ -46,6 +48,7 @@ public class PathInterpolator implements Interpolator {
      */
     protected List<Double> myXVals;
     private List<Point2D> myInterpolatedPoints;
+    private volatile long myModificationCount;
 
     PathInterpolator(){}
     /**
@@ -76,6 +79,7 @@ public class PathInterpolator implements Interpolator {
         Interpolator i = myFactory.getValue();
         i.addPoints(myInterpolator.getControlPoints());
         myInterpolator = i;
+        myModificationCount++;
         interpolate();
     }
     /**
@@ -104,6 +108,7 @@ public class PathInterpolator implements Interpolator {
 		DecimalFormat dForm = new DecimalFormat("#.##");
 		y = Double.valueOf(dForm.format(y));
         Point2D p = myInterpolator.insertPoint(i, x, y);
+        myModificationCount++;
         return p;
     }
 
@@ -154,7 +159,9 @@ public class PathInterpolator implements Interpolator {
     @Override
     public Point2D removePoint(int i) {
         myXVals.remove(i);
-        return myInterpolator.removePoint(i);
+        Point2D p = myInterpolator.removePoint(i);
+        myModificationCount++;
+        return p;
     }
 
     /**
@@ -198,7 +205,8 @@ public class PathInterpolator implements Interpolator {
         }
         Iterator<Point2D> pIt = points.iterator();
         Point2D prev = pIt.next();
-        myInterpolatedPoints.add(prev);
+        //copied so later edits to control points do not change past results
+        myInterpolatedPoints.add(new Point2D.Double(prev.getX(), prev.getY()));
         while(pIt.hasNext()){
             Point2D p = pIt.next();
             if(p.getX() <= prev.getX()){
@@ -209,6 +217,35 @@ public class PathInterpolator implements Interpolator {
         }
         return true;
     }
+    /**
+     * Returns the position at the given time.  If the underlying Interpolator
+     * is an EvaluableInterpolator the curve is evaluated directly, otherwise
+     * the interpolated points are searched.
+     *
+     * @param x time in milliseconds
+     * @return position at x, between 0 and 1, or -1 if x is outside the
+     * control points
+     */
+    @Override
+    public double evaluate(double x){
+        if(myInterpolator instanceof EvaluableInterpolator){
+            double y = ((EvaluableInterpolator)myInterpolator).evaluate(x);
+            return y == -1.0 ? y : Utils.bound(y, 0.0, 1.0);
+        }
+        List<Point2D> points = getInterpolatedPoints();
+        int i = InterpolationHelper.findSegment(points, x);
+        if(i == -1){
+            return -1.0;
+        }
+        Point2D a = points.get(i);
+        if(i == points.size()-1){
+            return a.getY();
+        }
+        Point2D b = points.get(i+1);
+        double pX = (x - a.getX())/(b.getX() - a.getX());
+        return pX*(b.getY() - a.getY()) + a.getY();
+    }
+
     /**
      * Returns if the control points have been modified and needs to be
      * interpolated.
@@ -267,6 +304,7 @@ public class PathInterpolator implements Interpolator {
         myInterpolator.clear();
         myXVals.clear();
         myInterpolatedPoints.clear();
+        myModificationCount++;
     }
 
     /**
@@ -284,6 +322,18 @@ public class PathInterpolator implements Interpolator {
         y = Utils.bound(y, 0.0, 1.0);
         myXVals.set(i, x);
         myInterpolator.setPoint(i, x, y);
+        myModificationCount++;
+    }
+
+    /**
+     * Returns a count of the edits made to this PathInterpolator.  The count
+     * changes whenever a control point is added, moved, or removed, or the
+     * interpolator is changed.
+     *
+     * @return count of edits to this PathInterpolator
+     */
+    public long getModificationCount(){
+        return myModificationCount;
     }
 
     /**
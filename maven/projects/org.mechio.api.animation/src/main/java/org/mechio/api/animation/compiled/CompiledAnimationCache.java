@@ -0,0 +1,538 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.compiled;
+
+import java.awt.geom.Point2D;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.interpolation.InterpolatorFactory;
+
+/**
+ * A shared cache of CompiledMaps, keyed by Animation version, start time,
+ * stop time, and step length.
+ * <p>
+ * Entries are evicted in least-recently-used order once the estimated size
+ * of the cached positions exceeds the memory bound.  Each entry stores a
+ * fingerprint of the Animation's control points, times and interpolator
+ * sampling tolerances, so an Animation which has been edited since it was
+ * compiled is recompiled on its next lookup.  The fingerprint is only
+ * recomputed when the Animation's edit stamp, built from its structure and
+ * the modification counts of its MotionPaths, has changed since the entry
+ * was last checked, so a hit does not walk the control points.
+ * Entries can also be invalidated explicitly, which is done by the
+ * DefaultAnimationLibrary when Animations are added or removed.
+ * <p>
+ * CompiledMaps can be cached in compact form, with positions quantized to 16
+ * bits and delta encoded.  Compact storage is chosen for each Animation
+ * version, or by default.  The cache size is the memory footprint of the
+ * cached CompiledMaps, so compact maps let many more Animations stay
+ * resident.
+ * <p>
+ * CompiledMaps returned from the cache are shared and must not be modified.
+ * Callers which need to modify a map should clone it first.
+ */
+public class CompiledAnimationCache {
+    /**
+     * Default memory bound for the shared cache, in bytes.
+     */
+    public final static long DEFAULT_MAX_BYTES = 32L*1024L*1024L;
+    private static CompiledAnimationCache theDefaultCache;
+
+    private final Map<CacheKey,CacheEntry> myEntries;
+    private final Map<VersionProperty,Boolean> myCompactVersions;
+    private final ParallelMapCompiler myCompiler;
+    private boolean myCompactFlag;
+    private long myMaxBytes;
+    private long mySizeBytes;
+    private long myHitCount;
+    private long myMissCount;
+    private long myEvictionCount;
+    private long myInvalidationCount;
+
+    /**
+     * Returns a CompiledAnimationCache shared by the AnimationLibrary and
+     * AnimationPlayers.
+     * @return shared CompiledAnimationCache
+     */
+    public synchronized static CompiledAnimationCache getDefault(){
+        if(theDefaultCache == null){
+            theDefaultCache = new CompiledAnimationCache(
+                    DEFAULT_MAX_BYTES, ParallelMapCompiler.getDefault());
+        }
+        return theDefaultCache;
+    }
+
+    /**
+     * Creates a new CompiledAnimationCache.
+     * @param maxBytes memory bound for cached positions, in bytes
+     * @param compiler ParallelMapCompiler used on a miss, null to compile
+     * serially
+     */
+    public CompiledAnimationCache(long maxBytes, ParallelMapCompiler compiler){
+        if(maxBytes < 0){
+            throw new IllegalArgumentException("maxBytes must not be negative");
+        }
+        myMaxBytes = maxBytes;
+        myCompiler = compiler;
+        myEntries = new LinkedHashMap<>(16, 0.75f, true);
+        myCompactVersions = new HashMap<>();
+    }
+
+    /**
+     * Sets whether CompiledMaps are stored compactly for Animations without
+     * their own setting.  Cached entries are invalidated.
+     * @param compact true to store CompiledMaps compactly
+     */
+    public synchronized void setDefaultCompactStorage(boolean compact){
+        if(myCompactFlag == compact){
+            return;
+        }
+        myCompactFlag = compact;
+        clear();
+    }
+
+    /**
+     * Returns true if CompiledMaps are stored compactly for Animations
+     * without their own setting.
+     * @return true if CompiledMaps are stored compactly by default
+     */
+    public synchronized boolean getDefaultCompactStorage(){
+        return myCompactFlag;
+    }
+
+    /**
+     * Sets whether the CompiledMaps for an Animation version are stored
+     * compactly.  Cached entries for the version are invalidated.
+     * @param version Animation version
+     * @param compact true to store compactly, false for full precision, null
+     * to use the default
+     */
+    public synchronized void setCompactStorage(
+            VersionProperty version, Boolean compact){
+        if(version == null){
+            throw new NullPointerException();
+        }
+        boolean old = isCompactStorage(version);
+        if(compact == null){
+            myCompactVersions.remove(version);
+        }else{
+            myCompactVersions.put(version, compact);
+        }
+        if(old != isCompactStorage(version)){
+            invalidate(version);
+        }
+    }
+
+    /**
+     * Returns true if the CompiledMaps for an Animation version are stored
+     * compactly.
+     * @param version Animation version
+     * @return true if the CompiledMaps are stored compactly
+     */
+    public synchronized boolean isCompactStorage(VersionProperty version){
+        Boolean compact = version == null ? null : myCompactVersions.get(version);
+        return compact == null ? myCompactFlag : compact;
+    }
+
+    /**
+     * Returns the CompiledMap for the Animation and times, compiling and
+     * caching it if it is not cached or the Animation has changed.
+     * Start and end constraints ignored only when (start == -1 && end == -1).
+     *
+     * @param anim Animation to compile
+     * @param start path start time
+     * @param end path end time
+     * @param stepLength milliseconds between positions
+     * @return CompiledMap for the Animation, must not be modified
+     */
+    public CompiledMap getCompiledMap(
+            Animation anim, long start, long end, long stepLength){
+        if(anim == null){
+            throw new NullPointerException();
+        }
+        VersionProperty version = anim.getVersion();
+        if(version == null){
+            CompiledMap map = compile(anim, start, end, stepLength);
+            if(isCompactStorage(null)){
+                map.compact();
+            }
+            return map;
+        }
+        CacheKey key = new CacheKey(version, start, end, stepLength);
+        long editStamp = editStamp(anim);
+        synchronized(this){
+            CacheEntry entry = myEntries.get(key);
+            if(entry != null && entry.myAnimation == anim
+                    && entry.myEditStamp == editStamp){
+                myHitCount++;
+                return entry.myMap;
+            }
+        }
+        long fingerprint = fingerprint(anim);
+        synchronized(this){
+            CacheEntry entry = myEntries.get(key);
+            if(entry != null && entry.myFingerprint == fingerprint){
+                entry.myAnimation = anim;
+                entry.myEditStamp = editStamp;
+                myHitCount++;
+                return entry.myMap;
+            }
+            myMissCount++;
+            if(entry != null){
+                removeEntry(key);
+                myInvalidationCount++;
+            }
+        }
+        CompiledMap map = compile(anim, start, end, stepLength);
+        if(isCompactStorage(version)){
+            map.compact();
+        }
+        addEntry(key, map, fingerprint, anim, editStamp);
+        return map;
+    }
+
+    /**
+     * Adds a CompiledMap which was compiled or loaded elsewhere, such as from
+     * a CompiledMapFile.
+     *
+     * @param anim Animation the map was compiled from
+     * @param start path start time used to compile
+     * @param end path end time used to compile
+     * @param map CompiledMap to cache, must not be modified afterwards.  It
+     * is compacted if the Animation uses compact storage
+     */
+    public void put(Animation anim, long start, long end, CompiledMap map){
+        if(anim == null || map == null){
+            throw new NullPointerException();
+        }
+        VersionProperty version = anim.getVersion();
+        if(version == null){
+            return;
+        }
+        if(isCompactStorage(version)){
+            map.compact();
+        }
+        long editStamp = editStamp(anim);
+        addEntry(new CacheKey(version, start, end, map.getStepLength()),
+                map, fingerprint(anim), anim, editStamp);
+    }
+
+    private void addEntry(CacheKey key, CompiledMap map, long fingerprint,
+            Animation anim, long editStamp){
+        long size = estimateSize(map);
+        synchronized(this){
+            if(size > myMaxBytes){
+                return;
+            }
+            CacheEntry entry = new CacheEntry(map, fingerprint, size);
+            entry.myAnimation = anim;
+            entry.myEditStamp = editStamp;
+            CacheEntry old = myEntries.put(key, entry);
+            if(old != null){
+                mySizeBytes -= old.mySizeBytes;
+            }
+            mySizeBytes += size;
+            evict();
+        }
+    }
+
+    private CompiledMap compile(
+            Animation anim, long start, long end, long stepLength){
+        return anim.compileMap(start, end, stepLength, myCompiler);
+    }
+
+    /**
+     * Removes all cached CompiledMaps for the Animation's version.
+     * @param anim Animation to invalidate
+     */
+    public void invalidate(Animation anim){
+        if(anim == null){
+            return;
+        }
+        invalidate(anim.getVersion());
+    }
+
+    /**
+     * Removes all cached CompiledMaps for the given Animation version.
+     * @param version Animation version to invalidate
+     */
+    public synchronized void invalidate(VersionProperty version){
+        if(version == null){
+            return;
+        }
+        Iterator<Entry<CacheKey,CacheEntry>> it = myEntries.entrySet().iterator();
+        while(it.hasNext()){
+            Entry<CacheKey,CacheEntry> e = it.next();
+            if(!version.equals(e.getKey().myVersion)){
+                continue;
+            }
+            mySizeBytes -= e.getValue().mySizeBytes;
+            it.remove();
+            myInvalidationCount++;
+        }
+    }
+
+    /**
+     * Removes all cached CompiledMaps.
+     */
+    public synchronized void clear(){
+        myInvalidationCount += myEntries.size();
+        myEntries.clear();
+        mySizeBytes = 0;
+    }
+
+    /**
+     * Sets the memory bound, evicting entries if needed.
+     * @param maxBytes memory bound for cached positions, in bytes
+     */
+    public synchronized void setMaxBytes(long maxBytes){
+        if(maxBytes < 0){
+            throw new IllegalArgumentException("maxBytes must not be negative");
+        }
+        myMaxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Returns the memory bound.
+     * @return memory bound for cached positions, in bytes
+     */
+    public synchronized long getMaxBytes(){
+        return myMaxBytes;
+    }
+
+    /**
+     * Returns the estimated size of the cached positions.
+     * @return estimated size of the cache, in bytes
+     */
+    public synchronized long getSizeBytes(){
+        return mySizeBytes;
+    }
+
+    /**
+     * Returns the number of cached CompiledMaps.
+     * @return number of cached CompiledMaps
+     */
+    public synchronized int getEntryCount(){
+        return myEntries.size();
+    }
+
+    /**
+     * Returns the number of lookups which returned a cached CompiledMap.
+     * @return number of cache hits
+     */
+    public synchronized long getHitCount(){
+        return myHitCount;
+    }
+
+    /**
+     * Returns the number of lookups which compiled the Animation.
+     * @return number of cache misses
+     */
+    public synchronized long getMissCount(){
+        return myMissCount;
+    }
+
+    /**
+     * Returns the number of entries evicted to stay within the memory bound.
+     * @return number of evictions
+     */
+    public synchronized long getEvictionCount(){
+        return myEvictionCount;
+    }
+
+    /**
+     * Returns the number of entries removed because their Animation was
+     * edited or invalidated.
+     * @return number of invalidations
+     */
+    public synchronized long getInvalidationCount(){
+        return myInvalidationCount;
+    }
+
+    /**
+     * Returns the fraction of lookups which were cache hits.
+     * @return hit ratio, between 0 and 1
+     */
+    public synchronized double getHitRatio(){
+        long total = myHitCount + myMissCount;
+        if(total == 0){
+            return 0.0;
+        }
+        return (double)myHitCount / total;
+    }
+
+    /**
+     * Clears the counts.  Cached entries are kept.
+     */
+    public synchronized void resetStatistics(){
+        myHitCount = 0;
+        myMissCount = 0;
+        myEvictionCount = 0;
+        myInvalidationCount = 0;
+    }
+
+    private void evict(){
+        Iterator<CacheEntry> it = myEntries.values().iterator();
+        while(mySizeBytes > myMaxBytes && it.hasNext()){
+            CacheEntry e = it.next();
+            mySizeBytes -= e.mySizeBytes;
+            it.remove();
+            myEvictionCount++;
+        }
+    }
+
+    private void removeEntry(CacheKey key){
+        CacheEntry e = myEntries.remove(key);
+        if(e != null){
+            mySizeBytes -= e.mySizeBytes;
+        }
+    }
+
+    private static long estimateSize(CompiledMap map){
+        return map.getMemoryFootprint();
+    }
+
+    /**
+     * Returns a fingerprint of everything in the Animation which affects its
+     * CompiledMap.
+     * @param anim Animation to fingerprint
+     * @return fingerprint of the Animation
+     */
+    static long fingerprint(Animation anim){
+        long h = 17;
+        h = mix(h, anim.getStartTime());
+        h = mix(h, anim.getStopTime());
+        for(Channel c : anim.getChannels()){
+            h = mix(h, c.getId());
+            h = mix(h, c.getStartTime());
+            h = mix(h, c.getStopTime());
+            for(MotionPath mp : c.getMotionPaths()){
+                h = mix(h, mp.getStartTime());
+                h = mix(h, mp.getStopTime());
+                InterpolatorFactory fact = mp.getInterpolatorFactory();
+                h = mix(h, fact == null ? 0 : fact.getClass().getName().hashCode());
+                h = mix(h, fact == null ? 0 :
+                        Double.doubleToLongBits(fact.getTolerance()));
+                for(Point2D p : mp.getControlPoints()){
+                    h = mix(h, Double.doubleToLongBits(p.getX()));
+                    h = mix(h, Double.doubleToLongBits(p.getY()));
+                }
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns a stamp of the Animation's Channels and MotionPaths, their
+     * times and the modification counts of the MotionPaths.  The stamp
+     * changes whenever the fingerprint may have changed, but only walks the
+     * Channels and MotionPaths, not their control points.
+     * @param anim Animation to stamp
+     * @return edit stamp of the Animation
+     */
+    static long editStamp(Animation anim){
+        long h = 17;
+        h = mix(h, anim.getStartTime());
+        h = mix(h, anim.getStopTime());
+        for(Channel c : anim.getChannels()){
+            h = mix(h, System.identityHashCode(c));
+            h = mix(h, c.getId());
+            h = mix(h, c.getStartTime());
+            h = mix(h, c.getStopTime());
+            for(MotionPath mp : c.getMotionPaths()){
+                h = mix(h, System.identityHashCode(mp));
+                h = mix(h, mp.getModificationCount());
+                h = mix(h, mp.getStartTime());
+                h = mix(h, mp.getStopTime());
+                InterpolatorFactory fact = mp.getInterpolatorFactory();
+                h = mix(h, System.identityHashCode(fact));
+                h = mix(h, fact == null ? 0 :
+                        Double.doubleToLongBits(fact.getTolerance()));
+            }
+        }
+        return h;
+    }
+
+    private static long mix(long h, Long val){
+        return mix(h, val == null ? Long.MIN_VALUE : val);
+    }
+
+    private static long mix(long h, long val){
+        return 31L*h + (val ^ (val >>> 32));
+    }
+
+    private static class CacheKey {
+        private final VersionProperty myVersion;
+        private final long myStart;
+        private final long myEnd;
+        private final long myStepLength;
+
+        CacheKey(VersionProperty version, long start, long end, long step){
+            myVersion = version;
+            myStart = start;
+            myEnd = end;
+            myStepLength = step;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof CacheKey)){
+                return false;
+            }
+            CacheKey other = (CacheKey)obj;
+            return myStart == other.myStart && myEnd == other.myEnd
+                    && myStepLength == other.myStepLength
+                    && myVersion.equals(other.myVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 41 * hash + myVersion.hashCode();
+            hash = 41 * hash + (int)(myStart ^ (myStart >>> 32));
+            hash = 41 * hash + (int)(myEnd ^ (myEnd >>> 32));
+            hash = 41 * hash + (int)(myStepLength ^ (myStepLength >>> 32));
+            return hash;
+        }
+    }
+
+    /**
+     * A cached CompiledMap.  The Animation and edit stamp it was last checked
+     * against are updated under the cache's lock.
+     */
+    private static class CacheEntry {
+        private final CompiledMap myMap;
+        private final long myFingerprint;
+        private final long mySizeBytes;
+        private Animation myAnimation;
+        private long myEditStamp;
+
+        CacheEntry(CompiledMap map, long fingerprint, long sizeBytes){
+            myMap = map;
+            myFingerprint = fingerprint;
+            mySizeBytes = sizeBytes;
+        }
+    }
+}
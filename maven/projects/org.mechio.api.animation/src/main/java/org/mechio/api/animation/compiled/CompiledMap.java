@@ -30,6 +30,7 @@ import java.util.Map.Entry;
  * @author Matthew Stevenson <www.mechio.org>
  */
 public class CompiledMap extends HashMap<Integer, CompiledPath>{
+    private final static long OVERHEAD_BYTES = 96L;
     private long myStartTime;
     private long myEndTime;
     private long myStepLength;
@@ -66,6 +67,15 @@ public class CompiledMap extends HashMap<Integer, CompiledPath>{
         return myStartTime;
     }
     
+    /**
+     * Returns the time between positions in milliseconds.
+     *
+     * @return milliseconds between positions
+     */
+    public long getStepLength(){
+        return myStepLength;
+    }
+
     /**
      * Returns the time of the last position contained in the CompiledMap.
      * @return time of the last position contained in the CompiledMap
@@ -168,7 +178,7 @@ public class CompiledMap extends HashMap<Integer, CompiledPath>{
         }
         for(Entry<Integer,CompiledPath> e : entrySet()){
             CompiledPath p = e.getValue().setTimes(start, end);
-            if(!p.equals(e.getValue())){
+            if(p != e.getValue()){
                 e.setValue(p);
             }
         }
@@ -176,6 +186,45 @@ public class CompiledMap extends HashMap<Integer, CompiledPath>{
         myEndTime = end;
     }
     
+    /**
+     * Stores the positions of every CompiledPath quantized to 16 bits and
+     * delta encoded.  This should be done before the map is shared.
+     *
+     * @see CompiledPath#compact()
+     */
+    public void compact(){
+        for(CompiledPath p : values()){
+            p.compact();
+        }
+    }
+
+    /**
+     * Returns true if every CompiledPath is stored compactly.
+     *
+     * @return true if every CompiledPath is stored compactly
+     */
+    public boolean isCompact(){
+        for(CompiledPath p : values()){
+            if(!p.isCompact()){
+                return false;
+            }
+        }
+        return !isEmpty();
+    }
+
+    /**
+     * Returns the estimated memory used by the CompiledPaths, in bytes.
+     *
+     * @return estimated memory used, in bytes
+     */
+    public long getMemoryFootprint(){
+        long size = OVERHEAD_BYTES;
+        for(CompiledPath p : values()){
+            size += p.getMemoryFootprint();
+        }
+        return size;
+    }
+
     @Override
     public Object clone(){
         CompiledMap map = new CompiledMap(myStepLength, myStartTime, myEndTime);
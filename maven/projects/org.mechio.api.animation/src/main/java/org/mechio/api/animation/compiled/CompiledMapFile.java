@@ -0,0 +1,556 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.compiled;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.interpolation.InterpolatorDirectory;
+import org.mechio.api.interpolation.InterpolatorFactory;
+
+/**
+ * A precompiled Animation, stored as a binary file alongside the Animation's
+ * source file.
+ * <p>
+ * The file holds a header with the Animation version, the source file's
+ * length and modification time, a fingerprint of the Animation, the step
+ * length and times used to compile, and a table of channels.  Each channel's
+ * positions follow as a block of doubles.  Reading memory-maps the file and
+ * copies each channel with a single bulk read, so no objects are created per
+ * position.
+ * <p>
+ * The Animation's channels, MotionPaths and control points are stored after
+ * the positions, so a current file can be loaded without parsing the source.
+ * Animations with sync groups or add-ons are not stored, and must be read
+ * from their source.
+ * <p>
+ * A file is stale if its source has been modified since it was written, or
+ * if the Animation read from the source no longer matches its fingerprint.
+ */
+public class CompiledMapFile {
+    /**
+     * Suffix appended to the source file name.
+     */
+    public final static String SUFFIX = ".cmap";
+    /**
+     * Suffix appended to the compiled file name while it is being written.
+     */
+    public final static String TEMP_SUFFIX = SUFFIX + ".tmp";
+    final static int MAGIC = 0x434D4150;
+    final static int FORMAT_VERSION = 2;
+    final static int OFFSET_SOURCE_LENGTH = 8;
+    final static int OFFSET_SOURCE_MODIFIED = 16;
+    final static int OFFSET_FINGERPRINT = 24;
+    final static int OFFSET_STEP_LENGTH = 32;
+    final static int OFFSET_START = 40;
+    final static int OFFSET_END = 48;
+    final static int OFFSET_MAP_START = 56;
+    final static int OFFSET_MAP_END = 64;
+    final static int OFFSET_CHANNEL_COUNT = 72;
+    final static int OFFSET_MODEL_LENGTH = 76;
+    final static int OFFSET_MODEL = 80;
+    final static int OFFSET_VERSION = 88;
+    final static int CHANNEL_ENTRY_SIZE = 24;
+    final static Charset CHARSET = Charset.forName("UTF-8");
+
+    private final VersionProperty myVersion;
+    private final long mySourceLength;
+    private final long mySourceModified;
+    private final long myFingerprint;
+    private final long myStart;
+    private final long myEnd;
+    private final CompiledMap myMap;
+    private final byte[] myModel;
+
+    private CompiledMapFile(VersionProperty version, long sourceLength,
+            long sourceModified, long fingerprint, long start, long end,
+            CompiledMap map, byte[] model){
+        myVersion = version;
+        mySourceLength = sourceLength;
+        mySourceModified = sourceModified;
+        myFingerprint = fingerprint;
+        myStart = start;
+        myEnd = end;
+        myMap = map;
+        myModel = model;
+    }
+
+    /**
+     * Returns the compiled file for the given source file.
+     * @param source Animation source file
+     * @return compiled file for the source
+     */
+    public static File getCompiledFile(File source){
+        return new File(source.getPath() + SUFFIX);
+    }
+
+    /**
+     * Returns true if the file is a compiled Animation file, or one being
+     * written.
+     * @param file file to check
+     * @return true if the file name ends with a compiled suffix
+     */
+    public static boolean isCompiledFile(File file){
+        return isCompiledFileName(file.getName());
+    }
+
+    /**
+     * Returns true if the file name is that of a compiled Animation file, or
+     * one being written.
+     * @param name file name to check
+     * @return true if the file name ends with a compiled suffix
+     */
+    public static boolean isCompiledFileName(String name){
+        return name.endsWith(SUFFIX) || name.endsWith(TEMP_SUFFIX);
+    }
+
+    /**
+     * Writes a compiled Animation.  The file is written to a temporary file,
+     * flushed to disk and atomically moved into place, so a partially written
+     * file is never read.
+     *
+     * @param file file to write
+     * @param source Animation source file, used to detect staleness
+     * @param anim Animation which was compiled
+     * @param start start time used to compile
+     * @param end end time used to compile
+     * @param map CompiledMap to write
+     * @throws IOException if there is an error writing the file
+     */
+    public static void write(File file, File source, Animation anim,
+            long start, long end, CompiledMap map) throws IOException{
+        if(file == null || source == null || anim == null || map == null){
+            throw new NullPointerException();
+        }
+        VersionProperty version = anim.getVersion();
+        byte[] name = getBytes(version == null ? null : version.getName());
+        byte[] number = getBytes(version == null ? null : version.getNumber());
+        byte[] model = encodeAnimation(anim);
+        int tableOffset = align(OFFSET_VERSION + 4 + length(name) + length(number));
+        long dataOffset = tableOffset + (long)CHANNEL_ENTRY_SIZE*map.size();
+        long modelOffset = dataOffset;
+        for(CompiledPath p : map.values()){
+            modelOffset += 8L*p.size();
+        }
+        long size = modelOffset + length(model);
+        File tmp = new File(file.getPath() + ".tmp");
+        try(RandomAccessFile raf = new RandomAccessFile(tmp, "rw")){
+            raf.setLength(size);
+            MappedByteBuffer buf = raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.putInt(0, MAGIC);
+            buf.putInt(4, FORMAT_VERSION);
+            buf.putLong(OFFSET_SOURCE_LENGTH, source.length());
+            buf.putLong(OFFSET_SOURCE_MODIFIED, source.lastModified());
+            buf.putLong(OFFSET_FINGERPRINT, CompiledAnimationCache.fingerprint(anim));
+            buf.putLong(OFFSET_STEP_LENGTH, map.getStepLength());
+            buf.putLong(OFFSET_START, start);
+            buf.putLong(OFFSET_END, end);
+            buf.putLong(OFFSET_MAP_START, map.getStartTime());
+            buf.putLong(OFFSET_MAP_END, map.getEndTime());
+            buf.putInt(OFFSET_CHANNEL_COUNT, map.size());
+            buf.putInt(OFFSET_MODEL_LENGTH, model == null ? -1 : model.length);
+            buf.putLong(OFFSET_MODEL, modelOffset);
+            buf.position(OFFSET_VERSION);
+            putString(buf, name);
+            putString(buf, number);
+            int entry = tableOffset;
+            long data = dataOffset;
+            for(Entry<Integer,CompiledPath> e : map.entrySet()){
+                CompiledPath p = e.getValue();
+                buf.putInt(entry, e.getKey());
+                buf.putInt(entry + 4, p.size());
+                buf.putLong(entry + 8, p.getStartTime());
+                buf.putLong(entry + 16, data);
+                buf.position((int)data);
+                buf.asDoubleBuffer().put(p.toDoubleArray());
+                entry += CHANNEL_ENTRY_SIZE;
+                data += 8L*p.size();
+            }
+            if(model != null){
+                buf.position((int)modelOffset);
+                buf.put(model);
+            }
+            buf.force();
+        }
+        try{
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        }catch(AtomicMoveNotSupportedException ex){
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a compiled Animation.
+     *
+     * @param file file to read
+     * @return compiled Animation read from the file
+     * @throws IOException if there is an error reading the file or it is not
+     * a compiled Animation file
+     */
+    public static CompiledMapFile read(File file) throws IOException{
+        MappedByteBuffer buf;
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")){
+            buf = raf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        if(buf.capacity() < OFFSET_VERSION + 4
+                || buf.getInt(0) != MAGIC
+                || buf.getInt(4) != FORMAT_VERSION){
+            throw new IOException("Not a compiled animation file: " + file);
+        }
+        long step = buf.getLong(OFFSET_STEP_LENGTH);
+        int count = buf.getInt(OFFSET_CHANNEL_COUNT);
+        buf.position(OFFSET_VERSION);
+        String name = getString(buf);
+        String number = getString(buf);
+        VersionProperty version = name == null ? null
+                : new VersionProperty(name, number);
+        int entry = align(buf.position());
+        Map<Integer,CompiledPath> paths = new HashMap(count*2);
+        for(int i=0; i<count; i++, entry += CHANNEL_ENTRY_SIZE){
+            int id = buf.getInt(entry);
+            int len = buf.getInt(entry + 4);
+            long pathStart = buf.getLong(entry + 8);
+            long data = buf.getLong(entry + 16);
+            if(len < 0 || data + 8L*len > buf.capacity()){
+                throw new IOException("Corrupt compiled animation file: " + file);
+            }
+            double[] vals = new double[len];
+            buf.position((int)data);
+            DoubleBuffer db = buf.asDoubleBuffer();
+            db.get(vals);
+            paths.put(id, new CompiledPath(pathStart, step, vals));
+        }
+        CompiledMap map = new CompiledMap(step,
+                buf.getLong(OFFSET_MAP_START), buf.getLong(OFFSET_MAP_END));
+        map.putAll(paths);
+        byte[] model = null;
+        int modelLength = buf.getInt(OFFSET_MODEL_LENGTH);
+        if(modelLength >= 0){
+            long modelOffset = buf.getLong(OFFSET_MODEL);
+            if(modelOffset + modelLength > buf.capacity()){
+                throw new IOException("Corrupt compiled animation file: " + file);
+            }
+            model = new byte[modelLength];
+            buf.position((int)modelOffset);
+            buf.get(model);
+        }
+        return new CompiledMapFile(version,
+                buf.getLong(OFFSET_SOURCE_LENGTH),
+                buf.getLong(OFFSET_SOURCE_MODIFIED),
+                buf.getLong(OFFSET_FINGERPRINT),
+                buf.getLong(OFFSET_START), buf.getLong(OFFSET_END), map, model);
+    }
+
+    /**
+     * Reads the version of a compiled Animation without reading its
+     * positions.
+     *
+     * @param file file to read
+     * @param source Animation source file
+     * @return version of the compiled Animation, null if the file is stale
+     * @throws IOException if there is an error reading the file or it is not
+     * a compiled Animation file
+     */
+    public static VersionProperty readVersion(File file, File source)
+            throws IOException{
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")){
+            if(raf.length() < OFFSET_VERSION + 4
+                    || raf.readInt() != MAGIC
+                    || raf.readInt() != FORMAT_VERSION){
+                throw new IOException("Not a compiled animation file: " + file);
+            }
+            if(raf.readLong() != source.length()
+                    || raf.readLong() != source.lastModified()){
+                return null;
+            }
+            raf.seek(OFFSET_VERSION);
+            String name = readString(raf);
+            String number = readString(raf);
+            return name == null ? null : new VersionProperty(name, number);
+        }
+    }
+
+    private static String readString(RandomAccessFile raf) throws IOException{
+        int len = raf.readShort();
+        if(len < 0){
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        raf.readFully(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Returns true if the source has changed since this file was written.
+     * @param source Animation source file
+     * @return true if the source file's length or modification time differ
+     */
+    public boolean isStale(File source){
+        return source.length() != mySourceLength
+                || source.lastModified() != mySourceModified;
+    }
+
+    /**
+     * Returns true if the Animation matches the Animation this file was
+     * compiled from.
+     * @param anim Animation to check
+     * @return true if the Animation's fingerprint matches
+     */
+    public boolean matches(Animation anim){
+        return CompiledAnimationCache.fingerprint(anim) == myFingerprint;
+    }
+
+    /**
+     * Returns the version of the compiled Animation.
+     * @return version of the compiled Animation
+     */
+    public VersionProperty getVersion(){
+        return myVersion;
+    }
+
+    /**
+     * Returns the start time used to compile.
+     * @return start time used to compile
+     */
+    public long getStartTime(){
+        return myStart;
+    }
+
+    /**
+     * Returns the end time used to compile.
+     * @return end time used to compile
+     */
+    public long getEndTime(){
+        return myEnd;
+    }
+
+    /**
+     * Returns the step length used to compile.
+     * @return milliseconds between positions
+     */
+    public long getStepLength(){
+        return myMap.getStepLength();
+    }
+
+    /**
+     * Returns the CompiledMap read from the file.
+     * @return CompiledMap read from the file
+     */
+    public CompiledMap getCompiledMap(){
+        return myMap;
+    }
+
+    /**
+     * Returns the Animation stored in the file.  Each call returns a new
+     * Animation.  The CompiledMap should only be used with the Animation if
+     * it matches the file.
+     * @return Animation stored in the file, null if the Animation was not
+     * stored
+     * @throws IOException if the stored Animation is corrupt
+     */
+    public Animation getAnimation() throws IOException{
+        if(myModel == null){
+            return null;
+        }
+        return decodeAnimation(myModel, myVersion);
+    }
+
+    /**
+     * Encodes the channels, MotionPaths and control points of an Animation.
+     * Returns null if the Animation has data which is not stored.
+     */
+    private static byte[] encodeAnimation(Animation anim) throws IOException{
+        List<?> groups = anim.getSyncGroupConfigs();
+        if((groups != null && !groups.isEmpty()) || !anim.getAddOns().isEmpty()){
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try{
+            writeTime(out, anim.getStartTime());
+            writeTime(out, anim.getStopTime());
+            List<Channel> channels = anim.getChannels();
+            out.writeInt(channels.size());
+            for(Channel c : channels){
+                out.writeInt(c.getId());
+                writeString(out, c.getName());
+                writeTime(out, c.getStartTime());
+                writeTime(out, c.getStopTime());
+                List<MotionPath> motionPaths = c.getMotionPaths();
+                out.writeInt(motionPaths.size());
+                for(MotionPath mp : motionPaths){
+                    writeString(out, mp.getName());
+                    writeTime(out, mp.getStartTime());
+                    writeTime(out, mp.getStopTime());
+                    InterpolatorFactory fact = mp.getInterpolatorFactory();
+                    VersionProperty version = fact == null ? null : fact.getVersion();
+                    writeString(out, version == null ? null : version.getName());
+                    writeString(out, version == null ? null : version.getNumber());
+                    List<Point2D> points = mp.getControlPoints();
+                    out.writeInt(points.size());
+                    for(Point2D p : points){
+                        out.writeDouble(p.getX());
+                        out.writeDouble(p.getY());
+                    }
+                }
+            }
+        }catch(UTFDataFormatException ex){
+            return null;
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Animation decodeAnimation(
+            byte[] model, VersionProperty version) throws IOException{
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(model));
+        // Times are set before adding children, which they would overwrite.
+        Animation anim = new Animation(version);
+        setTimes(anim, readTime(in), readTime(in));
+        int channelCount = in.readInt();
+        for(int i=0; i<channelCount; i++){
+            Channel c = new Channel(in.readInt(), readString(in));
+            setTimes(c, readTime(in), readTime(in));
+            int pathCount = in.readInt();
+            for(int j=0; j<pathCount; j++){
+                String name = readString(in);
+                Long pathStart = readTime(in);
+                Long pathStop = readTime(in);
+                String factName = readString(in);
+                String factNumber = readString(in);
+                VersionProperty factVersion = factName == null ? null
+                        : new VersionProperty(factName, factNumber);
+                MotionPath mp = new MotionPath(
+                        InterpolatorDirectory.instance().getFactory(factVersion));
+                mp.setName(name);
+                int pointCount = in.readInt();
+                List<Point2D> points = new ArrayList<>(pointCount);
+                for(int k=0; k<pointCount; k++){
+                    points.add(new Point2D.Double(in.readDouble(), in.readDouble()));
+                }
+                mp.addPoints(points);
+                if(pathStart != null){
+                    mp.setStartTime(pathStart);
+                }
+                if(pathStop != null){
+                    mp.setStopTime(pathStop);
+                }
+                c.addPath(mp);
+            }
+            anim.addChannel(c);
+        }
+        return anim;
+    }
+
+    private static void setTimes(Animation anim, Long start, Long stop){
+        if(start != null){
+            anim.setStartTime(start);
+        }
+        if(stop != null){
+            anim.setStopTime(stop);
+        }
+    }
+
+    private static void setTimes(Channel channel, Long start, Long stop){
+        if(start != null){
+            channel.setStartTime(start);
+        }
+        if(stop != null){
+            channel.setStopTime(stop);
+        }
+    }
+
+    private static void writeTime(DataOutputStream out, Long time) throws IOException{
+        out.writeBoolean(time != null);
+        if(time != null){
+            out.writeLong(time);
+        }
+    }
+
+    private static Long readTime(DataInputStream in) throws IOException{
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException{
+        out.writeBoolean(str != null);
+        if(str != null){
+            out.writeUTF(str);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException{
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static int align(int offset){
+        return (offset + 7) & ~7;
+    }
+
+    private static int length(byte[] bytes){
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static byte[] getBytes(String str){
+        return str == null ? null : str.getBytes(CHARSET);
+    }
+
+    private static void putString(ByteBuffer buf, byte[] bytes){
+        if(bytes == null){
+            buf.putShort((short)-1);
+            return;
+        }
+        buf.putShort((short)bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf){
+        int len = buf.getShort();
+        if(len < 0){
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+}
@@ -17,20 +17,39 @@
 package org.mechio.api.animation.compiled;
 
 import java.awt.geom.Point2D;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 
 
 /**
- * An ArrayList<Double> of servo positions.
+ * A list of servo positions, stored as primitive doubles.
  * The positions are spaced by myStepLength, in milliseconds.
+ * The path can be used as a List<Double> for compatibility, but
+ * getPosition, setPosition and addPosition avoid boxing.
+ * <p>
+ * A path can be compacted to store its positions quantized to 16 bits and
+ * delta encoded, which uses a fraction of the memory of full precision.
+ * Compact paths are read in place.  Modifying a compact path restores full
+ * precision storage.
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
-public class CompiledPath extends ArrayList<Double> {
-    private Long myStepLength;
-    private Long myStartTime;
+public class CompiledPath extends AbstractList<Double> implements RandomAccess {
+    /**
+     * Largest difference between a position and its value in a compact path.
+     */
+    public final static double COMPACT_MAX_ERROR = QuantizedPositions.MAX_ERROR;
+    private final static long OVERHEAD_BYTES = 64L;
+    private long myStepLength;
+    private long myStartTime;
+    private double[] myPositions;
+    private QuantizedPositions myCompactPositions;
+    private int mySize;
 
     /**
      * Constructs an empty path list with give start time and step length.
@@ -39,9 +58,48 @@ public class CompiledPath extends ArrayList<Double> {
      * @param stepLength milliseconds between positions
      */
     public CompiledPath(long start, long stepLength){
+        this(start, stepLength, 10);
+    }
+
+    /**
+     * Constructs an empty path list with give start time, step length, and
+     * initial capacity.
+     *
+     * @param start offset for each position
+     * @param stepLength milliseconds between positions
+     * @param capacity number of positions to allocate space for
+     */
+    public CompiledPath(long start, long stepLength, int capacity){
         myStartTime = start;
         myStepLength = stepLength;
+        myPositions = new double[Math.max(0, capacity)];
     }
+
+    /**
+     * Constructs a path using the given positions.  The array is used
+     * directly, not copied.
+     *
+     * @param start offset for each position
+     * @param stepLength milliseconds between positions
+     * @param positions positions spaced by stepLength
+     */
+    public CompiledPath(long start, long stepLength, double[] positions){
+        if(positions == null){
+            throw new NullPointerException();
+        }
+        myStartTime = start;
+        myStepLength = stepLength;
+        myPositions = positions;
+        mySize = positions.length;
+    }
+
+    private static int stepCount(long start, long end, long stepLength){
+        if(end < start){
+            return 0;
+        }
+        return (int)((end-start)/stepLength)+1;
+    }
+
     /**
      * Returns the time (from 0) the last position is expected to be consumed.
      * This is equal to the startTime + stepLength*positions.
@@ -49,7 +107,7 @@ public class CompiledPath extends ArrayList<Double> {
      * @return time path is expected to end
      */
     public Long getEndTime() {
-        return myStartTime + size()*myStepLength;
+        return myStartTime + mySize*myStepLength;
     }
     /**
      * Returns the start offset time.  The time position i in the path should be
@@ -70,6 +128,230 @@ public class CompiledPath extends ArrayList<Double> {
         return myStepLength;
     }
 
+    @Override
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Returns the position at the given index without boxing.
+     *
+     * @param index index of the position
+     * @return position at the index
+     */
+    public double getPosition(int index){
+        if(index < 0 || index >= mySize){
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + mySize);
+        }
+        return position(index);
+    }
+
+    private double position(int index){
+        if(myCompactPositions != null){
+            return myCompactPositions.get(index);
+        }
+        return myPositions[index];
+    }
+
+    /**
+     * Sets the position at the given index without boxing.
+     *
+     * @param index index of the position
+     * @param position new position
+     * @return previous position at the index
+     */
+    public double setPosition(int index, double position){
+        double old = getPosition(index);
+        expand();
+        myPositions[index] = position;
+        return old;
+    }
+
+    /**
+     * Appends a position without boxing.
+     *
+     * @param position position to append
+     */
+    public void addPosition(double position){
+        ensureCapacity(mySize+1);
+        myPositions[mySize++] = position;
+        modCount++;
+    }
+
+    /**
+     * Returns a copy of the positions as a double array.
+     *
+     * @return copy of the positions
+     */
+    public double[] toDoubleArray(){
+        if(myCompactPositions != null){
+            return myCompactPositions.toArray();
+        }
+        return Arrays.copyOf(myPositions, mySize);
+    }
+
+    /**
+     * Stores the positions quantized to 16 bits and delta encoded.  Positions
+     * are rounded to within COMPACT_MAX_ERROR, and negative positions are
+     * stored as -1.  A compact path should be compacted before it is shared,
+     * and is expanded to full precision if it is modified.
+     */
+    public void compact(){
+        if(myCompactPositions != null){
+            return;
+        }
+        myCompactPositions = QuantizedPositions.encode(myPositions, mySize);
+        myPositions = null;
+    }
+
+    /**
+     * Restores full precision storage of the positions.  Precision lost when
+     * compacting is not recovered.
+     */
+    public void expand(){
+        if(myCompactPositions == null){
+            return;
+        }
+        myPositions = myCompactPositions.toArray();
+        myCompactPositions = null;
+    }
+
+    /**
+     * Returns true if the positions are stored compactly.
+     *
+     * @return true if the positions are stored compactly
+     */
+    public boolean isCompact(){
+        return myCompactPositions != null;
+    }
+
+    /**
+     * Returns the estimated memory used by the path, in bytes.
+     *
+     * @return estimated memory used, in bytes
+     */
+    public long getMemoryFootprint(){
+        if(myCompactPositions != null){
+            return OVERHEAD_BYTES + myCompactPositions.getMemoryFootprint();
+        }
+        return OVERHEAD_BYTES + 8L*myPositions.length;
+    }
+
+    /**
+     * Increases the capacity to hold at least the given number of positions.
+     *
+     * @param capacity number of positions to hold
+     */
+    public void ensureCapacity(int capacity){
+        expand();
+        if(capacity <= myPositions.length){
+            return;
+        }
+        int len = Math.max(capacity, myPositions.length + (myPositions.length >> 1));
+        myPositions = Arrays.copyOf(myPositions, len);
+    }
+
+    /**
+     * Releases unused capacity.
+     */
+    public void trimToSize(){
+        if(myPositions != null && myPositions.length != mySize){
+            myPositions = Arrays.copyOf(myPositions, mySize);
+        }
+    }
+
+    @Override
+    public Double get(int index) {
+        return getPosition(index);
+    }
+
+    @Override
+    public Double set(int index, Double element) {
+        return setPosition(index, element);
+    }
+
+    @Override
+    public boolean add(Double element) {
+        addPosition(element);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Double element) {
+        double val = element;
+        if(index < 0 || index > mySize){
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + mySize);
+        }
+        ensureCapacity(mySize+1);
+        System.arraycopy(myPositions, index, myPositions, index+1, mySize-index);
+        myPositions[index] = val;
+        mySize++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Double> c) {
+        if(index < 0 || index > mySize){
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + mySize);
+        }
+        int count = c.size();
+        if(count == 0){
+            return false;
+        }
+        double[] vals;
+        if(c instanceof CompiledPath){
+            vals = ((CompiledPath)c).toDoubleArray();
+        }else{
+            vals = new double[count];
+            int i = 0;
+            for(Double d : c){
+                vals[i++] = d;
+            }
+        }
+        ensureCapacity(mySize+count);
+        System.arraycopy(myPositions, index, myPositions, index+count, mySize-index);
+        System.arraycopy(vals, 0, myPositions, index, count);
+        mySize += count;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Double> c) {
+        return addAll(mySize, c);
+    }
+
+    @Override
+    public Double remove(int index) {
+        double old = getPosition(index);
+        expand();
+        System.arraycopy(myPositions, index+1, myPositions, index, mySize-index-1);
+        mySize--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        expand();
+        System.arraycopy(myPositions, toIndex, myPositions, fromIndex, mySize-toIndex);
+        mySize -= toIndex - fromIndex;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        if(myCompactPositions != null){
+            myCompactPositions = null;
+            myPositions = new double[0];
+        }
+        mySize = 0;
+        modCount++;
+    }
+
     /**
      * Returns the position for a given time.  The time position i in the path should be
      * used is myStartTime + myStepLength*i.
@@ -80,10 +362,10 @@ public class CompiledPath extends ArrayList<Double> {
      */
     public double getStep(long time){
         int i = (int)Math.floor((double)(time-myStartTime)/myStepLength);
-        if(i < 0 || i >= size()){
+        if(i < 0 || i >= mySize){
             return -1;
         }
-        return get(i);
+        return position(i);
     }
 
     /**
@@ -95,21 +377,28 @@ public class CompiledPath extends ArrayList<Double> {
         double t1 = (double)(time-myStartTime)/(double)myStepLength;
         int min = (int)Math.floor(t1); //step on or before time
         int max = min+1; //step after time
-        int len = size();
+        int len = mySize;
         if(min < 0){
-            if(max == 0){
-                return get(0);
+            if(max == 0 && len > 0){
+                return position(0);
             }
             return -1;
         }else if(max == len){
-            return get(len-1);
+            return position(len-1);
         }else if(max == len+1){
-            return get(len-1);
+            return position(len-1);
         }else if(max > len){
             return -1;
         }
-        double p1 = get(min);
-        double p2 = get(max);
+        double p1, p2;
+        if(myCompactPositions != null){
+            int codes = myCompactPositions.getCodePair(min);
+            p1 = QuantizedPositions.toPosition(codes & 0xFFFF);
+            p2 = QuantizedPositions.toPosition(codes >>> 16);
+        }else{
+            p1 = myPositions[min];
+            p2 = myPositions[max];
+        }
         if(p1 < 0 || p2 < 0){
             if(p1 > 0){
                 return p1;
@@ -124,6 +413,8 @@ public class CompiledPath extends ArrayList<Double> {
 
     /**
      * Checks if the given values correspond to this CompiledPath.
+     * compilePath includes a position at the end time, so the end is
+     * compared with the time of the last position.
      *
      * @param start offset for each position
      * @param end bound on the time of the last position
@@ -131,19 +422,25 @@ public class CompiledPath extends ArrayList<Double> {
      * @return true if the given values match this path, otherwise false
      */
     public boolean matches(long start, long end, long step){
-        return (start==myStartTime && end==getEndTime() && step==myStepLength);
+        return (start==myStartTime && step==myStepLength
+                && end==myStartTime + (mySize-1)*myStepLength);
     }
 
     /**
-     * Creates a deep copy of the CompiledPath.
+     * Creates a deep copy of the CompiledPath.  A copy of a compact path is
+     * also compact.
      * @return a deep copy of the CompiledPath
      */
     @Override
     public CompiledPath clone(){
-        CompiledPath cp = new CompiledPath(myStartTime, myStepLength);
-        for(double d : this){
-            cp.add(d);
+        CompiledPath cp = new CompiledPath(myStartTime, myStepLength, 0);
+        if(myCompactPositions != null){
+            cp.myCompactPositions = myCompactPositions;
+            cp.myPositions = null;
+        }else{
+            cp.myPositions = toDoubleArray();
         }
+        cp.mySize = mySize;
         return cp;
     }
 
@@ -175,16 +472,13 @@ public class CompiledPath extends ArrayList<Double> {
                 end = p.getEndTime();
             }
         }
-        CompiledPath cp = new CompiledPath(start, step);
+        CompiledPath cp = new CompiledPath(start, step, stepCount(start, end, step));
         for(long t=start; t<=end; t+=step){
             double d = -1;
-            for(CompiledPath p : paths){
-                if(d != -1){
-                    break;
-                }
-                d = p.getStep(t);
+            for(int i=0; i<len && d == -1; i++){
+                d = paths.get(i).getStep(t);
             }
-            cp.add(d);
+            cp.addPosition(d);
         }
         return cp;
     }
@@ -208,17 +502,112 @@ public class CompiledPath extends ArrayList<Double> {
             return this;
         }
         if(start > end){
-            return new CompiledPath(start, myStepLength);
+            return new CompiledPath(start, myStepLength, 0);
         }
-        List<Double> vals = new ArrayList((int)((end-start)/myStepLength)+1);
+        CompiledPath p = new CompiledPath(
+                start, myStepLength, stepCount(start, end, myStepLength));
         for(long t=start;t<=end; t+=myStepLength){
-            double pos = getStep(t);
-            vals.add(pos);
+            p.addPosition(getStep(t));
+        }
+        if(myCompactPositions != null){
+            p.compact();
         }
-        CompiledPath p = new CompiledPath(start, myStepLength);
-        p.addAll(vals);
         return p;
     }
+    /**
+     * Returns a copy of this path with the positions in a time window
+     * recompiled from the given interpolated points.  Positions outside the
+     * window are copied unchanged.  Positions in the window match those
+     * compilePath would produce from the same points.
+     *
+     * @param interpolated points to compile, with increasing x-values
+     * @param from start of the window, inclusive
+     * @param to end of the window, exclusive
+     * @return new CompiledPath with the window recompiled
+     */
+    public CompiledPath recompile(List<Point2D> interpolated, long from, long to){
+        CompiledPath cp = clone();
+        if(interpolated == null || interpolated.isEmpty() || mySize == 0){
+            return cp;
+        }
+        if(!(interpolated instanceof RandomAccess)){
+            interpolated = new ArrayList<>(interpolated);
+        }
+        int first = stepIndex(from);
+        int last = stepIndex(to);
+        if(first >= last){
+            return cp;
+        }
+        cp.expand();
+        int len = interpolated.size();
+        Point2D firstPoint = interpolated.get(0);
+        Point2D lastPoint = interpolated.get(len-1);
+        long t = myStartTime + first*myStepLength;
+        int n = nextPointIndex(interpolated, t);
+        for(int i=first; i<last; i++, t += myStepLength){
+            while(n < len && t >= interpolated.get(n).getX()){
+                n++;
+            }
+            double pos;
+            if(t < firstPoint.getX()){
+                pos = t+myStepLength > firstPoint.getX() ? firstPoint.getY() : -1.0;
+            }else if(n == len){
+                pos = t == myStartTime || t-myStepLength < lastPoint.getX() ?
+                        lastPoint.getY() : -1.0;
+            }else{
+                Point2D prev = interpolated.get(n-1);
+                Point2D next = interpolated.get(n);
+                if(next.getY() == -1.0 || prev.getY() == -1.0){
+                    if(next.getY() > 0){
+                        pos = next.getY();
+                    }else if(prev.getY() > 0){
+                        pos = prev.getY();
+                    }else{
+                        pos = -1.0;
+                    }
+                }else{
+                    double pX = (t - prev.getX())/(next.getX() - prev.getX());
+                    pos = pX*(next.getY() - prev.getY()) + prev.getY();
+                }
+            }
+            cp.myPositions[i] = pos;
+        }
+        if(myCompactPositions != null){
+            cp.compact();
+        }
+        return cp;
+    }
+
+    /**
+     * Returns the index of the first step at or after the given time, bounded
+     * by the path size.
+     */
+    private int stepIndex(long time){
+        if(time <= myStartTime){
+            return 0;
+        }else if(time - myStartTime > (long)mySize*myStepLength){
+            return mySize;
+        }
+        long i = (time - myStartTime + myStepLength - 1)/myStepLength;
+        return (int)Math.min(i, mySize);
+    }
+
+    /**
+     * Returns the index of the first point with an x-value after the time.
+     */
+    private static int nextPointIndex(List<Point2D> points, long time){
+        int lo = 0, hi = points.size();
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(points.get(mid).getX() <= time){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
     /**
      * Creates a CompiledPath from the interpolated points.
      *
@@ -235,21 +624,22 @@ public class CompiledPath extends ArrayList<Double> {
         //end += stepLength;
         Iterator<Point2D> it = interpolated.iterator();
         Point2D prev = it.next(), next = prev;
-        CompiledPath path = new CompiledPath(start, stepLength);
+        CompiledPath path = new CompiledPath(
+                start, stepLength, stepCount(start, end, stepLength));
         for (long t=start; t <= end; t += stepLength) {
             if(t < prev.getX()){ //fill preceeding play time with -1
                 if(t+stepLength > prev.getX()){
-                    path.add(prev.getY());
+                    path.addPosition(prev.getY());
                 }else{
-                    path.add(-1.0);
+                    path.addPosition(-1.0);
                 }
                 continue;
             }
             while (t >= next.getX()) {
                 if (!it.hasNext()) {
-                    path.add(next.getY());
+                    path.addPosition(next.getY());
                     for(t += stepLength; t <=end; t += stepLength){
-                        path.add(-1.0);    //Fill the rest of the play time with -1
+                        path.addPosition(-1.0);    //Fill the rest of the play time with -1
                     }
                     return path;
                 }
@@ -258,15 +648,15 @@ public class CompiledPath extends ArrayList<Double> {
             }
             if(next.getY() == -1.0 || prev.getY() == -1.0){
                 if(next.getY() > 0){
-                    path.add(next.getY());
+                    path.addPosition(next.getY());
                 }else if(prev.getY() > 0){
-                    path.add(prev.getY());
+                    path.addPosition(prev.getY());
                 }else{
-                    path.add(-1.0);
+                    path.addPosition(-1.0);
                 }
             }else{
                 double pX = (t - prev.getX())/(next.getX() - prev.getX());
-                path.add(pX*(next.getY() - prev.getY()) + prev.getY());
+                path.addPosition(pX*(next.getY() - prev.getY()) + prev.getY());
             }
         }
         return path;
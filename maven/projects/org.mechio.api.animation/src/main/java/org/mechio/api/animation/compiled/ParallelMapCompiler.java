@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.compiled;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles the Channels of an Animation in parallel on a ForkJoinPool.
+ * <p>
+ * Each Channel is compiled in its own task.  A Channel first interpolates
+ * its MotionPaths in parallel, then combines them into a CompiledPath exactly
+ * as Channel.compilePath does.  MotionPaths are interpolated through their
+ * own getInterpolatedPoints, so a MotionPath's cached CompiledPath is only
+ * cleared when its control points have changed.  The resulting CompiledMap is
+ * identical to the one produced by Animation.compileMap.
+ * <p>
+ * The time spent in each task is summed to estimate how long a serial
+ * compile would have taken.  The difference from the wall time of the last
+ * compile is reported as the time saved.
+ */
+public class ParallelMapCompiler {
+    private static final Logger theLogger = LoggerFactory.getLogger(ParallelMapCompiler.class);
+    private static ParallelMapCompiler theDefaultCompiler;
+
+    private final ForkJoinPool myPool;
+    private volatile long myLastWallNanos;
+    private volatile long myLastWorkNanos;
+    private final AtomicLong myTotalWallNanos;
+    private final AtomicLong myTotalWorkNanos;
+    private final AtomicLong myCompileCount;
+
+    /**
+     * Returns a shared ParallelMapCompiler using the available processors.
+     * @return shared ParallelMapCompiler
+     */
+    public synchronized static ParallelMapCompiler getDefault(){
+        if(theDefaultCompiler == null){
+            theDefaultCompiler = new ParallelMapCompiler(new ForkJoinPool());
+        }
+        return theDefaultCompiler;
+    }
+
+    /**
+     * Creates a new ParallelMapCompiler.
+     * @param pool ForkJoinPool to compile on
+     */
+    public ParallelMapCompiler(ForkJoinPool pool){
+        if(pool == null){
+            throw new NullPointerException();
+        }
+        myPool = pool;
+        myTotalWallNanos = new AtomicLong();
+        myTotalWorkNanos = new AtomicLong();
+        myCompileCount = new AtomicLong();
+    }
+
+    /**
+     * Creates a CompiledMap from the given Channels for the given times.
+     * Start and end constraints ignored only when (start == -1 && end == -1).
+     *
+     * @param channels Channels to compile, keyed by Channel id
+     * @param start path start time
+     * @param end path end time
+     * @param stepLength milliseconds between positions
+     * @return CompiledMap from the Channels' CompiledPaths
+     */
+    public CompiledMap compileMap(Map<Integer,Channel> channels,
+            long start, long end, long stepLength){
+        long wallStart = System.nanoTime();
+        AtomicLong work = new AtomicLong();
+        List<ChannelTask> tasks = new ArrayList(channels.size());
+        for(Entry<Integer,Channel> e : channels.entrySet()){
+            tasks.add(new ChannelTask(
+                    e.getKey(), e.getValue(), start, end, stepLength, work));
+        }
+        myPool.invoke(new CompileAllTask(tasks));
+        Map<Integer,CompiledPath> paths = new HashMap();
+        for(ChannelTask t : tasks){
+            CompiledPath cp = t.getRawResult();
+            if(cp != null && !cp.isEmpty()){
+                paths.put(t.myId, cp);
+            }
+        }
+        CompiledMap cm = new CompiledMap(stepLength, start, end);
+        cm.putAll(paths);
+        long wall = System.nanoTime() - wallStart;
+        recordCompile(wall, work.get());
+        return cm;
+    }
+
+    private void recordCompile(long wallNanos, long workNanos){
+        myLastWallNanos = wallNanos;
+        myLastWorkNanos = workNanos;
+        myTotalWallNanos.addAndGet(wallNanos);
+        myTotalWorkNanos.addAndGet(workNanos);
+        myCompileCount.incrementAndGet();
+        theLogger.debug("Compiled animation in {}us, serial estimate {}us.",
+                wallNanos/1000, workNanos/1000);
+    }
+
+    /**
+     * Returns the wall time of the last compile in nanoseconds.
+     * @return wall time of the last compile
+     */
+    public long getLastWallTimeNanos(){
+        return myLastWallNanos;
+    }
+
+    /**
+     * Returns the summed task time of the last compile in nanoseconds.
+     * This is an estimate of the time a serial compile would have taken.
+     * @return estimated serial time of the last compile
+     */
+    public long getLastSerialTimeNanos(){
+        return myLastWorkNanos;
+    }
+
+    /**
+     * Returns the estimated time saved by the last compile compared with a
+     * serial compile, in nanoseconds.
+     * @return estimated time saved by the last compile
+     */
+    public long getLastSavedTimeNanos(){
+        return myLastWorkNanos - myLastWallNanos;
+    }
+
+    /**
+     * Returns the estimated time saved by all compiles compared with serial
+     * compiles, in nanoseconds.
+     * @return estimated time saved by all compiles
+     */
+    public long getTotalSavedTimeNanos(){
+        return myTotalWorkNanos.get() - myTotalWallNanos.get();
+    }
+
+    /**
+     * Returns the number of compiles.
+     * @return number of compiles
+     */
+    public long getCompileCount(){
+        return myCompileCount.get();
+    }
+
+    /**
+     * Returns the ForkJoinPool used to compile.
+     * @return ForkJoinPool used to compile
+     */
+    public ForkJoinPool getPool(){
+        return myPool;
+    }
+
+    private static class CompileAllTask extends RecursiveAction {
+        private final List<ChannelTask> myTasks;
+
+        CompileAllTask(List<ChannelTask> tasks){
+            myTasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(myTasks);
+        }
+    }
+
+    private static class ChannelTask extends RecursiveTask<CompiledPath> {
+        private final int myId;
+        private final Channel myChannel;
+        private final long myStart;
+        private final long myEnd;
+        private final long myStepLength;
+        private final AtomicLong myWork;
+
+        ChannelTask(int id, Channel channel,
+                long start, long end, long stepLength, AtomicLong work){
+            myId = id;
+            myChannel = channel;
+            myStart = start;
+            myEnd = end;
+            myStepLength = stepLength;
+            myWork = work;
+        }
+
+        @Override
+        protected CompiledPath compute() {
+            List<MotionPath> motionPaths = myChannel.getMotionPaths();
+            List<InterpolateTask> tasks = new ArrayList(motionPaths.size());
+            for(MotionPath mp : motionPaths){
+                tasks.add(new InterpolateTask(mp, myWork));
+            }
+            if(tasks.size() > 1){
+                invokeAll(tasks);
+            }else{
+                for(InterpolateTask t : tasks){
+                    t.compute();
+                }
+            }
+            long taskStart = System.nanoTime();
+            CompiledPath cp = myChannel.compilePath(myStart, myEnd, myStepLength);
+            myWork.addAndGet(System.nanoTime() - taskStart);
+            return cp;
+        }
+    }
+
+    private static class InterpolateTask extends RecursiveAction {
+        private final MotionPath myPath;
+        private final AtomicLong myWork;
+
+        InterpolateTask(MotionPath path, AtomicLong work){
+            myPath = path;
+            myWork = work;
+        }
+
+        @Override
+        protected void compute() {
+            long taskStart = System.nanoTime();
+            myPath.getInterpolatedPoints();
+            myWork.addAndGet(System.nanoTime() - taskStart);
+        }
+    }
+}
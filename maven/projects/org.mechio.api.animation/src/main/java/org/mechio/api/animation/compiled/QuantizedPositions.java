@@ -0,0 +1,304 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.api.animation.compiled;
+
+import java.util.Arrays;
+
+/**
+ * Positions quantized to 16-bit codes and delta encoded, used as the compact
+ * storage of a CompiledPath.
+ * <p>
+ * Positions in [0, 1] are rounded to the nearest 1/65534, and missing
+ * positions (any negative value) are stored as -1.  The codes are split into
+ * blocks of 32.  Each block stores its first code, and each following code
+ * as the difference from a prediction continuing the previous step.  Smooth
+ * motion gives small differences which take one byte, and flat or constant
+ * velocity sections are run-length coded.  A position is decoded from the
+ * start of its block, so reading any position takes at most 31 steps.
+ * <p>
+ * QuantizedPositions are immutable and may be shared.
+ */
+final class QuantizedPositions {
+    /**
+     * Largest difference between a position and its quantized value.
+     */
+    final static double MAX_ERROR = 0.5/65534.0;
+    private final static double SCALE = 65534.0;
+    private final static int MISSING = 0xFFFF;
+    private final static int BLOCK_SHIFT = 5;
+    private final static int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+    private final static int SMALL_LIMIT = 0x40;
+    private final static int LARGE_FLAG = 0x40;
+    private final static int LARGE_LIMIT = 0x4000;
+    private final static int RUN_FLAG = 0x80;
+    private final static int MAX_RUN = 0x40;
+    private final static int ABSOLUTE_FLAG = 0xC0;
+    private final static long OVERHEAD_BYTES = 64L;
+
+    private final int mySize;
+    private final char[] myKeys;
+    private final int[] myOffsets;
+    private final byte[] myData;
+
+    private QuantizedPositions(
+            int size, char[] keys, int[] offsets, byte[] data){
+        mySize = size;
+        myKeys = keys;
+        myOffsets = offsets;
+        myData = data;
+    }
+
+    /**
+     * Encodes the first size positions of the array.
+     *
+     * @param positions positions to encode
+     * @param size number of positions to encode
+     * @return encoded positions
+     */
+    static QuantizedPositions encode(double[] positions, int size){
+        int blocks = (size + BLOCK_MASK) >>> BLOCK_SHIFT;
+        char[] keys = new char[blocks];
+        int[] offsets = new int[blocks];
+        Encoder out = new Encoder(size);
+        for(int b=0; b<blocks; b++){
+            int first = b << BLOCK_SHIFT;
+            int end = Math.min(size, first + BLOCK_MASK + 1);
+            int prev = toCode(positions[first]);
+            int vel = 0;
+            keys[b] = (char)prev;
+            offsets[b] = out.mySize;
+            for(int i=first+1; i<end; i++){
+                int cur = toCode(positions[i]);
+                int r = cur - prev - vel;
+                if(r == 0){
+                    out.addRun();
+                }else{
+                    out.flushRun();
+                    int z = (r << 1) ^ (r >> 31);
+                    if(z < SMALL_LIMIT){
+                        out.add(z);
+                    }else if(z < LARGE_LIMIT){
+                        out.add(LARGE_FLAG | (z >>> 8));
+                        out.add(z & 0xFF);
+                    }else{
+                        out.add(ABSOLUTE_FLAG);
+                        out.add(cur >>> 8);
+                        out.add(cur & 0xFF);
+                        prev = cur;
+                        vel = 0;
+                        continue;
+                    }
+                }
+                vel = cur - prev;
+                prev = cur;
+            }
+            out.flushRun();
+        }
+        return new QuantizedPositions(size, keys, offsets, out.toArray());
+    }
+
+    private static int toCode(double position){
+        if(!(position >= 0)){
+            return MISSING;
+        }
+        return (int)Math.round(Math.min(position, 1.0)*SCALE);
+    }
+
+    /**
+     * Returns the position for a code.
+     *
+     * @param code 16-bit position code
+     * @return position for the code, -1 if missing
+     */
+    static double toPosition(int code){
+        return code == MISSING ? -1.0 : code/SCALE;
+    }
+
+    /**
+     * Returns the number of positions.
+     *
+     * @return number of positions
+     */
+    int size(){
+        return mySize;
+    }
+
+    /**
+     * Returns the position at the given index.  The index is not checked.
+     *
+     * @param index index of the position
+     * @return position at the index
+     */
+    double get(int index){
+        return toPosition(decode(index, false));
+    }
+
+    /**
+     * Returns the codes for the position at the given index and the one after
+     * it, decoded together.  The code at the index is in the low 16 bits,
+     * and the next code is in the high 16 bits.  The index is not checked.
+     *
+     * @param index index of the first position, less than size()-1
+     * @return the codes at index and index+1
+     */
+    int getCodePair(int index){
+        if((index & BLOCK_MASK) == BLOCK_MASK){
+            return decode(index, false) | (myKeys[(index >>> BLOCK_SHIFT) + 1] << 16);
+        }
+        return decode(index, true);
+    }
+
+    /**
+     * Walks a block to the code at the index.  If pair is set, the walk
+     * continues one step and both codes are returned as in getCodePair.
+     */
+    private int decode(int index, boolean pair){
+        int b = index >>> BLOCK_SHIFT;
+        int target = (index & BLOCK_MASK) + (pair ? 1 : 0);
+        int prev = myKeys[b];
+        int before = prev;
+        int vel = 0;
+        int run = 0;
+        int p = myOffsets[b];
+        int k = 0;
+        while(k < target){
+            if(run > 0){
+                int m = Math.min(run, target - k);
+                before = prev + vel*(m-1);
+                prev = before + vel;
+                run -= m;
+                k += m;
+                continue;
+            }
+            int t = myData[p++] & 0xFF;
+            if(t >= RUN_FLAG){
+                if(t < ABSOLUTE_FLAG){
+                    run = (t & (MAX_RUN-1)) + 1;
+                    continue;
+                }
+                before = prev;
+                prev = ((myData[p] & 0xFF) << 8) | (myData[p+1] & 0xFF);
+                p += 2;
+                vel = 0;
+                k++;
+                continue;
+            }
+            int z = t;
+            if(t >= LARGE_FLAG){
+                z = ((t & (LARGE_FLAG-1)) << 8) | (myData[p++] & 0xFF);
+            }
+            int cur = prev + vel + ((z >>> 1) ^ -(z & 1));
+            vel = cur - prev;
+            before = prev;
+            prev = cur;
+            k++;
+        }
+        return pair ? before | (prev << 16) : prev;
+    }
+
+    /**
+     * Decodes all positions.
+     *
+     * @return array of positions
+     */
+    double[] toArray(){
+        double[] vals = new double[mySize];
+        for(int b=0; b<myKeys.length; b++){
+            int first = b << BLOCK_SHIFT;
+            int end = Math.min(mySize, first + BLOCK_MASK + 1);
+            int prev = myKeys[b];
+            int vel = 0;
+            int run = 0;
+            int p = myOffsets[b];
+            vals[first] = toPosition(prev);
+            for(int i=first+1; i<end; i++){
+                if(run == 0){
+                    int t = myData[p++] & 0xFF;
+                    if(t >= ABSOLUTE_FLAG){
+                        prev = ((myData[p] & 0xFF) << 8) | (myData[p+1] & 0xFF);
+                        p += 2;
+                        vel = 0;
+                        vals[i] = toPosition(prev);
+                        continue;
+                    }else if(t >= RUN_FLAG){
+                        run = (t & (MAX_RUN-1)) + 1;
+                    }else{
+                        int z = t;
+                        if(t >= LARGE_FLAG){
+                            z = ((t & (LARGE_FLAG-1)) << 8) | (myData[p++] & 0xFF);
+                        }
+                        int cur = prev + vel + ((z >>> 1) ^ -(z & 1));
+                        vel = cur - prev;
+                        prev = cur;
+                        vals[i] = toPosition(prev);
+                        continue;
+                    }
+                }
+                run--;
+                prev += vel;
+                vals[i] = toPosition(prev);
+            }
+        }
+        return vals;
+    }
+
+    /**
+     * Returns the estimated memory used, in bytes.
+     *
+     * @return estimated memory used, in bytes
+     */
+    long getMemoryFootprint(){
+        return OVERHEAD_BYTES + 2L*myKeys.length
+                + 4L*myOffsets.length + myData.length;
+    }
+
+    private static class Encoder {
+        private byte[] myData;
+        private int mySize;
+        private int myRun;
+
+        Encoder(int capacity){
+            myData = new byte[Math.max(16, capacity)];
+        }
+
+        void add(int b){
+            if(mySize == myData.length){
+                myData = Arrays.copyOf(myData, mySize*2);
+            }
+            myData[mySize++] = (byte)b;
+        }
+
+        void addRun(){
+            myRun++;
+            if(myRun == MAX_RUN){
+                flushRun();
+            }
+        }
+
+        void flushRun(){
+            if(myRun > 0){
+                add(RUN_FLAG | (myRun-1));
+                myRun = 0;
+            }
+        }
+
+        byte[] toArray(){
+            return Arrays.copyOf(myData, mySize);
+        }
+    }
+}
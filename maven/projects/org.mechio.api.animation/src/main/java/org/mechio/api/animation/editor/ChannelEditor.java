@@ -16,6 +16,7 @@
 
 package org.mechio.api.animation.editor;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import org.mechio.api.animation.editor.history.HistoryHelper;
@@ -103,6 +104,23 @@ public class ChannelEditor extends AbstractEditor<MotionPath,MotionPathEditor>{
         return getChannelView().getInterpolatedPoints(-1, -1);
     }
 
+    /**
+     * Returns the MotionPathEditors with control points overlapping the given
+     * range, including disabled MotionPaths.
+     *
+     * @param start range start time
+     * @param end range end time
+     * @return MotionPathEditors overlapping the range, in order
+     */
+    public List<MotionPathEditor> getChildrenInRange(long start, long end){
+        List<Integer> indices = myChannel.getMotionPathIndices(start, end);
+        List<MotionPathEditor> children = new ArrayList<MotionPathEditor>(indices.size());
+        for(Integer i : indices){
+            children.add(getChild(i));
+        }
+        return children;
+    }
+
     /**
      *
      * @param name
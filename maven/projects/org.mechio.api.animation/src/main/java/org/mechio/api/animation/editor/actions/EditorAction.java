@@ -31,6 +31,7 @@ import org.jflux.api.core.Source;
  * @author Matthew Stevenson <www.mechio.org>
  */
 public abstract class EditorAction<T extends AbstractEditor<B,C>,B,C> implements ActionListener{
+    private final static long OVERHEAD_BYTES = 32L;
     /**
      *
      */
@@ -66,6 +67,17 @@ public abstract class EditorAction<T extends AbstractEditor<B,C>,B,C> implements
     public void setHistory(HistoryStack hist){
         myHistory = hist;
     }
+
+    /**
+     * Returns the estimated memory held by this action, in bytes, not
+     * counting the editor it acts on.  Actions holding copies of editor data
+     * should add the size of the copies.
+     *
+     * @return estimated memory held by this action, in bytes
+     */
+    public long getMemoryFootprint(){
+        return OVERHEAD_BYTES;
+    }
     
     /**
      *
@@ -32,6 +32,8 @@ import org.mechio.api.animation.editor.MotionPathEditor;
  * @author Matthew Stevenson <www.mechio.org>
  */
 public class MotionPathActions {
+    //a Point2D.Double and its list reference
+    private final static long POINT_BYTES = 40L;
     /**
      *
      * @param controller
@@ -95,6 +97,11 @@ public class MotionPathActions {
             myPoints = ListUtils.deepCopy(points);
         }
 
+        @Override
+        public long getMemoryFootprint() {
+            return super.getMemoryFootprint() + 16L + myPoints.size()*POINT_BYTES;
+        }
+
         @Override
         public void actionPerformed(ActionEvent e) {
             myController.setPoints(e.getSource(), myPoints, myHistory);
@@ -22,7 +22,8 @@ import org.mechio.api.animation.editor.actions.EditorAction;
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
-public class DefaultHistoryAction implements HistoryAction {
+public class DefaultHistoryAction implements SizedHistoryAction {
+    private final static long OVERHEAD_BYTES = 32L;
     private EditorAction myUndo;
     private EditorAction myRedo;
     private boolean myActionPerformed;
@@ -98,4 +99,15 @@ public class DefaultHistoryAction implements HistoryAction {
     public boolean getActionPerformed(){
         return myActionPerformed;
     }
+
+    /**
+     * Returns the estimated memory held by the undo and redo actions.
+     *
+     * @return estimated memory held by this action, in bytes
+     */
+    @Override
+    public long getMemoryFootprint(){
+        return OVERHEAD_BYTES
+                + myUndo.getMemoryFootprint() + myRedo.getMemoryFootprint();
+    }
 }
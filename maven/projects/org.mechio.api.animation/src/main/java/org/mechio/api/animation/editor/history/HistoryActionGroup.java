@@ -19,7 +19,7 @@ package org.mechio.api.animation.editor.history;
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
-public class HistoryActionGroup extends HistoryStack implements HistoryAction{
+public class HistoryActionGroup extends HistoryStack implements SizedHistoryAction{
     private String myName;
     private boolean myActionFlag;
     
@@ -29,6 +29,10 @@ public class HistoryActionGroup extends HistoryStack implements HistoryAction{
         }
         myName = name;
         myActionFlag = actionPerformed;
+        //the group is undone as a whole, so none of it can be dropped
+        setMaxCount(0);
+        setMaxBytes(0);
+        setMergeWindow(0);
     }
     
     @Override
@@ -118,7 +118,7 @@ public class HistoryHelper {
     public static HistoryAction scaleMotionPath(MotionPathEditor controller, List<Point2D> prevPoints, List<Point2D> newPoints){
         EditorAction undo = new SetControlPoints(controller, prevPoints);
         EditorAction redo = new SetControlPoints(controller, newPoints);
-        return new DefaultHistoryAction($("scale.motion.path"), redo, undo, true);
+        return new SetPointsHistoryAction($("scale.motion.path"), controller, redo, undo);
     }
     /**
      *
@@ -130,7 +130,7 @@ public class HistoryHelper {
     public static HistoryAction moveMotionPath(MotionPathEditor controller, List<Point2D> prevPoints, List<Point2D> newPoints){
         EditorAction undo = new SetControlPoints(controller, prevPoints);
         EditorAction redo = new SetControlPoints(controller, newPoints);
-        return new DefaultHistoryAction($("move.motion.path"), redo, undo, true);
+        return new SetPointsHistoryAction($("move.motion.path"), controller, redo, undo);
     }
 
     /**
@@ -147,8 +147,91 @@ public class HistoryHelper {
     public static HistoryAction movePoint(MotionPathEditor controller,
             int curI, long curTime, double curPos,
             int prevI, long prevTime, double prevPos){
-        EditorAction undo = new MovePoint(controller, curI, prevTime, prevPos);
-        EditorAction redo = new MovePoint(controller, prevI, curTime, curPos);
-        return new DefaultHistoryAction($("move.control.point"), redo, undo, true);
+        return new MovePointHistoryAction(controller,
+                curI, curTime, curPos, prevI, prevTime, prevPos);
+    }
+
+    /**
+     * Moves a control point.  Consecutive moves of the same point are merged
+     * into a single move from the first position to the last.
+     */
+    private static class MovePointHistoryAction
+            extends DefaultHistoryAction implements MergeableHistoryAction {
+        private MotionPathEditor myController;
+        private int myCurIndex;
+        private long myCurTime;
+        private double myCurPos;
+        private int myPrevIndex;
+        private long myPrevTime;
+        private double myPrevPos;
+
+        MovePointHistoryAction(MotionPathEditor controller,
+                int curI, long curTime, double curPos,
+                int prevI, long prevTime, double prevPos){
+            super($("move.control.point"),
+                    new MovePoint(controller, prevI, curTime, curPos),
+                    new MovePoint(controller, curI, prevTime, prevPos), true);
+            myController = controller;
+            myCurIndex = curI;
+            myCurTime = curTime;
+            myCurPos = curPos;
+            myPrevIndex = prevI;
+            myPrevTime = prevTime;
+            myPrevPos = prevPos;
+        }
+
+        @Override
+        public HistoryAction merge(HistoryAction next){
+            if(!(next instanceof MovePointHistoryAction)){
+                return null;
+            }
+            MovePointHistoryAction move = (MovePointHistoryAction)next;
+            //positions are rounded when set, so only the index and time
+            //identify the moved point
+            if(move.myController != myController
+                    || move.myPrevIndex != myCurIndex
+                    || move.myPrevTime != myCurTime){
+                return null;
+            }
+            return new MovePointHistoryAction(myController,
+                    move.myCurIndex, move.myCurTime, move.myCurPos,
+                    myPrevIndex, myPrevTime, myPrevPos);
+        }
+    }
+
+    /**
+     * Sets the control points of a MotionPath.  Consecutive changes of the
+     * same kind to the same MotionPath are merged, keeping the first
+     * undo and the last redo.
+     */
+    private static class SetPointsHistoryAction
+            extends DefaultHistoryAction implements MergeableHistoryAction {
+        private String myName;
+        private MotionPathEditor myController;
+        private EditorAction myRedo;
+        private EditorAction myUndo;
+
+        SetPointsHistoryAction(String name, MotionPathEditor controller,
+                EditorAction redo, EditorAction undo){
+            super(name, redo, undo, true);
+            myName = name;
+            myController = controller;
+            myRedo = redo;
+            myUndo = undo;
+        }
+
+        @Override
+        public HistoryAction merge(HistoryAction next){
+            if(!(next instanceof SetPointsHistoryAction)){
+                return null;
+            }
+            SetPointsHistoryAction set = (SetPointsHistoryAction)next;
+            if(set.myController != myController
+                    || !myName.equals(set.myName)){
+                return null;
+            }
+            return new SetPointsHistoryAction(
+                    myName, myController, set.myRedo, myUndo);
+        }
     }
 }
@@ -28,6 +28,25 @@ public interface HistoryListener {
      * @param oldSize
      */
     public void eventAdded(HistoryStack stack, HistoryAction event, int oldSize);
+    /**
+     * Called when an action is merged into the current action instead of
+     * being added.  The size of the history is unchanged, and any undone
+     * actions have been cleared.
+     *
+     * @param stack HistoryStack which merged the action
+     * @param event action which replaced the current action
+     * @param index index of the replaced action
+     */
+    public void eventMerged(HistoryStack stack, HistoryAction event, int index);
+    /**
+     * Called when the oldest actions are dropped to keep the history within
+     * its limits.  The actions from index 1 to count are removed, so every
+     * following action and the selected time move down by count.
+     *
+     * @param stack HistoryStack which dropped the actions
+     * @param count number of actions dropped
+     */
+    public void eventsTrimmed(HistoryStack stack, int count);
     /**
      *
      * @param stack
@@ -20,17 +20,56 @@ import org.mechio.api.animation.editor.actions.EditorAction;
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
 import java.util.List;
+import org.jflux.api.common.rk.utils.TimeUtils;
 
 import static org.jflux.api.common.rk.localization.Localizer.$;
 
 /**
+ * An undoable history of HistoryActions.
+ * <p>
+ * The history is bounded by a number of actions and by estimated memory.
+ * When either limit is passed, the oldest actions are dropped and can no
+ * longer be undone.  Actions which are not SizedHistoryActions are counted as
+ * DEFAULT_ACTION_BYTES.
+ * <p>
+ * A MergeableHistoryAction added within the merge window of the previous
+ * action is merged with it, so a run of small edits, such as repeatedly
+ * moving a control point, is undone in one step.
+ * <p>
+ * HistoryListeners are told when an action is added or merged, and when the
+ * oldest actions are dropped.  Dropping actions moves the index of every
+ * remaining action, so listeners tracking indices must handle eventsTrimmed.
+ * Listeners are notified while the HistoryStack is locked.
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
 public class HistoryStack {
+    /**
+     * Default maximum number of actions kept.
+     */
+    public final static int DEFAULT_MAX_COUNT = 1000;
+    /**
+     * Default maximum estimated memory of the actions kept, in bytes.
+     */
+    public final static long DEFAULT_MAX_BYTES = 32L*1024*1024;
+    /**
+     * Default time in milliseconds after an action in which a following
+     * action may be merged with it.
+     */
+    public final static long DEFAULT_MERGE_WINDOW = 1000L;
+    /**
+     * Estimated memory of an action which is not a SizedHistoryAction.
+     */
+    public final static long DEFAULT_ACTION_BYTES = 256L;
     private List<HistoryListener> myListeners;
     private List<HistoryAction> myEvents;
     private int myTime;
+    private int myMaxCount;
+    private long myMaxBytes;
+    private long myBytes;
+    private long myMergeWindow;
+    private long myLastAddTime;
+    private boolean myMergeFlag;
 
     /**
      *
@@ -40,13 +79,86 @@ public class HistoryStack {
         myEvents.add(new DefaultHistoryAction($("history.start"), new EmptyAction(), new EmptyAction(), true));
         myTime = 0;
         myListeners = new ArrayList();
+        myMaxCount = DEFAULT_MAX_COUNT;
+        myMaxBytes = DEFAULT_MAX_BYTES;
+        myMergeWindow = DEFAULT_MERGE_WINDOW;
+    }
+
+    /**
+     * Sets the maximum number of actions kept, not counting the start of the
+     * history.  The oldest actions are dropped when there are more.
+     *
+     * @param count maximum number of actions, 0 for no limit
+     */
+    public synchronized void setMaxCount(int count){
+        myMaxCount = Math.max(count, 0);
+        trim();
+    }
+
+    /**
+     * Returns the maximum number of actions kept.
+     *
+     * @return maximum number of actions, 0 if there is no limit
+     */
+    public synchronized int getMaxCount(){
+        return myMaxCount;
+    }
+
+    /**
+     * Sets the maximum estimated memory of the actions kept.  The oldest
+     * actions are dropped when there is more, but the most recent action is
+     * always kept.
+     *
+     * @param bytes maximum estimated memory in bytes, 0 for no limit
+     */
+    public synchronized void setMaxBytes(long bytes){
+        myMaxBytes = Math.max(bytes, 0);
+        trim();
+    }
+
+    /**
+     * Returns the maximum estimated memory of the actions kept.
+     *
+     * @return maximum estimated memory in bytes, 0 if there is no limit
+     */
+    public synchronized long getMaxBytes(){
+        return myMaxBytes;
+    }
+
+    /**
+     * Sets the time after an action in which a following action may be
+     * merged with it.
+     *
+     * @param millis merge window in milliseconds, 0 to never merge
+     */
+    public synchronized void setMergeWindow(long millis){
+        myMergeWindow = Math.max(millis, 0);
+    }
+
+    /**
+     * Returns the time after an action in which a following action may be
+     * merged with it.
+     *
+     * @return merge window in milliseconds, 0 if actions are never merged
+     */
+    public synchronized long getMergeWindow(){
+        return myMergeWindow;
+    }
+
+    /**
+     * Returns the estimated memory of the actions kept.
+     *
+     * @return estimated memory in bytes
+     */
+    public synchronized long getMemoryFootprint(){
+        return myBytes;
     }
 
     /**
      *
      * @param listener
      */
-    public void addListener(HistoryListener listener){
+    public synchronized void addListener(HistoryListener listener){
         if(!myListeners.contains(listener)){
             myListeners.add(listener);
         }
@@ -56,7 +168,7 @@ public class HistoryStack {
      *
      * @param listener
      */
-    public void removeListener(HistoryListener listener){
+    public synchronized void removeListener(HistoryListener listener){
         myListeners.remove(listener);
     }
 
@@ -69,21 +181,94 @@ public class HistoryStack {
     }
 
     /**
+     * Adds an action after the current action, clearing any actions which
+     * were undone.  If the action is merged with the current action, the
+     * current action is replaced, the size of the history is unchanged and
+     * listeners are told with eventMerged instead of eventAdded.  The oldest
+     * actions are then dropped if the history is over its limits.
      *
-     * @param e
+     * @param e action to add
      */
-    public void addEvent(HistoryAction e){
+    public synchronized void addEvent(HistoryAction e){
         int prevSize = myEvents.size();
-        if(myTime == prevSize-1){
-            myEvents.add(e);
+        if(myTime != prevSize-1){
+            List<HistoryAction> redo = myEvents.subList(myTime+1, prevSize);
+            for(HistoryAction a : redo){
+                myBytes -= getMemoryFootprint(a);
+            }
+            redo.clear();
+        }
+        long now = TimeUtils.now();
+        HistoryAction merged = merge(e, now);
+        myLastAddTime = now;
+        myMergeFlag = true;
+        if(merged != null){
+            HistoryAction prev = myEvents.set(myTime, merged);
+            myBytes += getMemoryFootprint(merged) - getMemoryFootprint(prev);
+            for(HistoryListener listener : myListeners){
+                listener.eventMerged(this, merged, myTime);
+            }
         }else{
-            myEvents.subList(myTime+1, prevSize).clear();
             myEvents.add(e);
+            myBytes += getMemoryFootprint(e);
+            myTime++;
+            for(HistoryListener listener : myListeners){
+                listener.eventAdded(this, e, prevSize);
+            }
         }
-        myTime++;
+        trim();
+    }
+
+    /**
+     * Returns the action merged from the current action and the given
+     * action, or null if they cannot be merged.
+     */
+    private HistoryAction merge(HistoryAction e, long now){
+        if(!myMergeFlag || myMergeWindow <= 0 || myTime == 0
+                || now - myLastAddTime > myMergeWindow){
+            return null;
+        }
+        HistoryAction prev = myEvents.get(myTime);
+        if(!(prev instanceof MergeableHistoryAction)
+                || !prev.getActionPerformed() || !e.getActionPerformed()){
+            return null;
+        }
+        return ((MergeableHistoryAction)prev).merge(e);
+    }
+
+    /**
+     * Drops the oldest actions until the history is within its limits.
+     * Only actions which have been performed are dropped, and the current
+     * action is kept.  Listeners are told how many actions were dropped.
+     */
+    private void trim(){
+        int count = 0;
+        long bytes = myBytes;
+        while(count < myTime-1){
+            boolean overCount = myMaxCount > 0 && myEvents.size()-1-count > myMaxCount;
+            boolean overBytes = myMaxBytes > 0 && bytes > myMaxBytes;
+            if(!overCount && !overBytes){
+                break;
+            }
+            count++;
+            bytes -= getMemoryFootprint(myEvents.get(count));
+        }
+        if(count == 0){
+            return;
+        }
+        myEvents.subList(1, count+1).clear();
+        myBytes = bytes;
+        myTime -= count;
         for(HistoryListener listener : myListeners){
-            listener.eventAdded(this, e, prevSize);
+            listener.eventsTrimmed(this, count);
+        }
+    }
+
+    private static long getMemoryFootprint(HistoryAction e){
+        if(e instanceof SizedHistoryAction){
+            return ((SizedHistoryAction)e).getMemoryFootprint();
         }
+        return DEFAULT_ACTION_BYTES;
     }
 
     /**
@@ -91,7 +276,7 @@ public class HistoryStack {
      * @param i
      * @return
      */
-    public HistoryAction getEvent(int i){
+    public synchronized HistoryAction getEvent(int i){
         return myEvents.get(i);
     }
 
@@ -109,7 +294,7 @@ public class HistoryStack {
         }
     }
     
-    public void gotoEnd(){
+    public synchronized void gotoEnd(){
         gotoTime(myEvents.size()-1);
     }
 
@@ -145,7 +330,7 @@ public class HistoryStack {
      *
      * @return
      */
-    public int getSelectedIndex(){
+    public synchronized int getSelectedIndex(){
         return myTime;
     }
 
@@ -153,7 +338,7 @@ public class HistoryStack {
      *
      * @return
      */
-    public int getCurrentUndoCount(){
+    public synchronized int getCurrentUndoCount(){
         return myTime;
     }
 
@@ -161,7 +346,7 @@ public class HistoryStack {
      *
      * @return
      */
-    public int getCurrentRedoCount(){
+    public synchronized int getCurrentRedoCount(){
         return myEvents.size() - myTime - 1;
     }
 
@@ -182,6 +367,7 @@ public class HistoryStack {
     }
 
     private void changeTime(){
+        myMergeFlag = false;
         for(HistoryListener listener : myListeners){
             listener.timeSelected(this, myTime);
         }
@@ -191,7 +377,7 @@ public class HistoryStack {
      *
      * @return
      */
-    public int size(){
+    public synchronized int size(){
         return myEvents.size();
     }
 
@@ -204,6 +390,8 @@ public class HistoryStack {
         HistoryAction e = new DefaultHistoryAction($("history.start"), new EmptyAction(), new EmptyAction(), true);
         myEvents.add(e);
         myTime = 0;
+        myBytes = 0;
+        myMergeFlag = false;
         myListeners = new ArrayList();
         for(HistoryListener listener : myListeners){
             listener.eventAdded(this, e, prevSize);
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.editor.history;
+
+/**
+ * A HistoryAction which can be combined with the action following it, so a
+ * run of small edits is kept as a single action.
+ */
+public interface MergeableHistoryAction extends HistoryAction {
+    /**
+     * Returns an action with the effect of this action followed by the given
+     * action.  Undoing the result returns to the state before this action.
+     *
+     * @param next action performed after this action
+     * @return combined action, or null if the actions cannot be combined
+     */
+    public HistoryAction merge(HistoryAction next);
+}
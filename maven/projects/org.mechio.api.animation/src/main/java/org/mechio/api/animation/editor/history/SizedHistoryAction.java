@@ -0,0 +1,30 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.editor.history;
+
+/**
+ * A HistoryAction which can estimate the memory it holds, so a HistoryStack
+ * can be limited by size.
+ */
+public interface SizedHistoryAction extends HistoryAction {
+    /**
+     * Returns the estimated memory held by this action, in bytes.
+     *
+     * @return estimated memory held by this action, in bytes
+     */
+    public long getMemoryFootprint();
+}
@@ -0,0 +1,701 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.library;
+
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.compiled.CompiledAnimationCache;
+import org.mechio.api.animation.compiled.CompiledMapFile;
+import org.mechio.api.animation.xml.AnimationFileReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches an Animation folder and reloads Animations into a
+ * DefaultAnimationLibrary as their files are added, changed or deleted.
+ * <p>
+ * Only files with the Animation file suffix whose length or modification
+ * time has changed are parsed.  Compiled Animations, editor swap files and
+ * hidden files are ignored.  Events are debounced per file, so a file is
+ * reloaded once it has not been written for the debounce time.  Each
+ * reloaded Animation is swapped into the library with
+ * DefaultAnimationLibrary.replace, so AnimationJobs already playing the old
+ * Animation are not affected.  A file which cannot be parsed leaves the old
+ * Animation in place.
+ * <p>
+ * Reloaded and removed Animations are swapped into the library on a single
+ * publisher thread, in the order their files settled, so a file which is
+ * changed and then deleted never has its Animation added back.  When a step
+ * length is set, reloaded Animations are precompiled on the publisher thread
+ * before they are swapped in, so the watcher keeps handling events and never
+ * compiles an Animation which is in use.
+ */
+public class AnimationFolderWatcher {
+	private static final Logger theLogger = LoggerFactory.getLogger(AnimationFolderWatcher.class);
+	/**
+	 * Default milliseconds a file must be left unchanged before it is
+	 * reloaded.
+	 */
+	public final static long DEFAULT_DEBOUNCE_MILLIS = 500L;
+	/**
+	 * Default suffix of Animation files.
+	 */
+	public final static String DEFAULT_FILE_SUFFIX = ".xml";
+
+	private final DefaultAnimationLibrary myLibrary;
+	private final AnimationFileReader myReader;
+	private final File myFolder;
+	private final boolean myRecursiveFlag;
+	private final Map<File, FileState> myFiles;
+	private final Map<File, Pending> myPending;
+	private final Map<WatchKey, Path> myKeys;
+	private long myDebounceMillis;
+	private long myStepLength;
+	private String myFileSuffix;
+	private WatchService myWatchService;
+	private Thread myThread;
+	private ExecutorService myPublisher;
+	private final AtomicLong myReloadCount;
+	private final AtomicLong myRemovedCount;
+	private final AtomicLong myFailureCount;
+	private final AtomicLong myReloadNanos;
+	private final AtomicLong myLastReloadNanos;
+	private final AtomicLong myMaxReloadNanos;
+
+	/**
+	 * Creates a new AnimationFolderWatcher.  The folder's current files are
+	 * assumed to already be loaded into the library.
+	 *
+	 * @param library   library to reload Animations into
+	 * @param reader    reader used to parse Animation files
+	 * @param path      folder containing the Animation files
+	 * @param recursive if true, sub-folders are also watched
+	 */
+	public AnimationFolderWatcher(DefaultAnimationLibrary library,
+			AnimationFileReader reader, String path, boolean recursive) {
+		if (library == null || reader == null || path == null) {
+			throw new NullPointerException();
+		}
+		myLibrary = library;
+		myReader = reader;
+		myFolder = new File(path);
+		myRecursiveFlag = recursive;
+		myFiles = new HashMap<>();
+		myPending = new LinkedHashMap<>();
+		myKeys = new HashMap<>();
+		myDebounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+		myFileSuffix = DEFAULT_FILE_SUFFIX;
+		myReloadCount = new AtomicLong();
+		myRemovedCount = new AtomicLong();
+		myFailureCount = new AtomicLong();
+		myReloadNanos = new AtomicLong();
+		myLastReloadNanos = new AtomicLong();
+		myMaxReloadNanos = new AtomicLong();
+	}
+
+	/**
+	 * Sets the time a file must be left unchanged before it is reloaded.
+	 *
+	 * @param debounceMillis debounce time in milliseconds
+	 */
+	public synchronized void setDebounceMillis(long debounceMillis) {
+		myDebounceMillis = Math.max(0, debounceMillis);
+	}
+
+	/**
+	 * Returns the time a file must be left unchanged before it is reloaded.
+	 *
+	 * @return debounce time in milliseconds
+	 */
+	public synchronized long getDebounceMillis() {
+		return myDebounceMillis;
+	}
+
+	/**
+	 * Sets the step length used to precompile reloaded Animations into the
+	 * library's CompiledAnimationCache.
+	 *
+	 * @param stepLength milliseconds between compiled positions, 0 to skip
+	 *                   precompiling
+	 */
+	public synchronized void setStepLength(long stepLength) {
+		myStepLength = stepLength;
+	}
+
+	/**
+	 * Sets the suffix of the Animation files to reload.  Must be called
+	 * before the watcher is started.
+	 *
+	 * @param suffix Animation file suffix
+	 */
+	public synchronized void setFileSuffix(String suffix) {
+		if (suffix == null) {
+			throw new NullPointerException();
+		}
+		myFileSuffix = suffix;
+	}
+
+	/**
+	 * Returns the suffix of the Animation files to reload.
+	 *
+	 * @return Animation file suffix
+	 */
+	public synchronized String getFileSuffix() {
+		return myFileSuffix;
+	}
+
+	/**
+	 * Starts watching the folder.
+	 *
+	 * @throws IOException if the folder cannot be watched
+	 */
+	public synchronized void start() throws IOException {
+		if (myThread != null) {
+			return;
+		}
+		if (!myFolder.isDirectory()) {
+			throw new IllegalArgumentException("Not a dir: " + myFolder);
+		}
+		myWatchService = FileSystems.getDefault().newWatchService();
+		myFiles.clear();
+		myPending.clear();
+		myKeys.clear();
+		register(myFolder, false);
+		myPublisher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r,
+						"AnimationFolderPublisher-" + myFolder.getName());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		myThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "AnimationFolderWatcher-" + myFolder.getName());
+		myThread.setDaemon(true);
+		myThread.start();
+	}
+
+	/**
+	 * Stops watching the folder.  Pending changes are discarded.
+	 */
+	public synchronized void stop() {
+		if (myThread == null) {
+			return;
+		}
+		myThread.interrupt();
+		myThread = null;
+		myPublisher.shutdownNow();
+		try {
+			myWatchService.close();
+		} catch (IOException ex) {
+			theLogger.warn("Error closing watch service.", ex);
+		}
+	}
+
+	/**
+	 * Returns true if the folder is being watched.
+	 *
+	 * @return true if the folder is being watched
+	 */
+	public synchronized boolean isRunning() {
+		return myThread != null;
+	}
+
+	/**
+	 * Registers a folder with the WatchService and records its files.  New
+	 * folders have their files marked as pending.
+	 */
+	private void register(File dir, boolean pending) throws IOException {
+		Path path = dir.toPath();
+		WatchKey key = path.register(myWatchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_DELETE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+		myKeys.put(key, path);
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File f : files) {
+			if (f.isDirectory()) {
+				if (myRecursiveFlag) {
+					register(f, pending);
+				}
+			} else if (isAnimationFile(f)) {
+				if (pending) {
+					markPending(f, System.nanoTime());
+				} else {
+					myFiles.put(f, new FileState(f));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the file is an Animation source file.  Compiled
+	 * Animations, editor swap and backup files, and hidden files are not.
+	 */
+	private boolean isAnimationFile(File file) {
+		String name = file.getName();
+		return name.endsWith(myFileSuffix)
+				&& !CompiledMapFile.isCompiledFileName(name)
+				&& !name.startsWith(".") && !name.startsWith("#")
+				&& !name.startsWith("~");
+	}
+
+	private void markPending(File file, long now) {
+		Pending p = myPending.get(file);
+		if (p == null) {
+			myPending.put(file, new Pending(now));
+		} else {
+			p.myLastEventNanos = now;
+		}
+	}
+
+	private void watch() {
+		WatchService ws;
+		synchronized (this) {
+			ws = myWatchService;
+		}
+		// The loop only exits when stop() interrupts the thread or closes
+		// the WatchService.  Errors handling a single event or file are
+		// logged and the watcher continues.
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key;
+				long wait = getWaitMillis();
+				if (wait < 0) {
+					key = ws.take();
+				} else if (wait == 0) {
+					key = ws.poll();
+				} else {
+					key = ws.poll(wait, TimeUnit.MILLISECONDS);
+				}
+				if (key != null) {
+					handleEvents(key);
+				}
+				reloadSettled();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException ex) {
+			theLogger.debug("Stopped watching {}", myFolder.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Returns the milliseconds until the next pending file settles, 0 if a
+	 * file has settled, or -1 if no files are pending.
+	 */
+	private synchronized long getWaitMillis() {
+		if (myPending.isEmpty()) {
+			return -1;
+		}
+		long now = System.nanoTime();
+		long wait = Long.MAX_VALUE;
+		for (Pending p : myPending.values()) {
+			wait = Math.min(wait, p.getWaitMillis(now, myDebounceMillis));
+		}
+		return wait;
+	}
+
+	private synchronized void handleEvents(WatchKey key) {
+		Path dir = myKeys.get(key);
+		long now = System.nanoTime();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			try {
+				handleEvent(dir, event, now);
+			} catch (RuntimeException ex) {
+				theLogger.warn("Error handling {} event for {}",
+						event.kind(), event.context(), ex);
+			}
+		}
+		if (!key.reset()) {
+			myKeys.remove(key);
+		}
+	}
+
+	private void handleEvent(Path dir, WatchEvent<?> event, long now) {
+		if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+			rescan(now);
+			return;
+		}
+		if (dir == null) {
+			return;
+		}
+		File file = dir.resolve((Path) event.context()).toFile();
+		if (file.isDirectory()) {
+			if (myRecursiveFlag
+					&& event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+				try {
+					register(file, true);
+				} catch (IOException ex) {
+					theLogger.warn("Could not watch {}",
+							file.getAbsolutePath(), ex);
+				}
+			}
+		} else if (isAnimationFile(file)) {
+			markPending(file, now);
+		}
+	}
+
+	/**
+	 * Marks every known and current file as pending after events were lost.
+	 * Unchanged files are skipped when the pending files are reloaded.
+	 */
+	private void rescan(long now) {
+		for (File file : myFiles.keySet()) {
+			markPending(file, now);
+		}
+		for (Path dir : myKeys.values()) {
+			File[] files = dir.toFile().listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (File f : files) {
+				if (f.isFile() && isAnimationFile(f)) {
+					markPending(f, now);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reloads the pending files which have not changed for the debounce
+	 * time.
+	 */
+	private void reloadSettled() {
+		Map<File, Pending> settled = new LinkedHashMap<>();
+		long stepLength;
+		synchronized (this) {
+			long now = System.nanoTime();
+			Iterator<Map.Entry<File, Pending>> it = myPending.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<File, Pending> e = it.next();
+				if (e.getValue().getWaitMillis(now, myDebounceMillis) == 0) {
+					settled.put(e.getKey(), e.getValue());
+					it.remove();
+				}
+			}
+			stepLength = myStepLength;
+		}
+		for (Map.Entry<File, Pending> e : settled.entrySet()) {
+			try {
+				reload(e.getKey(), e.getValue().myFirstEventNanos, stepLength);
+			} catch (RuntimeException ex) {
+				myFailureCount.incrementAndGet();
+				theLogger.warn("Error reloading animation at {}",
+						e.getKey().getAbsolutePath(), ex);
+			}
+		}
+	}
+
+	private void reload(File file, long eventNanos, long stepLength) {
+		if (!file.isFile()) {
+			submit(new RemoveTask(file));
+			return;
+		}
+		FileState old;
+		synchronized (this) {
+			old = myFiles.get(file);
+		}
+		FileState state = new FileState(file);
+		if (old != null && old.isSameFile(state)) {
+			return;
+		}
+		Animation anim;
+		try {
+			anim = myReader.readAnimation(file.getAbsolutePath());
+		} catch (Exception ex) {
+			theLogger.warn("Could not reload animation at {}",
+					file.getAbsolutePath(), ex);
+			anim = null;
+		}
+		if (anim == null) {
+			myFailureCount.incrementAndGet();
+		} else {
+			anim.setVersion(file.getName(), anim.getVersion().getNumber());
+		}
+		CompiledAnimationCache cache =
+				stepLength <= 0 ? null : myLibrary.getCompiledAnimationCache();
+		submit(new PublishTask(file, state, anim, eventNanos, cache, stepLength));
+	}
+
+	/**
+	 * Queues a change to the library on the publisher thread.  Every change
+	 * goes through the one thread, so changes to a file reach the library in
+	 * the order they were seen.
+	 */
+	private void submit(Runnable task) {
+		ExecutorService publisher;
+		synchronized (this) {
+			publisher = myPublisher;
+		}
+		publisher.execute(task);
+	}
+
+	/**
+	 * Swaps a reloaded Animation into the library.  Called on the publisher
+	 * thread.
+	 */
+	private void publish(File file, FileState state,
+			Animation anim, long eventNanos) {
+		FileState old;
+		synchronized (this) {
+			old = myFiles.get(file);
+		}
+		if (!myLibrary.replace(getVersion(old, file), anim)) {
+			myFailureCount.incrementAndGet();
+			return;
+		}
+		state.myVersion = anim.getVersion();
+		synchronized (this) {
+			myFiles.put(file, state);
+		}
+		long elapsed = System.nanoTime() - eventNanos;
+		myReloadCount.incrementAndGet();
+		myReloadNanos.addAndGet(elapsed);
+		myLastReloadNanos.set(elapsed);
+		long max = myMaxReloadNanos.get();
+		while (elapsed > max && !myMaxReloadNanos.compareAndSet(max, elapsed)) {
+			max = myMaxReloadNanos.get();
+		}
+		theLogger.info("Reloaded animation {}", file.getAbsolutePath());
+	}
+
+	/**
+	 * Records a file which could not be parsed, so it is not parsed again
+	 * until it changes.  The old Animation is left in the library.  Called on
+	 * the publisher thread.
+	 */
+	private synchronized void keepFailed(File file, FileState state) {
+		FileState old = myFiles.get(file);
+		state.myVersion = old == null ? null : old.myVersion;
+		myFiles.put(file, state);
+	}
+
+	/**
+	 * Removes the Animation loaded from a deleted file.  Called on the
+	 * publisher thread.
+	 */
+	private void remove(File file) {
+		FileState old;
+		synchronized (this) {
+			old = myFiles.remove(file);
+		}
+		if (old == null) {
+			return;
+		}
+		VersionProperty version = getVersion(old, file);
+		if (version != null && myLibrary.replace(version, null)) {
+			myRemovedCount.incrementAndGet();
+			theLogger.info("Removed animation {}", file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Returns the version of the Animation loaded from a file.  Files which
+	 * existed before the watcher started are found by name.
+	 */
+	private VersionProperty getVersion(FileState state, File file) {
+		if (state != null && state.myVersion != null) {
+			return state.myVersion;
+		}
+		String name = file.getName();
+		for (VersionProperty version : myLibrary.getAnimationVersions()) {
+			if (name.equals(version.getName())) {
+				return version;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of Animations reloaded.
+	 *
+	 * @return number of Animations reloaded
+	 */
+	public long getReloadCount() {
+		return myReloadCount.get();
+	}
+
+	/**
+	 * Returns the number of Animations removed because their file was
+	 * deleted.
+	 *
+	 * @return number of Animations removed
+	 */
+	public long getRemovedCount() {
+		return myRemovedCount.get();
+	}
+
+	/**
+	 * Returns the number of changed files which could not be reloaded.
+	 *
+	 * @return number of failed reloads
+	 */
+	public long getFailureCount() {
+		return myFailureCount.get();
+	}
+
+	/**
+	 * Returns the time from the first change to a file until its Animation
+	 * was swapped into the library, for the last reload.  This includes the
+	 * debounce time.
+	 *
+	 * @return last reload latency in nanoseconds
+	 */
+	public long getLastReloadLatencyNanos() {
+		return myLastReloadNanos.get();
+	}
+
+	/**
+	 * Returns the average reload latency.
+	 *
+	 * @return average reload latency in nanoseconds
+	 */
+	public long getAverageReloadLatencyNanos() {
+		long count = myReloadCount.get();
+		return count == 0 ? 0 : myReloadNanos.get() / count;
+	}
+
+	/**
+	 * Returns the longest reload latency.
+	 *
+	 * @return longest reload latency in nanoseconds
+	 */
+	public long getMaxReloadLatencyNanos() {
+		return myMaxReloadNanos.get();
+	}
+
+	private final static class Pending {
+		private final long myFirstEventNanos;
+		private long myLastEventNanos;
+
+		Pending(long now) {
+			myFirstEventNanos = now;
+			myLastEventNanos = now;
+		}
+
+		long getWaitMillis(long now, long debounceMillis) {
+			long elapsed = (now - myLastEventNanos) / 1000000L;
+			return Math.max(0, debounceMillis - elapsed);
+		}
+	}
+
+	/**
+	 * Precompiles a reloaded Animation, which no other thread can see yet,
+	 * and then swaps it into the library.
+	 */
+	private final class PublishTask implements Runnable {
+		private final File myFile;
+		private final FileState myState;
+		private final Animation myAnimation;
+		private final long myEventNanos;
+		private final CompiledAnimationCache myCache;
+		private final long myStepLength;
+
+		PublishTask(File file, FileState state, Animation anim,
+				long eventNanos, CompiledAnimationCache cache, long stepLength) {
+			myFile = file;
+			myState = state;
+			myAnimation = anim;
+			myEventNanos = eventNanos;
+			myCache = cache;
+			myStepLength = stepLength;
+		}
+
+		@Override
+		public void run() {
+			if (myAnimation == null) {
+				keepFailed(myFile, myState);
+				return;
+			}
+			if (myCache != null) {
+				try {
+					myCache.getCompiledMap(myAnimation, -1, -1, myStepLength);
+				} catch (RuntimeException ex) {
+					theLogger.warn("Could not precompile animation at {}",
+							myFile.getAbsolutePath(), ex);
+				}
+			}
+			try {
+				publish(myFile, myState, myAnimation, myEventNanos);
+			} catch (RuntimeException ex) {
+				myFailureCount.incrementAndGet();
+				theLogger.warn("Error reloading animation at {}",
+						myFile.getAbsolutePath(), ex);
+			}
+		}
+	}
+
+	private final class RemoveTask implements Runnable {
+		private final File myFile;
+
+		RemoveTask(File file) {
+			myFile = file;
+		}
+
+		@Override
+		public void run() {
+			try {
+				remove(myFile);
+			} catch (RuntimeException ex) {
+				theLogger.warn("Error removing animation at {}",
+						myFile.getAbsolutePath(), ex);
+			}
+		}
+	}
+
+	private final static class FileState {
+		private final long myLength;
+		private final long myLastModified;
+		private VersionProperty myVersion;
+
+		FileState(File file) {
+			myLength = file.length();
+			myLastModified = file.lastModified();
+		}
+
+		boolean isSameFile(FileState state) {
+			return myLength == state.myLength
+					&& myLastModified == state.myLastModified;
+		}
+	}
+}
@@ -16,12 +16,16 @@
 package org.mechio.api.animation.library;
 
 import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.compiled.CompiledAnimationCache;
+import org.mechio.api.animation.compiled.CompiledMap;
+import org.mechio.api.animation.compiled.CompiledMapFile;
 import org.mechio.api.animation.xml.AnimationFileReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,37 +35,192 @@ import java.util.List;
 public class AnimationLibraryLoader {
 	private static final Logger theLogger = LoggerFactory.getLogger(AnimationLibraryLoader.class);
 
+	private final static FilenameFilter theSourceFilter = new FilenameFilter() {
+		@Override
+		public boolean accept(File dir, String name) {
+			return !CompiledMapFile.isCompiledFileName(name);
+		}
+	};
+
 	public static AnimationLibrary loadAnimationFolder(String libraryId,
 													   AnimationFileReader reader, String path, boolean recursive) {
 		if (libraryId == null || reader == null || path == null) {
 			throw new NullPointerException();
 		}
 		File animDir = new File(path);
-		List<File> files = getFiles(animDir, null, recursive);
-		List<Animation> anims = loadAnimations(files, reader);
+		List<File> files = getFiles(animDir, theSourceFilter, recursive);
 		AnimationLibrary lib = new DefaultAnimationLibrary(libraryId);
-		for (Animation anim : anims) {
-			lib.add(anim);
+		loadAnimations(files, reader, lib);
+		return lib;
+	}
+
+	/**
+	 * Indexes the Animation files in a folder without parsing them.  The
+	 * Animations are parsed when first requested, or by the library's
+	 * warm-up.
+	 *
+	 * @param libraryId id of the library
+	 * @param reader    reader used to parse the Animation files
+	 * @param path      folder containing the Animation files
+	 * @param recursive if true, sub-folders are also indexed
+	 * @return LazyAnimationLibrary indexing the folder
+	 */
+	public static LazyAnimationLibrary indexAnimationFolder(String libraryId,
+			AnimationFileReader reader, String path, boolean recursive) {
+		if (libraryId == null || reader == null || path == null) {
+			throw new NullPointerException();
 		}
+		long start = System.nanoTime();
+		List<File> files = getFiles(new File(path), theSourceFilter, recursive);
+		LazyAnimationLibrary lib = new LazyAnimationLibrary(libraryId, reader);
+		lib.index(files);
+		theLogger.info("Indexed {} animations in {} in {} ms.", files.size(),
+				path, (System.nanoTime() - start) / 1000000L);
 		return lib;
 	}
 
-	private static List<Animation> loadAnimations(
-			List<File> files, AnimationFileReader reader) {
-		List<Animation> anims = new ArrayList<>(files.size());
+	/**
+	 * Starts watching an Animation folder loaded with loadAnimationFolder.
+	 * Added, changed and deleted files are reloaded into the library.
+	 *
+	 * @param library   library loaded from the folder
+	 * @param reader    reader used to parse the Animation files
+	 * @param path      folder containing the Animation files
+	 * @param recursive if true, sub-folders are also watched
+	 * @return the running AnimationFolderWatcher
+	 * @throws IOException if the folder cannot be watched
+	 */
+	public static AnimationFolderWatcher watchAnimationFolder(
+			DefaultAnimationLibrary library, AnimationFileReader reader,
+			String path, boolean recursive) throws IOException {
+		AnimationFolderWatcher watcher =
+				new AnimationFolderWatcher(library, reader, path, recursive);
+		watcher.start();
+		return watcher;
+	}
+
+	/**
+	 * Loads each file into the library.  Files with a current precompiled
+	 * Animation are loaded from it without parsing the source.
+	 */
+	private static void loadAnimations(List<File> files,
+			AnimationFileReader reader, AnimationLibrary lib) {
 		for (File file : files) {
 			try {
-				Animation anim = reader.readAnimation(file.getAbsolutePath());
-				if (anim != null) {
-					anim.setVersion(file.getName(), anim.getVersion().getNumber());
-					anims.add(anim);
+				CompiledMapFile compiled = readCompiledAnimation(file);
+				Animation anim = compiled == null ? null : compiled.getAnimation();
+				if (anim == null) {
+					anim = reader.readAnimation(file.getAbsolutePath());
+				}
+				if (anim == null) {
+					continue;
+				}
+				anim.setVersion(file.getName(), anim.getVersion().getNumber());
+				lib.add(anim);
+				if (compiled != null) {
+					putCompiledAnimation(file, compiled, anim);
 				}
 			} catch (Exception ex) {
 				theLogger.warn("Could not load animation at {}",
 						file.getAbsolutePath(), ex);
 			}
 		}
-		return anims;
+	}
+
+	/**
+	 * Loads the precompiled Animation written alongside the source file into
+	 * the shared CompiledAnimationCache.  Stale files are ignored, and the
+	 * Animation is compiled when it is played.  The Animation must already
+	 * be in its library, which may invalidate its cached maps.
+	 */
+	static void loadCompiledAnimation(File source, Animation anim) {
+		CompiledMapFile compiled = readCompiledAnimation(source);
+		if (compiled != null) {
+			putCompiledAnimation(source, compiled, anim);
+		}
+	}
+
+	/**
+	 * Reads the precompiled Animation written alongside the source file.
+	 * Returns null if there is none, or it is stale or unreadable.
+	 */
+	static CompiledMapFile readCompiledAnimation(File source) {
+		File file = CompiledMapFile.getCompiledFile(source);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			CompiledMapFile compiled = CompiledMapFile.read(file);
+			if (compiled.isStale(source)) {
+				theLogger.debug("Ignoring stale compiled animation at {}",
+						file.getAbsolutePath());
+				return null;
+			}
+			return compiled;
+		} catch (IOException ex) {
+			theLogger.warn("Could not load compiled animation at {}",
+					file.getAbsolutePath(), ex);
+			return null;
+		}
+	}
+
+	private static void putCompiledAnimation(
+			File source, CompiledMapFile compiled, Animation anim) {
+		if (!compiled.matches(anim)) {
+			theLogger.debug("Ignoring stale compiled animation for {}",
+					source.getAbsolutePath());
+			return;
+		}
+		CompiledAnimationCache.getDefault().put(anim,
+				compiled.getStartTime(), compiled.getEndTime(),
+				compiled.getCompiledMap());
+	}
+
+	/**
+	 * Writes a precompiled Animation alongside each Animation file in the
+	 * folder.  Files whose precompiled Animation is current are skipped.
+	 *
+	 * @param reader     reader for the Animation files
+	 * @param path       folder containing the Animation files
+	 * @param recursive  if true, sub-folders are also converted
+	 * @param stepLength milliseconds between compiled positions
+	 * @return number of precompiled Animations written
+	 */
+	public static int writeCompiledAnimations(AnimationFileReader reader,
+			String path, boolean recursive, long stepLength) {
+		if (reader == null || path == null) {
+			throw new NullPointerException();
+		}
+		int count = 0;
+		for (File source : getFiles(new File(path), theSourceFilter, recursive)) {
+			File file = CompiledMapFile.getCompiledFile(source);
+			try {
+				if (file.isFile()) {
+					CompiledMapFile compiled = CompiledMapFile.read(file);
+					if (!compiled.isStale(source)
+							&& compiled.getStepLength() == stepLength) {
+						continue;
+					}
+				}
+			} catch (IOException ex) {
+				theLogger.info("Replacing unreadable compiled animation at {}",
+						file.getAbsolutePath());
+			}
+			try {
+				Animation anim = reader.readAnimation(source.getAbsolutePath());
+				if (anim == null) {
+					continue;
+				}
+				anim.setVersion(source.getName(), anim.getVersion().getNumber());
+				CompiledMap map = anim.compileMap(-1, -1, stepLength);
+				CompiledMapFile.write(file, source, anim, -1, -1, map);
+				count++;
+			} catch (Exception ex) {
+				theLogger.warn("Could not compile animation at {}",
+						source.getAbsolutePath(), ex);
+			}
+		}
+		return count;
 	}
 
 	private static List<File> getFiles(
@@ -17,6 +17,7 @@ package org.mechio.api.animation.library;
 
 import org.jflux.api.common.rk.config.VersionProperty;
 import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.compiled.CompiledAnimationCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +35,7 @@ public class DefaultAnimationLibrary implements AnimationLibrary {
 	private Map<VersionProperty, Animation> myAnimationMap;
 	private List<VersionProperty> myAnimtionVersions;
 	private String myLibraryId;
+	private CompiledAnimationCache myCompiledCache;
 
 	public DefaultAnimationLibrary(String libId) {
 		if (libId == null) {
@@ -42,20 +44,42 @@ public class DefaultAnimationLibrary implements AnimationLibrary {
 		myLibraryId = libId;
 		myAnimationMap = new HashMap<>();
 		myAnimtionVersions = new ArrayList<>();
+		myCompiledCache = CompiledAnimationCache.getDefault();
+	}
+
+	/**
+	 * Sets the CompiledAnimationCache to invalidate when Animations are
+	 * replaced or removed.  Added Animations do not need to be invalidated,
+	 * since the cache recompiles Animations which do not match their cached
+	 * maps.
+	 *
+	 * @param cache CompiledAnimationCache to invalidate, null for none
+	 */
+	public void setCompiledAnimationCache(CompiledAnimationCache cache) {
+		myCompiledCache = cache;
+	}
+
+	/**
+	 * Returns the CompiledAnimationCache invalidated by this library.
+	 *
+	 * @return CompiledAnimationCache invalidated by this library
+	 */
+	public CompiledAnimationCache getCompiledAnimationCache() {
+		return myCompiledCache;
 	}
 
 	@Override
-	public List<VersionProperty> getAnimationVersions() {
-		return myAnimtionVersions;
+	public synchronized List<VersionProperty> getAnimationVersions() {
+		return new ArrayList<>(myAnimtionVersions);
 	}
 
 	@Override
-	public Animation getAnimation(VersionProperty version) {
+	public synchronized Animation getAnimation(VersionProperty version) {
 		return myAnimationMap.get(version);
 	}
 
 	@Override
-	public void add(Animation animation) {
+	public synchronized void add(Animation animation) {
 		VersionProperty version = animation.getVersion();
 		if (myAnimationMap.containsKey(version)) {
 			theLogger.warn("Not adding Animation. "
@@ -67,8 +91,48 @@ public class DefaultAnimationLibrary implements AnimationLibrary {
 		myAnimtionVersions.add(version);
 	}
 
+	/**
+	 * Replaces an Animation in a single step.  The new Animation takes the
+	 * old Animation's place in the version list.  AnimationJobs playing the
+	 * old Animation are not affected.
+	 *
+	 * @param oldVersion version of the Animation to replace, null to add
+	 * @param animation  Animation to add, null to only remove
+	 * @return true if the library changed
+	 */
+	public synchronized boolean replace(
+			VersionProperty oldVersion, Animation animation) {
+		VersionProperty version =
+				animation == null ? null : animation.getVersion();
+		if (version != null && !version.equals(oldVersion)
+				&& myAnimationMap.containsKey(version)) {
+			theLogger.warn("Not replacing Animation. "
+							+ "Animation with given version ({}) already exists.",
+					version);
+			return false;
+		}
+		int index = oldVersion == null ? -1 : myAnimtionVersions.indexOf(oldVersion);
+		if (index >= 0) {
+			myAnimationMap.remove(oldVersion);
+			myAnimtionVersions.remove(index);
+			if (myCompiledCache != null) {
+				myCompiledCache.invalidate(oldVersion);
+			}
+		}
+		if (animation == null) {
+			return index >= 0;
+		}
+		myAnimationMap.put(version, animation);
+		if (index >= 0) {
+			myAnimtionVersions.add(index, version);
+		} else {
+			myAnimtionVersions.add(version);
+		}
+		return true;
+	}
+
 	@Override
-	public void remove(Animation animation) {
+	public synchronized void remove(Animation animation) {
 		if (!myAnimationMap.containsValue(animation)) {
 			theLogger.warn("Could not find given animation: {}", animation);
 			return;
@@ -80,11 +144,19 @@ public class DefaultAnimationLibrary implements AnimationLibrary {
 			VersionProperty prop = e.getKey();
 			myAnimationMap.remove(prop);
 			myAnimtionVersions.remove(prop);
+			if (myCompiledCache != null) {
+				myCompiledCache.invalidate(prop);
+			}
 		}
 	}
 
 	@Override
-	public void clear() {
+	public synchronized void clear() {
+		if (myCompiledCache != null) {
+			for (VersionProperty version : myAnimtionVersions) {
+				myCompiledCache.invalidate(version);
+			}
+		}
 		myAnimationMap.clear();
 		myAnimtionVersions.clear();
 	}
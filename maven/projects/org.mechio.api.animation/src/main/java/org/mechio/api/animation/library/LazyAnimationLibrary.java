@@ -0,0 +1,642 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.library;
+
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.compiled.CompiledAnimationCache;
+import org.mechio.api.animation.compiled.CompiledMapFile;
+import org.mechio.api.animation.xml.AnimationFileReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An AnimationLibrary which indexes Animation files and only parses them
+ * when they are first requested.
+ * <p>
+ * The index holds the path, length and modification time of each file.
+ * Animations are named after their file, as with
+ * AnimationLibraryLoader.loadAnimationFolder.  The version number is read
+ * from the header of the file's precompiled Animation when it is current,
+ * otherwise it is unknown until the file is parsed.  getAnimation matches
+ * unparsed files by name, and checks the version number once the file is
+ * parsed.  A file which cannot be parsed is retried once it is modified.
+ * <p>
+ * Animations can be parsed ahead of time by a pool of low priority
+ * background threads.  Files are warmed up in order of their priority, then
+ * in index order.  Warmed up Animations are precompiled before they are
+ * published to the library, so the warm-up never compiles an Animation
+ * which is in use.
+ */
+public class LazyAnimationLibrary implements AnimationLibrary {
+	private static final Logger theLogger = LoggerFactory.getLogger(LazyAnimationLibrary.class);
+	/**
+	 * Version number reported for Animations which have not been parsed.
+	 */
+	public final static String UNKNOWN_VERSION_NUMBER = "";
+
+	private final String myLibraryId;
+	private final AnimationFileReader myReader;
+	private final Map<String, Entry> myEntries;
+	private final Map<String, Integer> myPriorities;
+	private CompiledAnimationCache myCompiledCache;
+	private ThreadPoolExecutor myWarmUpPool;
+	private long myIndexTimeNanos;
+	private final AtomicInteger myWarmUpSequence;
+	private final AtomicLong myLoadCount;
+	private final AtomicLong myLoadNanos;
+	private final AtomicLong myMaxLoadNanos;
+	private final AtomicLong myFailedLoadCount;
+	private final AtomicLong myColdLookupCount;
+	private final AtomicLong myColdLookupNanos;
+	private final AtomicLong myMaxColdLookupNanos;
+	private final AtomicLong myWarmedCount;
+
+	/**
+	 * Creates an empty LazyAnimationLibrary.
+	 *
+	 * @param libId  library id
+	 * @param reader reader used to parse indexed Animation files
+	 */
+	public LazyAnimationLibrary(String libId, AnimationFileReader reader) {
+		if (libId == null || reader == null) {
+			throw new NullPointerException();
+		}
+		myLibraryId = libId;
+		myReader = reader;
+		myEntries = new LinkedHashMap<>();
+		myPriorities = new HashMap<>();
+		myCompiledCache = CompiledAnimationCache.getDefault();
+		myWarmUpSequence = new AtomicInteger();
+		myLoadCount = new AtomicLong();
+		myLoadNanos = new AtomicLong();
+		myMaxLoadNanos = new AtomicLong();
+		myFailedLoadCount = new AtomicLong();
+		myColdLookupCount = new AtomicLong();
+		myColdLookupNanos = new AtomicLong();
+		myMaxColdLookupNanos = new AtomicLong();
+		myWarmedCount = new AtomicLong();
+	}
+
+	/**
+	 * Adds the given files to the index.  Files with the same name as an
+	 * indexed Animation are skipped.
+	 *
+	 * @param files Animation files to index
+	 */
+	public void index(List<File> files) {
+		long start = System.nanoTime();
+		for (File file : files) {
+			String name = file.getName();
+			Entry e = new Entry(name, file, readCompiledVersion(file));
+			synchronized (this) {
+				if (myEntries.containsKey(name)) {
+					theLogger.warn("Not indexing {}. "
+							+ "Animation with the same name already exists.",
+							file.getAbsolutePath());
+					continue;
+				}
+				myEntries.put(name, e);
+			}
+		}
+		synchronized (this) {
+			myIndexTimeNanos += System.nanoTime() - start;
+		}
+	}
+
+	private static VersionProperty readCompiledVersion(File source) {
+		File file = CompiledMapFile.getCompiledFile(source);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			return CompiledMapFile.readVersion(file, source);
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the library id.
+	 *
+	 * @return library id
+	 */
+	public String getLibraryId() {
+		return myLibraryId;
+	}
+
+	/**
+	 * Sets the CompiledAnimationCache used to precompile Animations and
+	 * invalidated when Animations are removed.
+	 *
+	 * @param cache CompiledAnimationCache to use, null for none
+	 */
+	public void setCompiledAnimationCache(CompiledAnimationCache cache) {
+		myCompiledCache = cache;
+	}
+
+	/**
+	 * Returns the CompiledAnimationCache used by this library.
+	 *
+	 * @return CompiledAnimationCache used by this library
+	 */
+	public CompiledAnimationCache getCompiledAnimationCache() {
+		return myCompiledCache;
+	}
+
+	@Override
+	public synchronized List<VersionProperty> getAnimationVersions() {
+		List<VersionProperty> versions = new ArrayList<>(myEntries.size());
+		for (Entry e : myEntries.values()) {
+			versions.add(e.getVersion());
+		}
+		return versions;
+	}
+
+	@Override
+	public Animation getAnimation(VersionProperty version) {
+		if (version == null) {
+			return null;
+		}
+		Entry e;
+		synchronized (this) {
+			e = myEntries.get(version.getName());
+		}
+		if (e == null) {
+			return null;
+		}
+		Animation anim = e.myAnimation;
+		if (anim == null) {
+			long start = System.nanoTime();
+			anim = load(e, 0);
+			long elapsed = System.nanoTime() - start;
+			myColdLookupCount.incrementAndGet();
+			myColdLookupNanos.addAndGet(elapsed);
+			updateMax(myMaxColdLookupNanos, elapsed);
+		}
+		if (anim == null) {
+			return null;
+		}
+		String number = version.getNumber();
+		if (number != null && !UNKNOWN_VERSION_NUMBER.equals(number)
+				&& !number.equals(anim.getVersion().getNumber())) {
+			return null;
+		}
+		return anim;
+	}
+
+	/**
+	 * Returns true if the named Animation has been parsed.
+	 *
+	 * @param name Animation name
+	 * @return true if the Animation has been parsed
+	 */
+	public synchronized boolean isLoaded(String name) {
+		Entry e = myEntries.get(name);
+		return e != null && e.myAnimation != null;
+	}
+
+	/**
+	 * Parses an entry's file.  The Animation is precompiled before it is
+	 * published, while no other thread can see it.
+	 */
+	private Animation load(Entry e, long stepLength) {
+		synchronized (e) {
+			if (e.myAnimation != null || e.myFile == null || e.isFailed()) {
+				return e.myAnimation;
+			}
+			long start = System.nanoTime();
+			String path = e.myFile.getAbsolutePath();
+			try {
+				Animation anim = myReader.readAnimation(path);
+				if (anim == null) {
+					e.setFailed();
+					myFailedLoadCount.incrementAndGet();
+					return null;
+				}
+				anim.setVersion(e.myName, anim.getVersion().getNumber());
+				AnimationLibraryLoader.loadCompiledAnimation(e.myFile, anim);
+				CompiledAnimationCache cache = myCompiledCache;
+				if (stepLength > 0 && cache != null) {
+					cache.getCompiledMap(anim, -1, -1, stepLength);
+				}
+				e.myVersion = anim.getVersion();
+				e.myAnimation = anim;
+				return anim;
+			} catch (Exception ex) {
+				e.setFailed();
+				myFailedLoadCount.incrementAndGet();
+				theLogger.warn("Could not load animation at {}", path, ex);
+				return null;
+			} finally {
+				long elapsed = System.nanoTime() - start;
+				myLoadCount.incrementAndGet();
+				myLoadNanos.addAndGet(elapsed);
+				updateMax(myMaxLoadNanos, elapsed);
+			}
+		}
+	}
+
+	private static void updateMax(AtomicLong max, long val) {
+		long cur = max.get();
+		while (val > cur && !max.compareAndSet(cur, val)) {
+			cur = max.get();
+		}
+	}
+
+	@Override
+	public void add(Animation animation) {
+		VersionProperty version = animation.getVersion();
+		synchronized (this) {
+			if (myEntries.containsKey(version.getName())) {
+				theLogger.warn("Not adding Animation. "
+								+ "Animation with given version ({}) already exists.",
+						version);
+				return;
+			}
+			Entry e = new Entry(version.getName(), null, version);
+			e.myAnimation = animation;
+			myEntries.put(e.myName, e);
+		}
+	}
+
+	@Override
+	public void remove(Animation animation) {
+		List<VersionProperty> removed = new ArrayList<>();
+		synchronized (this) {
+			Iterator<Entry> it = myEntries.values().iterator();
+			while (it.hasNext()) {
+				Entry e = it.next();
+				if (animation.equals(e.myAnimation)) {
+					it.remove();
+					removed.add(e.getVersion());
+				}
+			}
+		}
+		if (removed.isEmpty()) {
+			theLogger.warn("Could not find given animation: {}", animation);
+			return;
+		}
+		if (myCompiledCache != null) {
+			for (VersionProperty version : removed) {
+				myCompiledCache.invalidate(version);
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		stopWarmUp();
+		List<VersionProperty> versions = getAnimationVersions();
+		synchronized (this) {
+			myEntries.clear();
+		}
+		if (myCompiledCache != null) {
+			for (VersionProperty version : versions) {
+				myCompiledCache.invalidate(version);
+			}
+		}
+	}
+
+	/**
+	 * Sets the warm-up priority of an Animation.  Higher priorities are
+	 * warmed up first, the default priority is 0.
+	 *
+	 * @param name     Animation name
+	 * @param priority warm-up priority
+	 */
+	public synchronized void setWarmUpPriority(String name, int priority) {
+		myPriorities.put(name, priority);
+	}
+
+	/**
+	 * Sets the warm-up order.  The first name is warmed up first, and all
+	 * listed Animations are warmed up before unlisted ones.
+	 *
+	 * @param names Animation names, in warm-up order
+	 */
+	public synchronized void setWarmUpOrder(List<String> names) {
+		myPriorities.clear();
+		int priority = names.size();
+		for (String name : names) {
+			myPriorities.put(name, priority--);
+		}
+	}
+
+	/**
+	 * Starts parsing all unparsed Animations on a pool of low priority
+	 * daemon threads.  Does nothing if a warm-up is already running.
+	 *
+	 * @param threads    number of warm-up threads
+	 * @param stepLength milliseconds between compiled positions, 0 to skip
+	 *                   precompiling
+	 */
+	public synchronized void startWarmUp(int threads, long stepLength) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException(
+					"threads must be greater than zero");
+		}
+		if (myWarmUpPool != null && !myWarmUpPool.isTerminated()) {
+			return;
+		}
+		myWarmUpPool = new ThreadPoolExecutor(threads, threads,
+				1, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger myCount = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "AnimationLibraryWarmUp-"
+								+ myLibraryId + "-" + myCount.incrementAndGet());
+						t.setDaemon(true);
+						t.setPriority(Thread.MIN_PRIORITY);
+						return t;
+					}
+				});
+		myWarmUpPool.allowCoreThreadTimeOut(true);
+		List<WarmUpTask> tasks = new ArrayList<>();
+		for (Entry e : myEntries.values()) {
+			if (e.myAnimation != null || e.myFile == null) {
+				continue;
+			}
+			Integer priority = myPriorities.get(e.myName);
+			tasks.add(new WarmUpTask(e, priority == null ? 0 : priority,
+					myWarmUpSequence.getAndIncrement(), stepLength));
+		}
+		// The first tasks run without passing through the queue, so they
+		// are submitted in priority order.
+		Collections.sort(tasks);
+		for (WarmUpTask task : tasks) {
+			myWarmUpPool.execute(task);
+		}
+		myWarmUpPool.shutdown();
+	}
+
+	/**
+	 * Stops the warm-up.  Animations being parsed are finished, queued
+	 * Animations are left unparsed.
+	 */
+	public synchronized void stopWarmUp() {
+		if (myWarmUpPool != null) {
+			myWarmUpPool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for the warm-up to finish.
+	 *
+	 * @param timeout maximum time to wait
+	 * @param unit    unit of the timeout
+	 * @return true if the warm-up finished, false if it timed out
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitWarmUp(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		ThreadPoolExecutor pool;
+		synchronized (this) {
+			pool = myWarmUpPool;
+		}
+		return pool == null || pool.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Returns the names of indexed Animations whose file length or
+	 * modification time has changed since the file was indexed.
+	 *
+	 * @return names of modified Animations
+	 */
+	public synchronized List<String> getModifiedAnimations() {
+		List<String> names = new ArrayList<>();
+		for (Entry e : myEntries.values()) {
+			if (e.isModified()) {
+				names.add(e.myName);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the time taken to index the library's files.
+	 *
+	 * @return indexing time in nanoseconds
+	 */
+	public synchronized long getIndexTimeNanos() {
+		return myIndexTimeNanos;
+	}
+
+	/**
+	 * Returns the number of indexed Animations.
+	 *
+	 * @return number of indexed Animations
+	 */
+	public synchronized int getAnimationCount() {
+		return myEntries.size();
+	}
+
+	/**
+	 * Returns the number of Animations which have been parsed or added.
+	 *
+	 * @return number of loaded Animations
+	 */
+	public synchronized int getLoadedCount() {
+		int count = 0;
+		for (Entry e : myEntries.values()) {
+			if (e.myAnimation != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of files parsed, including failures.
+	 *
+	 * @return number of files parsed
+	 */
+	public long getLoadCount() {
+		return myLoadCount.get();
+	}
+
+	/**
+	 * Returns the number of files which could not be parsed.
+	 *
+	 * @return number of failed parses
+	 */
+	public long getFailedLoadCount() {
+		return myFailedLoadCount.get();
+	}
+
+	/**
+	 * Returns the average time taken to parse a file.
+	 *
+	 * @return average parse time in nanoseconds
+	 */
+	public long getAverageLoadNanos() {
+		long count = myLoadCount.get();
+		return count == 0 ? 0 : myLoadNanos.get() / count;
+	}
+
+	/**
+	 * Returns the longest time taken to parse a file.
+	 *
+	 * @return longest parse time in nanoseconds
+	 */
+	public long getMaxLoadNanos() {
+		return myMaxLoadNanos.get();
+	}
+
+	/**
+	 * Returns the number of getAnimation calls which had to wait for a file
+	 * to be parsed.
+	 *
+	 * @return number of cold lookups
+	 */
+	public long getColdLookupCount() {
+		return myColdLookupCount.get();
+	}
+
+	/**
+	 * Returns the average time getAnimation waited for a file to be parsed.
+	 *
+	 * @return average cold lookup latency in nanoseconds
+	 */
+	public long getAverageColdLookupNanos() {
+		long count = myColdLookupCount.get();
+		return count == 0 ? 0 : myColdLookupNanos.get() / count;
+	}
+
+	/**
+	 * Returns the longest time getAnimation waited for a file to be parsed.
+	 *
+	 * @return longest cold lookup latency in nanoseconds
+	 */
+	public long getMaxColdLookupNanos() {
+		return myMaxColdLookupNanos.get();
+	}
+
+	/**
+	 * Returns the number of Animations parsed by the warm-up.
+	 *
+	 * @return number of Animations warmed up
+	 */
+	public long getWarmedCount() {
+		return myWarmedCount.get();
+	}
+
+	private final static class Entry {
+		private final String myName;
+		private final File myFile;
+		private final long myLength;
+		private final long myLastModified;
+		private volatile VersionProperty myVersion;
+		private volatile Animation myAnimation;
+		private boolean myFailedFlag;
+		private long myFailedLength;
+		private long myFailedModified;
+
+		/**
+		 * Creates an Entry with the version from the index, or an unknown
+		 * version number if the version is null.
+		 */
+		Entry(String name, File file, VersionProperty version) {
+			myName = name;
+			myFile = file;
+			myLength = file == null ? 0 : file.length();
+			myLastModified = file == null ? 0 : file.lastModified();
+			myVersion = version != null ? version
+					: new VersionProperty(name, UNKNOWN_VERSION_NUMBER);
+		}
+
+		boolean isModified() {
+			return myFile != null && (myFile.length() != myLength
+					|| myFile.lastModified() != myLastModified);
+		}
+
+		/**
+		 * Returns true if the file could not be parsed and has not been
+		 * modified since.  Must be called while holding the Entry's lock.
+		 */
+		boolean isFailed() {
+			if (!myFailedFlag) {
+				return false;
+			}
+			if (myFile.length() != myFailedLength
+					|| myFile.lastModified() != myFailedModified) {
+				myFailedFlag = false;
+			}
+			return myFailedFlag;
+		}
+
+		void setFailed() {
+			myFailedFlag = true;
+			myFailedLength = myFile.length();
+			myFailedModified = myFile.lastModified();
+		}
+
+		VersionProperty getVersion() {
+			return myVersion;
+		}
+	}
+
+	private final class WarmUpTask implements Runnable, Comparable<WarmUpTask> {
+		private final Entry myEntry;
+		private final int myPriority;
+		private final int mySequence;
+		private final long myStepLength;
+
+		WarmUpTask(Entry entry, int priority, int sequence, long stepLength) {
+			myEntry = entry;
+			myPriority = priority;
+			mySequence = sequence;
+			myStepLength = stepLength;
+		}
+
+		@Override
+		public void run() {
+			if (myEntry.myAnimation != null) {
+				return;
+			}
+			if (load(myEntry, myStepLength) != null) {
+				myWarmedCount.incrementAndGet();
+			}
+		}
+
+		@Override
+		public int compareTo(WarmUpTask o) {
+			if (myPriority != o.myPriority) {
+				return myPriority > o.myPriority ? -1 : 1;
+			}
+			return Integer.compare(mySequence, o.mySequence);
+		}
+	}
+}
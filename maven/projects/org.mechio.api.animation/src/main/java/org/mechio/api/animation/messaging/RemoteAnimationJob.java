@@ -24,12 +24,16 @@ import org.mechio.api.animation.Animation;
 import org.mechio.api.animation.player.AnimationJob;
 import org.mechio.api.animation.player.AnimationJobListener;
 import org.mechio.api.animation.player.AnimationPlayer;
+import org.mechio.api.animation.player.PlaybackClock;
+import org.mechio.api.animation.player.RateControllable;
+import org.mechio.api.animation.player.TimeWarp;
 
 /**
  *
  * @author matt
  */
-public class RemoteAnimationJob extends AbstractPlayable implements AnimationJob {
+public class RemoteAnimationJob extends AbstractPlayable
+        implements AnimationJob, RateControllable {
     private RemoteAnimationPlayerClient myPlayer;
     private Animation myAnimation;
     private long myMaxRampTimeMillisec;
@@ -37,6 +41,7 @@ public class RemoteAnimationJob extends AbstractPlayable implements AnimationJob
     private long myAnimStartTime;
     private long myEndTime;
     private List<AnimationJobListener> myAnimationListeners;
+    private PlaybackClock myClock;
 
     RemoteAnimationJob(RemoteAnimationPlayerClient player, Animation anim, Long start, Long stop, int maxRampMillisec){
         if(anim == null || player == null){
@@ -49,6 +54,7 @@ public class RemoteAnimationJob extends AbstractPlayable implements AnimationJob
         myAnimStartTime = start == null || start < 0 ? 0 : start;
         myEndTime = stop == null || stop < 0 ? anim.getLength() : stop;
         myAnimationListeners = new ArrayList<AnimationJobListener>();
+        myClock = new PlaybackClock();
     }
     @Override
     public AnimationPlayer getSource() {
@@ -83,7 +89,7 @@ public class RemoteAnimationJob extends AbstractPlayable implements AnimationJob
         if(l == null){
             return null;
         }
-        return l+myAnimStartTime;
+        return myClock.getAnimationOffset(l)+myAnimStartTime;
     }
 
     @Override
@@ -93,6 +99,7 @@ public class RemoteAnimationJob extends AbstractPlayable implements AnimationJob
 
     @Override
     public boolean onStart(long time) {
+        myClock.reset(myEndTime - myAnimStartTime);
         if(myAnimationListeners != null){
             for(AnimationJobListener listener : myAnimationListeners){
                 listener.animationStart(myAnimStartTime, myEndTime);
@@ -111,9 +118,43 @@ public class RemoteAnimationJob extends AbstractPlayable implements AnimationJob
         if(getPlayState() == PlayState.COMPLETED){
             return 0L;
         }
-        long now = getElapsedPlayTime(time);
-        long end = getAnimationLength();
-        return end - now;
+        long remaining = myClock.getRemainingTime(getElapsedPlayTime(time));
+        if(remaining == Long.MAX_VALUE){
+            return remaining;
+        }
+        return remaining + myMaxRampTimeMillisec;
+    }
+
+    /**
+     * Sets the playback rate, and sends it to the remote AnimationPlayer.
+     * @param time time of the change
+     * @param rate Animation milliseconds played per millisecond
+     */
+    @Override
+    public void setPlaybackRate(long time, double rate) {
+        Long elapsed = getElapsedPlayTime(time);
+        myClock.setRate(elapsed == null ? 0 : elapsed, rate);
+        myPlayer.setPlaybackRate(myAnimation, rate);
+    }
+
+    @Override
+    public double getPlaybackRate() {
+        return myClock.getRate();
+    }
+
+    /**
+     * Sets the TimeWarp used locally to track the Animation's progress.
+     * TimeWarps are not sent to the remote AnimationPlayer.
+     * @param warp TimeWarp to use, null for none
+     */
+    @Override
+    public void setTimeWarp(TimeWarp warp) {
+        myClock.setTimeWarp(warp);
+    }
+
+    @Override
+    public TimeWarp getTimeWarp() {
+        return myClock.getTimeWarp();
     }
 
     @Override
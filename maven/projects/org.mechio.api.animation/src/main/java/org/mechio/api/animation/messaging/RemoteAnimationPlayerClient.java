@@ -181,6 +181,26 @@ public class RemoteAnimationPlayerClient
 		}
 	}
 
+	/**
+	 * Sets the playback rate of an Animation playing on the remote
+	 * AnimationPlayer.  The Animation continues from its current position.
+	 *
+	 * @param animation Animation to change
+	 * @param rate      Animation milliseconds played per millisecond,
+	 *                  negative to play in reverse
+	 */
+	public void setPlaybackRate(Animation animation, double rate) {
+		if (myEventFactory == null || myAnimationSender == null) {
+            theLogger.error(NULL_MEMBERS_ERROR_MESSAGE);
+			return;
+		}
+
+		AnimationEvent event =
+				myEventFactory.createPlaybackRateEvent(
+						myAnimationPlayerId, myRemotePlayerId, animation, rate);
+		myAnimationSender.notifyListeners(event);
+	}
+
 	public void clearAnimations() {
 		if (myEventFactory == null || myAnimationSender == null) {
             theLogger.error(NULL_MEMBERS_ERROR_MESSAGE);
@@ -23,6 +23,7 @@ import org.jflux.api.messaging.rk.MessageSender;
 import org.mechio.api.animation.Animation;
 import org.mechio.api.animation.player.AnimationJob;
 import org.mechio.api.animation.player.AnimationPlayer;
+import org.mechio.api.animation.player.RateControllable;
 import org.mechio.api.animation.protocol.AnimationEvent;
 import org.mechio.api.animation.protocol.AnimationSignal;
 import org.slf4j.Logger;
@@ -145,6 +146,11 @@ public class RemoteAnimationPlayerHost implements Listener<AnimationSignal> {
 				return;
 			}
 			AnimationJob job = myAnimationMap.get(anim);
+			Double rate = event.getPlaybackRate();
+			if (rate != null) {
+				setPlaybackRate(job, anim, rate);
+				return;
+			}
 			if ("STOP".equals(event.getDestinationId())) {
 				if (job != null) {
 					theLogger.info("Stopping Animation: {}, from AnimationPlayer: {}.",
@@ -172,5 +178,28 @@ public class RemoteAnimationPlayerHost implements Listener<AnimationSignal> {
 
 			myAnimationMap.put(anim, job);
 		}
+
+		private void setPlaybackRate(
+				AnimationJob job, Animation anim, double rate) {
+			if (job == null) {
+				theLogger.info("Could not find Animation to change rate: {}, from AnimationPlayer: {}.",
+						anim.getVersion().display(),
+						myAnimationPlayer.getAnimationPlayerId());
+				return;
+			}
+			if (!(job instanceof RateControllable)) {
+				theLogger.warn("Cannot change playback rate of Animation: {}, "
+						+ "its AnimationJob does not support it.",
+						anim.getVersion().display());
+				return;
+			}
+			if (Double.isNaN(rate) || Double.isInfinite(rate)) {
+				theLogger.warn("Ignoring invalid playback rate: {}.", rate);
+				return;
+			}
+			theLogger.info("Setting playback rate of Animation: {}, to {}.",
+					anim.getVersion().display(), rate);
+			((RateControllable) job).setPlaybackRate(TimeUtils.now(), rate);
+		}
 	}
 }
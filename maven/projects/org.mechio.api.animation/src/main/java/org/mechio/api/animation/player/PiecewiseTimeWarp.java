@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.api.animation.player;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+/**
+ * A TimeWarp which linearly interpolates between points.  Each point maps
+ * a playback progress (x) to an Animation progress (y).  The points must
+ * start at x = 0, end at x = 1, and have increasing x-values.
+ */
+public class PiecewiseTimeWarp implements TimeWarp {
+    private final double[] myProgress;
+    private final double[] myWarped;
+
+    /**
+     * Creates a PiecewiseTimeWarp from the given points.
+     * @param points points mapping playback progress to Animation progress
+     * @throws IllegalArgumentException if there are fewer than two points,
+     * the first point is not at x = 0, the last point is not at x = 1, or
+     * the x-values do not increase
+     */
+    public PiecewiseTimeWarp(List<Point2D> points){
+        if(points == null){
+            throw new NullPointerException();
+        }
+        int len = points.size();
+        if(len < 2){
+            throw new IllegalArgumentException(
+                    "A TimeWarp needs at least two points.");
+        }
+        myProgress = new double[len];
+        myWarped = new double[len];
+        for(int i=0; i<len; i++){
+            Point2D p = points.get(i);
+            myProgress[i] = p.getX();
+            myWarped[i] = p.getY();
+            if(i > 0 && myProgress[i] <= myProgress[i-1]){
+                throw new IllegalArgumentException(
+                        "TimeWarp points must have increasing x-values.");
+            }
+        }
+        if(myProgress[0] != 0.0 || myProgress[len-1] != 1.0){
+            throw new IllegalArgumentException(
+                    "TimeWarp points must start at x = 0 and end at x = 1.");
+        }
+    }
+
+    @Override
+    public double warp(double progress) {
+        int lo = 0, hi = myProgress.length - 1;
+        while(hi - lo > 1){
+            int mid = (lo + hi) >>> 1;
+            if(myProgress[mid] <= progress){
+                lo = mid;
+            }else{
+                hi = mid;
+            }
+        }
+        double x0 = myProgress[lo];
+        double pX = (progress - x0)/(myProgress[hi] - x0);
+        return myWarped[lo] + pX*(myWarped[hi] - myWarped[lo]);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.api.animation.player;
+
+/**
+ * Maps the elapsed play time of an AnimationJob to a time offset in its
+ * Animation, applying a playback rate and an optional TimeWarp.
+ * <p>
+ * The play position advances by the rate for each millisecond played.
+ * When the rate is changed the position continues from where it was, so the
+ * rate can be changed while playing.  A negative rate plays in reverse, and
+ * playback started with a negative rate begins at the end of the Animation.
+ * The TimeWarp is applied to the play position while it is within the
+ * Animation.
+ * <p>
+ * Only the time is remapped, so changing the rate or TimeWarp needs no
+ * recompiling and no extra memory.
+ */
+public class PlaybackClock {
+    private double myRate;
+    private TimeWarp myTimeWarp;
+    private long myLength;
+    private long myAnchorElapsed;
+    private double myAnchorPosition;
+
+    /**
+     * Creates a PlaybackClock with a rate of 1.0 and no TimeWarp.
+     */
+    public PlaybackClock(){
+        myRate = 1.0;
+    }
+
+    /**
+     * Moves the play position to the start of playback.  This is the start
+     * of the Animation, or the end when the rate is negative.
+     * @param length length of the Animation in milliseconds
+     */
+    public synchronized void reset(long length){
+        myLength = Math.max(0, length);
+        myAnchorElapsed = 0;
+        myAnchorPosition = myRate < 0 ? myLength : 0;
+    }
+
+    /**
+     * Sets the playback rate, continuing from the current play position.
+     * @param elapsed elapsed play time of the change
+     * @param rate Animation milliseconds played per millisecond, negative to
+     * play in reverse
+     */
+    public synchronized void setRate(long elapsed, double rate){
+        if(Double.isNaN(rate) || Double.isInfinite(rate)){
+            throw new IllegalArgumentException("Invalid playback rate: " + rate);
+        }
+        myAnchorPosition = getPosition(elapsed);
+        myAnchorElapsed = elapsed;
+        myRate = rate;
+    }
+
+    /**
+     * Returns the playback rate.
+     * @return Animation milliseconds played per millisecond
+     */
+    public synchronized double getRate(){
+        return myRate;
+    }
+
+    /**
+     * Returns true if the Animation is being played in reverse.
+     * @return true if the rate is negative
+     */
+    public synchronized boolean isReversed(){
+        return myRate < 0;
+    }
+
+    /**
+     * Sets the TimeWarp applied to the play position.
+     * @param warp TimeWarp to apply, null for none
+     */
+    public synchronized void setTimeWarp(TimeWarp warp){
+        myTimeWarp = warp;
+    }
+
+    /**
+     * Returns the TimeWarp applied to the play position.
+     * @return TimeWarp applied, null if there is none
+     */
+    public synchronized TimeWarp getTimeWarp(){
+        return myTimeWarp;
+    }
+
+    /**
+     * Returns the play position, before the TimeWarp is applied.
+     * @param elapsed elapsed play time
+     * @return play position, in milliseconds from the start of the Animation
+     */
+    public synchronized double getPosition(long elapsed){
+        return myAnchorPosition + (elapsed - myAnchorElapsed)*myRate;
+    }
+
+    /**
+     * Returns the time offset in the Animation for the elapsed play time.
+     * @param elapsed elapsed play time
+     * @return time offset from the start of the Animation, in milliseconds
+     */
+    public synchronized long getAnimationOffset(long elapsed){
+        double pos = getPosition(elapsed);
+        if(myTimeWarp != null && myLength > 0 && pos >= 0 && pos <= myLength){
+            pos = myTimeWarp.warp(pos/myLength)*myLength;
+        }
+        return Math.round(pos);
+    }
+
+    /**
+     * Returns the play time remaining until playback passes the end of the
+     * Animation, or its start when playing in reverse.
+     * @param elapsed elapsed play time
+     * @return remaining play time in milliseconds, Long.MAX_VALUE if the
+     * rate is 0
+     */
+    public synchronized long getRemainingTime(long elapsed){
+        double pos = getPosition(elapsed);
+        if(myRate > 0){
+            return (long)Math.ceil((myLength - pos)/myRate);
+        }else if(myRate < 0){
+            return (long)Math.ceil(pos/-myRate);
+        }
+        return Long.MAX_VALUE;
+    }
+}
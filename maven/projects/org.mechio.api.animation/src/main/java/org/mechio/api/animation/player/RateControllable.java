@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.player;
+
+/**
+ * An AnimationJob whose playback rate and TimeWarp can be changed while it
+ * is playing.  Check for this interface before changing the rate of an
+ * AnimationJob.
+ */
+public interface RateControllable {
+    /**
+     * Sets the rate the Animation is played at.  The Animation continues
+     * from its current position at the new rate.  A rate of 1.0 plays at
+     * normal speed, 0 holds the current position, and a negative rate plays
+     * in reverse.
+     * @param time time of the change
+     * @param rate Animation milliseconds played per millisecond
+     */
+    public void setPlaybackRate(long time, double rate);
+    /**
+     * Returns the rate the Animation is played at.
+     * @return Animation milliseconds played per millisecond
+     */
+    public double getPlaybackRate();
+
+    /**
+     * Sets a TimeWarp used to remap the progress through the Animation.
+     * @param warp TimeWarp to use, null for none
+     */
+    public void setTimeWarp(TimeWarp warp);
+    /**
+     * Returns the TimeWarp used to remap the progress through the Animation.
+     * @return TimeWarp used, null if there is none
+     */
+    public TimeWarp getTimeWarp();
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.api.animation.player;
+
+/**
+ * Remaps the progress through an Animation, so it can be played with easing
+ * or other changes of speed without being edited or recompiled.
+ * <p>
+ * Progress is the fraction of the Animation played, from 0 to 1.  A
+ * TimeWarp should map 0 to 0 and 1 to 1.  It is only given progress within
+ * [0, 1].
+ */
+public interface TimeWarp {
+    /**
+     * Returns the progress through the Animation to play for the given
+     * playback progress.
+     * @param progress playback progress, between 0 and 1
+     * @return Animation progress, between 0 and 1
+     */
+    public double warp(double progress);
+}
@@ -42,9 +42,20 @@ public interface AnimationEvent {
      * @return Animation associated with this AnimationEvent
      */
     public Animation getAnimation();
+    /**
+     * Returns the playback rate to set for an Animation which is already
+     * playing.  An AnimationEvent with a playback rate only changes the
+     * rate, and does not start the Animation.
+     * @return Animation milliseconds played per millisecond, null if the
+     * AnimationEvent does not change the playback rate
+     */
+    public Double getPlaybackRate();
     
     public static interface AnimationEventFactory{
         public AnimationEvent createAnimationEvent(
                 String clientId, String hostId, Animation animation);
+        public AnimationEvent createPlaybackRateEvent(
+                String clientId, String hostId, Animation animation,
+                double rate);
     }
 }
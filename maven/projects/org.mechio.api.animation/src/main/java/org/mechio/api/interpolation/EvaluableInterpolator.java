@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.interpolation;
+
+/**
+ * An Interpolator which can evaluate its curve at any x-value directly,
+ * without generating the interpolated points.  The control points must be
+ * ordered by x-value, as PathInterpolator ensures.
+ */
+public interface EvaluableInterpolator extends Interpolator {
+    /**
+     * Returns the y-value of the interpolated curve at the given x-value.
+     * @param x x-value to evaluate
+     * @return y-value of the curve at x, or -1 if x is outside the control
+     * points
+     */
+    public double evaluate(double x);
+}
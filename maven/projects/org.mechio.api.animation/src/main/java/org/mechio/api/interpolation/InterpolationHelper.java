@@ -22,7 +22,7 @@ import java.util.List;
 
 /**
  * Utility methods to help Interpolators.
- * 
+ *
  * @author Matthew Stevenson <www.mechio.org>
  */
 public class InterpolationHelper {
@@ -66,4 +66,98 @@ public class InterpolationHelper {
         lists.add(points.subList(prev, len));
         return lists;
     }
+
+    /**
+     * Finds the segment of a List of Points, ordered by x-value, which
+     * contains the given x-value.  Segment i lies between Points i and i+1.
+     * @param points List of Points ordered by x-value
+     * @param x x-value to find
+     * @return index of the segment containing x, 0 if there is a single
+     * Point at x, or -1 if x is outside the Points
+     */
+    public static int findSegment(List<Point2D> points, double x){
+        int len = points.size();
+        if(len == 0 || x < points.get(0).getX() || x > points.get(len-1).getX()){
+            return -1;
+        }
+        int lo = 0, hi = len-1;
+        while(hi - lo > 1){
+            int mid = (lo + hi) >>> 1;
+            if(points.get(mid).getX() <= x){
+                lo = mid;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Samples a parametric curve for t in [0,1], subdividing until a straight
+     * line between neighbouring samples is within the tolerance of the curve.
+     * The error is measured in y at the x-value of the midpoint, since
+     * CompiledPaths linearly interpolate the samples by time.
+     * @param curve curve to sample
+     * @param tolerance maximum error in y between the curve and the samples
+     * @param minDepth number of subdivisions always made, so curves which
+     * cross their chord at the midpoint are not missed
+     * @param maxDepth maximum number of subdivisions
+     * @param points List to add the samples to, including both end points
+     */
+    public static void sampleAdaptively(ParametricCurve curve, double tolerance,
+            int minDepth, int maxDepth, List<Point2D> points){
+        Point2D start = curve.getPoint(0.0);
+        Point2D end = curve.getPoint(1.0);
+        points.add(start);
+        subdivide(curve, tolerance, minDepth, maxDepth, 0, 0.0, start, 1.0, end, points);
+        points.add(end);
+    }
+
+    private static void subdivide(ParametricCurve curve, double tolerance,
+            int minDepth, int maxDepth, int depth,
+            double t0, Point2D p0, double t1, Point2D p1, List<Point2D> points){
+        if(depth >= maxDepth){
+            return;
+        }
+        double tm = (t0 + t1)*0.5;
+        Point2D pm = curve.getPoint(tm);
+        if(depth >= minDepth && chordError(p0, pm, p1) <= tolerance
+                && chordError(p0, curve.getPoint((t0 + tm)*0.5), p1) <= tolerance
+                && chordError(p0, curve.getPoint((tm + t1)*0.5), p1) <= tolerance){
+            return;
+        }
+        subdivide(curve, tolerance, minDepth, maxDepth, depth+1, t0, p0, tm, pm, points);
+        points.add(pm);
+        subdivide(curve, tolerance, minDepth, maxDepth, depth+1, tm, pm, t1, p1, points);
+    }
+
+    /**
+     * Returns the distance in y between a point and the line through two
+     * other points, at the x-value of the point.
+     * @param a start of the line
+     * @param p point to measure
+     * @param b end of the line
+     * @return distance in y from p to the line
+     */
+    public static double chordError(Point2D a, Point2D p, Point2D b){
+        double dx = b.getX() - a.getX();
+        if(dx == 0.0){
+            return Math.max(Math.abs(p.getY() - a.getY()),
+                    Math.abs(p.getY() - b.getY()));
+        }
+        double y = a.getY() + (b.getY() - a.getY())*(p.getX() - a.getX())/dx;
+        return Math.abs(p.getY() - y);
+    }
+
+    /**
+     * A curve defined by a parameter t in [0,1].
+     */
+    public static interface ParametricCurve {
+        /**
+         * Returns the point on the curve at t.
+         * @param t curve parameter, between 0 and 1
+         * @return point on the curve at t
+         */
+        public Point2D getPoint(double t);
+    }
 }
@@ -24,6 +24,35 @@ import org.jflux.api.core.Source;
  * @author Matthew Stevenson <www.mechio.org>
  */
 public abstract class InterpolatorFactory implements Source<Interpolator> {
+    private volatile double myTolerance;
+
+    /**
+     * Sets the sampling tolerance for new Interpolators.  When greater than
+     * zero, curved Interpolators sample adaptively, adding points until a
+     * straight line between samples is within the tolerance of the curve.
+     * When zero, Interpolators use their fixed sampling.
+     * <p>
+     * The tolerance can be changed from any thread.  It is part of the
+     * fingerprint used by the CompiledAnimationCache, so Animations using
+     * this factory are recompiled on their next lookup.
+     * @param tolerance maximum position error of the samples, 0 for fixed
+     * sampling
+     */
+    public void setTolerance(double tolerance){
+        if(tolerance < 0){
+            throw new IllegalArgumentException(
+                    "tolerance must not be negative");
+        }
+        myTolerance = tolerance;
+    }
+
+    /**
+     * Returns the sampling tolerance for new Interpolators.
+     * @return maximum position error of the samples, 0 for fixed sampling
+     */
+    public double getTolerance(){
+        return myTolerance;
+    }
 
     /**
      * Returns the VersionProperty of the Interpolator created by the Factory.
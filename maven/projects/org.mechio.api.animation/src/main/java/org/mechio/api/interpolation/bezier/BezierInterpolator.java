@@ -31,13 +31,15 @@ import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.List;
 import org.jflux.api.common.rk.config.VersionProperty;
-import org.mechio.api.interpolation.Interpolator;
+import org.mechio.api.interpolation.EvaluableInterpolator;
+import org.mechio.api.interpolation.InterpolationHelper;
+import org.mechio.api.interpolation.InterpolationHelper.ParametricCurve;
 
 /**
  *
  * @author Matthew Liston
  */
-public class BezierInterpolator implements Interpolator {
+public class BezierInterpolator implements EvaluableInterpolator {
     /**
      * Interpolator version name.
      */
@@ -50,6 +52,9 @@ public class BezierInterpolator implements Interpolator {
      * Interpolator VersionProperty.
      */
     public final static VersionProperty VERSION = new VersionProperty(VERSION_NAME, VERSION_NUMBER);
+    private final static int EVALUATE_ITERATIONS = 40;
+    private final static int MIN_ADAPTIVE_DEPTH = 3;
+    private final static int MAX_ADAPTIVE_DEPTH = 10;
     
     private List<Point2D> myControlPoints;
     private List<Point2D> myInterpolatedPoints;
@@ -63,12 +68,25 @@ public class BezierInterpolator implements Interpolator {
     
     //this will determine the number of interpolated points in a bezier segment
     private int pointamt;
+    //sample adaptively to this position error instead of using pointamt
+    private double myTolerance;
     
 
     /**
      * Creates a new empty LinearInterpolator.
      */
     public BezierInterpolator(){
+        this(0.0);
+    }
+
+    /**
+     * Creates a new empty BezierInterpolator which samples the curve
+     * adaptively to within the given tolerance.
+     * @param tolerance maximum position error of the interpolated points, 0
+     * for fixed sampling
+     */
+    public BezierInterpolator(double tolerance){
+        myTolerance = tolerance;
         myControlPoints = new ArrayList();
         //myInterpolatedPoints = new ArrayList();
         
@@ -150,6 +168,11 @@ public class BezierInterpolator implements Interpolator {
         
         myInterpolatedPoints = new ArrayList();
         
+        if(myTolerance > 0){
+            sampleAdaptively();
+            return;
+        }
+        
         int bezierOrder = myControlPoints.size() - 1;
         
         myInterpolatedPoints.addAll(doSegment(0,0));
@@ -175,6 +198,23 @@ public class BezierInterpolator implements Interpolator {
         //System.out.println(myInterpolatedPoints);
     }
     
+    private void sampleAdaptively() {
+        final int len = myControlPoints.size();
+        if(len < 2){
+            myInterpolatedPoints.addAll(myControlPoints);
+            return;
+        }
+        final double[] xs = new double[len];
+        final double[] ys = new double[len];
+        InterpolationHelper.sampleAdaptively(new ParametricCurve() {
+            @Override
+            public Point2D getPoint(double t) {
+                return new Point2D.Double(
+                        deCasteljau(t, xs, true), deCasteljau(t, ys, false));
+            }
+        }, myTolerance, MIN_ADAPTIVE_DEPTH, MAX_ADAPTIVE_DEPTH, myInterpolatedPoints);
+    }
+    
     /*
     public List<Point2D> xSort() {
         mySortedControlPoints = myControlPoints;
@@ -297,6 +337,49 @@ public class BezierInterpolator implements Interpolator {
         return myInterpolatedPoints;
     }
     
+    /**
+     * Evaluates the curve at x.  The Bezier curve uses every control point,
+     * so the curve parameter for x is found by bisection, evaluating the
+     * curve with de Casteljau's algorithm at each step.
+     * @param x x-value to evaluate
+     * @return y-value of the curve at x, or -1 if x is outside the control
+     * points
+     */
+    @Override
+    public double evaluate(double x) {
+        int len = myControlPoints.size();
+        if(len == 0 || x < myControlPoints.get(0).getX() 
+                || x > myControlPoints.get(len-1).getX()){
+            return -1.0;
+        }
+        double[] xs = new double[len];
+        double[] ys = new double[len];
+        double lo = 0.0, hi = 1.0;
+        for(int i=0; i<EVALUATE_ITERATIONS; i++){
+            double mid = (lo + hi)*0.5;
+            if(deCasteljau(mid, xs, true) < x){
+                lo = mid;
+            }else{
+                hi = mid;
+            }
+        }
+        return deCasteljau((lo + hi)*0.5, ys, false);
+    }
+    
+    private double deCasteljau(double t, double[] vals, boolean xCoord) {
+        int len = myControlPoints.size();
+        for(int i=0; i<len; i++){
+            Point2D p = myControlPoints.get(i);
+            vals[i] = xCoord ? p.getX() : p.getY();
+        }
+        for(int n=len-1; n>0; n--){
+            for(int i=0; i<n; i++){
+                vals[i] += (vals[i+1] - vals[i])*t;
+            }
+        }
+        return vals[0];
+    }
+    
     @Override
     public boolean interpolationChanged() {
         return myInterpolatedPoints == null;
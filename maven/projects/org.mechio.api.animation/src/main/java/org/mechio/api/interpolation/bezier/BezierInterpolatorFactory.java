@@ -31,7 +31,7 @@ public class BezierInterpolatorFactory extends InterpolatorFactory {
 
     @Override
     public Interpolator getValue() {
-        return new BezierInterpolator();
+        return new BezierInterpolator(getTolerance());
     }
 
     @Override
@@ -21,7 +21,8 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import org.jflux.api.common.rk.config.VersionProperty;
-import org.mechio.api.interpolation.Interpolator;
+import org.mechio.api.interpolation.EvaluableInterpolator;
+import org.mechio.api.interpolation.InterpolationHelper;
 
 /**
  * Implementation of a Catmull-Rom Cardinal Spline using reflected endpoints.
@@ -35,7 +36,7 @@ import org.mechio.api.interpolation.Interpolator;
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
-public class CSplineInterpolator implements Interpolator{
+public class CSplineInterpolator implements EvaluableInterpolator{
     /**
      * Interpolator version name.
      */
@@ -48,16 +49,30 @@ public class CSplineInterpolator implements Interpolator{
      * Interpolator VersionProperty.
      */
     public final static VersionProperty VERSION = new VersionProperty(VERSION_NAME, VERSION_NUMBER);
+    //number of earlier segments checked for overshoot when evaluating
+    private final static int OVERSHOOT_SEGMENTS = 2;
     
     private List<Point2D> myPoints;
     private Point2D[] myEndPoints;
     private List<Point2D> myInterpolatedPoints;
     private List<CSplineSegment> mySegments;
+    private double myTolerance;
 
     /**
      * Creates an empty CSplineInterpolator.
      */
     public CSplineInterpolator(){
+        this(0.0);
+    }
+
+    /**
+     * Creates an empty CSplineInterpolator which samples each segment
+     * adaptively to within the given tolerance.
+     * @param tolerance maximum position error of the interpolated points, 0
+     * for fixed sampling
+     */
+    public CSplineInterpolator(double tolerance){
+        myTolerance = tolerance;
         myPoints = new ArrayList<Point2D>();
         mySegments = new ArrayList<CSplineSegment>();
         myEndPoints = new Point2D[2];
@@ -135,9 +150,9 @@ public class CSplineInterpolator implements Interpolator{
             points.add(i<=0 ? myEndPoints[0] : myPoints.get(i-1));
             points.addAll(myPoints.subList(i, i+2));
             points.add(i>=segs-1 ? myEndPoints[1] : myPoints.get(i+2));
-            mySegments.set(i, new CSplineSegment(points));
+            mySegments.set(i, new CSplineSegment(points, myTolerance));
         }else{
-            mySegments.set(i, new CSplineSegment(myPoints.subList(i-1, i+3)));
+            mySegments.set(i, new CSplineSegment(myPoints.subList(i-1, i+3), myTolerance));
         }
     }
 
@@ -184,6 +199,32 @@ public class CSplineInterpolator implements Interpolator{
         return myInterpolatedPoints;
     }
     
+    /**
+     * Evaluates the curve where it first reaches x.  The segment containing x
+     * is found with a binary search of the control points.  Segments can
+     * overshoot their end points, so the previous segments are checked first.
+     * @param x x-value to evaluate
+     * @return y-value of the curve at x, or -1 if x is outside the control
+     * points
+     */
+    @Override
+    public double evaluate(double x){
+        int i = InterpolationHelper.findSegment(myPoints, x);
+        if(i == -1){
+            return -1.0;
+        }
+        if(i >= mySegments.size()){
+            return myPoints.get(i).getY();
+        }
+        for(int k=Math.max(i-OVERSHOOT_SEGMENTS, 0); k<i; k++){
+            double y = mySegments.get(k).evaluate(x);
+            if(!Double.isNaN(y)){
+                return y;
+            }
+        }
+        return mySegments.get(i).evaluate(x);
+    }
+    
     @Override
     public boolean interpolationChanged(){
         return myInterpolatedPoints == null;
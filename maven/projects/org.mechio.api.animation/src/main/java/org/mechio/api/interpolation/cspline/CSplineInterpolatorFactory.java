@@ -32,7 +32,7 @@ public class CSplineInterpolatorFactory extends InterpolatorFactory {
 
     @Override
     public Interpolator getValue() {
-        return new CSplineInterpolator();
+        return new CSplineInterpolator(getTolerance());
     }
     
     @Override
@@ -20,6 +20,8 @@ import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import org.mechio.api.interpolation.InterpolationHelper;
+import org.mechio.api.interpolation.InterpolationHelper.ParametricCurve;
 
 /**
  * A CSplineSegment is a CSpline interpolation of 4 points.  A CSpline with more
@@ -28,6 +30,9 @@ import java.util.List;
  * @author Matthew Stevenson <www.mechio.org>
  */
 public class CSplineSegment {
+    private final static int EVALUATE_ITERATIONS = 40;
+    private final static int MIN_ADAPTIVE_DEPTH = 2;
+    private final static int MAX_ADAPTIVE_DEPTH = 8;
     private List<Point2D> myControlPoints;
     private List<Point2D> myInterpolatedPoints;
      private int mySteps;
@@ -37,6 +42,16 @@ public class CSplineSegment {
       * @param points exactly 4 Points for defining the segment
       */
      public CSplineSegment(List<Point2D> points){
+        this(points, 0.0);
+     }
+
+     /**
+      * Creates a new CSplineSegment using the given points.
+      * @param points exactly 4 Points for defining the segment
+      * @param tolerance maximum position error when sampling adaptively, 0
+      * for fixed sampling
+      */
+     public CSplineSegment(List<Point2D> points, double tolerance){
         if(points.size() != 4){
             throw new IllegalArgumentException("Cardinal Splines segments require 4 control points, found " + points.size());
         }
@@ -47,7 +62,21 @@ public class CSplineSegment {
         for(Point2D p : points){
             myControlPoints.add((Point2D)p.clone());
         }
-        interpolate();
+        if(tolerance > 0){
+            interpolate(tolerance);
+        }else{
+            interpolate();
+        }
+    }
+    
+    private void interpolate(double tolerance){
+        myInterpolatedPoints = new LinkedList<Point2D>();
+        InterpolationHelper.sampleAdaptively(new ParametricCurve() {
+            @Override
+            public Point2D getPoint(double t) {
+                return getStepPoint(calcStep(t));
+            }
+        }, tolerance, MIN_ADAPTIVE_DEPTH, MAX_ADAPTIVE_DEPTH, myInterpolatedPoints);
     }
     
     private void interpolate(){
@@ -78,6 +107,89 @@ public class CSplineSegment {
         return new Point2D.Double(x*0.5, y*0.5);
     }
 
+    /**
+     * Returns the y-value of the curve between the middle two points where it
+     * first reaches the given x-value.  The segment is split where x turns
+     * back, and the curve parameter is found by bisection in the first
+     * increasing part which reaches x.
+     * @param x x-value to evaluate
+     * @return y-value of the curve at x, or NaN if the segment never reaches x
+     */
+    public double evaluate(double x){
+        double[] c = getXCoefficients();
+        double[] breaks = new double[4];
+        int count = 0;
+        breaks[count++] = 0.0;
+        //roots of dx/du = 3*c3*u^2 + 2*c2*u + c1
+        double qa = 3*c[3], qb = 2*c[2], qc = c[1];
+        if(qa == 0.0){
+            if(qb != 0.0){
+                count = addBreak(breaks, count, -qc/qb);
+            }
+        }else{
+            double disc = qb*qb - 4*qa*qc;
+            if(disc >= 0.0){
+                double sq = Math.sqrt(disc);
+                double r1 = (-qb - sq)/(2*qa), r2 = (-qb + sq)/(2*qa);
+                count = addBreak(breaks, count, Math.min(r1, r2));
+                count = addBreak(breaks, count, Math.max(r1, r2));
+            }
+        }
+        breaks[count++] = 1.0;
+        if(calcX(c, 0.0) >= x){
+            return calcCoordinate(calcStep(0.0), false);
+        }
+        for(int i=1; i<count; i++){
+            double lo = breaks[i-1], hi = breaks[i];
+            if(calcX(c, hi) < x){
+                continue;
+            }
+            for(int j=0; j<EVALUATE_ITERATIONS; j++){
+                double mid = (lo + hi)*0.5;
+                if(calcX(c, mid) < x){
+                    lo = mid;
+                }else{
+                    hi = mid;
+                }
+            }
+            return calcCoordinate(calcStep(hi), false);
+        }
+        return Double.NaN;
+    }
+
+    private static int addBreak(double[] breaks, int count, double u){
+        if(u > 0.0 && u < 1.0){
+            breaks[count++] = u;
+        }
+        return count;
+    }
+
+    private double[] getXCoefficients(){
+        double p0 = myControlPoints.get(0).getX();
+        double p1 = myControlPoints.get(1).getX();
+        double p2 = myControlPoints.get(2).getX();
+        double p3 = myControlPoints.get(3).getX();
+        return new double[]{
+            2*p1,
+            -p0 + p2,
+            2*p0 - 5*p1 + 4*p2 - p3,
+            -p0 + 3*p1 - 3*p2 + p3
+        };
+    }
+
+    private static double calcX(double[] c, double t){
+        return (((c[3]*t + c[2])*t + c[1])*t + c[0])*0.5;
+    }
+
+    private double calcCoordinate(double vals[], boolean xCoord){
+        double v = 0;
+        for(int i=0; i<4; i++){
+            Point2D p = myControlPoints.get(i);
+            v += vals[i]*(xCoord ? p.getX() : p.getY());
+        }
+        return v*0.5;
+    }
+
     /**
      * Returns a List of interpolated point for the curve between the middle two
      * points.
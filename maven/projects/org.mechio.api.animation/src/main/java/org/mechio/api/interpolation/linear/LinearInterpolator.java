@@ -21,14 +21,15 @@ import java.util.ArrayList;
 import java.util.List;
 import org.jflux.api.common.rk.config.VersionProperty;
 import org.jflux.api.common.rk.utils.ListUtils;
-import org.mechio.api.interpolation.Interpolator;
+import org.mechio.api.interpolation.EvaluableInterpolator;
+import org.mechio.api.interpolation.InterpolationHelper;
 
 /**
  * Performs a linear interpolation between control points.
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
-public class LinearInterpolator implements Interpolator {
+public class LinearInterpolator implements EvaluableInterpolator {
     /**
      * Interpolator version name.
      */
@@ -113,6 +114,21 @@ public class LinearInterpolator implements Interpolator {
         return myInterpolatedPoints;
     }
     
+    @Override
+    public double evaluate(double x) {
+        int i = InterpolationHelper.findSegment(myControlPoints, x);
+        if(i == -1){
+            return -1.0;
+        }
+        Point2D a = myControlPoints.get(i);
+        if(i == myControlPoints.size()-1){
+            return a.getY();
+        }
+        Point2D b = myControlPoints.get(i+1);
+        double pX = (x - a.getX())/(b.getX() - a.getX());
+        return pX*(b.getY() - a.getY()) + a.getY();
+    }
+    
     @Override
     public boolean interpolationChanged() {
         return myInterpolatedPoints == null;
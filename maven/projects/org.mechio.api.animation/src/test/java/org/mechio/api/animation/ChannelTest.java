@@ -0,0 +1,341 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import org.junit.Test;
+import org.mechio.api.interpolation.linear.LinearInterpolatorFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the MotionPath index of a Channel finds the MotionPaths used at
+ * each time, and stays current as MotionPaths are added, removed and edited.
+ */
+public class ChannelTest {
+
+    @Test
+    public void earlierPathsShouldTakePrecedence() {
+        MotionPath a = createPath(100, 200);
+        MotionPath b = createPath(50, 150);
+        MotionPath c = createPath(180, 300);
+        Channel channel = createChannel(a, b, c);
+
+        assertSame(b, channel.getMotionPathAt(50));
+        assertSame(b, channel.getMotionPathAt(99.5));
+        assertSame(a, channel.getMotionPathAt(100));
+        assertSame(a, channel.getMotionPathAt(200));
+        assertSame(c, channel.getMotionPathAt(200.5));
+        assertSame(c, channel.getMotionPathAt(300));
+        assertNull(channel.getMotionPathAt(49));
+        assertNull(channel.getMotionPathAt(301));
+    }
+
+    @Test
+    public void gapsShouldNotUseLaterPaths() {
+        MotionPath a = createPath(0, 100);
+        MotionPath b = createPath(200, 300);
+        MotionPath c = createPath(50, 250);
+        Channel channel = createChannel(a, b, c);
+
+        assertNull(channel.getMotionPathAt(150));
+        assertEquals(-1.0, channel.evaluate(150), 0.0);
+        assertEquals(a.evaluate(60), channel.evaluate(60), 0.0);
+        assertEquals(Arrays.asList(a, b, c), channel.getMotionPaths(90, 210));
+        assertEquals(Arrays.asList(c), channel.getMotionPaths(120, 180));
+
+        List<Point2D> points = channel.getInterpolatedPoints(-1, -1);
+        assertSorted(points);
+        assertTrue(points.contains(new Point2D.Double(101, -1.0)));
+        assertTrue(points.contains(new Point2D.Double(199, -1.0)));
+    }
+
+    @Test
+    public void indexShouldFollowEdits() {
+        MotionPath a = createPath(0, 100);
+        MotionPath b = createPath(50, 200);
+        Channel channel = createChannel(a, b);
+        assertSame(b, channel.getMotionPathAt(150));
+
+        a.addPoint(160, 0.5);
+        assertSame(a, channel.getMotionPathAt(150));
+        assertSame(b, channel.getMotionPathAt(180));
+
+        channel.removeMotionPath(a);
+        assertSame(b, channel.getMotionPathAt(60));
+        channel.addPath(0, createPath(0, 300));
+        assertEquals(0, channel.getMotionPaths().indexOf(channel.getMotionPathAt(180)));
+    }
+
+    @Test
+    public void indexShouldFollowListChanges() {
+        MotionPath a = createPath(0, 100);
+        MotionPath b = createPath(50, 200);
+        Channel channel = createChannel(a, b);
+        assertSame(a, channel.getMotionPathAt(60));
+
+        MotionPath c = createPath(0, 300);
+        channel.getMotionPaths().set(0, c);
+        assertSame(c, channel.getMotionPathAt(60));
+        assertSame(c, channel.getMotionPathAt(250));
+
+        Collections.swap(channel.getMotionPaths(), 0, 1);
+        assertSame(b, channel.getMotionPathAt(60));
+        assertSame(c, channel.getMotionPathAt(250));
+    }
+
+    @Test
+    public void rangesShouldMatchFullInterpolation() {
+        Random rand = new Random(7);
+        for(int i=0; i<200; i++){
+            Channel channel = new Channel(0, "test");
+            int count = 1 + rand.nextInt(12);
+            for(int j=0; j<count; j++){
+                int start = rand.nextInt(1000);
+                channel.addPath(createPath(start, start + 1 + rand.nextInt(200)));
+            }
+            List<Point2D> all = channel.getInterpolatedPoints(-1, -1);
+            assertSorted(all);
+            for(int j=0; j<10; j++){
+                long start = rand.nextInt(1300) - 100;
+                long end = start + rand.nextInt(300);
+                assertEquals(trim(all, start, end),
+                        channel.getInterpolatedPoints(start, end));
+                assertEquals(findPaths(channel, start, end),
+                        channel.getMotionPaths(start, end));
+            }
+        }
+    }
+
+    @Test
+    public void interpolationShouldMatchCombinedPaths() {
+        assertMatchesCombined(createPath(100, 300), createPath(0, 150),
+                createPath(250, 400), createPath(50, 350));
+        assertMatchesCombined(createPath(0, 100), createPath(100, 200),
+                createPath(200, 300));
+        assertMatchesCombined(createPath(200, 300), createPath(100, 200),
+                createPath(0, 100));
+        assertMatchesCombined(createPath(400, 500), createPath(0, 100),
+                createPath(200, 300), createPath(700, 800));
+        assertMatchesCombined(createPath(0, 100), createPath(300, 400),
+                createPath(50, 350));
+        Random rand = new Random(11);
+        for(int i=0; i<100; i++){
+            int count = 1 + rand.nextInt(8);
+            MotionPath[] paths = new MotionPath[count];
+            for(int j=0; j<count; j++){
+                int start = rand.nextInt(100)*10;
+                paths[j] = createPath(start, start + 10 + rand.nextInt(30)*10);
+            }
+            assertMatchesCombined(paths);
+        }
+    }
+
+    private static void assertMatchesCombined(MotionPath... paths){
+        Channel channel = createChannel(paths);
+        assertEquals(combinePaths(channel, -1, -1),
+                channel.getInterpolatedPoints(-1, -1));
+        for(long start=-50; start<=1300; start+=75){
+            for(long len : new long[]{0, 1, 60, 250, 900}){
+                assertEquals(combinePaths(channel, start, start + len),
+                        channel.getInterpolatedPoints(start, start + len));
+            }
+        }
+    }
+
+    /**
+     * Combines the interpolated points of every MotionPath in the Channel
+     * and trims them to the range, as Channel did before it was indexed.
+     * The gap before a MotionPath which ends before the earlier MotionPaths
+     * is kept in time order.
+     */
+    private static List<Point2D> combinePaths(Channel channel, long start, long end){
+        List<Point2D> paths = new ArrayList<Point2D>();
+        for(MotionPath p : channel.getMotionPaths()){
+            combineInterpolations(paths, p.getInterpolatedPoints());
+        }
+        int iStart = 0, iEnd = paths.size();
+        if(start == -1 && end == -1){
+            return paths;
+        }
+        if(start != -1){
+            for(Point2D p : paths){
+                if(p.getX() >= start){
+                    iStart--;
+                    break;
+                }
+                iStart++;
+            }
+            iStart = Math.max(iStart, 0);
+            if(iStart > iEnd){
+                return new ArrayList<Point2D>();
+            }
+        }
+        if(end != -1){
+            ListIterator<Point2D> rit = paths.listIterator(iEnd);
+            while(rit.hasPrevious()){
+                Point2D p = rit.previous();
+                if(p.getX() <= end){
+                    iEnd++;
+                    break;
+                }
+                iEnd--;
+            }
+            iEnd = Math.min(iEnd, paths.size());
+            if(iEnd < iStart){
+                return new ArrayList<Point2D>();
+            }
+        }
+        if(iEnd == iStart && iEnd < paths.size()){
+            iEnd++;
+        }
+        return new ArrayList<Point2D>(paths.subList(iStart, iEnd));
+    }
+
+    private static void combineInterpolations(List<Point2D> a, List<Point2D> b){
+        if(a == null || b == null || b.isEmpty()){
+            return;
+        }
+        if(a.isEmpty()){
+            a.addAll(b);
+            return;
+        }
+        double min = a.get(0).getX();
+        double max = a.get(a.size()-1).getX();
+        int lenB = b.size();
+        int iB = 0;
+        double x = 0;
+        for(; iB<lenB; iB++){
+            Point2D p = b.get(iB);
+            x = p.getX();
+            if(x >= min){
+                break;
+            }
+        }
+        if(iB > 0){
+            a.addAll(0, b.subList(0, iB));
+            if(iB < lenB){
+                Point2D pI = findInterpolatedValue(b.get(iB-1), b.get(iB), min-1);
+                if(pI != null){
+                    a.add(iB, pI);
+                }
+            }
+        }
+        if(iB == lenB && x+2 < min){
+            //the old code inserted these in reverse, leaving the gap
+            //points out of time order
+            a.add(iB, new Point2D.Double(min-1, -1.0));
+            a.add(iB, new Point2D.Double(x+1, -1.0));
+        }
+        if(iB == 0 && b.get(0).getX()-1 > max){
+            a.add(new Point2D.Double(max+1, -1.0));
+            a.add(new Point2D.Double(x-1, -1.0));
+        }
+        for(; iB<lenB; iB++){
+            Point2D p = b.get(iB);
+            x = p.getX();
+            if(x > max){
+                break;
+            }
+        }
+        if(iB < lenB){
+            if(iB > 0){
+                Point2D pI = findInterpolatedValue(b.get(iB-1), b.get(iB), max+1);
+                if(pI != null){
+                    a.add(pI);
+                }
+            }
+            a.addAll(b.subList(iB, lenB));
+        }
+    }
+
+    private static Point2D findInterpolatedValue(Point2D a, Point2D b, double x){
+        double aX = a.getX();
+        if(aX >= x){
+            return null;
+        }
+        double yRange = b.getY() - a.getY();
+        double ratio = (x-aX)/(b.getX() - aX);
+        double y = ratio*yRange + a.getY();
+        return new Point2D.Double(x, y);
+    }
+
+    private static Channel createChannel(MotionPath... paths){
+        Channel channel = new Channel(0, "test");
+        for(MotionPath mp : paths){
+            channel.addPath(mp);
+        }
+        return channel;
+    }
+
+    private static MotionPath createPath(double start, double end){
+        MotionPath path = new MotionPath(new LinearInterpolatorFactory());
+        path.addPoint(start, 0.2);
+        path.addPoint((start + end)/2, 0.8);
+        path.addPoint(end, 0.4);
+        return path;
+    }
+
+    /**
+     * Keeps the points in the range and one point on either side.
+     */
+    private static List<Point2D> trim(List<Point2D> points, long start, long end){
+        int first = 0;
+        while(first < points.size() && points.get(first).getX() < start){
+            first++;
+        }
+        int last = points.size() - 1;
+        while(last >= 0 && points.get(last).getX() > end){
+            last--;
+        }
+        if(last < 0 && first == 0 && !points.isEmpty()){
+            return new ArrayList<Point2D>(points.subList(0, 1));
+        }else if(first == points.size() || last < 0){
+            return new ArrayList<Point2D>();
+        }
+        first = Math.max(first - 1, 0);
+        last = Math.min(last + 1, points.size() - 1);
+        return new ArrayList<Point2D>(points.subList(first, last + 1));
+    }
+
+    private static List<MotionPath> findPaths(Channel channel, long start, long end){
+        List<MotionPath> paths = new ArrayList<MotionPath>();
+        for(MotionPath mp : channel.getMotionPaths()){
+            List<Point2D> points = mp.getControlPoints();
+            if(points.get(0).getX() <= end
+                    && points.get(points.size()-1).getX() >= start){
+                paths.add(mp);
+            }
+        }
+        return paths;
+    }
+
+    private static void assertSorted(List<Point2D> points){
+        for(int i=1; i<points.size(); i++){
+            assertTrue(points.get(i-1).getX() < points.get(i).getX());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mechio.api.animation;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+import org.junit.Test;
+import org.mechio.api.animation.compiled.CompiledPath;
+import org.mechio.api.interpolation.InterpolatorFactory;
+import org.mechio.api.interpolation.bezier.BezierInterpolatorFactory;
+import org.mechio.api.interpolation.cspline.CSplineInterpolatorFactory;
+import org.mechio.api.interpolation.linear.LinearInterpolatorFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests that the incrementally recompiled CompiledPath of a MotionPath
+ * matches a full recompile after control point edits, and that direct
+ * evaluation matches the interpolation.
+ */
+public class MotionPathTest {
+    private final static long STEP = 10;
+
+    @Test
+    public void linearEditsShouldMatchFullRecompile() {
+        testEdits(new LinearInterpolatorFactory(), false);
+        testEdits(new LinearInterpolatorFactory(), true);
+    }
+
+    @Test
+    public void cSplineEditsShouldMatchFullRecompile() {
+        testEdits(new CSplineInterpolatorFactory(), false);
+        testEdits(new CSplineInterpolatorFactory(), true);
+    }
+
+    @Test
+    public void bezierEditsShouldMatchFullRecompile() {
+        testEdits(new BezierInterpolatorFactory(), false);
+        testEdits(new BezierInterpolatorFactory(), true);
+    }
+
+    @Test
+    public void editShouldNotChangePreviousCompiledPath() {
+        MotionPath path = createPath(new CSplineInterpolatorFactory(), 20);
+        CompiledPath before = path.getCompiledPath(STEP);
+        double[] positions = before.toDoubleArray();
+        path.setPoint(10, path.getControlPoints().get(10).getX(), 0.05);
+        CompiledPath after = path.getCompiledPath(STEP);
+        assertArrayEquals(positions, before.toDoubleArray(), 0.0);
+        assertEquals(before.size(), after.size());
+    }
+
+    @Test
+    public void rangeCompileShouldNotReplaceFullPath() {
+        MotionPath path = createPath(new CSplineInterpolatorFactory(), 20);
+        CompiledPath full = path.getCompiledPath(STEP);
+        long last = full.getEndTime() - STEP;
+        CompiledPath part = path.compilePath(
+                full.getStartTime() + 50*STEP, last - 50*STEP, STEP);
+        assertNotNull(part);
+        assertSame(full, path.getCompiledPath(STEP));
+        assertEquals(full.size() - 100, part.size());
+    }
+
+    @Test
+    public void fullRangeCompileShouldReturnCopy() {
+        MotionPath path = createPath(new CSplineInterpolatorFactory(), 20);
+        CompiledPath full = path.getCompiledPath(STEP);
+        double[] positions = full.toDoubleArray();
+        CompiledPath copy = path.compilePath(
+                full.getStartTime(), full.getEndTime() - STEP, STEP);
+        assertNotSame(full, copy);
+        assertArrayEquals(positions, copy.toDoubleArray(), 0.0);
+        copy.setPosition(5, 0.5);
+        assertArrayEquals(positions, full.toDoubleArray(), 0.0);
+    }
+
+    @Test
+    public void linearEvaluateShouldMatchInterpolation() {
+        testEvaluate(new LinearInterpolatorFactory());
+    }
+
+    @Test
+    public void cSplineEvaluateShouldMatchInterpolation() {
+        testEvaluate(new CSplineInterpolatorFactory());
+    }
+
+    @Test
+    public void bezierEvaluateShouldMatchInterpolation() {
+        testEvaluate(new BezierInterpolatorFactory());
+    }
+
+    @Test
+    public void linearEvaluateShouldMatchCompiledPath() {
+        MotionPath path = createPath(new LinearInterpolatorFactory(), 40);
+        CompiledPath cp = path.getCompiledPath(STEP);
+        double last = path.getControlPoints().get(39).getX();
+        for (long t = cp.getStartTime(); t <= last; t += STEP) {
+            assertEquals(cp.estimatePosition(t), path.evaluate(t), 1e-9);
+        }
+    }
+
+    private void testEvaluate(InterpolatorFactory factory) {
+        //spacing within a factor of 5 keeps the curves increasing in time,
+        //where the interpolated points are the first crossing of each time
+        MotionPath path = createPath(factory, 40, 100, 300);
+        for (Point2D p : path.getInterpolatedPoints()) {
+            assertEquals(p.getY(), path.evaluate(p.getX()), 1e-6);
+        }
+        double first = path.getControlPoints().get(0).getX();
+        double last = path.getControlPoints().get(39).getX();
+        assertEquals(-1.0, path.evaluate(first - 1), 0.0);
+        assertEquals(-1.0, path.evaluate(last + 1), 0.0);
+    }
+
+    private void testEdits(InterpolatorFactory factory, boolean fullPath) {
+        Random random = new Random(42);
+        MotionPath path = createPath(factory, 40);
+        long start = 0;
+        long end = (long) path.getControlPoints().get(39).getX() + 500;
+        compile(path, start, end, fullPath);
+        for (int i = 0; i < 50; i++) {
+            int n = path.getControlPoints().size();
+            int index = 1 + random.nextInt(n - 2);
+            Point2D p = path.getControlPoints().get(index);
+            double y = round(random.nextDouble());
+            switch (i % 4) {
+                case 0:
+                    path.setPoint(index, p.getX(), y);
+                    break;
+                case 1:
+                    double prevX = path.getControlPoints().get(index - 1).getX();
+                    path.addPoint((prevX + p.getX()) / 2, y);
+                    break;
+                case 2:
+                    path.removePoint(index);
+                    break;
+                default:
+                    double nextX = path.getControlPoints().get(index + 1).getX();
+                    path.moveControlPoint(index, (p.getX() + nextX) / 2, y);
+                    break;
+            }
+            CompiledPath cp = compile(path, start, end, fullPath);
+            assertNotNull(cp);
+            assertMatches(cp, path);
+        }
+    }
+
+    private static CompiledPath compile(
+            MotionPath path, long start, long end, boolean fullPath) {
+        if (fullPath) {
+            return path.getCompiledPath(STEP);
+        }
+        return path.compilePath(start, end, STEP);
+    }
+
+    private static void assertMatches(CompiledPath cp, MotionPath path) {
+        long start = cp.getStartTime();
+        long end = start + (cp.size() - 1) * STEP;
+        CompiledPath expected = CompiledPath.compilePath(
+                start, end, path.getInterpolatedPoints(), STEP);
+        assertEquals(expected.getStartTime(), cp.getStartTime());
+        assertArrayEquals(expected.toDoubleArray(), cp.toDoubleArray(), 0.0);
+    }
+
+    private static MotionPath createPath(InterpolatorFactory factory, int count) {
+        return createPath(factory, count, 50, 400);
+    }
+
+    private static MotionPath createPath(InterpolatorFactory factory,
+            int count, int minSpacing, int spacingRange) {
+        Random random = new Random(7);
+        MotionPath path = new MotionPath(factory);
+        double x = 100;
+        for (int i = 0; i < count; i++) {
+            path.addPoint(x, round(random.nextDouble()));
+            x += minSpacing + random.nextInt(spacingRange);
+        }
+        return path;
+    }
+
+    private static double round(double y) {
+        return Math.round(y * 100) / 100.0;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.compiled;
+
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.junit.Test;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.interpolation.InterpolatorFactory;
+import org.mechio.api.interpolation.cspline.CSplineInterpolatorFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests CompiledAnimationCache hits, LRU eviction and invalidation.
+ */
+public class CompiledAnimationCacheTest {
+    private final static long STEP = 10;
+    private final static long END = 2000;
+
+    @Test
+    public void repeatedLookupShouldHit() {
+        CompiledAnimationCache cache = new CompiledAnimationCache(
+                CompiledAnimationCache.DEFAULT_MAX_BYTES, null);
+        Animation anim = createAnimation("a", new CSplineInterpolatorFactory());
+        CompiledMap first = cache.getCompiledMap(anim, 0, END, STEP);
+        CompiledMap second = cache.getCompiledMap(anim, 0, END, STEP);
+        assertSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedShouldBeEvicted() {
+        CompiledAnimationCache cache = new CompiledAnimationCache(
+                CompiledAnimationCache.DEFAULT_MAX_BYTES, null);
+        Animation a = createAnimation("a", new CSplineInterpolatorFactory());
+        Animation b = createAnimation("b", new CSplineInterpolatorFactory());
+        Animation c = createAnimation("c", new CSplineInterpolatorFactory());
+        CompiledMap mapA = cache.getCompiledMap(a, 0, END, STEP);
+        long size = cache.getSizeBytes();
+        CompiledMap mapB = cache.getCompiledMap(b, 0, END, STEP);
+        cache.getCompiledMap(a, 0, END, STEP);
+        cache.setMaxBytes(2*size + size/2);
+        cache.getCompiledMap(c, 0, END, STEP);
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(1, cache.getEvictionCount());
+
+        cache.resetStatistics();
+        assertSame(mapA, cache.getCompiledMap(a, 0, END, STEP));
+        assertEquals(1, cache.getHitCount());
+        assertNotSame(mapB, cache.getCompiledMap(b, 0, END, STEP));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void editedAnimationShouldRecompile() {
+        CompiledAnimationCache cache = new CompiledAnimationCache(
+                CompiledAnimationCache.DEFAULT_MAX_BYTES, null);
+        Animation anim = createAnimation("a", new CSplineInterpolatorFactory());
+        CompiledMap first = cache.getCompiledMap(anim, 0, END, STEP);
+        MotionPath mp = anim.getChannels().get(0).getMotionPaths().get(0);
+        mp.addPoint(END - 100, 0.9);
+        CompiledMap second = cache.getCompiledMap(anim, 0, END, STEP);
+        assertNotSame(first, second);
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void replacedPathShouldRecompile() {
+        CompiledAnimationCache cache = new CompiledAnimationCache(
+                CompiledAnimationCache.DEFAULT_MAX_BYTES, null);
+        Animation anim = createAnimation("a", new CSplineInterpolatorFactory());
+        CompiledMap first = cache.getCompiledMap(anim, 0, END, STEP);
+        Channel channel = anim.getChannels().get(1);
+        MotionPath mp = channel.getMotionPaths().get(0).clone();
+        mp.setPoint(2, 500, 0.1);
+        channel.getMotionPaths().set(0, mp);
+        CompiledMap second = cache.getCompiledMap(anim, 0, END, STEP);
+        assertNotSame(first, second);
+        assertSame(second, cache.getCompiledMap(anim, 0, END, STEP));
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void equalAnimationShouldHit() {
+        CompiledAnimationCache cache = new CompiledAnimationCache(
+                CompiledAnimationCache.DEFAULT_MAX_BYTES, null);
+        InterpolatorFactory fact = new CSplineInterpolatorFactory();
+        CompiledMap first = cache.getCompiledMap(
+                createAnimation("a", fact), 0, END, STEP);
+        Animation copy = createAnimation("a", fact);
+        assertSame(first, cache.getCompiledMap(copy, 0, END, STEP));
+        assertSame(first, cache.getCompiledMap(copy, 0, END, STEP));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void toleranceChangeShouldRecompile() {
+        CompiledAnimationCache cache = new CompiledAnimationCache(
+                CompiledAnimationCache.DEFAULT_MAX_BYTES, null);
+        InterpolatorFactory fact = new CSplineInterpolatorFactory();
+        Animation anim = createAnimation("a", fact);
+        CompiledMap first = cache.getCompiledMap(anim, 0, END, STEP);
+        fact.setTolerance(0.001);
+        CompiledMap second = cache.getCompiledMap(anim, 0, END, STEP);
+        assertNotSame(first, second);
+        assertEquals(2, cache.getMissCount());
+        assertSame(second, cache.getCompiledMap(anim, 0, END, STEP));
+    }
+
+    @Test
+    public void invalidateShouldOnlyRemoveVersion() {
+        CompiledAnimationCache cache = new CompiledAnimationCache(
+                CompiledAnimationCache.DEFAULT_MAX_BYTES, null);
+        Animation a = createAnimation("a", new CSplineInterpolatorFactory());
+        Animation b = createAnimation("b", new CSplineInterpolatorFactory());
+        CompiledMap mapA = cache.getCompiledMap(a, 0, END, STEP);
+        cache.getCompiledMap(a, 0, END/2, STEP);
+        CompiledMap mapB = cache.getCompiledMap(b, 0, END, STEP);
+        cache.invalidate(a);
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(2, cache.getInvalidationCount());
+        assertEquals(mapB.getMemoryFootprint(), cache.getSizeBytes());
+        assertSame(mapB, cache.getCompiledMap(b, 0, END, STEP));
+        assertNotSame(mapA, cache.getCompiledMap(a, 0, END, STEP));
+    }
+
+    private static Animation createAnimation(
+            String name, InterpolatorFactory fact) {
+        Animation anim = new Animation(new VersionProperty(name, "1.0"));
+        for(int i=0; i<3; i++){
+            Channel c = new Channel(i, "channel" + i);
+            MotionPath mp = new MotionPath(fact);
+            for(int j=0; j<8; j++){
+                mp.addPoint(j*250, ((i+j)%5)*0.2);
+            }
+            c.addPath(mp);
+            anim.addChannel(c);
+        }
+        return anim;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.api.animation.compiled;
+
+import java.util.Random;
+import org.junit.Test;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.interpolation.cspline.CSplineInterpolatorFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests compact CompiledPath storage against full precision.
+ */
+public class CompiledPathTest {
+    private final static long STEP = 10;
+    private final static double ERROR = CompiledPath.COMPACT_MAX_ERROR + 1e-12;
+
+    @Test
+    public void compactSplineShouldMatchFullPrecision() {
+        CompiledPath path = createSplinePath(40);
+        assertCompactMatches(path);
+    }
+
+    @Test
+    public void compactNoiseShouldMatchFullPrecision() {
+        Random r = new Random(11);
+        CompiledPath path = new CompiledPath(0, STEP, 0);
+        for(int i=0; i<2000; i++){
+            int mode = (i/150)%4;
+            if(mode == 0){
+                path.addPosition(-1.0);
+            }else if(mode == 1){
+                path.addPosition(0.25);
+            }else if(mode == 2){
+                path.addPosition(r.nextDouble());
+            }else{
+                path.addPosition(Math.min(1.0, (i%150)*0.005));
+            }
+        }
+        assertCompactMatches(path);
+    }
+
+    @Test
+    public void compactSplineShouldUseLessMemory() {
+        CompiledPath path = createSplinePath(40);
+        path.trimToSize();
+        long full = path.getMemoryFootprint();
+        path.compact();
+        long compact = path.getMemoryFootprint();
+        assertTrue(full + " <= 4 * " + compact, compact*4 < full);
+    }
+
+    @Test
+    public void modifiedCompactPathShouldExpand() {
+        CompiledPath path = createSplinePath(10);
+        CompiledPath compact = path.clone();
+        compact.compact();
+        CompiledPath copy = compact.clone();
+        assertTrue(copy.isCompact());
+        copy.setPosition(5, 0.5);
+        assertFalse(copy.isCompact());
+        assertEquals(0.5, copy.getPosition(5), 0.0);
+        assertEquals(path.getPosition(6), copy.getPosition(6), ERROR);
+        assertTrue(compact.isCompact());
+        assertEquals(path.getPosition(5), compact.getPosition(5), ERROR);
+        compact.addPosition(0.75);
+        assertFalse(compact.isCompact());
+        assertEquals(path.size() + 1, compact.size());
+        assertEquals(0.75, compact.getPosition(path.size()), 0.0);
+    }
+
+    @Test
+    public void compactMapShouldReportFootprint() {
+        CompiledMap map = new CompiledMap(STEP);
+        map.put(1, createSplinePath(20));
+        map.put(2, createSplinePath(30));
+        assertFalse(map.isCompact());
+        long full = map.getMemoryFootprint();
+        map.compact();
+        assertTrue(map.isCompact());
+        assertTrue(map.getMemoryFootprint() < full);
+    }
+
+    private static void assertCompactMatches(CompiledPath path) {
+        CompiledPath compact = path.clone();
+        compact.compact();
+        assertTrue(compact.isCompact());
+        assertEquals(path.size(), compact.size());
+        double[] vals = compact.toDoubleArray();
+        for(int i=0; i<path.size(); i++){
+            double expected = path.getPosition(i);
+            if(expected < 0){
+                expected = -1.0;
+            }
+            assertEquals(expected, compact.getPosition(i), ERROR);
+            assertEquals(compact.getPosition(i), vals[i], 0.0);
+        }
+        long end = path.getEndTime() + STEP;
+        for(long t=path.getStartTime()-STEP; t<=end; t+=3){
+            assertEquals(path.estimatePosition(t),
+                    compact.estimatePosition(t), ERROR);
+        }
+    }
+
+    private static CompiledPath createSplinePath(int count) {
+        MotionPath mp = new MotionPath(new CSplineInterpolatorFactory());
+        Random r = new Random(count);
+        double x = 100;
+        for(int i=0; i<count; i++){
+            mp.addPoint(x, r.nextDouble());
+            x += 100 + r.nextInt(300);
+        }
+        return mp.compilePath(0, (long)x + 200, STEP);
+    }
+}
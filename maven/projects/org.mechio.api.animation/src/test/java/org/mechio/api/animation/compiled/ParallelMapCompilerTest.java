@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.compiled;
+
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.junit.Test;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.interpolation.InterpolatorFactory;
+import org.mechio.api.interpolation.bezier.BezierInterpolatorFactory;
+import org.mechio.api.interpolation.cspline.CSplineInterpolatorFactory;
+import org.mechio.api.interpolation.linear.LinearInterpolatorFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests that a ParallelMapCompiler produces the same CompiledMap as
+ * Animation.compileMap.
+ */
+public class ParallelMapCompilerTest {
+    private final static long STEP = 10;
+
+    @Test
+    public void parallelCompileShouldMatchSerialCompile() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try{
+            ParallelMapCompiler compiler = new ParallelMapCompiler(pool);
+            assertMapsEqual(createAnimation().compileMap(0, 3000, STEP),
+                    createAnimation().compileMap(0, 3000, STEP, compiler));
+            assertMapsEqual(createAnimation().compileMap(500, 2200, STEP),
+                    createAnimation().compileMap(500, 2200, STEP, compiler));
+            assertMapsEqual(createAnimation().compileMap(-1, -1, STEP),
+                    createAnimation().compileMap(-1, -1, STEP, compiler));
+            assertEquals(3, compiler.getCompileCount());
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void repeatedParallelCompileShouldMatchSerialCompile() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try{
+            ParallelMapCompiler compiler = new ParallelMapCompiler(pool);
+            Animation anim = createAnimation();
+            CompiledMap parallel = anim.compileMap(0, 3000, STEP, compiler);
+            assertMapsEqual(anim.compileMap(0, 3000, STEP), parallel);
+            anim.getChannel(2).getMotionPath(0).addPoint(600, 0.95);
+            assertMapsEqual(anim.compileMap(0, 3000, STEP),
+                    anim.compileMap(0, 3000, STEP, compiler));
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    private static void assertMapsEqual(
+            CompiledMap expected, CompiledMap actual) {
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertEquals(expected.getEndTime(), actual.getEndTime());
+        assertEquals(expected.getStepLength(), actual.getStepLength());
+        assertEquals(expected.keySet(), actual.keySet());
+        for(Entry<Integer,CompiledPath> e : expected.entrySet()){
+            CompiledPath exp = e.getValue();
+            CompiledPath act = actual.get(e.getKey());
+            assertNotNull(act);
+            assertEquals(exp.getStartTime(), act.getStartTime());
+            assertEquals(exp.getStepLength(), act.getStepLength());
+            assertEquals(exp.size(), act.size());
+            for(int i=0; i<exp.size(); i++){
+                assertEquals(exp.getPosition(i), act.getPosition(i), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Creates an Animation whose Channels use different interpolators and
+     * have overlapping, adjacent and disjoint MotionPaths.
+     */
+    private static Animation createAnimation() {
+        InterpolatorFactory[] facts = {
+            new CSplineInterpolatorFactory(),
+            new LinearInterpolatorFactory(),
+            new BezierInterpolatorFactory()
+        };
+        Animation anim = new Animation(new VersionProperty("parallel", "1.0"));
+        for(int i=0; i<6; i++){
+            Channel c = new Channel(i, "channel" + i);
+            InterpolatorFactory fact = facts[i%facts.length];
+            c.addPath(createPath(fact, 0, 1500, i));
+            if(i%3 == 0){
+                c.addPath(createPath(fact, 1000, 2500, i+1));
+            }else if(i%3 == 1){
+                c.addPath(createPath(fact, 1500, 2800, i+2));
+            }else{
+                c.addPath(createPath(fact, 2000, 3000, i+3));
+            }
+            anim.addChannel(c);
+        }
+        return anim;
+    }
+
+    private static MotionPath createPath(
+            InterpolatorFactory fact, long start, long end, int seed) {
+        MotionPath mp = new MotionPath(fact);
+        int count = 6;
+        for(int j=0; j<count; j++){
+            mp.addPoint(start + (end - start)*j/(count-1),
+                    ((seed + j*3)%7)/7.0 + 0.05);
+        }
+        return mp;
+    }
+}
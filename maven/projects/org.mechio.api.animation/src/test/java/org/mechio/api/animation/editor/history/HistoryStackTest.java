@@ -0,0 +1,253 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.editor.history;
+
+import java.awt.event.ActionEvent;
+import org.junit.Test;
+import org.mechio.api.animation.editor.actions.EditorAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the limits, action merging and notifications of a HistoryStack.
+ */
+public class HistoryStackTest {
+
+    @Test
+    public void oldestActionsShouldBeDroppedOverCount() {
+        HistoryStack stack = new HistoryStack();
+        stack.setMergeWindow(0);
+        stack.setMaxCount(3);
+        CountAction state = new CountAction();
+        for(int i=0; i<10; i++){
+            stack.addEvent(state.createIncrement());
+        }
+        assertEquals(4, stack.size());
+        assertEquals(3, stack.getCurrentUndoCount());
+        assertEquals(10, state.myValue);
+
+        stack.gotoTime(0);
+        assertEquals(7, state.myValue);
+        stack.gotoEnd();
+        assertEquals(10, state.myValue);
+    }
+
+    @Test
+    public void oldestActionsShouldBeDroppedOverBytes() {
+        HistoryStack stack = new HistoryStack();
+        stack.setMergeWindow(0);
+        CountAction state = new CountAction();
+        long actionBytes = ((SizedHistoryAction)state.createIncrement()).getMemoryFootprint();
+        stack.setMaxBytes(actionBytes*5);
+        for(int i=0; i<10; i++){
+            stack.addEvent(state.createIncrement());
+        }
+        assertEquals(6, stack.size());
+        assertEquals(actionBytes*5, stack.getMemoryFootprint());
+
+        stack.setMaxBytes(1);
+        assertEquals(2, stack.size());
+        assertEquals(actionBytes, stack.getMemoryFootprint());
+    }
+
+    @Test
+    public void undoneActionsShouldNotBeDropped() {
+        HistoryStack stack = new HistoryStack();
+        stack.setMergeWindow(0);
+        CountAction state = new CountAction();
+        for(int i=0; i<6; i++){
+            stack.addEvent(state.createIncrement());
+        }
+        stack.gotoTime(2);
+        stack.setMaxCount(2);
+        assertEquals(2, state.myValue);
+        assertEquals(1, stack.getCurrentUndoCount());
+        assertEquals(4, stack.getCurrentRedoCount());
+        stack.gotoEnd();
+        assertEquals(6, state.myValue);
+    }
+
+    @Test
+    public void consecutiveActionsShouldMerge() {
+        HistoryStack stack = new HistoryStack();
+        stack.setMergeWindow(60000);
+        CountAction state = new CountAction();
+        stack.addEvent(state.createIncrement());
+        for(int i=0; i<5; i++){
+            stack.addEvent(state.createMergeable());
+        }
+        assertEquals(3, stack.size());
+        assertEquals(6, state.myValue);
+
+        stack.move(-1);
+        assertEquals(1, state.myValue);
+        stack.move(1);
+        assertEquals(6, state.myValue);
+
+        //an action added after moving in the history is not merged
+        stack.move(-1);
+        stack.move(1);
+        stack.addEvent(state.createMergeable());
+        assertEquals(4, stack.size());
+        assertEquals(7, state.myValue);
+        stack.gotoTime(1);
+        assertEquals(1, state.myValue);
+    }
+
+    @Test
+    public void actionsShouldNotMergeWithoutWindow() {
+        HistoryStack stack = new HistoryStack();
+        stack.setMergeWindow(0);
+        CountAction state = new CountAction();
+        for(int i=0; i<5; i++){
+            stack.addEvent(state.createMergeable());
+        }
+        assertEquals(6, stack.size());
+    }
+
+    @Test
+    public void listenersShouldBeToldOfMergesAndTrims() {
+        HistoryStack stack = new HistoryStack();
+        stack.setMergeWindow(60000);
+        stack.setMaxCount(3);
+        RecordingListener listener = new RecordingListener();
+        stack.addListener(listener);
+        CountAction state = new CountAction();
+        stack.addEvent(state.createIncrement());
+        stack.addEvent(state.createMergeable());
+        stack.addEvent(state.createMergeable());
+        assertEquals(3, stack.size());
+        assertEquals(2, listener.myAddedCount);
+        assertEquals(1, listener.myMergedCount);
+        assertEquals(2, listener.myMergedIndex);
+        assertSame(stack.getEvent(2), listener.myLastEvent);
+
+        stack.setMergeWindow(0);
+        stack.addEvent(state.createIncrement());
+        stack.addEvent(state.createIncrement());
+        assertEquals(4, stack.size());
+        assertEquals(1, listener.myTrimmedCount);
+        assertEquals(3, stack.getSelectedIndex());
+        assertEquals(stack.size(), listener.mySize);
+    }
+
+    @Test
+    public void groupsShouldNotBeLimited() {
+        HistoryActionGroup group = new HistoryActionGroup("group", true);
+        CountAction state = new CountAction();
+        for(int i=0; i<HistoryStack.DEFAULT_MAX_COUNT + 10; i++){
+            group.addEvent(state.createMergeable());
+        }
+        assertEquals(HistoryStack.DEFAULT_MAX_COUNT + 11, group.size());
+
+        HistoryStack stack = new HistoryStack();
+        stack.addEvent(group);
+        assertSame(group, stack.getEvent(1));
+        assertEquals(group.getMemoryFootprint(), stack.getMemoryFootprint());
+        stack.gotoTime(0);
+        assertEquals(0, state.myValue);
+    }
+
+    /**
+     * Mirrors the size of a HistoryStack from its notifications.
+     */
+    private static class RecordingListener implements HistoryListener {
+        private int mySize = 1;
+        private int myAddedCount;
+        private int myMergedCount;
+        private int myMergedIndex;
+        private int myTrimmedCount;
+        private HistoryAction myLastEvent;
+
+        @Override
+        public void eventAdded(HistoryStack stack, HistoryAction event, int oldSize) {
+            myAddedCount++;
+            mySize = stack.size();
+            myLastEvent = event;
+        }
+
+        @Override
+        public void eventMerged(HistoryStack stack, HistoryAction event, int index) {
+            myMergedCount++;
+            myMergedIndex = index;
+            assertEquals(mySize, stack.size());
+            myLastEvent = event;
+        }
+
+        @Override
+        public void eventsTrimmed(HistoryStack stack, int count) {
+            myTrimmedCount += count;
+            mySize -= count;
+        }
+
+        @Override
+        public void timeSelected(HistoryStack stack, int time) {}
+    }
+
+    private static class CountAction {
+        private int myValue;
+
+        HistoryAction createIncrement(){
+            myValue++;
+            return new DefaultHistoryAction("increment",
+                    new AddAction(this, 1), new AddAction(this, -1), true);
+        }
+
+        HistoryAction createMergeable(){
+            myValue++;
+            return new AddHistoryAction(this, 1);
+        }
+    }
+
+    private static class AddAction extends EditorAction {
+        private CountAction myState;
+        private int myAmount;
+
+        AddAction(CountAction state, int amount){
+            super(null, null);
+            myState = state;
+            myAmount = amount;
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            myState.myValue += myAmount;
+        }
+    }
+
+    private static class AddHistoryAction
+            extends DefaultHistoryAction implements MergeableHistoryAction {
+        private CountAction myState;
+        private int myAmount;
+
+        AddHistoryAction(CountAction state, int amount){
+            super("add", new AddAction(state, amount), new AddAction(state, -amount), true);
+            myState = state;
+            myAmount = amount;
+        }
+
+        @Override
+        public HistoryAction merge(HistoryAction next) {
+            if(!(next instanceof AddHistoryAction)){
+                return null;
+            }
+            AddHistoryAction add = (AddHistoryAction)next;
+            return new AddHistoryAction(myState, myAmount + add.myAmount);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.library;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.animation.compiled.CompiledAnimationCache;
+import org.mechio.api.animation.compiled.CompiledMap;
+import org.mechio.api.animation.xml.AnimationFileReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that an AnimationFolderWatcher coalesces changes to a file, only
+ * reloads changed files, and applies a change and a delete in order.
+ */
+public class AnimationFolderWatcherTest {
+    private final static long DEBOUNCE = 100;
+    private final static long TIMEOUT = 5000;
+
+    private File myDir;
+    private DefaultAnimationLibrary myLibrary;
+    private RecordingReader myReader;
+    private AnimationFolderWatcher myWatcher;
+
+    @Before
+    public void setUp() throws IOException {
+        myDir = Files.createTempDirectory("animwatch").toFile();
+        myReader = new RecordingReader();
+        myLibrary = new DefaultAnimationLibrary("test");
+        myLibrary.setCompiledAnimationCache(null);
+        for(String name : new String[]{"a.xml", "b.xml"}){
+            writeFile(name, "animation");
+            myLibrary.add(createAnimation(name));
+        }
+        myWatcher = new AnimationFolderWatcher(
+                myLibrary, myReader, myDir.getAbsolutePath(), false);
+        myWatcher.setDebounceMillis(DEBOUNCE);
+    }
+
+    @After
+    public void tearDown() {
+        myWatcher.stop();
+        File[] files = myDir.listFiles();
+        if(files != null){
+            for(File f : files){
+                f.delete();
+            }
+        }
+        myDir.delete();
+    }
+
+    @Test
+    public void repeatedChangesShouldReloadOnce()
+            throws IOException, InterruptedException {
+        myWatcher.start();
+        StringBuilder content = new StringBuilder("animation");
+        for(int i=0; i<5; i++){
+            content.append(i);
+            writeFile("a.xml", content.toString());
+            Thread.sleep(DEBOUNCE/5);
+        }
+        waitForReloads(1);
+        Thread.sleep(DEBOUNCE*3);
+
+        assertEquals(Arrays.asList("a.xml"), myReader.getReads());
+        assertEquals(1, myWatcher.getReloadCount());
+        assertEquals(0, myWatcher.getFailureCount());
+        assertTrue(myWatcher.getLastReloadLatencyNanos()
+                >= TimeUnit.MILLISECONDS.toNanos(DEBOUNCE));
+        assertEquals(2, myLibrary.getAnimationVersions().size());
+    }
+
+    @Test
+    public void onlyChangedFilesShouldReload()
+            throws IOException, InterruptedException {
+        myWatcher.start();
+        writeFile("b.xml", "changed animation");
+        writeFile("c.xml", "new animation");
+        writeFile(".hidden.xml", "ignored");
+        writeFile("notes.txt", "ignored");
+        waitForReloads(2);
+        Thread.sleep(DEBOUNCE*3);
+
+        List<String> reads = myReader.getReads();
+        Collections.sort(reads);
+        assertEquals(Arrays.asList("b.xml", "c.xml"), reads);
+        assertEquals(2, myWatcher.getReloadCount());
+        List<VersionProperty> versions = myLibrary.getAnimationVersions();
+        assertEquals(3, versions.size());
+        assertEquals("a.xml", versions.get(0).getName());
+        assertEquals("b.xml", versions.get(1).getName());
+        assertEquals("c.xml", versions.get(2).getName());
+        assertNotNull(myLibrary.getAnimation(versions.get(2)));
+    }
+
+    @Test
+    public void deleteAfterChangeShouldRemoveAnimation()
+            throws IOException, InterruptedException {
+        BlockingCache cache = new BlockingCache();
+        myLibrary.setCompiledAnimationCache(cache);
+        myWatcher.setStepLength(10);
+        myWatcher.start();
+        writeFile("a.xml", "changed animation");
+        writeFile("c.xml", "new animation");
+        assertTrue(cache.myEntered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        // Both deletes settle while the changes are still being published.
+        assertTrue(new File(myDir, "a.xml").delete());
+        assertTrue(new File(myDir, "c.xml").delete());
+        Thread.sleep(DEBOUNCE*4);
+        cache.myRelease.countDown();
+        waitForRemovals(2);
+
+        assertEquals(2, myWatcher.getReloadCount());
+        List<VersionProperty> versions = myLibrary.getAnimationVersions();
+        assertEquals(1, versions.size());
+        assertEquals("b.xml", versions.get(0).getName());
+    }
+
+    private void waitForReloads(long count) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while(myWatcher.getReloadCount() < count){
+            if(System.currentTimeMillis() > end){
+                fail("Expected " + count + " reloads, found "
+                        + myWatcher.getReloadCount());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void waitForRemovals(long count) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while(myWatcher.getRemovedCount() < count){
+            if(System.currentTimeMillis() > end){
+                fail("Expected " + count + " removals, found "
+                        + myWatcher.getRemovedCount());
+            }
+            Thread.sleep(10);
+        }
+        assertFalse(myWatcher.getRemovedCount() > count);
+    }
+
+    private void writeFile(String name, String content) throws IOException {
+        try(FileOutputStream out =
+                new FileOutputStream(new File(myDir, name))){
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    private static Animation createAnimation(String name) {
+        Animation anim = new Animation(new VersionProperty(name, "1.0"));
+        Channel c = new Channel(0, "joint");
+        MotionPath mp = new MotionPath();
+        mp.addPoint(0, 0.2);
+        mp.addPoint(500, 0.8);
+        c.addPath(mp);
+        anim.addChannel(c);
+        return anim;
+    }
+
+    /**
+     * Records the names of the files read.
+     */
+    private static class RecordingReader implements AnimationFileReader {
+        private final List<String> myReads =
+                Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public Animation readAnimation(String file) throws Exception {
+            String name = new File(file).getName();
+            myReads.add(name);
+            return createAnimation("read");
+        }
+
+        List<String> getReads() {
+            synchronized(myReads){
+                return new ArrayList<>(myReads);
+            }
+        }
+    }
+
+    /**
+     * Holds the first precompile until it is released, keeping the reloaded
+     * Animations waiting on the publisher thread.
+     */
+    private static class BlockingCache extends CompiledAnimationCache {
+        private final CountDownLatch myEntered = new CountDownLatch(1);
+        private final CountDownLatch myRelease = new CountDownLatch(1);
+
+        BlockingCache() {
+            super(1024*1024, null);
+        }
+
+        @Override
+        public CompiledMap getCompiledMap(
+                Animation anim, long start, long end, long stepLength) {
+            myEntered.countDown();
+            try{
+                myRelease.await();
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+            return super.getCompiledMap(anim, start, end, stepLength);
+        }
+    }
+}
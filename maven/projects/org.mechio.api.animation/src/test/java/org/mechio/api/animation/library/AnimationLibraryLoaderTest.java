@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.library;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.junit.Test;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.animation.compiled.CompiledAnimationCache;
+import org.mechio.api.animation.compiled.CompiledMapFile;
+import org.mechio.api.animation.xml.AnimationFileReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests loading an Animation folder with precompiled Animations.
+ */
+public class AnimationLibraryLoaderTest {
+    private final static long STEP = 20;
+
+    @Test
+    public void currentCompiledFileShouldSkipParseAndHitCache() throws IOException {
+        File dir = Files.createTempDirectory("animlib").toFile();
+        try{
+            File source = writeSource(dir, "wave.xml", "wave");
+            CountingReader reader = new CountingReader();
+            assertEquals(1, AnimationLibraryLoader.writeCompiledAnimations(
+                    reader, dir.getPath(), false, STEP));
+            assertTrue(CompiledMapFile.getCompiledFile(source).isFile());
+
+            reader.myReadCount = 0;
+            AnimationLibrary lib = AnimationLibraryLoader.loadAnimationFolder(
+                    "test", reader, dir.getPath(), false);
+            assertEquals(0, reader.myReadCount);
+            List<VersionProperty> versions = lib.getAnimationVersions();
+            assertEquals(1, versions.size());
+            Animation anim = lib.getAnimation(versions.get(0));
+            assertNotNull(anim);
+            Animation expected = createAnimation();
+            expected.setVersion("wave.xml", "2.0");
+            assertEquals(expected, anim);
+
+            CompiledAnimationCache cache = CompiledAnimationCache.getDefault();
+            long hits = cache.getHitCount();
+            cache.getCompiledMap(anim, -1, -1, STEP);
+            assertEquals(hits + 1, cache.getHitCount());
+        }finally{
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void staleCompiledFileShouldBeParsed() throws IOException {
+        File dir = Files.createTempDirectory("animlib").toFile();
+        try{
+            File source = writeSource(dir, "stale.xml", "wave");
+            CountingReader reader = new CountingReader();
+            AnimationLibraryLoader.writeCompiledAnimations(
+                    reader, dir.getPath(), false, STEP);
+            writeSource(dir, "stale.xml", "wave, edited");
+            assertTrue(source.setLastModified(source.lastModified() + 2000));
+
+            reader.myReadCount = 0;
+            AnimationLibrary lib = AnimationLibraryLoader.loadAnimationFolder(
+                    "test", reader, dir.getPath(), false);
+            assertEquals(1, reader.myReadCount);
+            Animation anim = lib.getAnimation(lib.getAnimationVersions().get(0));
+            CompiledAnimationCache cache = CompiledAnimationCache.getDefault();
+            long misses = cache.getMissCount();
+            cache.getCompiledMap(anim, -1, -1, STEP);
+            assertEquals(misses + 1, cache.getMissCount());
+        }finally{
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void partialCompiledFilesShouldNotBeLoaded() throws IOException {
+        File dir = Files.createTempDirectory("animlib").toFile();
+        try{
+            writeSource(dir, "wave.xml", "wave");
+            writeSource(dir, "wave.xml" + CompiledMapFile.TEMP_SUFFIX, "partial");
+            CountingReader reader = new CountingReader();
+            AnimationLibrary lib = AnimationLibraryLoader.loadAnimationFolder(
+                    "test", reader, dir.getPath(), false);
+            assertEquals(1, reader.myReadCount);
+            assertEquals(1, lib.getAnimationVersions().size());
+            assertFalse(CompiledMapFile.getCompiledFile(
+                    new File(dir, "wave.xml")).exists());
+        }finally{
+            delete(dir);
+        }
+    }
+
+    private static Animation createAnimation() {
+        Animation anim = new Animation(new VersionProperty("wave", "2.0"));
+        for(int i=0; i<2; i++){
+            Channel c = new Channel(i, "joint" + i);
+            MotionPath mp = new MotionPath();
+            mp.setName("path" + i);
+            for(int j=0; j<6; j++){
+                mp.addPoint(j*400, ((i+j)%4)*0.25);
+            }
+            c.addPath(mp);
+            anim.addChannel(c);
+        }
+        return anim;
+    }
+
+    private static File writeSource(File dir, String name, String content)
+            throws IOException {
+        File file = new File(dir, name);
+        try(FileOutputStream out = new FileOutputStream(file)){
+            out.write(content.getBytes("UTF-8"));
+        }
+        return file;
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if(files != null){
+            for(File f : files){
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static class CountingReader implements AnimationFileReader {
+        private int myReadCount;
+
+        @Override
+        public Animation readAnimation(String file) throws Exception {
+            myReadCount++;
+            return createAnimation();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.library;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.junit.Test;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.animation.xml.AnimationFileReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a LazyAnimationLibrary parses files on first access, warms up
+ * in priority order, and counts its loads.
+ */
+public class LazyAnimationLibraryTest {
+    @Test
+    public void animationShouldLoadOnFirstAccess() throws IOException {
+        File dir = Files.createTempDirectory("lazylib").toFile();
+        try{
+            RecordingReader reader = new RecordingReader();
+            LazyAnimationLibrary lib = createLibrary(dir, reader, "a", "b", "c");
+            assertEquals(3, lib.getAnimationCount());
+            assertEquals(0, lib.getLoadedCount());
+            assertTrue(reader.getReads().isEmpty());
+            for(VersionProperty v : lib.getAnimationVersions()){
+                assertEquals(LazyAnimationLibrary.UNKNOWN_VERSION_NUMBER,
+                        v.getNumber());
+            }
+
+            Animation anim = lib.getAnimation(version("b", null));
+            assertNotNull(anim);
+            assertEquals(new VersionProperty("b", "1.0"), anim.getVersion());
+            assertEquals(Arrays.asList("b"), reader.getReads());
+            assertTrue(lib.isLoaded("b"));
+            assertFalse(lib.isLoaded("a"));
+
+            assertSame(anim, lib.getAnimation(version("b", "1.0")));
+            assertNull(lib.getAnimation(version("b", "2.0")));
+            assertNull(lib.getAnimation(version("missing", null)));
+            assertEquals(1, reader.getReads().size());
+            assertEquals(1, lib.getLoadedCount());
+            assertTrue(lib.getAnimationVersions().contains(
+                    new VersionProperty("b", "1.0")));
+        }finally{
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void warmUpShouldFollowPriority()
+            throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("lazylib").toFile();
+        try{
+            RecordingReader reader = new RecordingReader();
+            LazyAnimationLibrary lib =
+                    createLibrary(dir, reader, "a", "b", "c", "d", "e");
+            lib.setWarmUpOrder(Arrays.asList("d", "b"));
+            lib.setWarmUpPriority("e", 1);
+            lib.getAnimation(version("b", null));
+
+            lib.startWarmUp(1, 0);
+            assertTrue(lib.awaitWarmUp(10, TimeUnit.SECONDS));
+
+            assertEquals(Arrays.asList("b", "d", "e", "a", "c"),
+                    reader.getReads());
+            assertEquals(5, lib.getLoadedCount());
+            assertEquals(4, lib.getWarmedCount());
+            assertEquals(1, lib.getColdLookupCount());
+            assertEquals(5, lib.getLoadCount());
+        }finally{
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void loadMetricsShouldBeCounted() throws IOException {
+        File dir = Files.createTempDirectory("lazylib").toFile();
+        try{
+            RecordingReader reader = new RecordingReader();
+            reader.myFailingName = "bad";
+            LazyAnimationLibrary lib = createLibrary(dir, reader, "good", "bad");
+
+            assertNotNull(lib.getAnimation(version("good", null)));
+            assertNull(lib.getAnimation(version("bad", null)));
+            assertNull(lib.getAnimation(version("bad", null)));
+            assertEquals(2, reader.getReads().size());
+            assertEquals(2, lib.getLoadCount());
+            assertEquals(1, lib.getFailedLoadCount());
+            assertEquals(3, lib.getColdLookupCount());
+            assertTrue(lib.getMaxLoadNanos() > 0);
+            assertTrue(lib.getAverageLoadNanos() <= lib.getMaxLoadNanos());
+            assertTrue(lib.getMaxColdLookupNanos() >= lib.getMaxLoadNanos());
+            assertTrue(lib.getAverageColdLookupNanos()
+                    <= lib.getMaxColdLookupNanos());
+            assertTrue(lib.getModifiedAnimations().isEmpty());
+
+            reader.myFailingName = null;
+            writeFile(dir, "bad", "fixed and longer");
+            assertEquals(Arrays.asList("bad"), lib.getModifiedAnimations());
+            assertNotNull(lib.getAnimation(version("bad", null)));
+            assertEquals(3, lib.getLoadCount());
+            assertEquals(1, lib.getFailedLoadCount());
+            assertEquals(2, lib.getLoadedCount());
+        }finally{
+            delete(dir);
+        }
+    }
+
+    private static LazyAnimationLibrary createLibrary(File dir,
+            AnimationFileReader reader, String... names) throws IOException {
+        List<File> files = new ArrayList<>();
+        for(String name : names){
+            files.add(writeFile(dir, name, "animation"));
+        }
+        LazyAnimationLibrary lib = new LazyAnimationLibrary("test", reader);
+        lib.setCompiledAnimationCache(null);
+        lib.index(files);
+        return lib;
+    }
+
+    private static VersionProperty version(String name, String number) {
+        return new VersionProperty(name, number);
+    }
+
+    private static File writeFile(File dir, String name, String content)
+            throws IOException {
+        File file = new File(dir, name);
+        try(FileOutputStream out = new FileOutputStream(file)){
+            out.write(content.getBytes("UTF-8"));
+        }
+        return file;
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if(files != null){
+            for(File f : files){
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Records the names of the files read, and fails to read one file.
+     */
+    private static class RecordingReader implements AnimationFileReader {
+        private final List<String> myReads =
+                Collections.synchronizedList(new ArrayList<String>());
+        private volatile String myFailingName;
+
+        @Override
+        public Animation readAnimation(String file) throws Exception {
+            String name = new File(file).getName();
+            myReads.add(name);
+            if(name.equals(myFailingName)){
+                throw new IOException("Unable to parse " + name);
+            }
+            Animation anim = new Animation(new VersionProperty(name, "1.0"));
+            Channel c = new Channel(0, "joint");
+            MotionPath mp = new MotionPath();
+            mp.addPoint(0, 0.2);
+            mp.addPoint(500, 0.8);
+            c.addPath(mp);
+            anim.addChannel(c);
+            return anim;
+        }
+
+        List<String> getReads() {
+            synchronized(myReads){
+                return new ArrayList<>(myReads);
+            }
+        }
+    }
+}
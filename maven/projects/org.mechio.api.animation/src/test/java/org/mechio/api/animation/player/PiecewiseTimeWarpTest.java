@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.player;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that a PiecewiseTimeWarp interpolates linearly between its points
+ * and rejects invalid points.
+ */
+public class PiecewiseTimeWarpTest {
+    @Test
+    public void progressShouldBeInterpolated() {
+        TimeWarp warp = new PiecewiseTimeWarp(points(
+                0, 0, 0.2, 0.5, 0.6, 0.6, 1, 1));
+        assertEquals(0.0, warp.warp(0.0), 1e-12);
+        assertEquals(0.25, warp.warp(0.1), 1e-12);
+        assertEquals(0.5, warp.warp(0.2), 1e-12);
+        assertEquals(0.55, warp.warp(0.4), 1e-12);
+        assertEquals(0.6, warp.warp(0.6), 1e-12);
+        assertEquals(0.8, warp.warp(0.8), 1e-12);
+        assertEquals(1.0, warp.warp(1.0), 1e-12);
+    }
+
+    @Test
+    public void manyPointsShouldMatchCurve() {
+        List<Point2D> curve = new ArrayList<>();
+        int count = 41;
+        for(int i=0; i<count; i++){
+            double x = i/(double)(count-1);
+            curve.add(new Point2D.Double(x, x*x));
+        }
+        TimeWarp warp = new PiecewiseTimeWarp(curve);
+        for(int i=0; i<count; i++){
+            double x = i/(double)(count-1);
+            assertEquals(x*x, warp.warp(x), 1e-12);
+        }
+        double a = 10/40.0, b = 11/40.0;
+        assertEquals((a*a + b*b)/2, warp.warp((a + b)/2), 1e-12);
+    }
+
+    @Test
+    public void invalidPointsShouldBeRejected() {
+        assertRejected(points(0, 0));
+        assertRejected(points(0.1, 0, 1, 1));
+        assertRejected(points(0, 0, 0.9, 1));
+        assertRejected(points(0, 0, 0.5, 0.3, 0.5, 0.6, 1, 1));
+        assertRejected(points(0, 0, 0.6, 0.3, 0.4, 0.6, 1, 1));
+        try{
+            new PiecewiseTimeWarp(null);
+            fail("Null points should be rejected.");
+        }catch(NullPointerException ex){
+        }
+    }
+
+    private static void assertRejected(List<Point2D> points) {
+        try{
+            new PiecewiseTimeWarp(points);
+            fail("Points should be rejected: " + points);
+        }catch(IllegalArgumentException ex){
+        }
+    }
+
+    private static List<Point2D> points(double... xy) {
+        Point2D[] points = new Point2D[xy.length/2];
+        for(int i=0; i<points.length; i++){
+            points[i] = new Point2D.Double(xy[2*i], xy[2*i+1]);
+        }
+        return Arrays.asList(points);
+    }
+}
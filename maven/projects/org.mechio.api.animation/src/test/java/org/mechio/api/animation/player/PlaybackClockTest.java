@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.animation.player;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that a PlaybackClock continues from its current position when the
+ * rate changes, plays in reverse to the start, and applies its TimeWarp.
+ */
+public class PlaybackClockTest {
+    private final static long LENGTH = 1000;
+
+    @Test
+    public void rateChangeShouldNotJump() {
+        PlaybackClock clock = new PlaybackClock();
+        clock.reset(LENGTH);
+        assertEquals(400, clock.getAnimationOffset(400));
+
+        clock.setRate(400, 2.0);
+        assertEquals(400, clock.getAnimationOffset(400));
+        assertEquals(600, clock.getAnimationOffset(500));
+        assertEquals(200, clock.getRemainingTime(500));
+
+        clock.setRate(500, 0.5);
+        assertEquals(600, clock.getAnimationOffset(500));
+        assertEquals(700, clock.getAnimationOffset(700));
+        assertEquals(600, clock.getRemainingTime(700));
+        assertEquals(LENGTH, clock.getAnimationOffset(1300));
+        assertEquals(0, clock.getRemainingTime(1300));
+    }
+
+    @Test
+    public void zeroRateShouldHoldPosition() {
+        PlaybackClock clock = new PlaybackClock();
+        clock.reset(LENGTH);
+        clock.setRate(300, 0.0);
+        assertEquals(300, clock.getAnimationOffset(300));
+        assertEquals(300, clock.getAnimationOffset(5000));
+        assertEquals(Long.MAX_VALUE, clock.getRemainingTime(5000));
+        clock.setRate(5000, 1.0);
+        assertEquals(400, clock.getAnimationOffset(5100));
+    }
+
+    @Test
+    public void reversePlaybackShouldReachStart() {
+        PlaybackClock clock = new PlaybackClock();
+        clock.setRate(0, -2.0);
+        clock.reset(LENGTH);
+        assertTrue(clock.isReversed());
+        assertEquals(LENGTH, clock.getAnimationOffset(0));
+        assertEquals(500, clock.getRemainingTime(0));
+        assertEquals(600, clock.getAnimationOffset(200));
+        assertEquals(0, clock.getAnimationOffset(500));
+        assertEquals(0, clock.getRemainingTime(500));
+        assertTrue(clock.getRemainingTime(600) <= 0);
+    }
+
+    @Test
+    public void reversingMidPlayShouldReturnToStart() {
+        PlaybackClock clock = new PlaybackClock();
+        clock.reset(LENGTH);
+        clock.setRate(600, -1.0);
+        assertTrue(clock.isReversed());
+        assertEquals(600, clock.getAnimationOffset(600));
+        assertEquals(600, clock.getRemainingTime(600));
+        assertEquals(100, clock.getAnimationOffset(1100));
+        assertEquals(0, clock.getRemainingTime(1200));
+        clock.setRate(1200, 1.0);
+        assertFalse(clock.isReversed());
+        assertEquals(LENGTH, clock.getRemainingTime(1200));
+    }
+
+    @Test
+    public void timeWarpShouldRemapOffset() {
+        PlaybackClock clock = new PlaybackClock();
+        clock.setTimeWarp(new PiecewiseTimeWarp(Arrays.<Point2D>asList(
+                new Point2D.Double(0, 0),
+                new Point2D.Double(0.5, 0.25),
+                new Point2D.Double(1, 1))));
+        clock.reset(LENGTH);
+        assertEquals(0, clock.getAnimationOffset(0));
+        assertEquals(125, clock.getAnimationOffset(250));
+        assertEquals(250, clock.getAnimationOffset(500));
+        assertEquals(625, clock.getAnimationOffset(750));
+        assertEquals(LENGTH, clock.getAnimationOffset(1000));
+        assertEquals(1200, clock.getAnimationOffset(1200));
+        assertEquals(500, clock.getRemainingTime(500));
+
+        clock.setRate(500, 2.0);
+        assertEquals(625, clock.getAnimationOffset(625));
+        clock.setTimeWarp(null);
+        assertEquals(750, clock.getAnimationOffset(625));
+    }
+
+    @Test
+    public void invalidRateShouldBeRejected() {
+        PlaybackClock clock = new PlaybackClock();
+        clock.reset(LENGTH);
+        for(double rate : new double[]{Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}){
+            try{
+                clock.setRate(100, rate);
+                fail("Rate should be rejected: " + rate);
+            }catch(IllegalArgumentException ex){
+            }
+        }
+        assertEquals(1.0, clock.getRate(), 0.0);
+        assertEquals(100, clock.getAnimationOffset(100));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.interpolation;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.mechio.api.interpolation.bezier.BezierInterpolator;
+import org.mechio.api.interpolation.cspline.CSplineInterpolator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that adaptively sampled interpolations stay within their tolerance
+ * of the exact curve, using fewer points than fixed sampling.
+ */
+public class AdaptiveSamplingTest {
+    private final static double TOLERANCE = 0.001;
+
+    @Test
+    public void cSplineShouldStayWithinTolerance() {
+        testSampling(new CSplineInterpolator(), new CSplineInterpolator(TOLERANCE), 100);
+    }
+
+    @Test
+    public void bezierShouldStayWithinTolerance() {
+        testSampling(new BezierInterpolator(), new BezierInterpolator(TOLERANCE), 12);
+    }
+
+    @Test
+    public void straightLineShouldUseFewPoints() {
+        CSplineInterpolator interpolator = new CSplineInterpolator(TOLERANCE);
+        for (int i = 0; i < 10; i++) {
+            interpolator.addPoint(i * 1000.0, 0.5);
+        }
+        //minimum subdivision of each of the 9 segments
+        assertEquals(9 * 5, interpolator.getInterpolatedPoints().size());
+    }
+
+    private void testSampling(EvaluableInterpolator fixed,
+            EvaluableInterpolator adaptive, int count) {
+        Random random = new Random(11);
+        double x = 0;
+        for (int i = 0; i < count; i++) {
+            //positions away from the bounds so the curve is not clipped
+            double y = 0.25 + 0.5 * random.nextDouble();
+            fixed.addPoint(x, y);
+            adaptive.addPoint(x, y);
+            x += 100 + random.nextInt(300);
+        }
+        List<Point2D> points = adaptive.getInterpolatedPoints();
+        assertTrue(points.size() < fixed.getInterpolatedPoints().size());
+        for (int i = 1; i < points.size(); i++) {
+            Point2D a = points.get(i - 1);
+            Point2D b = points.get(i);
+            for (double t = 0.125; t < 1.0; t += 0.125) {
+                double px = a.getX() + (b.getX() - a.getX()) * t;
+                double py = a.getY() + (b.getY() - a.getY()) * t;
+                assertEquals(adaptive.evaluate(px), py, 2 * TOLERANCE);
+            }
+        }
+    }
+}
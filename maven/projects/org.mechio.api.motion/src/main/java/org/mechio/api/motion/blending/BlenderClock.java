@@ -0,0 +1,415 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fixed-rate scheduler for driving a Blender from System.nanoTime.
+ * <p>
+ * Tick deadlines are computed from the start time rather than from the end
+ * of the previous tick, so timing errors do not accumulate.  The clock parks
+ * until shortly before each deadline and then spins for the remainder.
+ * Each tick is passed the scheduled tick time and the measured time since the
+ * previous tick started, so a late or caught-up tick integrates over the time
+ * which actually passed.  The difference between the scheduled and actual
+ * tick time is recorded as jitter.
+ * <p>
+ * When a tick runs past the next deadline, the OverrunPolicy decides whether
+ * the missed ticks are run back to back (CATCH_UP) or dropped (SKIP).  With
+ * CATCH_UP, at most the max catch-up count of ticks are run back to back
+ * before the clock is on time again; the oldest missed ticks beyond that are
+ * dropped.
+ */
+public class BlenderClock {
+    private static final Logger theLogger = LoggerFactory.getLogger(BlenderClock.class);
+    private final static int theJitterSampleCount = 1024;
+    private final static long theDefaultSpinNanos = TimeUnit.MICROSECONDS.toNanos(200);
+    private final static int theDefaultMaxCatchUpTicks = 4;
+
+    /**
+     * Behavior when a tick finishes after the following tick's deadline.
+     */
+    public static enum OverrunPolicy {
+        /**
+         * Run the missed ticks immediately, up to the max catch-up count
+         * until a tick finishes on time.  The oldest missed ticks beyond the
+         * count are skipped.
+         */
+        CATCH_UP,
+        /**
+         * Drop the missed ticks and wait for the next deadline.
+         */
+        SKIP
+    }
+
+    /**
+     * Receives ticks from a BlenderClock.
+     */
+    public static interface TickHandler {
+        /**
+         * Called once per tick on the clock thread.
+         * @param time scheduled tick time in milliseconds UTC
+         * @param interval measured milliseconds since the previous tick
+         * started
+         */
+        public void handleTick(long time, long interval);
+    }
+
+    /**
+     * Source of time for a BlenderClock, replaced in tests to drive the
+     * clock without waiting.
+     */
+    static interface TimeSource {
+        /**
+         * Returns the current value of the monotonic clock.
+         * @return current time in nanoseconds
+         */
+        public long nanoTime();
+        /**
+         * Returns the current wall clock time.
+         * @return current time in milliseconds UTC
+         */
+        public long currentTimeMillis();
+        /**
+         * Waits for up to the given time.
+         * @param blocker object the clock is waiting on
+         * @param nanos nanoseconds to wait
+         */
+        public void parkNanos(Object blocker, long nanos);
+    }
+
+    private final static TimeSource theSystemTime = new TimeSource() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void parkNanos(Object blocker, long nanos) {
+            LockSupport.parkNanos(blocker, nanos);
+        }
+    };
+
+    private TickHandler myHandler;
+    private TimeSource myTimeSource;
+    private long myPeriodNanos;
+    private long mySpinNanos;
+    private int myMaxCatchUpTicks;
+    private OverrunPolicy myOverrunPolicy;
+    private Thread myThread;
+    private volatile boolean myRunningFlag;
+    private long myEpochOffsetNanos;
+
+    private final long[] myJitterSamples;
+    private int myJitterSampleIndex;
+    private int myJitterSampleSize;
+    private long myMaxJitterNanos;
+    private long myTickCount;
+    private long myOverrunCount;
+    private long mySkippedTickCount;
+
+    /**
+     * Creates a new BlenderClock.
+     * @param intervalMillisec milliseconds between ticks
+     * @param handler TickHandler to call each tick
+     */
+    public BlenderClock(long intervalMillisec, TickHandler handler){
+        this(TimeUnit.MILLISECONDS.toNanos(intervalMillisec),
+                OverrunPolicy.SKIP, handler);
+    }
+
+    /**
+     * Creates a new BlenderClock.
+     * @param periodNanos nanoseconds between ticks
+     * @param policy OverrunPolicy to use
+     * @param handler TickHandler to call each tick
+     */
+    public BlenderClock(
+            long periodNanos, OverrunPolicy policy, TickHandler handler){
+        if(handler == null || policy == null){
+            throw new NullPointerException();
+        }
+        if(periodNanos <= 0){
+            throw new IllegalArgumentException(
+                    "periodNanos must be greater than zero");
+        }
+        myHandler = handler;
+        myTimeSource = theSystemTime;
+        myPeriodNanos = periodNanos;
+        myOverrunPolicy = policy;
+        mySpinNanos = theDefaultSpinNanos;
+        myMaxCatchUpTicks = theDefaultMaxCatchUpTicks;
+        myJitterSamples = new long[theJitterSampleCount];
+    }
+
+    /**
+     * Sets how long before each deadline the clock stops parking and begins
+     * spinning.  Zero disables spinning.
+     * @param spinNanos nanoseconds to spin before each deadline
+     */
+    public void setSpinNanos(long spinNanos){
+        mySpinNanos = Math.max(0, spinNanos);
+    }
+
+    /**
+     * Sets the maximum number of missed ticks run back to back when using
+     * OverrunPolicy.CATCH_UP.  The count is reset once a tick finishes
+     * before the next deadline.
+     * @param count maximum number of missed ticks to run
+     */
+    public void setMaxCatchUpTicks(int count){
+        myMaxCatchUpTicks = Math.max(0, count);
+    }
+
+    /**
+     * Returns the OverrunPolicy.
+     * @return OverrunPolicy
+     */
+    public OverrunPolicy getOverrunPolicy(){
+        return myOverrunPolicy;
+    }
+
+    /**
+     * Returns the tick period in nanoseconds.
+     * @return tick period in nanoseconds
+     */
+    public long getPeriodNanos(){
+        return myPeriodNanos;
+    }
+
+    /**
+     * Replaces the source of time.  Must be called before the clock starts.
+     * @param time TimeSource to use
+     */
+    void setTimeSource(TimeSource time){
+        if(time == null){
+            throw new NullPointerException();
+        }
+        myTimeSource = time;
+    }
+
+    /**
+     * Runs the clock on the calling thread until stop is called from a
+     * tick.  Does nothing if the clock is running.
+     */
+    void runOnCurrentThread(){
+        synchronized(this){
+            if(myRunningFlag){
+                return;
+            }
+            myRunningFlag = true;
+        }
+        runLoop();
+    }
+
+    /**
+     * Starts the clock thread.  Does nothing if the clock is running.
+     */
+    public synchronized void start(){
+        if(myRunningFlag){
+            return;
+        }
+        myRunningFlag = true;
+        myThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "BlenderClock");
+        myThread.setDaemon(true);
+        myThread.setPriority(Thread.MAX_PRIORITY);
+        myThread.start();
+    }
+
+    /**
+     * Stops the clock thread and waits for the current tick to finish.
+     */
+    public void stop(){
+        Thread t;
+        synchronized(this){
+            if(!myRunningFlag){
+                return;
+            }
+            myRunningFlag = false;
+            t = myThread;
+            myThread = null;
+        }
+        if(t == null || t == Thread.currentThread()){
+            return;
+        }
+        LockSupport.unpark(t);
+        try{
+            t.join(TimeUnit.NANOSECONDS.toMillis(myPeriodNanos) + 1000);
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns true if the clock thread is running.
+     * @return true if the clock thread is running
+     */
+    public boolean isRunning(){
+        return myRunningFlag;
+    }
+
+    private void runLoop(){
+        TimeSource time = myTimeSource;
+        long start = time.nanoTime();
+        myEpochOffsetNanos =
+                TimeUnit.MILLISECONDS.toNanos(time.currentTimeMillis()) - start;
+        long prevMillis = toMillisUTC(start);
+        long next = start + myPeriodNanos;
+        int catchUp = 0;
+        while(myRunningFlag){
+            waitUntil(time, next);
+            if(!myRunningFlag){
+                break;
+            }
+            long now = time.nanoTime();
+            recordJitter(now - next);
+            long nowMillis = toMillisUTC(now);
+            try{
+                myHandler.handleTick(toMillisUTC(next), nowMillis - prevMillis);
+            }catch(Throwable t){
+                theLogger.warn("Error in blender tick.", t);
+            }
+            prevMillis = nowMillis;
+            next += myPeriodNanos;
+            long end = time.nanoTime();
+            if(end <= next){
+                catchUp = 0;
+                continue;
+            }
+            long missed = (end - next) / myPeriodNanos + 1;
+            long allowed = 0;
+            if(myOverrunPolicy == OverrunPolicy.CATCH_UP){
+                allowed = Math.min(missed, myMaxCatchUpTicks - catchUp);
+            }
+            long skipped = missed - allowed;
+            recordOverrun(skipped);
+            next += skipped * myPeriodNanos;
+            catchUp = allowed > 0 ? catchUp + 1 : 0;
+        }
+    }
+
+    private void waitUntil(TimeSource time, long deadline){
+        while(myRunningFlag){
+            long remaining = deadline - time.nanoTime();
+            if(remaining <= 0){
+                return;
+            }else if(remaining > mySpinNanos){
+                time.parkNanos(this, remaining - mySpinNanos);
+            }
+        }
+    }
+
+    private long toMillisUTC(long nanoTime){
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime + myEpochOffsetNanos);
+    }
+
+    private synchronized void recordJitter(long lateNanos){
+        myTickCount++;
+        myJitterSamples[myJitterSampleIndex] = lateNanos;
+        myJitterSampleIndex = (myJitterSampleIndex + 1) % myJitterSamples.length;
+        if(myJitterSampleSize < myJitterSamples.length){
+            myJitterSampleSize++;
+        }
+        if(lateNanos > myMaxJitterNanos){
+            myMaxJitterNanos = lateNanos;
+        }
+    }
+
+    private synchronized void recordOverrun(long skipped){
+        myOverrunCount++;
+        mySkippedTickCount += skipped;
+    }
+
+    /**
+     * Returns the number of ticks run.
+     * @return number of ticks run
+     */
+    public synchronized long getTickCount(){
+        return myTickCount;
+    }
+
+    /**
+     * Returns the number of ticks which finished after the next deadline.
+     * @return number of overrun ticks
+     */
+    public synchronized long getOverrunCount(){
+        return myOverrunCount;
+    }
+
+    /**
+     * Returns the number of ticks dropped after overruns.
+     * @return number of dropped ticks
+     */
+    public synchronized long getSkippedTickCount(){
+        return mySkippedTickCount;
+    }
+
+    /**
+     * Returns the largest jitter seen since the clock was created or reset.
+     * @return largest jitter in nanoseconds
+     */
+    public synchronized long getMaxJitterNanos(){
+        return myMaxJitterNanos;
+    }
+
+    /**
+     * Returns a jitter percentile over the most recent ticks.
+     * @param percentile percentile to return, between 0 and 100
+     * @return jitter in nanoseconds at the given percentile, 0 if no ticks
+     * have run
+     */
+    public long getJitterPercentileNanos(double percentile){
+        long[] samples;
+        synchronized(this){
+            if(myJitterSampleSize == 0){
+                return 0;
+            }
+            samples = Arrays.copyOf(myJitterSamples, myJitterSampleSize);
+        }
+        Arrays.sort(samples);
+        double p = Math.max(0.0, Math.min(100.0, percentile));
+        int i = (int)Math.ceil(p / 100.0 * samples.length) - 1;
+        return samples[Math.max(0, i)];
+    }
+
+    /**
+     * Clears the tick counts and jitter samples.
+     */
+    public synchronized void resetStatistics(){
+        myTickCount = 0;
+        myOverrunCount = 0;
+        mySkippedTickCount = 0;
+        myMaxJitterNanos = 0;
+        myJitterSampleIndex = 0;
+        myJitterSampleSize = 0;
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-tick measurements for a blender.
+ * <p>
+ * The TimedBlenderDriver records frame collection and whole-tick latency,
+ * and the Blender records FrameCombiner and BlenderOutput latency.  Each
+ * stage is kept in a LatencyHistogram.  Ticks which produce no output are
+ * counted by DropReason.  Per-FrameSource counts and latency are recorded
+ * when frames are collected on the driver's thread.  A
+ * ParallelFrameCollector keeps its own FrameSourceStats, which are reported
+ * with these once the collector is set.
+ * <p>
+ * The metrics can be registered as an MBean, and BlenderMetricsListeners
+ * are notified at the end of every tick.
+ */
+public class BlenderMetrics implements BlenderMetricsMBean {
+    private static final Logger theLogger = LoggerFactory.getLogger(BlenderMetrics.class);
+    /**
+     * JMX domain BlenderMetrics are registered under.
+     */
+    public final static String JMX_DOMAIN = "org.mechio.api.motion.blending";
+
+    /**
+     * Reasons a tick produced no output.
+     */
+    public static enum DropReason {
+        /**
+         * The FrameSourceTracker had no FrameSources.
+         */
+        NO_SOURCES,
+        /**
+         * No FrameSource returned a frame.
+         */
+        NO_FRAMES,
+        /**
+         * The BlenderOutput had no current positions.
+         */
+        NO_POSITIONS
+    }
+
+    private final LatencyHistogram myCollectLatency;
+    private final LatencyHistogram myCombineLatency;
+    private final LatencyHistogram myWriteLatency;
+    private final LatencyHistogram myTickLatency;
+    private final AtomicLong myTickCount;
+    private final AtomicLong myFrameCount;
+    private final AtomicLong[] myDroppedCounts;
+    private final Map<FrameSource,FrameSourceStats> mySourceStats;
+    private final List<BlenderMetricsListener> myListeners;
+    private volatile ParallelFrameCollector myFrameCollector;
+    private ObjectName myObjectName;
+
+    private long myCurrentCollectNanos;
+    private long myCurrentCombineNanos;
+    private long myCurrentWriteNanos;
+    private boolean myCurrentDroppedFlag;
+
+    /**
+     * Creates a new BlenderMetrics.
+     */
+    public BlenderMetrics(){
+        myCollectLatency = new LatencyHistogram();
+        myCombineLatency = new LatencyHistogram();
+        myWriteLatency = new LatencyHistogram();
+        myTickLatency = new LatencyHistogram();
+        myTickCount = new AtomicLong();
+        myFrameCount = new AtomicLong();
+        myDroppedCounts = new AtomicLong[DropReason.values().length];
+        for(int i=0; i<myDroppedCounts.length; i++){
+            myDroppedCounts[i] = new AtomicLong();
+        }
+        mySourceStats = Collections.synchronizedMap(
+                new WeakHashMap<FrameSource,FrameSourceStats>());
+        myListeners = new CopyOnWriteArrayList();
+    }
+
+    /**
+     * Starts measuring a new tick.  Called by the TimedBlenderDriver.
+     */
+    public void beginTick(){
+        myCurrentCollectNanos = 0;
+        myCurrentCombineNanos = 0;
+        myCurrentWriteNanos = 0;
+        myCurrentDroppedFlag = false;
+    }
+
+    /**
+     * Records the time taken to collect frames for the current tick.
+     * @param nanos collection time
+     */
+    public void recordCollect(long nanos){
+        myCurrentCollectNanos = nanos;
+        myCollectLatency.record(nanos);
+    }
+
+    /**
+     * Records the time taken by the FrameCombiner for the current tick.
+     * @param nanos combine time
+     */
+    public void recordCombine(long nanos){
+        myCurrentCombineNanos = nanos;
+        myCombineLatency.record(nanos);
+    }
+
+    /**
+     * Records the time taken by the BlenderOutput for the current tick.
+     * @param nanos write time
+     */
+    public void recordWrite(long nanos){
+        myCurrentWriteNanos = nanos;
+        myWriteLatency.record(nanos);
+    }
+
+    /**
+     * Records a call to FrameSource.getMovements.
+     * @param source FrameSource called
+     * @param nanos time taken by the call
+     * @param returnedFrame true if the call returned a frame
+     */
+    public void recordSource(
+            FrameSource source, long nanos, boolean returnedFrame){
+        FrameSourceStats stats = mySourceStats.get(source);
+        if(stats == null){
+            stats = new FrameSourceStats();
+            mySourceStats.put(source, stats);
+        }
+        stats.recordCall(nanos, returnedFrame);
+    }
+
+    /**
+     * Records that the current tick produced no output.
+     * @param time time of the tick
+     * @param reason reason the tick was dropped
+     */
+    public void recordDroppedTick(long time, DropReason reason){
+        if(myCurrentDroppedFlag){
+            return;
+        }
+        myCurrentDroppedFlag = true;
+        myDroppedCounts[reason.ordinal()].incrementAndGet();
+        for(BlenderMetricsListener listener : myListeners){
+            try{
+                listener.tickDropped(time, reason);
+            }catch(RuntimeException ex){
+                theLogger.warn("Error notifying BlenderMetricsListener.", ex);
+            }
+        }
+    }
+
+    /**
+     * Finishes measuring the current tick and notifies listeners.
+     * @param time time of the tick
+     * @param frameCount number of frames blended
+     * @param tickNanos total time spent on the tick
+     */
+    public void endTick(long time, int frameCount, long tickNanos){
+        myTickCount.incrementAndGet();
+        myFrameCount.addAndGet(frameCount);
+        myTickLatency.record(tickNanos);
+        if(myCurrentDroppedFlag){
+            return;
+        }
+        for(BlenderMetricsListener listener : myListeners){
+            try{
+                listener.tickCompleted(time, frameCount,
+                        myCurrentCollectNanos, myCurrentCombineNanos,
+                        myCurrentWriteNanos, tickNanos);
+            }catch(RuntimeException ex){
+                theLogger.warn("Error notifying BlenderMetricsListener.", ex);
+            }
+        }
+    }
+
+    /**
+     * Adds a BlenderMetricsListener.
+     * @param listener listener to add
+     */
+    public void addListener(BlenderMetricsListener listener){
+        if(listener == null || myListeners.contains(listener)){
+            return;
+        }
+        myListeners.add(listener);
+    }
+
+    /**
+     * Removes a BlenderMetricsListener.
+     * @param listener listener to remove
+     */
+    public void removeListener(BlenderMetricsListener listener){
+        myListeners.remove(listener);
+    }
+
+    /**
+     * Returns the frame collection latency histogram.
+     * @return frame collection latency histogram
+     */
+    public LatencyHistogram getCollectLatency(){
+        return myCollectLatency;
+    }
+
+    /**
+     * Returns the FrameCombiner latency histogram.
+     * @return FrameCombiner latency histogram
+     */
+    public LatencyHistogram getCombineLatency(){
+        return myCombineLatency;
+    }
+
+    /**
+     * Returns the BlenderOutput latency histogram.
+     * @return BlenderOutput latency histogram
+     */
+    public LatencyHistogram getWriteLatency(){
+        return myWriteLatency;
+    }
+
+    /**
+     * Returns the whole-tick latency histogram.
+     * @return whole-tick latency histogram
+     */
+    public LatencyHistogram getTickLatency(){
+        return myTickLatency;
+    }
+
+    /**
+     * Returns the number of ticks dropped for the given reason.
+     * @param reason DropReason to count
+     * @return number of ticks dropped for the reason
+     */
+    public long getDroppedTickCount(DropReason reason){
+        return myDroppedCounts[reason.ordinal()].get();
+    }
+
+    /**
+     * Sets the ParallelFrameCollector whose FrameSourceStats are reported
+     * with these metrics.  Called by the TimedBlenderDriver.
+     * @param collector ParallelFrameCollector in use, null if frames are
+     * collected on the driver's thread
+     */
+    public void setFrameCollector(ParallelFrameCollector collector){
+        myFrameCollector = collector;
+    }
+
+    /**
+     * Returns a snapshot of the per-FrameSource stats, including the stats
+     * kept by the ParallelFrameCollector.
+     * @return map of FrameSources and their stats
+     */
+    public Map<FrameSource,FrameSourceStats> getSourceStats(){
+        Map<FrameSource,FrameSourceStats> stats;
+        synchronized(mySourceStats){
+            stats = new IdentityHashMap(mySourceStats);
+        }
+        ParallelFrameCollector collector = myFrameCollector;
+        if(collector != null){
+            stats.putAll(collector.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Registers these metrics with the platform MBeanServer.
+     * @param name name to register under, typically identifying the robot
+     * @return true if successful
+     */
+    public synchronized boolean register(String name){
+        if(myObjectName != null){
+            return true;
+        }
+        try{
+            ObjectName objName = new ObjectName(JMX_DOMAIN
+                    + ":type=BlenderMetrics,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, objName);
+            myObjectName = objName;
+            return true;
+        }catch(Exception ex){
+            theLogger.warn("Unable to register BlenderMetrics MBean.", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBeanServer.
+     */
+    public synchronized void unregister(){
+        if(myObjectName == null){
+            return;
+        }
+        try{
+            ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(myObjectName);
+        }catch(Exception ex){
+            theLogger.warn("Unable to unregister BlenderMetrics MBean.", ex);
+        }
+        myObjectName = null;
+    }
+
+    @Override
+    public long getTickCount() {
+        return myTickCount.get();
+    }
+
+    @Override
+    public long getFrameCount() {
+        return myFrameCount.get();
+    }
+
+    @Override
+    public double getFramesPerTick() {
+        long ticks = myTickCount.get();
+        return ticks == 0 ? 0.0 : (double)myFrameCount.get() / ticks;
+    }
+
+    @Override
+    public long getDroppedTickCount() {
+        long count = 0;
+        for(AtomicLong c : myDroppedCounts){
+            count += c.get();
+        }
+        return count;
+    }
+
+    @Override
+    public long getNoSourcesTickCount() {
+        return getDroppedTickCount(DropReason.NO_SOURCES);
+    }
+
+    @Override
+    public long getNoFramesTickCount() {
+        return getDroppedTickCount(DropReason.NO_FRAMES);
+    }
+
+    @Override
+    public long getNoPositionsTickCount() {
+        return getDroppedTickCount(DropReason.NO_POSITIONS);
+    }
+
+    @Override
+    public int getFrameSourceCount() {
+        return getSourceStats().size();
+    }
+
+    @Override
+    public String[] getFrameSourceStats() {
+        Map<FrameSource,FrameSourceStats> stats = getSourceStats();
+        String[] lines = new String[stats.size()];
+        int i = 0;
+        for(Entry<FrameSource,FrameSourceStats> e : stats.entrySet()){
+            FrameSourceStats s = e.getValue();
+            lines[i++] = e.getKey() + ": calls=" + s.getCallCount()
+                    + " frames=" + s.getFrameCount()
+                    + " misses=" + s.getMissCount()
+                    + " meanMicros=" + toMicros(s.getMeanLatencyNanos())
+                    + " maxMicros=" + toMicros(s.getMaxLatencyNanos())
+                    + " lastMicros=" + toMicros(s.getLastLatencyNanos());
+        }
+        Arrays.sort(lines);
+        return lines;
+    }
+
+    @Override
+    public long getCollectLatencyP50Micros() {
+        return toMicros(myCollectLatency.getPercentileNanos(50));
+    }
+
+    @Override
+    public long getCollectLatencyP99Micros() {
+        return toMicros(myCollectLatency.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getCombineLatencyP50Micros() {
+        return toMicros(myCombineLatency.getPercentileNanos(50));
+    }
+
+    @Override
+    public long getCombineLatencyP99Micros() {
+        return toMicros(myCombineLatency.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getWriteLatencyP50Micros() {
+        return toMicros(myWriteLatency.getPercentileNanos(50));
+    }
+
+    @Override
+    public long getWriteLatencyP99Micros() {
+        return toMicros(myWriteLatency.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getTickLatencyP50Micros() {
+        return toMicros(myTickLatency.getPercentileNanos(50));
+    }
+
+    @Override
+    public long getTickLatencyP99Micros() {
+        return toMicros(myTickLatency.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getTickLatencyMaxMicros() {
+        return toMicros(myTickLatency.getMaxNanos());
+    }
+
+    @Override
+    public void reset() {
+        myCollectLatency.reset();
+        myCombineLatency.reset();
+        myWriteLatency.reset();
+        myTickLatency.reset();
+        myTickCount.set(0);
+        myFrameCount.set(0);
+        for(AtomicLong c : myDroppedCounts){
+            c.set(0);
+        }
+        mySourceStats.clear();
+        ParallelFrameCollector collector = myFrameCollector;
+        if(collector != null){
+            for(FrameSourceStats stats : collector.getStats().values()){
+                stats.reset();
+            }
+        }
+    }
+
+    private static long toMicros(long nanos){
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+/**
+ * Receives per-tick measurements from BlenderMetrics.  Listeners are called
+ * on the blending thread and should return quickly.
+ */
+public interface BlenderMetricsListener {
+    /**
+     * Called after a tick has been blended and written.
+     * @param time time of the tick
+     * @param frameCount number of frames blended
+     * @param collectNanos time spent collecting frames
+     * @param combineNanos time spent in the FrameCombiner
+     * @param writeNanos time spent in the BlenderOutput
+     * @param tickNanos total time spent on the tick
+     */
+    public void tickCompleted(long time, int frameCount, long collectNanos,
+            long combineNanos, long writeNanos, long tickNanos);
+
+    /**
+     * Called when a tick produces no output.
+     * @param time time of the tick
+     * @param reason reason the tick was dropped
+     */
+    public void tickDropped(long time, BlenderMetrics.DropReason reason);
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+/**
+ * JMX management interface for BlenderMetrics.  Latencies are reported in
+ * microseconds.
+ */
+public interface BlenderMetricsMBean {
+    public long getTickCount();
+
+    public long getFrameCount();
+
+    public double getFramesPerTick();
+
+    public long getDroppedTickCount();
+
+    public long getNoSourcesTickCount();
+
+    public long getNoFramesTickCount();
+
+    public long getNoPositionsTickCount();
+
+    public int getFrameSourceCount();
+
+    /**
+     * Returns one line per FrameSource with its call, frame and miss counts
+     * and its getMovements latency.
+     * @return per-FrameSource stats, sorted by source
+     */
+    public String[] getFrameSourceStats();
+
+    public long getCollectLatencyP50Micros();
+
+    public long getCollectLatencyP99Micros();
+
+    public long getCombineLatencyP50Micros();
+
+    public long getCombineLatencyP99Micros();
+
+    public long getWriteLatencyP50Micros();
+
+    public long getWriteLatencyP99Micros();
+
+    public long getTickLatencyP50Micros();
+
+    public long getTickLatencyP99Micros();
+
+    public long getTickLatencyMaxMicros();
+
+    /**
+     * Clears all counts and histograms.
+     */
+    public void reset();
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.jflux.api.core.Source;
+import org.mechio.api.motion.protocol.JointPositionMap;
+
+/**
+ * A BlenderOutput which only passes on joints whose position has changed.
+ * <p>
+ * The last position written for each joint is tracked, and a joint is only
+ * forwarded when it has moved more than its deadband since then.  Every
+ * refresh interval all positions are forwarded, so a joint which missed an
+ * update is eventually corrected.  Writes with no changed joints are not
+ * forwarded at all.  The number of joint positions received and forwarded
+ * is kept to report the bandwidth saved.
+ * <p>
+ * getPositions returns the wrapped output's positions with each suppressed
+ * joint replaced by the last position received for it.  Blenders which move
+ * from the current positions, such as the VelocityCombiner, then keep
+ * accumulating a slow movement until it crosses the deadband instead of
+ * stalling on the last forwarded position.  A suppressed joint never lags
+ * the blended position by more than its deadband.
+ *
+ * @param <Id> type of joint id used in the PositionMaps
+ * @param <PosMap> type of PositionMaps written
+ */
+public class DeadbandOutput<
+        Id, PosMap extends JointPositionMap<Id,NormalizedDouble>>
+        implements BlenderOutput<PosMap>, SourceTrackingOutput {
+    private final BlenderOutput<PosMap> myOutput;
+    private final Source<PosMap> myPositionMapFactory;
+    private final JointIndex<Id> myJointIndex;
+    private final Map<Id,Double> myDeadbands;
+    private double myDefaultDeadband;
+    private double[] myDeadbandCache;
+    private double[] myLastValues;
+    private NormalizedDouble[] myPendingValues;
+    private final BitSet myWrittenJoints;
+    private final BitSet myPendingJoints;
+    private long myRefreshIntervalMillisec;
+    private long myLastRefreshTime;
+    private final AtomicLong myWriteCount;
+    private final AtomicLong mySkippedWriteCount;
+    private final AtomicLong myRefreshCount;
+    private final AtomicLong myReceivedCount;
+    private final AtomicLong myForwardedCount;
+
+    /**
+     * Creates a new DeadbandOutput.
+     * @param output BlenderOutput to forward changed positions to
+     * @param posMapFact factory for creating new PositionMaps
+     * @param deadband default deadband, in normalized position
+     * @param refreshIntervalMillisec milliseconds between full refreshes, 0
+     * to only refresh on the first write
+     */
+    public DeadbandOutput(BlenderOutput<PosMap> output,
+            Source<PosMap> posMapFact, double deadband,
+            long refreshIntervalMillisec){
+        if(output == null || posMapFact == null){
+            throw new NullPointerException();
+        }
+        myOutput = output;
+        myPositionMapFactory = posMapFact;
+        myJointIndex = new JointIndex<>();
+        myDeadbands = new HashMap();
+        myDefaultDeadband = deadband;
+        myDeadbandCache = new double[0];
+        myLastValues = new double[0];
+        myPendingValues = new NormalizedDouble[0];
+        myWrittenJoints = new BitSet();
+        myPendingJoints = new BitSet();
+        myRefreshIntervalMillisec = refreshIntervalMillisec;
+        myWriteCount = new AtomicLong();
+        mySkippedWriteCount = new AtomicLong();
+        myRefreshCount = new AtomicLong();
+        myReceivedCount = new AtomicLong();
+        myForwardedCount = new AtomicLong();
+    }
+
+    /**
+     * Sets the deadband for a single joint.
+     * @param id joint id
+     * @param deadband deadband, in normalized position
+     */
+    public synchronized void setDeadband(Id id, double deadband){
+        myDeadbands.put(id, deadband);
+        clearDeadbandCache();
+    }
+
+    /**
+     * Sets the deadband used for joints without their own deadband.
+     * @param deadband deadband, in normalized position
+     */
+    public synchronized void setDefaultDeadband(double deadband){
+        myDefaultDeadband = deadband;
+        clearDeadbandCache();
+    }
+
+    /**
+     * Sets the time between full refreshes.
+     * @param refreshIntervalMillisec milliseconds between full refreshes, 0
+     * to only refresh on the first write
+     */
+    public synchronized void setRefreshInterval(long refreshIntervalMillisec){
+        myRefreshIntervalMillisec = refreshIntervalMillisec;
+    }
+
+    /**
+     * Forwards all positions on the next write.
+     */
+    public synchronized void requestRefresh(){
+        myLastRefreshTime = 0;
+    }
+
+    private void clearDeadbandCache(){
+        Arrays.fill(myDeadbandCache, Double.NaN);
+    }
+
+    private double getDeadband(int index){
+        double deadband = myDeadbandCache[index];
+        if(Double.isNaN(deadband)){
+            Double d = myDeadbands.get(myJointIndex.getId(index));
+            deadband = d == null ? myDefaultDeadband : d;
+            myDeadbandCache[index] = deadband;
+        }
+        return deadband;
+    }
+
+    private void ensureCapacity(int capacity){
+        if(myLastValues.length >= capacity){
+            return;
+        }
+        int len = Math.max(capacity, myLastValues.length*2);
+        int oldLen = myDeadbandCache.length;
+        myLastValues = Arrays.copyOf(myLastValues, len);
+        myPendingValues = Arrays.copyOf(myPendingValues, len);
+        myDeadbandCache = Arrays.copyOf(myDeadbandCache, len);
+        Arrays.fill(myDeadbandCache, oldLen, len, Double.NaN);
+    }
+
+    @Override
+    public synchronized void write(PosMap positions, long lenMillisec) {
+        if(positions == null || positions.isEmpty()){
+            return;
+        }
+        myWriteCount.incrementAndGet();
+        myReceivedCount.addAndGet(positions.size());
+        long now = System.currentTimeMillis();
+        boolean refresh = myLastRefreshTime == 0
+                || (myRefreshIntervalMillisec > 0
+                    && now - myLastRefreshTime >= myRefreshIntervalMillisec);
+        PosMap changed = refresh ? positions : null;
+        for(Entry<Id,NormalizedDouble> e : positions.entrySet()){
+            NormalizedDouble pos = e.getValue();
+            if(pos == null){
+                continue;
+            }
+            int i = myJointIndex.addJoint(e.getKey());
+            ensureCapacity(i + 1);
+            double val = pos.getValue();
+            if(!refresh && myWrittenJoints.get(i)
+                    && Math.abs(val - myLastValues[i]) <= getDeadband(i)){
+                myPendingValues[i] = pos;
+                myPendingJoints.set(i);
+                continue;
+            }
+            myLastValues[i] = val;
+            myWrittenJoints.set(i);
+            myPendingValues[i] = null;
+            myPendingJoints.clear(i);
+            if(!refresh){
+                if(changed == null){
+                    changed = myPositionMapFactory.getValue();
+                }
+                changed.put(e.getKey(), pos);
+            }
+        }
+        if(refresh){
+            myLastRefreshTime = now;
+            myRefreshCount.incrementAndGet();
+        }
+        if(changed == null || changed.isEmpty()){
+            mySkippedWriteCount.incrementAndGet();
+            return;
+        }
+        myForwardedCount.addAndGet(changed.size());
+        myOutput.write(changed, lenMillisec);
+    }
+
+    @Override
+    public synchronized PosMap getPositions() {
+        PosMap positions = myOutput.getPositions();
+        if(positions == null || myPendingJoints.isEmpty()){
+            return positions;
+        }
+        PosMap pending = myPositionMapFactory.getValue();
+        pending.putAll(positions);
+        for(int i=myPendingJoints.nextSetBit(0); i>=0;
+                i=myPendingJoints.nextSetBit(i+1)){
+            pending.put(myJointIndex.getId(i), myPendingValues[i]);
+        }
+        return pending;
+    }
+
+    @Override
+    public void addContributingSource(FrameSource source) {
+        if(myOutput instanceof SourceTrackingOutput){
+            ((SourceTrackingOutput)myOutput).addContributingSource(source);
+        }
+    }
+
+    /**
+     * Returns the BlenderOutput positions are forwarded to.
+     * @return wrapped BlenderOutput
+     */
+    public BlenderOutput<PosMap> getOutput(){
+        return myOutput;
+    }
+
+    /**
+     * Returns the number of writes received.
+     * @return number of writes received
+     */
+    public long getWriteCount(){
+        return myWriteCount.get();
+    }
+
+    /**
+     * Returns the number of writes which were not forwarded because no
+     * joint had changed.
+     * @return number of writes not forwarded
+     */
+    public long getSkippedWriteCount(){
+        return mySkippedWriteCount.get();
+    }
+
+    /**
+     * Returns the number of full refreshes.
+     * @return number of full refreshes
+     */
+    public long getRefreshCount(){
+        return myRefreshCount.get();
+    }
+
+    /**
+     * Returns the number of joint positions received.
+     * @return number of joint positions received
+     */
+    public long getReceivedPositionCount(){
+        return myReceivedCount.get();
+    }
+
+    /**
+     * Returns the number of joint positions forwarded.
+     * @return number of joint positions forwarded
+     */
+    public long getForwardedPositionCount(){
+        return myForwardedCount.get();
+    }
+
+    /**
+     * Returns the fraction of joint positions which were not forwarded.
+     * @return fraction of positions saved, between 0 and 1
+     */
+    public double getSavedRatio(){
+        long received = myReceivedCount.get();
+        if(received == 0){
+            return 0.0;
+        }
+        return 1.0 - (double)myForwardedCount.get() / received;
+    }
+
+    /**
+     * Clears the counts.  Tracked positions are kept.
+     */
+    public void resetStatistics(){
+        myWriteCount.set(0);
+        mySkippedWriteCount.set(0);
+        myRefreshCount.set(0);
+        myReceivedCount.set(0);
+        myForwardedCount.set(0);
+    }
+}
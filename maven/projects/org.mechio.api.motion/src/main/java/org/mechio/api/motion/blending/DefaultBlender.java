@@ -38,6 +38,7 @@ public class DefaultBlender<
 	private static final Logger theLogger = LoggerFactory.getLogger(DefaultBlender.class);
 	private FrameCombiner<MF, FS, PosMap> myFrameCombiner;
 	private BlenderOutput<PosMap> myOutput;
+	private BlenderMetrics myMetrics;
 
 	@Override
 	public void setFrameCombiner(FrameCombiner<MF, FS, PosMap> combiner) {
@@ -54,17 +55,55 @@ public class DefaultBlender<
 		myOutput = out;
 	}
 
+	/**
+	 * Returns the BlenderOutput blended positions are written to.
+	 *
+	 * @return BlenderOutput used
+	 */
+	public BlenderOutput<PosMap> getOutput() {
+		return myOutput;
+	}
+
+	/**
+	 * Sets the BlenderMetrics used to record FrameCombiner and BlenderOutput
+	 * latency.
+	 *
+	 * @param metrics BlenderMetrics to record to, null to disable
+	 */
+	public void setMetrics(BlenderMetrics metrics) {
+		myMetrics = metrics;
+	}
+
 	@Override
 	public void blend(long time, long interval, Map<? extends MF, ? extends FS> frames) {
 		if (frames == null || frames.isEmpty() || myFrameCombiner == null ||
 				myOutput == null) {
 			return;
 		}
+		BlenderMetrics metrics = myMetrics;
 		PosMap curPos = myOutput.getPositions();
 		if (curPos == null || curPos.isEmpty()) {
+			if (metrics != null) {
+				metrics.recordDroppedTick(time, BlenderMetrics.DropReason.NO_POSITIONS);
+			}
+			return;
+		}
+		if (myOutput instanceof SourceTrackingOutput) {
+			SourceTrackingOutput recorder = (SourceTrackingOutput) myOutput;
+			for (FS source : frames.values()) {
+				recorder.addContributingSource(source);
+			}
+		}
+		if (metrics == null) {
+			PosMap pos = myFrameCombiner.combineFrames(time, interval, curPos, frames);
+			myOutput.write(pos, interval);
 			return;
 		}
+		long start = System.nanoTime();
 		PosMap pos = myFrameCombiner.combineFrames(time, interval, curPos, frames);
+		long combined = System.nanoTime();
 		myOutput.write(pos, interval);
+		metrics.recordCombine(combined - start);
+		metrics.recordWrite(System.nanoTime() - combined);
 	}
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+/**
+ * Call counts and getMovements latency for a single FrameSource.
+ */
+public class FrameSourceStats {
+    private long myCallCount;
+    private long myFrameCount;
+    private long myMissCount;
+    private long myTotalLatencyNanos;
+    private long myMaxLatencyNanos;
+    private long myLastLatencyNanos;
+
+    /**
+     * Records a completed call to getMovements.
+     * @param latencyNanos time taken by the call
+     * @param returnedFrame true if the call returned a frame
+     */
+    public synchronized void recordCall(long latencyNanos, boolean returnedFrame){
+        myCallCount++;
+        if(returnedFrame){
+            myFrameCount++;
+        }
+        myTotalLatencyNanos += latencyNanos;
+        myLastLatencyNanos = latencyNanos;
+        if(latencyNanos > myMaxLatencyNanos){
+            myMaxLatencyNanos = latencyNanos;
+        }
+    }
+
+    /**
+     * Records a tick where the FrameSource did not return before the
+     * deadline.
+     */
+    public synchronized void recordMiss(){
+        myMissCount++;
+    }
+
+    /**
+     * Returns the number of completed calls.
+     * @return number of completed calls
+     */
+    public synchronized long getCallCount(){
+        return myCallCount;
+    }
+
+    /**
+     * Returns the number of calls which returned a frame.
+     * @return number of calls which returned a frame
+     */
+    public synchronized long getFrameCount(){
+        return myFrameCount;
+    }
+
+    /**
+     * Returns the number of ticks where the deadline was missed.
+     * @return number of missed deadlines
+     */
+    public synchronized long getMissCount(){
+        return myMissCount;
+    }
+
+    /**
+     * Returns the mean call latency.
+     * @return mean call latency in nanoseconds
+     */
+    public synchronized long getMeanLatencyNanos(){
+        return myCallCount == 0 ? 0 : myTotalLatencyNanos / myCallCount;
+    }
+
+    /**
+     * Returns the largest call latency.
+     * @return largest call latency in nanoseconds
+     */
+    public synchronized long getMaxLatencyNanos(){
+        return myMaxLatencyNanos;
+    }
+
+    /**
+     * Returns the latency of the most recent call.
+     * @return latency of the most recent call in nanoseconds
+     */
+    public synchronized long getLastLatencyNanos(){
+        return myLastLatencyNanos;
+    }
+
+    /**
+     * Clears all counts.
+     */
+    public synchronized void reset(){
+        myCallCount = 0;
+        myFrameCount = 0;
+        myMissCount = 0;
+        myTotalLatencyNanos = 0;
+        myMaxLatencyNanos = 0;
+        myLastLatencyNanos = 0;
+    }
+}
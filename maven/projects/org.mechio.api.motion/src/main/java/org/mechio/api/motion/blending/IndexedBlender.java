@@ -0,0 +1,404 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.jflux.api.core.Source;
+import org.mechio.api.motion.blending.BlenderMetrics.DropReason;
+import org.mechio.api.motion.protocol.JointPositionMap;
+import org.mechio.api.motion.protocol.MotionFrame;
+
+/**
+ * A Blender which blends over dense joint-index arrays instead of position
+ * maps.  Joints are assigned slots once by a JointIndex, and frames are
+ * written into pooled IndexedFrames, so blending does not allocate once the
+ * pools have grown to the number of joints and sources in use.
+ * <p>
+ * FrameSources implementing IndexedFrameSource write directly into the
+ * pooled frames.  All other FrameSources are adapted by reading their
+ * MotionFrames.  If no IndexedFrameCombiner is set, the regular
+ * FrameCombiner is used in the same way as the DefaultBlender.
+ *
+ * @param <Id> type of joint id used in the PositionMaps being blended
+ * @param <PosMap> type of PositionMaps being blended
+ */
+public class IndexedBlender<
+        Id, PosMap extends JointPositionMap<Id,NormalizedDouble>> implements
+        Blender<MotionFrame<PosMap>,FrameSource<PosMap>,PosMap> {
+    private Source<PosMap> myPositionMapFactory;
+    private FrameCombiner<MotionFrame<PosMap>,FrameSource<PosMap>,PosMap> myFrameCombiner;
+    private IndexedFrameCombiner myIndexedCombiner;
+    private BlenderOutput<PosMap> myOutput;
+    private JointIndex<Id> myJointIndex;
+    private IndexedFrame[] myFrames;
+    private int myFrameCount;
+    private IndexedPositions myCurrentPositions;
+    private IndexedPositions myOutputPositions;
+    private NormalizedDouble[] myValueCache;
+    private BlenderMetrics myMetrics;
+    private boolean myReuseMapsFlag;
+    private PosMap myFrontMap;
+    private PosMap myBackMap;
+    private BitSet myFrontMask;
+    private BitSet myBackMask;
+
+    /**
+     * Creates a new IndexedBlender using an IndexedFrameAverager.
+     * @param posMapFact factory for creating the PositionMaps sent to the
+     * BlenderOutput
+     */
+    public IndexedBlender(Source<PosMap> posMapFact){
+        this(posMapFact, new IndexedFrameAverager());
+    }
+
+    /**
+     * Creates a new IndexedBlender.
+     * @param posMapFact factory for creating the PositionMaps sent to the
+     * BlenderOutput
+     * @param combiner IndexedFrameCombiner to use
+     */
+    public IndexedBlender(
+            Source<PosMap> posMapFact, IndexedFrameCombiner combiner){
+        if(posMapFact == null){
+            throw new NullPointerException();
+        }
+        myPositionMapFactory = posMapFact;
+        myIndexedCombiner = combiner;
+        myJointIndex = new JointIndex<>();
+        myFrames = new IndexedFrame[0];
+        myCurrentPositions = new IndexedPositions(0);
+        myOutputPositions = new IndexedPositions(0);
+        myValueCache = new NormalizedDouble[0];
+    }
+
+    @Override
+    public void setFrameCombiner(
+            FrameCombiner<MotionFrame<PosMap>,FrameSource<PosMap>,PosMap> combiner) {
+        myFrameCombiner = combiner;
+    }
+
+    @Override
+    public FrameCombiner<MotionFrame<PosMap>,FrameSource<PosMap>,PosMap> getFrameCombiner() {
+        return myFrameCombiner;
+    }
+
+    /**
+     * Sets the IndexedFrameCombiner.  If null, the FrameCombiner is used.
+     * @param combiner IndexedFrameCombiner to set
+     */
+    public void setIndexedFrameCombiner(IndexedFrameCombiner combiner){
+        myIndexedCombiner = combiner;
+    }
+
+    /**
+     * Returns the IndexedFrameCombiner.
+     * @return IndexedFrameCombiner
+     */
+    public IndexedFrameCombiner getIndexedFrameCombiner(){
+        return myIndexedCombiner;
+    }
+
+    @Override
+    public void setOutput(BlenderOutput<PosMap> out) {
+        myOutput = out;
+    }
+
+    /**
+     * Returns the BlenderOutput blended positions are written to.
+     * @return BlenderOutput used
+     */
+    public BlenderOutput<PosMap> getOutput(){
+        return myOutput;
+    }
+
+    /**
+     * Sets the BlenderMetrics used to record collection, combine and output
+     * latency.
+     * @param metrics BlenderMetrics to record to, null to disable
+     */
+    public void setMetrics(BlenderMetrics metrics){
+        myMetrics = metrics;
+    }
+
+    /**
+     * Sets whether the PositionMaps written to the output are reused.  When
+     * enabled, the blender alternates between two PositionMaps instead of
+     * creating one each tick.  The output may keep the positions from its
+     * previous write, but must copy any positions it keeps for longer.
+     * @param reuse true to reuse the PositionMaps written to the output
+     */
+    public synchronized void setReuseOutputMaps(boolean reuse){
+        myReuseMapsFlag = reuse;
+        myFrontMap = null;
+        myBackMap = null;
+        myFrontMask = null;
+        myBackMask = null;
+    }
+
+    /**
+     * Returns true if the PositionMaps written to the output are reused.
+     * @return true if the PositionMaps written to the output are reused
+     */
+    public synchronized boolean isReuseOutputMaps(){
+        return myReuseMapsFlag;
+    }
+
+    /**
+     * Returns the JointIndex mapping joint ids to slots.
+     * @return JointIndex mapping joint ids to slots
+     */
+    public JointIndex<Id> getJointIndex(){
+        return myJointIndex;
+    }
+
+    @Override
+    public synchronized void blend(long time, long interval,
+            Map<? extends MotionFrame<PosMap>, ? extends FrameSource<PosMap>> frames) {
+        if(frames == null || frames.isEmpty() || myOutput == null){
+            return;
+        }
+        if(myIndexedCombiner == null){
+            blendMaps(time, interval, frames);
+            return;
+        }
+        myFrameCount = 0;
+        for(Entry<? extends MotionFrame<PosMap>, ? extends FrameSource<PosMap>> e
+                : frames.entrySet()){
+            IndexedFrame frame = nextFrame();
+            frame.read(e.getKey(), myJointIndex);
+            frame.setSource(e.getValue());
+        }
+        blendFrames(time, interval);
+    }
+
+    /**
+     * Collects frames from the given FrameSources directly into the pooled
+     * IndexedFrames and blends them.  This avoids building the map of
+     * frames used by blend(long, long, Map).
+     * @param time time of the move request
+     * @param interval time since the previous move request
+     * @param sources FrameSources to collect from
+     */
+    public synchronized void blendSources(
+            long time, long interval, List<? extends FrameSource> sources){
+        myFrameCount = 0;
+        if(sources == null || sources.isEmpty() || myOutput == null){
+            return;
+        }
+        BlenderMetrics metrics = myMetrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        if(myIndexedCombiner == null){
+            Map<MotionFrame<PosMap>,FrameSource<PosMap>> frames =
+                    new HashMap();
+            for(FrameSource<PosMap> source : sources){
+                long callStart = metrics == null ? 0 : System.nanoTime();
+                MotionFrame<PosMap> frame = source.getMovements(time, interval);
+                recordSource(metrics, source, callStart, frame != null);
+                if(frame != null){
+                    frames.put(frame, source);
+                }
+            }
+            myFrameCount = frames.size();
+            recordCollect(metrics, time, start);
+            blendMaps(time, interval, frames);
+            return;
+        }
+        for(FrameSource source : sources){
+            IndexedFrame frame = nextFrame();
+            long callStart = metrics == null ? 0 : System.nanoTime();
+            boolean collected = collect(source, time, interval, frame);
+            recordSource(metrics, source, callStart, collected);
+            if(!collected){
+                myFrameCount--;
+                continue;
+            }
+            frame.setSource(source);
+        }
+        recordCollect(metrics, time, start);
+        blendFrames(time, interval);
+    }
+
+    /**
+     * Returns the number of frames blended in the most recent call to
+     * blendSources or blend.
+     * @return number of frames blended
+     */
+    public synchronized int getFrameCount(){
+        return myFrameCount;
+    }
+
+    private void recordSource(BlenderMetrics metrics, FrameSource source,
+            long start, boolean returnedFrame){
+        if(metrics != null){
+            metrics.recordSource(
+                    source, System.nanoTime() - start, returnedFrame);
+        }
+    }
+
+    private void recordCollect(BlenderMetrics metrics, long time, long start){
+        if(metrics == null){
+            return;
+        }
+        metrics.recordCollect(System.nanoTime() - start);
+        if(myFrameCount == 0){
+            metrics.recordDroppedTick(time, DropReason.NO_FRAMES);
+        }
+    }
+
+    private boolean collect(FrameSource source,
+            long time, long interval, IndexedFrame frame){
+        if(source instanceof IndexedFrameSource){
+            return ((IndexedFrameSource)source).getMovements(
+                    time, interval, myJointIndex, frame);
+        }
+        MotionFrame<PosMap> mf = source.getMovements(time, interval);
+        if(mf == null){
+            return false;
+        }
+        frame.read(mf, myJointIndex);
+        return true;
+    }
+
+    private IndexedFrame nextFrame(){
+        if(myFrameCount == myFrames.length){
+            int len = Math.max(4, myFrames.length*2);
+            myFrames = Arrays.copyOf(myFrames, len);
+        }
+        IndexedFrame frame = myFrames[myFrameCount];
+        if(frame == null){
+            frame = new IndexedFrame(myJointIndex.size());
+            myFrames[myFrameCount] = frame;
+        }
+        myFrameCount++;
+        frame.clear();
+        return frame;
+    }
+
+    private void blendFrames(long time, long interval){
+        if(myFrameCount == 0){
+            return;
+        }
+        BlenderMetrics metrics = myMetrics;
+        PosMap curPos = myOutput.getPositions();
+        if(curPos == null || curPos.isEmpty()){
+            if(metrics != null){
+                metrics.recordDroppedTick(time, DropReason.NO_POSITIONS);
+            }
+            return;
+        }
+        if(myOutput instanceof SourceTrackingOutput){
+            SourceTrackingOutput recorder = (SourceTrackingOutput)myOutput;
+            for(int i=0; i<myFrameCount; i++){
+                recorder.addContributingSource(myFrames[i].getSource());
+            }
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        myCurrentPositions.read(curPos, myJointIndex);
+        myOutputPositions.ensureCapacity(myJointIndex.size());
+        myIndexedCombiner.combineFrames(time, interval, myCurrentPositions,
+                myFrames, myFrameCount, myOutputPositions);
+        PosMap pos = toPositionMap(myOutputPositions, myJointIndex.getIds());
+        long combined = metrics == null ? 0 : System.nanoTime();
+        myOutput.write(pos, interval);
+        if(metrics != null){
+            metrics.recordCombine(combined - start);
+            metrics.recordWrite(System.nanoTime() - combined);
+        }
+    }
+
+    /**
+     * Writes the positions into an output PositionMap.  The joint ids are
+     * resolved once for the frame, and the NormalizedDouble of a slot is
+     * reused until its value changes.
+     */
+    private PosMap toPositionMap(IndexedPositions positions, Object[] ids){
+        BitSet mask = positions.getMask();
+        PosMap pos = nextPositionMap(mask, ids);
+        if(myValueCache.length < positions.getCapacity()){
+            myValueCache = Arrays.copyOf(myValueCache, positions.getCapacity());
+        }
+        double[] vals = positions.getValues();
+        for(int i=mask.nextSetBit(0); i>=0; i=mask.nextSetBit(i+1)){
+            NormalizedDouble val = myValueCache[i];
+            if(val == null || val.getValue() != vals[i]){
+                val = new NormalizedDouble(vals[i]);
+                myValueCache[i] = val;
+            }
+            pos.put((Id)ids[i], val);
+        }
+        return pos;
+    }
+
+    private PosMap nextPositionMap(BitSet mask, Object[] ids){
+        if(!myReuseMapsFlag){
+            return myPositionMapFactory.getValue();
+        }
+        PosMap pos = myBackMap;
+        BitSet written = myBackMask;
+        myBackMap = myFrontMap;
+        myBackMask = myFrontMask;
+        if(pos == null){
+            pos = myPositionMapFactory.getValue();
+            written = new BitSet();
+        }
+        for(int i=written.nextSetBit(0); i>=0; i=written.nextSetBit(i+1)){
+            if(!mask.get(i)){
+                pos.remove(ids[i]);
+            }
+        }
+        written.clear();
+        written.or(mask);
+        myFrontMap = pos;
+        myFrontMask = written;
+        return pos;
+    }
+
+    private void blendMaps(long time, long interval,
+            Map<? extends MotionFrame<PosMap>, ? extends FrameSource<PosMap>> frames){
+        if(frames.isEmpty() || myFrameCombiner == null){
+            return;
+        }
+        BlenderMetrics metrics = myMetrics;
+        PosMap curPos = myOutput.getPositions();
+        if(curPos == null || curPos.isEmpty()){
+            if(metrics != null){
+                metrics.recordDroppedTick(time, DropReason.NO_POSITIONS);
+            }
+            return;
+        }
+        if(myOutput instanceof SourceTrackingOutput){
+            SourceTrackingOutput recorder = (SourceTrackingOutput)myOutput;
+            for(FrameSource<PosMap> source : frames.values()){
+                recorder.addContributingSource(source);
+            }
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        PosMap pos = myFrameCombiner.combineFrames(time, interval, curPos, frames);
+        long combined = metrics == null ? 0 : System.nanoTime();
+        myOutput.write(pos, interval);
+        if(metrics != null){
+            metrics.recordCombine(combined - start);
+            metrics.recordWrite(System.nanoTime() - combined);
+        }
+    }
+}
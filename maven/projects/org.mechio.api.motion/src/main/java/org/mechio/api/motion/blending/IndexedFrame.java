@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.mechio.api.motion.protocol.JointPositionMap;
+import org.mechio.api.motion.protocol.MotionFrame;
+
+/**
+ * A reusable, array-backed equivalent of a MotionFrame.  IndexedFrames are
+ * pooled by the IndexedBlender and refilled every blend.
+ */
+public class IndexedFrame {
+    private long myTime;
+    private long myInterval;
+    private IndexedPositions myGoalPositions;
+    private IndexedPositions myPreviousPositions;
+    private FrameSource mySource;
+
+    /**
+     * Creates an empty IndexedFrame.
+     * @param capacity initial number of joint slots
+     */
+    public IndexedFrame(int capacity){
+        myGoalPositions = new IndexedPositions(capacity);
+        myPreviousPositions = new IndexedPositions(capacity);
+    }
+
+    /**
+     * Clears the frame so it can be refilled.
+     */
+    public void clear(){
+        myTime = 0;
+        myInterval = 0;
+        mySource = null;
+        myGoalPositions.clear();
+        myPreviousPositions.clear();
+    }
+
+    /**
+     * Grows the position arrays to hold at least the given number of slots.
+     * @param capacity number of slots needed
+     */
+    public void ensureCapacity(int capacity){
+        myGoalPositions.ensureCapacity(capacity);
+        myPreviousPositions.ensureCapacity(capacity);
+    }
+
+    /**
+     * Fills this frame from a MotionFrame.  This is the adapter used for
+     * FrameSources which do not implement IndexedFrameSource.
+     * @param <Id> joint id type
+     * @param frame MotionFrame to read
+     * @param index JointIndex used to map ids to slots
+     */
+    public <Id> void read(MotionFrame<? extends JointPositionMap<Id,? extends NormalizedDouble>> frame,
+            JointIndex<Id> index){
+        myTime = frame.getTimestampMillisecUTC();
+        myInterval = frame.getFrameLengthMillisec();
+        myGoalPositions.read(frame.getGoalPositions(), index);
+        myPreviousPositions.read(frame.getPreviousPositions(), index);
+    }
+
+    /**
+     * Returns the frame timestamp.
+     * @return frame timestamp
+     */
+    public long getTimestampMillisecUTC(){
+        return myTime;
+    }
+
+    /**
+     * Sets the frame timestamp.
+     * @param time frame timestamp
+     */
+    public void setTimestampMillisecUTC(long time){
+        myTime = time;
+    }
+
+    /**
+     * Returns the length of the frame in milliseconds.
+     * @return length of the frame in milliseconds
+     */
+    public long getFrameLengthMillisec(){
+        return myInterval;
+    }
+
+    /**
+     * Sets the length of the frame in milliseconds.
+     * @param interval length of the frame in milliseconds
+     */
+    public void setFrameLengthMillisec(long interval){
+        myInterval = interval;
+    }
+
+    /**
+     * Returns the goal positions.
+     * @return goal positions
+     */
+    public IndexedPositions getGoalPositions(){
+        return myGoalPositions;
+    }
+
+    /**
+     * Returns the previous positions.
+     * @return previous positions
+     */
+    public IndexedPositions getPreviousPositions(){
+        return myPreviousPositions;
+    }
+
+    /**
+     * Returns the FrameSource which filled this frame.
+     * @return FrameSource which filled this frame
+     */
+    public FrameSource getSource(){
+        return mySource;
+    }
+
+    /**
+     * Sets the FrameSource which filled this frame.
+     * @param source FrameSource which filled this frame
+     */
+    public void setSource(FrameSource source){
+        mySource = source;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import org.jflux.api.common.rk.utils.Utils;
+
+/**
+ * Array-based equivalent of the NaiveMotionFrameAverager.  Averages the goal
+ * positions of the frames, ignoring start positions and timing.
+ */
+public class IndexedFrameAverager implements IndexedFrameCombiner {
+    private double[] mySums;
+    private int[] myCounts;
+
+    /**
+     * Creates a new IndexedFrameAverager.
+     */
+    public IndexedFrameAverager(){
+        mySums = new double[0];
+        myCounts = new int[0];
+    }
+
+    @Override
+    public void combineFrames(long time, long interval,
+            IndexedPositions curPos, IndexedFrame[] frames, int frameCount,
+            IndexedPositions out) {
+        int len = out.getCapacity();
+        if(mySums.length < len){
+            mySums = new double[len];
+            myCounts = new int[len];
+        }
+        Arrays.fill(mySums, 0, len, 0.0);
+        Arrays.fill(myCounts, 0, len, 0);
+        for(int f=0; f<frameCount; f++){
+            IndexedPositions goals = frames[f].getGoalPositions();
+            double[] vals = goals.getValues();
+            BitSet mask = goals.getMask();
+            for(int i=mask.nextSetBit(0); i>=0 && i<len; i=mask.nextSetBit(i+1)){
+                mySums[i] += vals[i];
+                myCounts[i]++;
+            }
+        }
+        out.clear();
+        for(int i=0; i<len; i++){
+            if(myCounts[i] == 0){
+                continue;
+            }
+            double avg = mySums[i]/myCounts[i];
+            out.set(i, Utils.bound(avg, 0.0, 1.0));
+        }
+    }
+}
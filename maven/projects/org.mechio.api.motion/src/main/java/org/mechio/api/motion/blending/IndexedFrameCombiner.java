@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+/**
+ * Array-based counterpart of a FrameCombiner.  Combines IndexedFrames into
+ * a reusable IndexedPositions without creating position maps.
+ */
+public interface IndexedFrameCombiner {
+    /**
+     * Combines IndexedFrames into a set of joint positions.
+     * @param time time of the move request
+     * @param interval time since last move request
+     * @param curPos current joint positions
+     * @param frames frames to combine, only the first frameCount are used
+     * @param frameCount number of frames to combine
+     * @param out IndexedPositions to write to, cleared by the combiner
+     */
+    public void combineFrames(long time, long interval,
+            IndexedPositions curPos, IndexedFrame[] frames, int frameCount,
+            IndexedPositions out);
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import org.mechio.api.motion.protocol.JointPositionMap;
+
+/**
+ * A FrameSource which can write its movements directly into a reusable
+ * IndexedFrame.  The IndexedBlender uses this instead of
+ * getMovements(long, long) when it is available.
+ *
+ * @param <Id> joint id type
+ * @param <PosMap> Type of JointPositionMap returned by this FrameSource
+ */
+public interface IndexedFrameSource<Id, PosMap extends JointPositionMap<Id,?>>
+        extends FrameSource<PosMap> {
+    /**
+     * Writes the desired Robot movement starting at the given time and
+     * lasting for the given number of milliseconds into the given frame.
+     * The frame has been cleared before this is called.
+     *
+     * @param currentTimeUTC time of the move request
+     * @param moveLengthMilliSec expected length of the movement
+     * @param index JointIndex used to map joint ids to slots
+     * @param frame IndexedFrame to write to
+     * @return true if the frame was filled, false if there is no movement
+     */
+    public boolean getMovements(long currentTimeUTC, long moveLengthMilliSec,
+            JointIndex<Id> index, IndexedFrame frame);
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map.Entry;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.mechio.api.motion.protocol.JointPositionMap;
+
+/**
+ * A reusable set of normalized joint positions stored by JointIndex slot.
+ * A slot only holds a position if its bit is set in the validity mask.
+ */
+public class IndexedPositions {
+    private double[] myValues;
+    private BitSet myMask;
+
+    /**
+     * Creates an empty IndexedPositions with the given initial capacity.
+     * @param capacity initial number of slots
+     */
+    public IndexedPositions(int capacity){
+        myValues = new double[Math.max(capacity, 1)];
+        myMask = new BitSet(myValues.length);
+    }
+
+    /**
+     * Grows the position array to hold at least the given number of slots.
+     * Existing positions are kept.
+     * @param capacity number of slots needed
+     */
+    public void ensureCapacity(int capacity){
+        if(capacity <= myValues.length){
+            return;
+        }
+        int len = Math.max(capacity, myValues.length*2);
+        myValues = Arrays.copyOf(myValues, len);
+    }
+
+    /**
+     * Returns the number of slots which can be stored without growing.
+     * @return number of slots which can be stored
+     */
+    public int getCapacity(){
+        return myValues.length;
+    }
+
+    /**
+     * Removes all positions.
+     */
+    public void clear(){
+        myMask.clear();
+    }
+
+    /**
+     * Sets the position for a slot, growing the position array if needed.
+     * @param index slot to set
+     * @param value normalized position
+     */
+    public void set(int index, double value){
+        if(index >= myValues.length){
+            ensureCapacity(index+1);
+        }
+        myValues[index] = value;
+        myMask.set(index);
+    }
+
+    /**
+     * Removes the position for a slot.
+     * @param index slot to remove
+     */
+    public void remove(int index){
+        myMask.clear(index);
+    }
+
+    /**
+     * Returns true if the slot holds a position.
+     * @param index slot to check
+     * @return true if the slot holds a position
+     */
+    public boolean contains(int index){
+        return myMask.get(index);
+    }
+
+    /**
+     * Returns the position for a slot.  The value is undefined if the slot
+     * does not hold a position.
+     * @param index slot to read
+     * @return normalized position
+     */
+    public double get(int index){
+        return myValues[index];
+    }
+
+    /**
+     * Returns the backing position array.  Only slots set in the mask hold
+     * valid positions.
+     * @return backing position array
+     */
+    public double[] getValues(){
+        return myValues;
+    }
+
+    /**
+     * Returns the validity mask.
+     * @return validity mask
+     */
+    public BitSet getMask(){
+        return myMask;
+    }
+
+    /**
+     * Returns true if no slot holds a position.
+     * @return true if no slot holds a position
+     */
+    public boolean isEmpty(){
+        return myMask.isEmpty();
+    }
+
+    /**
+     * Copies the positions from another IndexedPositions.
+     * @param pos positions to copy
+     */
+    public void copy(IndexedPositions pos){
+        ensureCapacity(pos.getCapacity());
+        myMask.clear();
+        myMask.or(pos.myMask);
+        System.arraycopy(pos.myValues, 0, myValues, 0, pos.myValues.length);
+    }
+
+    /**
+     * Clears these positions and reads the entries of a JointPositionMap,
+     * assigning slots for any new joint ids.
+     * @param <Id> joint id type
+     * @param positions positions to read, may be null
+     * @param index JointIndex used to map ids to slots
+     */
+    public <Id> void read(
+            JointPositionMap<Id,? extends NormalizedDouble> positions,
+            JointIndex<Id> index){
+        myMask.clear();
+        if(positions == null){
+            return;
+        }
+        //hold the index lock once for the whole map
+        synchronized(index){
+            for(Entry<Id,? extends NormalizedDouble> e : positions.entrySet()){
+                NormalizedDouble val = e.getValue();
+                if(e.getKey() == null || val == null){
+                    continue;
+                }
+                set(index.addJoint(e.getKey()), val.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each joint id a dense int slot.  Slots are assigned once, the first
+ * time a joint is seen, and never change afterwards, so position arrays
+ * indexed by slot can be reused from one blend to the next.
+ *
+ * @param <Id> type of joint id being indexed
+ */
+public class JointIndex<Id> {
+    private Map<Id,Integer> myIndices;
+    private List<Id> myIds;
+    private Object[] myIdArray;
+
+    /**
+     * Creates an empty JointIndex.
+     */
+    public JointIndex(){
+        myIndices = new HashMap();
+        myIds = new ArrayList();
+        myIdArray = new Object[0];
+    }
+
+    /**
+     * Returns the slot for the given joint id, assigning a new slot if the id
+     * has not been seen before.
+     * @param id joint id
+     * @return slot for the joint id
+     */
+    public synchronized int addJoint(Id id){
+        if(id == null){
+            throw new NullPointerException();
+        }
+        Integer i = myIndices.get(id);
+        if(i != null){
+            return i;
+        }
+        int index = myIds.size();
+        myIds.add(id);
+        myIndices.put(id, index);
+        if(index == myIdArray.length){
+            myIdArray = Arrays.copyOf(myIdArray, Math.max(8, index*2));
+        }
+        myIdArray[index] = id;
+        return index;
+    }
+
+    /**
+     * Returns the slot for the given joint id.
+     * @param id joint id
+     * @return slot for the joint id, -1 if the id has no slot
+     */
+    public synchronized int getIndex(Id id){
+        Integer i = myIndices.get(id);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Returns the joint id assigned to the given slot.
+     * @param index slot to look up
+     * @return joint id assigned to the slot
+     */
+    public synchronized Id getId(int index){
+        return myIds.get(index);
+    }
+
+    /**
+     * Returns the joint ids by slot, so a whole frame can be resolved with a
+     * single lookup.  The array is shared and must not be modified.  Slots
+     * added later may be written into it, but the ids of the slots assigned
+     * when it was returned never change.
+     * @return joint ids by slot, at least size() long
+     */
+    public synchronized Object[] getIds(){
+        return myIdArray;
+    }
+
+    /**
+     * Returns the number of slots assigned.
+     * @return number of slots assigned
+     */
+    public synchronized int size(){
+        return myIds.size();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory latency histogram with log-linear buckets, in the style of
+ * an HdrHistogram.  Each power of two is split into 32 linear sub-buckets,
+ * giving about 3% precision from nanoseconds up to several minutes.
+ * Recording is lock-free and does not allocate.
+ */
+public class LatencyHistogram {
+    private final static int theSubBucketBits = 5;
+    private final static int theSubBucketCount = 1 << theSubBucketBits;
+    private final static int theMaxExponent = 40;
+    private final static int theBucketCount =
+            (theMaxExponent - theSubBucketBits + 2) * theSubBucketCount;
+
+    private final AtomicLongArray myCounts;
+    private final AtomicLong myTotalCount;
+    private final AtomicLong myMaxValue;
+    private final AtomicLong myTotalValue;
+
+    /**
+     * Creates an empty LatencyHistogram.
+     */
+    public LatencyHistogram(){
+        myCounts = new AtomicLongArray(theBucketCount);
+        myTotalCount = new AtomicLong();
+        myMaxValue = new AtomicLong();
+        myTotalValue = new AtomicLong();
+    }
+
+    /**
+     * Records a latency.
+     * @param nanos latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos){
+        long v = Math.max(0, nanos);
+        myCounts.incrementAndGet(bucketIndex(v));
+        myTotalCount.incrementAndGet();
+        myTotalValue.addAndGet(v);
+        long max = myMaxValue.get();
+        while(v > max && !myMaxValue.compareAndSet(max, v)){
+            max = myMaxValue.get();
+        }
+    }
+
+    private static int bucketIndex(long v){
+        if(v < theSubBucketCount){
+            return (int)v;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        if(msb > theMaxExponent){
+            return theBucketCount - 1;
+        }
+        int shift = msb - theSubBucketBits;
+        int sub = (int)(v >>> shift) - theSubBucketCount;
+        return (shift + 1) * theSubBucketCount + sub;
+    }
+
+    private static long bucketUpperBound(int index){
+        if(index < theSubBucketCount){
+            return index;
+        }
+        int shift = index / theSubBucketCount - 1;
+        long sub = index % theSubBucketCount + theSubBucketCount;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return number of recorded values
+     */
+    public long getCount(){
+        return myTotalCount.get();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     * @return largest recorded value in nanoseconds
+     */
+    public long getMaxNanos(){
+        return myMaxValue.get();
+    }
+
+    /**
+     * Returns the mean recorded value.
+     * @return mean recorded value in nanoseconds
+     */
+    public long getMeanNanos(){
+        long count = myTotalCount.get();
+        return count == 0 ? 0 : myTotalValue.get() / count;
+    }
+
+    /**
+     * Returns the value at the given percentile.  The result is the upper
+     * bound of the bucket holding the percentile, capped at the max value.
+     * @param percentile percentile between 0 and 100
+     * @return value at the percentile in nanoseconds, 0 if empty
+     */
+    public long getPercentileNanos(double percentile){
+        long count = myTotalCount.get();
+        if(count == 0){
+            return 0;
+        }
+        double p = Math.max(0.0, Math.min(100.0, percentile));
+        long target = Math.max(1, (long)Math.ceil(p / 100.0 * count));
+        long seen = 0;
+        for(int i=0; i<theBucketCount; i++){
+            seen += myCounts.get(i);
+            if(seen >= target){
+                return Math.min(bucketUpperBound(i), myMaxValue.get());
+            }
+        }
+        return myMaxValue.get();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset(){
+        for(int i=0; i<theBucketCount; i++){
+            myCounts.set(i, 0);
+        }
+        myTotalCount.set(0);
+        myTotalValue.set(0);
+        myMaxValue.set(0);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.mechio.api.motion.Joint;
+import org.mechio.api.motion.Robot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.mechio.api.motion.blending.MotionJournalRecorder.*;
+
+/**
+ * Reads a motion journal written by a MotionJournalRecorder.
+ * <p>
+ * Records are addressed by sequence number, starting at 0 for the first
+ * record written.  Once the journal ring has wrapped, only the last
+ * capacity records are available.  The record count is read from the
+ * journal header on each call, so a journal can be read while it is being
+ * recorded.  The joint table is read again when the recorder has added
+ * joints.
+ */
+public class MotionJournalReader {
+    private static final Logger theLogger = LoggerFactory.getLogger(MotionJournalReader.class);
+    private final File myFile;
+    private final RandomAccessFile myRandomAccessFile;
+    private final MappedByteBuffer myBuffer;
+    private final int myHeaderSize;
+    private final int myRecordSize;
+    private final long myCapacity;
+    private final long myCreatedTime;
+    private final Robot.Id myRobotId;
+    private final int myJointTableOffset;
+    private final int myMaxJoints;
+    private List<Robot.JointId> myJointIds;
+
+    /**
+     * Opens a motion journal.
+     * @param file journal file to read
+     * @throws IOException if the file cannot be read or is not a motion
+     * journal
+     */
+    public MotionJournalReader(File file) throws IOException{
+        myFile = file;
+        myRandomAccessFile = new RandomAccessFile(file, "r");
+        try{
+            myBuffer = myRandomAccessFile.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0,
+                    myRandomAccessFile.length());
+            if(myBuffer.capacity() < OFFSET_ROBOT_ID
+                    || myBuffer.getInt(0) != MAGIC){
+                throw new IOException("Not a motion journal: " + file);
+            }
+            int version = myBuffer.getInt(4);
+            if(version != VERSION){
+                throw new IOException(
+                        "Unsupported motion journal version: " + version);
+            }
+            myHeaderSize = myBuffer.getInt(OFFSET_HEADER_SIZE);
+            myRecordSize = myBuffer.getInt(OFFSET_RECORD_SIZE);
+            myCapacity = myBuffer.getLong(OFFSET_CAPACITY);
+            myCreatedTime = myBuffer.getLong(OFFSET_CREATED);
+            if(myBuffer.capacity() < myHeaderSize + myCapacity*myRecordSize){
+                throw new IOException("Truncated motion journal: " + file);
+            }
+            int idLen = myBuffer.getShort(OFFSET_ROBOT_ID);
+            byte[] idBytes = new byte[idLen];
+            int offset = OFFSET_ROBOT_ID + 2;
+            for(int i=0; i<idLen; i++){
+                idBytes[i] = myBuffer.get(offset++);
+            }
+            myRobotId = new Robot.Id(new String(idBytes, CHARSET));
+            myJointTableOffset = offset;
+            myMaxJoints = myBuffer.getInt(OFFSET_MAX_JOINTS);
+            if(myJointTableOffset + 4*myMaxJoints > myHeaderSize
+                    || RECORD_PREFIX_SIZE + 4*myMaxJoints > myRecordSize){
+                throw new IOException("Invalid motion journal header: " + file);
+            }
+            myJointIds = Collections.emptyList();
+        }catch(IOException | RuntimeException ex){
+            myRandomAccessFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the id of the recorded Robot.
+     * @return id of the recorded Robot
+     */
+    public Robot.Id getRobotId(){
+        return myRobotId;
+    }
+
+    /**
+     * Returns the recorded joints in journal order.
+     * @return recorded joints
+     */
+    public synchronized List<Robot.JointId> getJointIds(){
+        int jointCount = Math.min(
+                myBuffer.getInt(OFFSET_JOINT_COUNT), myMaxJoints);
+        if(jointCount == myJointIds.size()){
+            return myJointIds;
+        }
+        List<Robot.JointId> joints = new ArrayList(jointCount);
+        for(int i=0; i<jointCount; i++){
+            Joint.Id jId = new Joint.Id(
+                    myBuffer.getInt(myJointTableOffset + i*4));
+            joints.add(new Robot.JointId(myRobotId, jId));
+        }
+        myJointIds = Collections.unmodifiableList(joints);
+        return myJointIds;
+    }
+
+    /**
+     * Returns the time the journal was created.
+     * @return creation time in milliseconds UTC
+     */
+    public long getCreatedTime(){
+        return myCreatedTime;
+    }
+
+    /**
+     * Returns the number of records the journal ring holds.
+     * @return journal capacity
+     */
+    public long getCapacity(){
+        return myCapacity;
+    }
+
+    /**
+     * Returns one past the sequence number of the newest record.
+     * @return number of records written, including overwritten records
+     */
+    public long getRecordCount(){
+        return myBuffer.getLong(OFFSET_RECORD_COUNT);
+    }
+
+    /**
+     * Returns the sequence number of the oldest available record.
+     * @return sequence number of the oldest available record
+     */
+    public long getFirstSequence(){
+        return Math.max(0, getRecordCount() - myCapacity);
+    }
+
+    private int recordOffset(long seq){
+        long count = getRecordCount();
+        if(seq < Math.max(0, count - myCapacity) || seq >= count){
+            throw new IndexOutOfBoundsException(
+                    "Record not available: " + seq);
+        }
+        return (int)(myHeaderSize + (seq % myCapacity) * myRecordSize);
+    }
+
+    /**
+     * Returns the time a record was written.
+     * @param seq record sequence number
+     * @return write time in milliseconds UTC
+     */
+    public long getTime(long seq){
+        return myBuffer.getLong(recordOffset(seq));
+    }
+
+    /**
+     * Returns the movement length of a record.
+     * @param seq record sequence number
+     * @return movement length in milliseconds
+     */
+    public long getInterval(long seq){
+        return myBuffer.getInt(recordOffset(seq) + 8);
+    }
+
+    /**
+     * Returns the number of frames blended for a record.
+     * @param seq record sequence number
+     * @return number of contributing frames
+     */
+    public int getSourceCount(long seq){
+        return myBuffer.getInt(recordOffset(seq) + 12);
+    }
+
+    /**
+     * Returns the contributing sources of a record, as a bit mask of the
+     * source slots listed by getSourceNames.
+     * @param seq record sequence number
+     * @return contributing source mask
+     */
+    public long getSourceMask(long seq){
+        return myBuffer.getLong(recordOffset(seq) + 16);
+    }
+
+    /**
+     * Returns a recorded joint position.
+     * @param seq record sequence number
+     * @param joint index of the joint in getJointIds
+     * @return recorded position, NaN if the joint was not written
+     */
+    public double getPosition(long seq, int joint){
+        if(joint < 0 || joint >= myMaxJoints){
+            throw new IndexOutOfBoundsException("Invalid joint: " + joint);
+        }
+        return myBuffer.getFloat(
+                recordOffset(seq) + RECORD_PREFIX_SIZE + joint*4);
+    }
+
+    /**
+     * Finds the newest available record written at or before the given
+     * time.
+     * @param time time in milliseconds UTC
+     * @return record sequence number, or -1 if every available record is
+     * later than the time
+     */
+    public long findRecord(long time){
+        long count = getRecordCount();
+        long lo = Math.max(0, count - myCapacity);
+        long hi = count - 1;
+        long found = -1;
+        while(lo <= hi){
+            long mid = (lo + hi) >>> 1;
+            if(getTime(mid) <= time){
+                found = mid;
+                lo = mid + 1;
+            }else{
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads the FrameSource names written next to the journal.  Each
+     * description is the FrameSource's class name and its toString,
+     * separated by a tab.
+     * @return map of source slots and FrameSource descriptions
+     */
+    public Map<Integer,String> getSourceNames(){
+        Map<Integer,String> names = new HashMap();
+        File f = new File(myFile.getPath() + SOURCES_SUFFIX);
+        if(!f.isFile()){
+            return names;
+        }
+        try(BufferedReader r = new BufferedReader(
+                new InputStreamReader(new FileInputStream(f), CHARSET))){
+            String line;
+            while((line = r.readLine()) != null){
+                String[] fields = line.split("\t", -1);
+                if(fields.length < 2 || fields[0].isEmpty()){
+                    continue;
+                }
+                StringBuilder desc = new StringBuilder();
+                for(int i=1; i<fields.length; i++){
+                    if(i > 1){
+                        desc.append('\t');
+                    }
+                    desc.append(unescape(fields[i]));
+                }
+                try{
+                    names.put(Integer.parseInt(fields[0]), desc.toString());
+                }catch(NumberFormatException ex){
+                    theLogger.warn("Invalid motion journal source: {}", line);
+                }
+            }
+        }catch(IOException ex){
+            theLogger.warn("Unable to read motion journal sources.", ex);
+        }
+        return names;
+    }
+
+    /**
+     * Closes the journal file.
+     * @throws IOException if there is an error closing the file
+     */
+    public void close() throws IOException{
+        myRandomAccessFile.close();
+    }
+}
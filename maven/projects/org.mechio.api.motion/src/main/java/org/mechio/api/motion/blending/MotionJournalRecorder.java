@@ -0,0 +1,462 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.Robot.RobotPositionMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A BlenderOutput which records every blended position map to a binary
+ * motion journal before passing it on to another BlenderOutput.
+ * <p>
+ * The journal is a fixed-size, memory-mapped ring of fixed-length records.
+ * Each record holds the write time, the movement length, a bit mask of the
+ * FrameSources which contributed, and one float position per joint slot (NaN
+ * if the joint was not written).  Once the ring is full the oldest records
+ * are overwritten.  The file is created and mapped by open, so recording
+ * only writes to the mapped buffer; a background thread flushes the mapping
+ * to disk and appends new FrameSource names to a ".sources" file next to the
+ * journal.
+ * <p>
+ * Records have room for a fixed number of joints.  Joints are given slots
+ * as they first appear, starting with the wrapped output's positions when
+ * the journal is opened, and the joint table in the header grows with them.
+ * Positions of other robots, or of joints beyond the slot count, are not
+ * recorded.  Journals are read with a MotionJournalReader.
+ */
+public class MotionJournalRecorder implements
+        BlenderOutput<RobotPositionMap>, SourceTrackingOutput {
+    private static final Logger theLogger = LoggerFactory.getLogger(MotionJournalRecorder.class);
+    final static int MAGIC = 0x4D4A4E4C;
+    final static int VERSION = 2;
+    final static int OFFSET_HEADER_SIZE = 8;
+    final static int OFFSET_RECORD_SIZE = 12;
+    final static int OFFSET_JOINT_COUNT = 16;
+    final static int OFFSET_MAX_JOINTS = 20;
+    final static int OFFSET_CAPACITY = 24;
+    final static int OFFSET_RECORD_COUNT = 32;
+    final static int OFFSET_CREATED = 40;
+    final static int OFFSET_ROBOT_ID = 48;
+    final static int RECORD_PREFIX_SIZE = 24;
+    final static int MAX_SOURCES = 64;
+    final static int DEFAULT_MAX_JOINTS = 64;
+    final static String SOURCES_SUFFIX = ".sources";
+    final static Charset CHARSET = Charset.forName("UTF-8");
+
+    private final File myFile;
+    private final Robot.Id myRobotId;
+    private final BlenderOutput<RobotPositionMap> myOutput;
+    private final long myCapacity;
+    private final int myMaxJoints;
+    private final long myFlushIntervalMillisec;
+    private RandomAccessFile myRandomAccessFile;
+    private MappedByteBuffer myBuffer;
+    private int myHeaderSize;
+    private int myRecordSize;
+    private int myJointTableOffset;
+    private final Map<Robot.JointId,Integer> myJointSlots;
+    private long myRecordCount;
+    private long myMissingJointCount;
+    private final Map<FrameSource,Integer> mySourceSlots;
+    private final Queue<String> myNewSourceNames;
+    private long myCurrentSourceMask;
+    private int myCurrentSourceCount;
+    private ScheduledExecutorService myFlusher;
+    private boolean myClosedFlag;
+
+    /**
+     * Creates a new MotionJournalRecorder with room for 64 joints.  Nothing
+     * is recorded until the journal is opened.
+     * @param file journal file to write, replaced if it exists
+     * @param robotId id of the Robot being recorded
+     * @param output BlenderOutput to pass positions to
+     * @param capacity number of records kept in the ring
+     * @param flushIntervalMillisec milliseconds between flushes to disk
+     */
+    public MotionJournalRecorder(File file, Robot.Id robotId,
+            BlenderOutput<RobotPositionMap> output,
+            long capacity, long flushIntervalMillisec){
+        this(file, robotId, output,
+                capacity, DEFAULT_MAX_JOINTS, flushIntervalMillisec);
+    }
+
+    /**
+     * Creates a new MotionJournalRecorder.  Nothing is recorded until the
+     * journal is opened.
+     * @param file journal file to write, replaced if it exists
+     * @param robotId id of the Robot being recorded
+     * @param output BlenderOutput to pass positions to
+     * @param capacity number of records kept in the ring
+     * @param maxJoints number of joints each record has room for
+     * @param flushIntervalMillisec milliseconds between flushes to disk
+     */
+    public MotionJournalRecorder(File file, Robot.Id robotId,
+            BlenderOutput<RobotPositionMap> output,
+            long capacity, int maxJoints, long flushIntervalMillisec){
+        if(file == null || robotId == null || output == null){
+            throw new NullPointerException();
+        }
+        if(capacity <= 0 || maxJoints <= 0){
+            throw new IllegalArgumentException(
+                    "capacity and maxJoints must be greater than zero");
+        }
+        myFile = file;
+        myRobotId = robotId;
+        myOutput = output;
+        myCapacity = capacity;
+        myMaxJoints = maxJoints;
+        myFlushIntervalMillisec = Math.max(1, flushIntervalMillisec);
+        myJointSlots = new HashMap();
+        mySourceSlots = new IdentityHashMap();
+        myNewSourceNames = new ConcurrentLinkedQueue();
+    }
+
+    /**
+     * Marks a FrameSource as contributing to the next write.  Called by the
+     * Blender for each frame it blends.  The first 64 distinct FrameSources
+     * are tracked.
+     * @param source contributing FrameSource
+     */
+    @Override
+    public synchronized void addContributingSource(FrameSource source){
+        myCurrentSourceCount++;
+        Integer slot = mySourceSlots.get(source);
+        if(slot == null){
+            if(mySourceSlots.size() >= MAX_SOURCES){
+                return;
+            }
+            slot = mySourceSlots.size();
+            mySourceSlots.put(source, slot);
+            myNewSourceNames.add(slot + "\t"
+                    + escape(source.getClass().getName())
+                    + "\t" + escape(String.valueOf(source)));
+        }
+        myCurrentSourceMask |= 1L << slot;
+    }
+
+    /**
+     * Escapes backslashes, tabs and line breaks so a name fits on one field
+     * of the sources file.
+     */
+    static String escape(String str){
+        StringBuilder sb = new StringBuilder(str.length());
+        for(int i=0; i<str.length(); i++){
+            char c = str.charAt(i);
+            switch(c){
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reverses escape.
+     */
+    static String unescape(String str){
+        StringBuilder sb = new StringBuilder(str.length());
+        for(int i=0; i<str.length(); i++){
+            char c = str.charAt(i);
+            if(c != '\\' || i+1 == str.length()){
+                sb.append(c);
+                continue;
+            }
+            char n = str.charAt(++i);
+            switch(n){
+                case 't': sb.append('\t'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                default: sb.append(n);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void write(RobotPositionMap positions, long lenMillisec) {
+        myOutput.write(positions, lenMillisec);
+        if(positions == null || positions.isEmpty()){
+            return;
+        }
+        record(positions, lenMillisec);
+    }
+
+    @Override
+    public RobotPositionMap getPositions() {
+        return myOutput.getPositions();
+    }
+
+    /**
+     * Returns the BlenderOutput positions are passed to.
+     * @return wrapped BlenderOutput
+     */
+    public BlenderOutput<RobotPositionMap> getOutput(){
+        return myOutput;
+    }
+
+    private synchronized void record(
+            RobotPositionMap positions, long lenMillisec){
+        if(myBuffer == null || myClosedFlag){
+            myCurrentSourceMask = 0;
+            myCurrentSourceCount = 0;
+            return;
+        }
+        long index = myRecordCount % myCapacity;
+        int base = (int)(myHeaderSize + index * myRecordSize);
+        myBuffer.putLong(base, System.currentTimeMillis());
+        myBuffer.putInt(base + 8, (int)lenMillisec);
+        myBuffer.putInt(base + 12, myCurrentSourceCount);
+        myBuffer.putLong(base + 16, myCurrentSourceMask);
+        int posBase = base + RECORD_PREFIX_SIZE;
+        for(int i=0; i<myMaxJoints; i++){
+            myBuffer.putFloat(posBase + i*4, Float.NaN);
+        }
+        for(Entry<Robot.JointId,NormalizedDouble> e : positions.entrySet()){
+            NormalizedDouble val = e.getValue();
+            int slot = val == null ? -1 : getJointSlot(e.getKey());
+            if(slot < 0){
+                myMissingJointCount++;
+                continue;
+            }
+            myBuffer.putFloat(posBase + slot*4, (float)val.getValue());
+        }
+        myRecordCount++;
+        myBuffer.putLong(OFFSET_RECORD_COUNT, myRecordCount);
+        myCurrentSourceMask = 0;
+        myCurrentSourceCount = 0;
+    }
+
+    private int getJointSlot(Robot.JointId id){
+        Integer slot = myJointSlots.get(id);
+        if(slot != null){
+            return slot;
+        }
+        if(id == null || !myRobotId.equals(id.getRobotId())
+                || myJointSlots.size() >= myMaxJoints){
+            return -1;
+        }
+        int i = myJointSlots.size();
+        myBuffer.putInt(myJointTableOffset + i*4,
+                id.getJointId().getLogicalJointNumber());
+        myJointSlots.put(id, i);
+        myBuffer.putInt(OFFSET_JOINT_COUNT, myJointSlots.size());
+        return i;
+    }
+
+    /**
+     * Creates and maps the journal file and starts the flush thread.  Joints
+     * in the wrapped output's current positions are given the first slots.
+     * Called before blending starts, so the blending thread never touches
+     * the file system.
+     * @throws IOException if the journal cannot be created
+     */
+    public synchronized void open() throws IOException{
+        if(myBuffer != null || myClosedFlag){
+            return;
+        }
+        byte[] robotBytes = myRobotId.getRobtIdString().getBytes(CHARSET);
+        int jointTableOffset = OFFSET_ROBOT_ID + 2 + robotBytes.length;
+        int headerSize = jointTableOffset + 4*myMaxJoints;
+        headerSize = (headerSize + 7) & ~7;
+        int recordSize = RECORD_PREFIX_SIZE + 4*myMaxJoints;
+        recordSize = (recordSize + 7) & ~7;
+        long fileSize = headerSize + myCapacity * recordSize;
+        if(fileSize > Integer.MAX_VALUE){
+            throw new IOException(
+                    "Motion journal capacity too large: " + fileSize + " bytes.");
+        }
+        if(myFile.exists() && !myFile.delete()){
+            throw new IOException("Unable to replace motion journal " + myFile);
+        }
+        File sources = new File(myFile.getPath() + SOURCES_SUFFIX);
+        if(sources.exists() && !sources.delete()){
+            throw new IOException("Unable to replace " + sources);
+        }
+        RandomAccessFile raf = new RandomAccessFile(myFile, "rw");
+        try{
+            raf.setLength(fileSize);
+            myBuffer = raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }catch(IOException ex){
+            raf.close();
+            throw ex;
+        }
+        myRandomAccessFile = raf;
+        myBuffer.putInt(0, MAGIC);
+        myBuffer.putInt(4, VERSION);
+        myBuffer.putInt(OFFSET_HEADER_SIZE, headerSize);
+        myBuffer.putInt(OFFSET_RECORD_SIZE, recordSize);
+        myBuffer.putInt(OFFSET_JOINT_COUNT, 0);
+        myBuffer.putInt(OFFSET_MAX_JOINTS, myMaxJoints);
+        myBuffer.putLong(OFFSET_CAPACITY, myCapacity);
+        myBuffer.putLong(OFFSET_RECORD_COUNT, 0);
+        myBuffer.putLong(OFFSET_CREATED, System.currentTimeMillis());
+        myBuffer.putShort(OFFSET_ROBOT_ID, (short)robotBytes.length);
+        int offset = OFFSET_ROBOT_ID + 2;
+        for(byte b : robotBytes){
+            myBuffer.put(offset++, b);
+        }
+        myHeaderSize = headerSize;
+        myRecordSize = recordSize;
+        myJointTableOffset = jointTableOffset;
+        addCurrentJoints();
+        myFlusher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "MotionJournalFlusher");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        myFlusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, myFlushIntervalMillisec, myFlushIntervalMillisec,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void addCurrentJoints(){
+        RobotPositionMap cur = myOutput.getPositions();
+        if(cur == null){
+            return;
+        }
+        List<Robot.JointId> joints = new ArrayList(cur.keySet());
+        Collections.sort(joints, new Comparator<Robot.JointId>() {
+            @Override
+            public int compare(Robot.JointId a, Robot.JointId b) {
+                int x = a.getJointId().getLogicalJointNumber();
+                int y = b.getJointId().getLogicalJointNumber();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        for(Robot.JointId id : joints){
+            getJointSlot(id);
+        }
+    }
+
+    private void flush(){
+        MappedByteBuffer buf = myBuffer;
+        if(buf != null){
+            buf.force();
+        }
+        if(myNewSourceNames.isEmpty()){
+            return;
+        }
+        File f = new File(myFile.getPath() + SOURCES_SUFFIX);
+        try(Writer w = new OutputStreamWriter(
+                new FileOutputStream(f, true), CHARSET)){
+            String name;
+            while((name = myNewSourceNames.poll()) != null){
+                w.write(name);
+                w.write('\n');
+            }
+        }catch(IOException ex){
+            theLogger.warn("Unable to write motion journal sources.", ex);
+        }
+    }
+
+    /**
+     * Returns the number of records written, including overwritten records.
+     * @return number of records written
+     */
+    public synchronized long getRecordCount(){
+        return myRecordCount;
+    }
+
+    /**
+     * Returns the number of positions which were not recorded because their
+     * joint belongs to another robot or there was no free joint slot.
+     * @return number of positions not recorded
+     */
+    public synchronized long getMissingJointCount(){
+        return myMissingJointCount;
+    }
+
+    /**
+     * Returns the journal file.
+     * @return journal file
+     */
+    public File getFile(){
+        return myFile;
+    }
+
+    /**
+     * Stops recording, flushes the journal and closes the file.  Positions
+     * are still passed to the wrapped output.  A closed journal cannot be
+     * reopened.
+     */
+    public void close(){
+        ScheduledExecutorService flusher;
+        synchronized(this){
+            if(myClosedFlag){
+                return;
+            }
+            myClosedFlag = true;
+            flusher = myFlusher;
+            myFlusher = null;
+        }
+        if(flusher != null){
+            flusher.shutdown();
+            try{
+                flusher.awaitTermination(
+                        myFlushIntervalMillisec + 1000, TimeUnit.MILLISECONDS);
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        try{
+            if(myRandomAccessFile != null){
+                myRandomAccessFile.close();
+            }
+        }catch(IOException ex){
+            theLogger.warn("Error closing motion journal.", ex);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jflux.api.core.Source;
+import org.mechio.api.motion.protocol.DefaultMotionFrame;
+import org.mechio.api.motion.protocol.JointPositionMap;
+import org.mechio.api.motion.protocol.MotionFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects frames from FrameSources in parallel on a bounded worker pool.
+ * <p>
+ * All sources are called at the start of a tick, and the collector waits
+ * for them until the per-tick deadline.  A source which misses the deadline
+ * is left to finish in the background and is not called again until it has.
+ * Its late result is discarded, and the source counts as missing for every
+ * tick which starts while it is still running.  Depending on the
+ * MissPolicy, the missing frame is dropped or replaced by a copy of the last
+ * frame the source returned.  Copies are only made if the collector has a
+ * PositionMap factory; without one REUSE_LAST behaves as DROP.
+ * <p>
+ * The map returned by collectFrames is reused by the next call.
+ */
+public class ParallelFrameCollector {
+    private static final Logger theLogger = LoggerFactory.getLogger(ParallelFrameCollector.class);
+
+    /**
+     * Behavior when a FrameSource misses the deadline.
+     */
+    public static enum MissPolicy {
+        /**
+         * Leave the source out of the tick.
+         */
+        DROP,
+        /**
+         * Use a copy of the last frame returned by the source.
+         */
+        REUSE_LAST
+    }
+
+    private ExecutorService myExecutor;
+    private volatile long myDeadlineNanos;
+    private volatile MissPolicy myMissPolicy;
+    private final Source<? extends JointPositionMap> myPositionMapFactory;
+    private final Map<FrameSource,SourceCall> myCalls;
+    private final List<SourceCall> myTickCalls;
+    private final Map<MotionFrame,FrameSource> myFrames;
+    private long myTick;
+
+    /**
+     * Creates a new ParallelFrameCollector which cannot copy frames, so
+     * MissPolicy.REUSE_LAST drops missing frames.
+     * @param threadCount number of worker threads
+     * @param deadlineMillisec milliseconds to wait for sources each tick
+     * @param policy behavior when a source misses the deadline
+     */
+    public ParallelFrameCollector(
+            int threadCount, long deadlineMillisec, MissPolicy policy){
+        this(threadCount, deadlineMillisec, policy, null);
+    }
+
+    /**
+     * Creates a new ParallelFrameCollector.
+     * @param threadCount number of worker threads
+     * @param deadlineMillisec milliseconds to wait for sources each tick
+     * @param policy behavior when a source misses the deadline
+     * @param posMapFact factory for the PositionMaps of copied frames, null
+     * to not copy frames
+     */
+    public ParallelFrameCollector(int threadCount, long deadlineMillisec,
+            MissPolicy policy, Source<? extends JointPositionMap> posMapFact){
+        if(policy == null){
+            throw new NullPointerException();
+        }
+        if(threadCount <= 0){
+            throw new IllegalArgumentException(
+                    "threadCount must be greater than zero");
+        }
+        myExecutor = Executors.newFixedThreadPool(
+                threadCount, new CollectorThreadFactory());
+        myDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillisec);
+        myMissPolicy = policy;
+        myPositionMapFactory = posMapFact;
+        myCalls = new IdentityHashMap();
+        myTickCalls = new ArrayList();
+        myFrames = new HashMap();
+    }
+
+    /**
+     * Sets the per-tick deadline.
+     * @param deadlineMillisec milliseconds to wait for sources each tick
+     */
+    public void setDeadline(long deadlineMillisec){
+        myDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillisec);
+    }
+
+    /**
+     * Sets the behavior when a source misses the deadline.
+     * @param policy behavior when a source misses the deadline
+     */
+    public void setMissPolicy(MissPolicy policy){
+        if(policy == null){
+            throw new NullPointerException();
+        }
+        myMissPolicy = policy;
+    }
+
+    /**
+     * Calls getMovements on each source in parallel and returns the frames
+     * available at the deadline.
+     * @param time time of the move request
+     * @param interval length of the move request
+     * @param sources FrameSources to collect from
+     * @return map of frames and their FrameSources, reused by the next call
+     */
+    public synchronized Map<MotionFrame,FrameSource> collectFrames(
+            long time, long interval, List<? extends FrameSource> sources){
+        long deadline = System.nanoTime() + myDeadlineNanos;
+        long tick = ++myTick;
+        myTickCalls.clear();
+        myFrames.clear();
+        for(FrameSource source : sources){
+            SourceCall call = myCalls.get(source);
+            if(call == null){
+                call = new SourceCall(source);
+                myCalls.put(source, call);
+            }
+            call.myActiveFlag = true;
+            call.submit(tick, time, interval);
+            myTickCalls.add(call);
+        }
+        for(SourceCall call : myTickCalls){
+            MotionFrame frame = call.await(tick, deadline);
+            if(frame != null){
+                myFrames.put(frame, call.mySource);
+            }
+        }
+        myTickCalls.clear();
+        removeInactiveSources();
+        return myFrames;
+    }
+
+    private void removeInactiveSources(){
+        Iterator<Entry<FrameSource,SourceCall>> it = myCalls.entrySet().iterator();
+        while(it.hasNext()){
+            SourceCall call = it.next().getValue();
+            if(!call.myActiveFlag && call.isIdle()){
+                it.remove();
+            }
+            call.myActiveFlag = false;
+        }
+    }
+
+    /**
+     * Returns the stats for a FrameSource.
+     * @param source FrameSource to look up
+     * @return stats for the FrameSource, null if the source is not being
+     * collected from
+     */
+    public synchronized FrameSourceStats getStats(FrameSource source){
+        SourceCall call = myCalls.get(source);
+        return call == null ? null : call.myStats;
+    }
+
+    /**
+     * Returns the stats for all FrameSources being collected from.
+     * @return map of FrameSources and their stats
+     */
+    public synchronized Map<FrameSource,FrameSourceStats> getStats(){
+        Map<FrameSource,FrameSourceStats> stats = new IdentityHashMap();
+        for(SourceCall call : myCalls.values()){
+            stats.put(call.mySource, call.myStats);
+        }
+        return stats;
+    }
+
+    /**
+     * Stops the worker pool.  Calls in progress are interrupted.
+     */
+    public void shutdown(){
+        myExecutor.shutdownNow();
+    }
+
+    private MotionFrame copyFrame(MotionFrame frame){
+        MotionFrame copy = new DefaultMotionFrame();
+        copy.setTimestampMillisecUTC(frame.getTimestampMillisecUTC());
+        copy.setFrameLengthMillisec(frame.getFrameLengthMillisec());
+        copy.setGoalPositions(copyPositions(frame.getGoalPositions()));
+        copy.setPreviousPositions(copyPositions(frame.getPreviousPositions()));
+        return copy;
+    }
+
+    private JointPositionMap copyPositions(JointPositionMap positions){
+        if(positions == null){
+            return null;
+        }
+        JointPositionMap copy = myPositionMapFactory.getValue();
+        copy.putAll(positions);
+        return copy;
+    }
+
+    /**
+     * Runs getMovements for a single FrameSource.  The call state is guarded
+     * by the SourceCall's monitor, which the collector waits on for the
+     * result.
+     */
+    private class SourceCall implements Runnable {
+        private final FrameSource mySource;
+        private final FrameSourceStats myStats;
+        private boolean myActiveFlag;
+        private boolean myRunningFlag;
+        private long myTick;
+        private long myTime;
+        private long myInterval;
+        private MotionFrame myFrame;
+        private Throwable myError;
+        private MotionFrame myLastFrame;
+
+        SourceCall(FrameSource source){
+            mySource = source;
+            myStats = new FrameSourceStats();
+        }
+
+        synchronized boolean isIdle(){
+            return !myRunningFlag;
+        }
+
+        void submit(long tick, long time, long interval){
+            synchronized(this){
+                if(myRunningFlag){
+                    return;
+                }
+                myRunningFlag = true;
+                myTick = tick;
+                myTime = time;
+                myInterval = interval;
+                myFrame = null;
+                myError = null;
+            }
+            try{
+                myExecutor.execute(this);
+            }catch(RejectedExecutionException ex){
+                synchronized(this){
+                    myRunningFlag = false;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long time;
+            long interval;
+            synchronized(this){
+                time = myTime;
+                interval = myInterval;
+            }
+            MotionFrame frame = null;
+            Throwable error = null;
+            long start = System.nanoTime();
+            try{
+                frame = mySource.getMovements(time, interval);
+            }catch(Throwable t){
+                error = t;
+            }
+            myStats.recordCall(System.nanoTime() - start, frame != null);
+            MotionFrame copy = null;
+            if(frame != null && myPositionMapFactory != null
+                    && myMissPolicy == MissPolicy.REUSE_LAST){
+                copy = copyFrame(frame);
+            }
+            synchronized(this){
+                myFrame = frame;
+                myError = error;
+                if(copy != null){
+                    myLastFrame = copy;
+                }
+                myRunningFlag = false;
+                notifyAll();
+            }
+        }
+
+        synchronized MotionFrame await(long tick, long deadline){
+            try{
+                while(myRunningFlag && myTick == tick){
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0){
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if(!myRunningFlag && myTick == tick){
+                MotionFrame frame = myFrame;
+                myFrame = null;
+                if(myError != null){
+                    theLogger.warn("Error collecting frame from FrameSource.",
+                            myError);
+                    myError = null;
+                }
+                return frame;
+            }
+            myStats.recordMiss();
+            if(myMissPolicy == MissPolicy.REUSE_LAST){
+                return myLastFrame;
+            }
+            return null;
+        }
+    }
+
+    private static class CollectorThreadFactory implements ThreadFactory {
+        private final AtomicInteger myCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r,
+                    "FrameCollector-" + myCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.jflux.api.core.Source;
+import org.mechio.api.motion.protocol.JointPositionMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A BlenderOutput which hands positions to a separate output thread, so the
+ * Blender can compute the next frame while the previous one is being sent.
+ * <p>
+ * Positions are passed through a bounded queue.  If the output stage falls
+ * behind and the queue is full, the new positions are merged into the newest
+ * queued frame, so no joint update is lost when the Blender writes partial
+ * frames, such as through a DeadbandOutput.
+ * getPositions returns the positions most recently written by the Blender
+ * applied over the wrapped output's positions, so blending continues from
+ * where the pipeline is heading rather than what has been sent.  Once the
+ * queue is drained, the wrapped output's positions are used again.
+ * Written positions are copied before being queued, so the Blender may reuse
+ * its PositionMaps.  The queued and projected PositionMaps are themselves
+ * reused, so the wrapped output must not keep the PositionMaps it is given.
+ * Writes reach the wrapped output on another thread,
+ * so a SourceTrackingOutput such as a MotionJournalRecorder should wrap the
+ * PipelinedOutput rather than be wrapped by it.
+ * <p>
+ * The TimedBlenderDriver blends ahead by the PipelinedOutput's lookahead, so
+ * frames are computed for the time they will be sent.  The driver marks the
+ * start of each tick, giving end-to-end latency from the start of blending
+ * to the end of the write.
+ *
+ * @param <Id> type of joint id used in the PositionMaps
+ * @param <PosMap> type of PositionMaps written
+ */
+public class PipelinedOutput<
+        Id, PosMap extends JointPositionMap<Id,NormalizedDouble>>
+        implements BlenderOutput<PosMap> {
+    private static final Logger theLogger = LoggerFactory.getLogger(PipelinedOutput.class);
+    private final BlenderOutput<PosMap> myOutput;
+    private final Source<PosMap> myPositionMapFactory;
+    private final ArrayDeque<Handoff> myQueue;
+    private final ArrayDeque<Handoff> myFreeHandoffs;
+    private final int myDepth;
+    private final int myLookaheadTicks;
+    private final LatencyHistogram myHandoffLatency;
+    private final LatencyHistogram myWriteLatency;
+    private final LatencyHistogram myEndToEndLatency;
+    private final AtomicLong mySentCount;
+    private final AtomicLong myMergedCount;
+    private final AtomicReference<PosMap> myProjectedPositions;
+    private final PosMap myProjectionMap;
+    private long myWriteSequence;
+    private long myTickStartNanos;
+    private Thread myThread;
+    private volatile boolean myRunningFlag;
+
+    /**
+     * Creates a new PipelinedOutput with a lookahead of one tick.
+     * @param output BlenderOutput to write to from the output thread
+     * @param posMapFact factory for creating new PositionMaps
+     * @param depth number of frames which can be queued
+     */
+    public PipelinedOutput(BlenderOutput<PosMap> output,
+            Source<PosMap> posMapFact, int depth){
+        this(output, posMapFact, depth, 1);
+    }
+
+    /**
+     * Creates a new PipelinedOutput.
+     * @param output BlenderOutput to write to from the output thread
+     * @param posMapFact factory for creating new PositionMaps
+     * @param depth number of frames which can be queued
+     * @param lookaheadTicks number of ticks ahead the TimedBlenderDriver
+     * blends for
+     */
+    public PipelinedOutput(BlenderOutput<PosMap> output,
+            Source<PosMap> posMapFact, int depth, int lookaheadTicks){
+        if(output == null || posMapFact == null){
+            throw new NullPointerException();
+        }
+        if(depth <= 0){
+            throw new IllegalArgumentException(
+                    "depth must be greater than zero");
+        }
+        if(lookaheadTicks < 0){
+            throw new IllegalArgumentException(
+                    "lookaheadTicks must not be negative");
+        }
+        myOutput = output;
+        myPositionMapFactory = posMapFact;
+        myQueue = new ArrayDeque<>(depth);
+        myFreeHandoffs = new ArrayDeque<>(depth + 1);
+        myDepth = depth;
+        myLookaheadTicks = lookaheadTicks;
+        myHandoffLatency = new LatencyHistogram();
+        myWriteLatency = new LatencyHistogram();
+        myEndToEndLatency = new LatencyHistogram();
+        mySentCount = new AtomicLong();
+        myMergedCount = new AtomicLong();
+        myProjectedPositions = new AtomicReference<>();
+        myProjectionMap = posMapFact.getValue();
+    }
+
+    /**
+     * Starts the output thread.
+     */
+    public synchronized void start(){
+        if(myThread != null){
+            return;
+        }
+        myRunningFlag = true;
+        myThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runOutput();
+            }
+        }, "BlenderOutputStage");
+        myThread.setDaemon(true);
+        myThread.start();
+    }
+
+    /**
+     * Stops the output thread.  Queued frames are discarded.
+     */
+    public synchronized void stop(){
+        if(myThread == null){
+            return;
+        }
+        myRunningFlag = false;
+        myThread.interrupt();
+        myThread = null;
+        synchronized(myQueue){
+            myQueue.clear();
+            myQueue.notifyAll();
+        }
+        myProjectedPositions.set(null);
+    }
+
+    /**
+     * Returns true if the output thread is running.
+     * @return true if the output thread is running
+     */
+    public synchronized boolean isRunning(){
+        return myThread != null;
+    }
+
+    /**
+     * Returns the number of ticks ahead the TimedBlenderDriver blends for
+     * when writing to this output.
+     * @return lookahead in ticks
+     */
+    public int getLookahead(){
+        return myLookaheadTicks;
+    }
+
+    /**
+     * Marks the start of a tick.  Called by the TimedBlenderDriver on the
+     * blending thread before blending.
+     * @param nanos System.nanoTime() at the start of the tick
+     */
+    public void markTickStart(long nanos){
+        myTickStartNanos = nanos;
+    }
+
+    @Override
+    public void write(PosMap positions, long lenMillisec) {
+        if(positions == null || positions.isEmpty()){
+            return;
+        }
+        if(!myRunningFlag){
+            myOutput.write(positions, lenMillisec);
+            return;
+        }
+        PosMap projected = myProjectionMap;
+        if(myProjectedPositions.get() == null){
+            projected.clear();
+            PosMap cur = myOutput.getPositions();
+            if(cur != null){
+                projected.putAll(cur);
+            }
+        }
+        projected.putAll(positions);
+        long now = System.nanoTime();
+        long tickStart = myTickStartNanos == 0 ? now : myTickStartNanos;
+        myTickStartNanos = 0;
+        synchronized(myQueue){
+            long seq = ++myWriteSequence;
+            myProjectedPositions.set(projected);
+            Handoff last = myQueue.peekLast();
+            if(myQueue.size() >= myDepth && last != null){
+                last.myPositions.putAll(positions);
+                last.mySequence = seq;
+                last.myLength = lenMillisec;
+                myMergedCount.incrementAndGet();
+                return;
+            }
+            Handoff h = myFreeHandoffs.pollFirst();
+            if(h == null){
+                h = new Handoff(myPositionMapFactory.getValue());
+            }
+            h.myPositions.putAll(positions);
+            h.mySequence = seq;
+            h.myLength = lenMillisec;
+            h.myTickStartNanos = tickStart;
+            h.myHandoffNanos = now;
+            myQueue.addLast(h);
+            myQueue.notifyAll();
+        }
+    }
+
+    @Override
+    public PosMap getPositions() {
+        PosMap projected = myProjectedPositions.get();
+        if(projected != null){
+            return projected;
+        }
+        return myOutput.getPositions();
+    }
+
+    private void runOutput(){
+        while(myRunningFlag){
+            Handoff h;
+            synchronized(myQueue){
+                while(myRunningFlag && myQueue.isEmpty()){
+                    try{
+                        myQueue.wait();
+                    }catch(InterruptedException ex){
+                        return;
+                    }
+                }
+                h = myQueue.pollFirst();
+            }
+            if(h == null){
+                break;
+            }
+            long start = System.nanoTime();
+            try{
+                myOutput.write(h.myPositions, h.myLength);
+            }catch(RuntimeException ex){
+                theLogger.warn("Error writing blended positions.", ex);
+            }
+            long end = System.nanoTime();
+            myHandoffLatency.record(start - h.myHandoffNanos);
+            myWriteLatency.record(end - start);
+            myEndToEndLatency.record(end - h.myTickStartNanos);
+            mySentCount.incrementAndGet();
+            synchronized(myQueue){
+                if(h.mySequence == myWriteSequence){
+                    myProjectedPositions.set(null);
+                }
+                h.myPositions.clear();
+                myFreeHandoffs.addLast(h);
+            }
+        }
+    }
+
+    /**
+     * Returns the BlenderOutput written to from the output thread.
+     * @return wrapped BlenderOutput
+     */
+    public BlenderOutput<PosMap> getOutput(){
+        return myOutput;
+    }
+
+    /**
+     * Returns the time frames wait in the queue.
+     * @return handoff latency histogram
+     */
+    public LatencyHistogram getHandoffLatency(){
+        return myHandoffLatency;
+    }
+
+    /**
+     * Returns the time taken by the wrapped output's write.
+     * @return write latency histogram
+     */
+    public LatencyHistogram getWriteLatency(){
+        return myWriteLatency;
+    }
+
+    /**
+     * Returns the time from the start of the tick which blended a frame to
+     * the end of its write.
+     * @return end-to-end latency histogram
+     */
+    public LatencyHistogram getEndToEndLatency(){
+        return myEndToEndLatency;
+    }
+
+    /**
+     * Returns the number of frames written by the output thread.
+     * @return number of frames written
+     */
+    public long getSentCount(){
+        return mySentCount.get();
+    }
+
+    /**
+     * Returns the number of writes merged into a queued frame because the
+     * queue was full.
+     * @return number of merged writes
+     */
+    public long getMergedCount(){
+        return myMergedCount.get();
+    }
+
+    /**
+     * Returns the number of frames waiting to be written.
+     * @return number of queued frames
+     */
+    public int getQueuedCount(){
+        synchronized(myQueue){
+            return myQueue.size();
+        }
+    }
+
+    /**
+     * A queued frame.  The positions, write sequence and length of the newest
+     * frame are updated by merges, under the queue's lock.  Handoffs are
+     * returned to the free list once written and reused with their
+     * PositionMap.
+     */
+    private class Handoff {
+        private final PosMap myPositions;
+        private long mySequence;
+        private long myLength;
+        private long myTickStartNanos;
+        private long myHandoffNanos;
+
+        Handoff(PosMap positions){
+            myPositions = positions;
+        }
+    }
+}
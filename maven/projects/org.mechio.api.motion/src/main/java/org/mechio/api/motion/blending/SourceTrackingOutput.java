@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.api.motion.blending;
+
+/**
+ * Implemented by BlenderOutputs which record the FrameSources contributing to
+ * each write.  Before each write, the Blender calls addContributingSource for
+ * every frame it blends.  Outputs wrapping a SourceTrackingOutput on the same
+ * thread pass the calls on.
+ */
+public interface SourceTrackingOutput {
+    /**
+     * Marks a FrameSource as contributing to the next write.
+     * @param source contributing FrameSource
+     */
+    public void addContributingSource(FrameSource source);
+}
@@ -31,18 +31,29 @@ package org.mechio.api.motion.blending;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.jflux.api.common.rk.utils.TimerLoop;
+import org.mechio.api.motion.blending.BlenderMetrics.DropReason;
 import org.mechio.api.motion.protocol.MotionFrame;
 
 /**
  * A TimedBlenderDriver runs in a TimerLoop and regularly pulls Frames from the
  * FrameSources in its FrameSourceTracker, and sends them to its Blender.
+ * The driver can instead be run from a BlenderClock for drift-compensated,
+ * sub-millisecond scheduling.
  * 
  * @author Matthew Stevenson
  */
-public class TimedBlenderDriver extends TimerLoop {
+public class TimedBlenderDriver extends TimerLoop 
+        implements BlenderClock.TickHandler {
     private Blender myBlender;
     private FrameSourceTracker mySourceTracker;
+    private BlenderClock myClock;
+    private ParallelFrameCollector myFrameCollector;
+    private BlenderMetrics myMetrics;
+    private long myIntervalMillisec;
+    private BlenderOutput myResolvedOutput;
+    private PipelinedOutput myPipelinedOutput;
 
     /**
      * Creates a new TimedBlenderDriver to run at the given interval.
@@ -50,6 +61,7 @@ public class TimedBlenderDriver extends TimerLoop {
      */
     public TimedBlenderDriver(long interval){
         super(interval);
+        myIntervalMillisec = interval;
     }
 
     /**
@@ -58,6 +70,71 @@ public class TimedBlenderDriver extends TimerLoop {
      */
     public void setBlender(Blender blender){
         myBlender = blender;
+        applyMetrics();
+    }
+
+    /**
+     * Sets the BlenderMetrics to record to.  The metrics are also set on the
+     * Blender if it is a DefaultBlender or IndexedBlender.
+     * @param metrics BlenderMetrics to record to, null to disable
+     */
+    public void setMetrics(BlenderMetrics metrics){
+        myMetrics = metrics;
+        applyMetrics();
+    }
+
+    /**
+     * Returns the BlenderMetrics being recorded to.
+     * @return BlenderMetrics being recorded to
+     */
+    public BlenderMetrics getMetrics(){
+        return myMetrics;
+    }
+
+    private void applyMetrics(){
+        BlenderMetrics metrics = myMetrics;
+        if(metrics != null){
+            metrics.setFrameCollector(myFrameCollector);
+        }
+        Blender blender = myBlender;
+        if(blender instanceof DefaultBlender){
+            ((DefaultBlender)blender).setMetrics(myMetrics);
+        }else if(blender instanceof IndexedBlender){
+            ((IndexedBlender)blender).setMetrics(myMetrics);
+        }
+    }
+
+    /**
+     * Returns the PipelinedOutput in the Blender's output wrapper chain, or
+     * null if there is none.  The chain is only walked again when the
+     * Blender's output has changed since the last tick.
+     */
+    private PipelinedOutput getPipelinedOutput(){
+        Blender blender = myBlender;
+        BlenderOutput out = null;
+        if(blender instanceof DefaultBlender){
+            out = ((DefaultBlender)blender).getOutput();
+        }else if(blender instanceof IndexedBlender){
+            out = ((IndexedBlender)blender).getOutput();
+        }
+        if(out != myResolvedOutput){
+            myPipelinedOutput = findPipelinedOutput(out);
+            myResolvedOutput = out;
+        }
+        return myPipelinedOutput;
+    }
+
+    private static PipelinedOutput findPipelinedOutput(BlenderOutput out){
+        while(out != null && !(out instanceof PipelinedOutput)){
+            if(out instanceof MotionJournalRecorder){
+                out = ((MotionJournalRecorder)out).getOutput();
+            }else if(out instanceof DeadbandOutput){
+                out = ((DeadbandOutput)out).getOutput();
+            }else{
+                out = null;
+            }
+        }
+        return (PipelinedOutput)out;
     }
 
     /**
@@ -76,23 +153,132 @@ public class TimedBlenderDriver extends TimerLoop {
         return mySourceTracker;
     }
 
+    /**
+     * Sets a ParallelFrameCollector to collect frames with.  If null, frames
+     * are collected from each FrameSource in turn on the driver's thread.
+     * @param collector ParallelFrameCollector to use
+     */
+    public void setFrameCollector(ParallelFrameCollector collector){
+        myFrameCollector = collector;
+        applyMetrics();
+    }
+
+    /**
+     * Returns the ParallelFrameCollector used, or null if frames are collected
+     * on the driver's thread.
+     * @return ParallelFrameCollector used
+     */
+    public ParallelFrameCollector getFrameCollector(){
+        return myFrameCollector;
+    }
+
+    /**
+     * Runs this driver from a new BlenderClock instead of the TimerLoop.
+     * The TimerLoop should not be started when using a BlenderClock.
+     * @param policy OverrunPolicy for the clock
+     * @return the started BlenderClock
+     */
+    public synchronized BlenderClock startClock(
+            BlenderClock.OverrunPolicy policy){
+        if(myClock != null){
+            return myClock;
+        }
+        myClock = new BlenderClock(
+                TimeUnit.MILLISECONDS.toNanos(myIntervalMillisec), policy, this);
+        myClock.start();
+        return myClock;
+    }
+
+    /**
+     * Stops the BlenderClock if one is running.
+     */
+    public synchronized void stopClock(){
+        if(myClock == null){
+            return;
+        }
+        myClock.stop();
+        myClock = null;
+    }
+
+    /**
+     * Returns the BlenderClock running this driver, or null if the driver is
+     * run by the TimerLoop.  The clock provides overrun and jitter statistics.
+     * @return BlenderClock running this driver
+     */
+    public synchronized BlenderClock getClock(){
+        return myClock;
+    }
+
     @Override
     protected void timerTick(long time, long interval) {
+        handleTick(time, interval);
+    }
+
+    @Override
+    public void handleTick(long time, long interval) {
         if(mySourceTracker == null || myBlender == null){
             return;
         }
+        BlenderMetrics metrics = myMetrics;
+        PipelinedOutput pipeline = getPipelinedOutput();
+        long start = metrics == null && pipeline == null ? 0 : System.nanoTime();
+        if(pipeline != null){
+            pipeline.markTickStart(start);
+        }
+        long blendTime = time;
+        if(pipeline != null){
+            blendTime += pipeline.getLookahead() * myIntervalMillisec;
+        }
+        if(metrics == null){
+            blendTick(blendTime, interval, null);
+            return;
+        }
+        metrics.beginTick();
+        int frameCount = blendTick(blendTime, interval, metrics);
+        metrics.endTick(blendTime, frameCount, System.nanoTime() - start);
+    }
+
+    private int blendTick(long time, long interval, BlenderMetrics metrics){
         List<FrameSource> sources = mySourceTracker.getSources();
         if(sources == null || sources.isEmpty()){
-            return;
+            if(metrics != null){
+                metrics.recordDroppedTick(time, DropReason.NO_SOURCES);
+            }
+            return 0;
+        }
+        ParallelFrameCollector collector = myFrameCollector;
+        if(collector == null && myBlender instanceof IndexedBlender){
+            IndexedBlender blender = (IndexedBlender)myBlender;
+            blender.blendSources(time, interval, sources);
+            return blender.getFrameCount();
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        Map<MotionFrame,FrameSource> frames;
+        if(collector != null){
+            frames = collector.collectFrames(time, interval, sources);
+        }else{
+            frames = collectFrames(time, interval, sources, metrics);
+        }
+        if(metrics != null){
+            metrics.recordCollect(System.nanoTime() - start);
+            if(frames.isEmpty()){
+                metrics.recordDroppedTick(time, DropReason.NO_FRAMES);
+            }
         }
-        Map<MotionFrame,FrameSource> frames = collectFrames(time, interval, sources);
         myBlender.blend(time, interval, frames);
+        return frames.size();
     }
 
-    private Map<MotionFrame,FrameSource> collectFrames(long time, long interval, List<FrameSource> sources){
+    private Map<MotionFrame,FrameSource> collectFrames(long time, long interval, 
+            List<FrameSource> sources, BlenderMetrics metrics){
         Map<MotionFrame,FrameSource> frames = new HashMap();
         for(FrameSource source : sources){
+            long start = metrics == null ? 0 : System.nanoTime();
             MotionFrame frame = source.getMovements(time, interval);
+            if(metrics != null){
+                metrics.recordSource(
+                        source, System.nanoTime() - start, frame != null);
+            }
             if(frame == null){
                 continue;
             }
@@ -28,9 +28,11 @@
 
 package org.mechio.api.motion.blending;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import org.jflux.api.common.rk.position.NormalizedDouble;
 import org.jflux.api.common.rk.utils.Utils;
 import org.jflux.api.core.Source;
@@ -39,6 +41,12 @@ import org.mechio.api.motion.protocol.JointPositionMap;
 
 /**
  * Blends Frames by combining the velocities contributed from each MotionFrame.
+ * Each frame contributes (goal - previous) / frame length for its joints,
+ * scaled by the weight of its FrameSource.  The weighted velocities are
+ * summed and integrated over the interval from the current positions.
+ * <p>
+ * Velocities are accumulated in primitive arrays which are reused between
+ * calls.  When used as an IndexedFrameCombiner no maps are created at all.
  * 
  * @param <Id> type of id used in the PositionMaps being combined
  * @param <PosMap> type of PositionMaps being combined
@@ -46,8 +54,17 @@ import org.mechio.api.motion.protocol.JointPositionMap;
  */
 public class VelocityCombiner<
         Id, PosMap extends JointPositionMap<Id,NormalizedDouble>> implements 
-        FrameCombiner<MotionFrame<PosMap>,FrameSource<PosMap>,PosMap> {
-    private Source<PosMap> myPositionMapFactory;    
+        FrameCombiner<MotionFrame<PosMap>,FrameSource<PosMap>,PosMap>,
+        IndexedFrameCombiner {
+    private Source<PosMap> myPositionMapFactory;
+    private final Map<FrameSource,Double> myWeights;
+    private double myDefaultWeight;
+    private double[] myVelocities;
+    private final BitSet myMovingJoints;
+    private final JointIndex<Id> myJointIndex;
+    private IndexedFrame[] myFrames;
+    private final IndexedPositions myCurrentPositions;
+    private final IndexedPositions myOutputPositions;
     
     /**
      * Creates a new VelocityCombiner.
@@ -58,60 +75,146 @@ public class VelocityCombiner<
             throw new NullPointerException();
         }
         myPositionMapFactory = posMapFact;
+        myWeights = Collections.synchronizedMap(
+                new IdentityHashMap<FrameSource,Double>());
+        myDefaultWeight = 1.0;
+        myVelocities = new double[0];
+        myMovingJoints = new BitSet();
+        myJointIndex = new JointIndex<>();
+        myFrames = new IndexedFrame[0];
+        myCurrentPositions = new IndexedPositions(0);
+        myOutputPositions = new IndexedPositions(0);
+    }
+    
+    /**
+     * Sets the weight applied to velocities from a FrameSource.
+     * @param source FrameSource to weight
+     * @param weight velocity scale, 1.0 contributes the full velocity
+     */
+    public void setSourceWeight(FrameSource source, double weight){
+        if(source == null){
+            throw new NullPointerException();
+        }
+        myWeights.put(source, weight);
+    }
+    
+    /**
+     * Removes the weight for a FrameSource, it will use the default weight.
+     * @param source FrameSource to remove
+     */
+    public void removeSourceWeight(FrameSource source){
+        myWeights.remove(source);
+    }
+    
+    /**
+     * Returns the weight applied to velocities from a FrameSource.
+     * @param source FrameSource to look up
+     * @return weight for the FrameSource
+     */
+    public double getSourceWeight(FrameSource source){
+        Double weight = source == null ? null : myWeights.get(source);
+        return weight == null ? myDefaultWeight : weight;
+    }
+    
+    /**
+     * Sets the weight used for FrameSources without their own weight.
+     * @param weight default velocity scale
+     */
+    public void setDefaultWeight(double weight){
+        myDefaultWeight = weight;
     }
     
     @Override
-    public PosMap combineFrames(long time, long interval, PosMap curPos, 
-            Map<? extends MotionFrame<PosMap>, 
+    public synchronized PosMap combineFrames(long time, long interval,
+            PosMap curPos, Map<? extends MotionFrame<PosMap>, 
                     ? extends FrameSource<PosMap>> frames) {
         PosMap pos = myPositionMapFactory.getValue();
-        Map<Id, Double> velocities = new HashMap();
-        if(!frames.isEmpty()){
-            return frames.keySet().iterator().next().getGoalPositions();
+        if(curPos == null || frames == null || frames.isEmpty()){
+            return pos;
         }
-        for(MotionFrame f : frames.keySet()){
-            for(Entry<Id,Double> e : getVelocities(f).entrySet()){
-                Id id = e.getKey();
-                double vel = e.getValue();
-                if(velocities.containsKey(id)){
-                    vel += velocities.get(id);
-                }
-                velocities.put(id, vel);
+        if(myFrames.length < frames.size()){
+            int oldLen = myFrames.length;
+            myFrames = Arrays.copyOf(myFrames, frames.size());
+            for(int i=oldLen; i<myFrames.length; i++){
+                myFrames[i] = new IndexedFrame(myJointIndex.size());
             }
         }
-        for(Id i : curPos.keySet()){
-            if(!velocities.containsKey(i)){
+        int count = 0;
+        for(Map.Entry<? extends MotionFrame<PosMap>, 
+                ? extends FrameSource<PosMap>> e : frames.entrySet()){
+            IndexedFrame frame = myFrames[count++];
+            frame.read(e.getKey(), myJointIndex);
+            frame.setSource(e.getValue());
+        }
+        myCurrentPositions.read(curPos, myJointIndex);
+        myOutputPositions.ensureCapacity(myJointIndex.size());
+        combineFrames(time, interval, 
+                myCurrentPositions, myFrames, count, myOutputPositions);
+        double[] vals = myOutputPositions.getValues();
+        BitSet mask = myOutputPositions.getMask();
+        for(int i=mask.nextSetBit(0); i>=0; i=mask.nextSetBit(i+1)){
+            pos.put(myJointIndex.getId(i), new NormalizedDouble(vals[i]));
+        }
+        for(int i=0; i<count; i++){
+            myFrames[i].setSource(null);
+        }
+        return pos;
+    }
+
+    @Override
+    public synchronized void combineFrames(long time, long interval,
+            IndexedPositions curPos, IndexedFrame[] frames, int frameCount,
+            IndexedPositions out) {
+        int len = out.getCapacity();
+        if(myVelocities.length < len){
+            myVelocities = new double[len];
+        }
+        Arrays.fill(myVelocities, 0, len, 0.0);
+        myMovingJoints.clear();
+        for(int f=0; f<frameCount; f++){
+            addVelocities(frames[f], len);
+        }
+        out.clear();
+        double[] cur = curPos.getValues();
+        BitSet curMask = curPos.getMask();
+        for(int i=myMovingJoints.nextSetBit(0); i>=0; 
+                i=myMovingJoints.nextSetBit(i+1)){
+            if(!curMask.get(i)){
                 continue;
             }
-            NormalizedDouble goal = curPos.get(i);
-            double val = goal.getValue();
-            val += velocities.get(i) * (double)interval;
-            val = Utils.bound(val, 0.0, 1.0);
-            pos.put(i, new NormalizedDouble(val));
+            double val = cur[i] + myVelocities[i] * (double)interval;
+            out.set(i, Utils.bound(val, 0.0, 1.0));
         }
-        return pos;
     }
     
     /**
-     * Return the MotionFrame velocities.
-     * @param frame MotionFrame to use to calculate velocities
-     * @return MotionFrame velocities
+     * Adds the weighted frame velocities to the velocity sums.
+     * @param frame IndexedFrame to use to calculate velocities
+     * @param len number of joints being combined
      */
-    private Map<Id,Double> getVelocities(MotionFrame<PosMap> frame){
-        Map<Id,Double> vels = new HashMap();
-        if(frame.getFrameLengthMillisec() <= 0){
-            return vels;
+    private void addVelocities(IndexedFrame frame, int len){
+        long frameLen = frame.getFrameLengthMillisec();
+        if(frameLen <= 0){
+            return;
+        }
+        double weight = getSourceWeight(frame.getSource());
+        if(weight == 0.0){
+            return;
         }
-        for(Id i : frame.getGoalPositions().keySet()){
-            NormalizedDouble goal = frame.getGoalPositions().get(i);
-            NormalizedDouble prev = frame.getPreviousPositions().get(i);
-            if(goal == null || prev == null){
-                vels.put(i, 0.0);
+        double scale = weight / (double)frameLen;
+        IndexedPositions goals = frame.getGoalPositions();
+        IndexedPositions prevs = frame.getPreviousPositions();
+        double[] goalVals = goals.getValues();
+        double[] prevVals = prevs.getValues();
+        BitSet goalMask = goals.getMask();
+        BitSet prevMask = prevs.getMask();
+        for(int i=goalMask.nextSetBit(0); i>=0 && i<len; 
+                i=goalMask.nextSetBit(i+1)){
+            if(!prevMask.get(i)){
+                continue;
             }
-            double diff = goal.getValue() - prev.getValue();
-            double vel = diff/frame.getFrameLengthMillisec();
-            vels.put(i, vel);
+            myVelocities[i] += (goalVals[i] - prevVals[i]) * scale;
+            myMovingJoints.set(i);
         }
-        return vels;
     }
 }
@@ -26,14 +26,18 @@ import org.mechio.api.motion.Robot;
 import org.mechio.api.motion.Robot.RobotPositionHashMap;
 import org.mechio.api.motion.Robot.RobotPositionMap;
 import org.mechio.api.motion.blending.Blender;
+import org.mechio.api.motion.blending.BlenderClock;
 import org.mechio.api.motion.blending.FrameCombiner;
 import org.mechio.api.motion.blending.FrameSourceTracker;
 import org.mechio.api.motion.blending.NaiveMotionFrameAverager;
 import org.mechio.api.motion.blending.OSGiFrameSourceTracker;
+import org.mechio.api.motion.blending.ParallelFrameCollector;
+import org.mechio.api.motion.blending.VelocityCombiner;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -44,6 +48,222 @@ import java.util.Properties;
 public class DefaultBlenderServiceGroup extends ManagedServiceGroup {
 	private static final Logger theLogger = LoggerFactory.getLogger(DefaultBlenderServiceGroup.class);
 
+	/**
+	 * FrameCombiners available to the blender.
+	 */
+	public static enum CombinerType {
+		/**
+		 * Averages the goal positions of the frames.
+		 */
+		AVERAGE,
+		/**
+		 * Sums the velocities of the frames, allowing additive motion.
+		 */
+		VELOCITY
+	}
+
+	/**
+	 * Configuration for the services created by a
+	 * DefaultBlenderServiceGroup.  The defaults match the original blender:
+	 * a TimerLoop driving a DefaultBlender which averages frames and writes
+	 * every position.
+	 */
+	public static class Config {
+		private BlenderClock.OverrunPolicy myClockPolicy;
+		private CombinerType myCombinerType = CombinerType.AVERAGE;
+		private double myOutputDeadband;
+		private long myOutputRefreshMillisec;
+		private boolean myIndexedBlending;
+		private int myCollectorThreads;
+		private long myCollectorDeadlineMillisec;
+		private ParallelFrameCollector.MissPolicy myMissPolicy;
+		private boolean myMetricsEnabled;
+		private boolean myMetricsRegistered;
+		private File myJournalFile;
+		private long myJournalCapacity;
+		private long myJournalFlushMillisec;
+		private int myPipelineDepth;
+		private int myLookaheadTicks;
+
+		/**
+		 * Sets the BlenderClock OverrunPolicy.
+		 *
+		 * @param clockPolicy BlenderClock OverrunPolicy, or null to use the
+		 *                    TimerLoop
+		 * @return this Config
+		 */
+		public Config setClockPolicy(BlenderClock.OverrunPolicy clockPolicy) {
+			myClockPolicy = clockPolicy;
+			return this;
+		}
+
+		public BlenderClock.OverrunPolicy getClockPolicy() {
+			return myClockPolicy;
+		}
+
+		/**
+		 * Sets the type of FrameCombiner to blend with.
+		 *
+		 * @param combinerType type of FrameCombiner, null for AVERAGE
+		 * @return this Config
+		 */
+		public Config setCombinerType(CombinerType combinerType) {
+			myCombinerType =
+					combinerType == null ? CombinerType.AVERAGE : combinerType;
+			return this;
+		}
+
+		public CombinerType getCombinerType() {
+			return myCombinerType;
+		}
+
+		/**
+		 * Sets the output deadband.
+		 *
+		 * @param deadband              joint position deadband, 0 or less to
+		 *                              send every position
+		 * @param refreshMillisec       milliseconds between sending all
+		 *                              positions
+		 * @return this Config
+		 */
+		public Config setOutputDeadband(double deadband, long refreshMillisec) {
+			myOutputDeadband = deadband;
+			myOutputRefreshMillisec = refreshMillisec;
+			return this;
+		}
+
+		public double getOutputDeadband() {
+			return myOutputDeadband;
+		}
+
+		public long getOutputRefreshMillisec() {
+			return myOutputRefreshMillisec;
+		}
+
+		/**
+		 * Sets whether an IndexedBlender is used instead of a DefaultBlender.
+		 *
+		 * @param indexed true to use an IndexedBlender
+		 * @return this Config
+		 */
+		public Config setIndexedBlending(boolean indexed) {
+			myIndexedBlending = indexed;
+			return this;
+		}
+
+		public boolean isIndexedBlending() {
+			return myIndexedBlending;
+		}
+
+		/**
+		 * Sets the blender driver to collect frames from FrameSources in
+		 * parallel through a ParallelFrameCollector.
+		 *
+		 * @param threadCount      number of collector threads
+		 * @param deadlineMillisec milliseconds to wait for FrameSources each
+		 *                         tick
+		 * @param policy           behavior when a FrameSource misses the
+		 *                         deadline, null to collect frames on the
+		 *                         driver's thread
+		 * @return this Config
+		 */
+		public Config setParallelCollection(int threadCount,
+				long deadlineMillisec, ParallelFrameCollector.MissPolicy policy) {
+			myCollectorThreads = threadCount;
+			myCollectorDeadlineMillisec = deadlineMillisec;
+			myMissPolicy = policy;
+			return this;
+		}
+
+		public int getCollectorThreads() {
+			return myCollectorThreads;
+		}
+
+		public long getCollectorDeadlineMillisec() {
+			return myCollectorDeadlineMillisec;
+		}
+
+		public ParallelFrameCollector.MissPolicy getMissPolicy() {
+			return myMissPolicy;
+		}
+
+		/**
+		 * Sets whether BlenderMetrics are recorded and registered as an
+		 * MBean.  Both are off by default.
+		 *
+		 * @param enabled       false to not record metrics at all
+		 * @param registerMBean true to register the metrics as an MBean
+		 * @return this Config
+		 */
+		public Config setMetrics(boolean enabled, boolean registerMBean) {
+			myMetricsEnabled = enabled;
+			myMetricsRegistered = registerMBean;
+			return this;
+		}
+
+		public boolean isMetricsEnabled() {
+			return myMetricsEnabled;
+		}
+
+		public boolean isMetricsRegistered() {
+			return myMetricsRegistered;
+		}
+
+		/**
+		 * Sets a motion journal to record the blended positions to.
+		 *
+		 * @param file                  journal file, replaced if it exists,
+		 *                              null to not record
+		 * @param capacity              number of records kept in the
+		 *                              journal ring
+		 * @param flushIntervalMillisec milliseconds between flushes to disk
+		 * @return this Config
+		 */
+		public Config setJournal(
+				File file, long capacity, long flushIntervalMillisec) {
+			myJournalFile = file;
+			myJournalCapacity = capacity;
+			myJournalFlushMillisec = flushIntervalMillisec;
+			return this;
+		}
+
+		public File getJournalFile() {
+			return myJournalFile;
+		}
+
+		public long getJournalCapacity() {
+			return myJournalCapacity;
+		}
+
+		public long getJournalFlushMillisec() {
+			return myJournalFlushMillisec;
+		}
+
+		/**
+		 * Writes the blended positions to the Robot from their own thread.
+		 * The driver blends lookaheadTicks ahead of the current time to
+		 * cover the time spent in the queue.
+		 *
+		 * @param depth          number of frames which can be queued, 0 to
+		 *                       write on the blender's thread
+		 * @param lookaheadTicks number of ticks ahead to blend for
+		 * @return this Config
+		 */
+		public Config setPipeline(int depth, int lookaheadTicks) {
+			myPipelineDepth = depth;
+			myLookaheadTicks = lookaheadTicks;
+			return this;
+		}
+
+		public int getPipelineDepth() {
+			return myPipelineDepth;
+		}
+
+		public int getLookaheadTicks() {
+			return myLookaheadTicks;
+		}
+	}
+
 	private static String getIdBase(Robot.Id robotId) {
 		String base = "robot/" + robotId + "/blender";
 		//TODO: sanitize base
@@ -53,21 +273,57 @@ public class DefaultBlenderServiceGroup extends ManagedServiceGroup {
 	public DefaultBlenderServiceGroup(
 			BundleContext context, Robot.Id robotId,
 			long blenderIntervalMillisec, Properties registrationProperties) {
+		this(context, robotId, blenderIntervalMillisec,
+				registrationProperties, new Config());
+	}
+
+	/**
+	 * Creates a DefaultBlenderServiceGroup with the given Config.
+	 *
+	 * @param context                 BundleContext to register with
+	 * @param robotId                 id of the Robot to blend for
+	 * @param blenderIntervalMillisec milliseconds between blending
+	 * @param registrationProperties  service registration properties
+	 * @param config                  blender configuration
+	 */
+	public DefaultBlenderServiceGroup(
+			BundleContext context, Robot.Id robotId,
+			long blenderIntervalMillisec, Properties registrationProperties,
+			Config config) {
 		super(new OSGiComponentFactory(context),
-				getBlenderLifecycles(context, robotId, blenderIntervalMillisec),
+				getBlenderLifecycles(context, robotId,
+						blenderIntervalMillisec, config),
 				getIdBase(robotId),
 				registrationProperties);
 	}
 
 	private static List<ServiceLifecycleProvider> getBlenderLifecycles(
-			BundleContext context, Robot.Id robotId, long blenderInterval) {
+			BundleContext context, Robot.Id robotId, long blenderInterval,
+			Config config) {
+		if (config == null) {
+			config = new Config();
+		}
 		blenderInterval = validateInterval(blenderInterval);
 		List<ServiceLifecycleProvider> services = new ArrayList();
-		services.add(new RobotBlenderLifecycle(robotId));
-		services.add(new RobotOutputLifecycle(robotId));
-		services.add(new TimedBlenderDriverLifecycle(robotId, blenderInterval));
+		services.add(new RobotBlenderLifecycle(
+				robotId, config.isIndexedBlending()));
+		RobotOutputLifecycle output = new RobotOutputLifecycle(robotId,
+				config.getOutputDeadband(), config.getOutputRefreshMillisec());
+		output.setJournal(config.getJournalFile(),
+				config.getJournalCapacity(), config.getJournalFlushMillisec());
+		output.setPipeline(
+				config.getPipelineDepth(), config.getLookaheadTicks());
+		services.add(output);
+		TimedBlenderDriverLifecycle driver = new TimedBlenderDriverLifecycle(
+				robotId, blenderInterval, config.getClockPolicy());
+		driver.setParallelCollection(config.getCollectorThreads(),
+				config.getCollectorDeadlineMillisec(), config.getMissPolicy());
+		driver.setMetrics(
+				config.isMetricsEnabled(), config.isMetricsRegistered());
+		services.add(driver);
 		services.add(buildFrameSourceTrackerLauncher(context, robotId));
-		services.add(buildFrameCombinerLauncher(robotId));
+		services.add(buildFrameCombinerLauncher(
+				robotId, config.getCombinerType()));
 		return services;
 	}
 
@@ -89,22 +345,26 @@ public class DefaultBlenderServiceGroup extends ManagedServiceGroup {
 	}
 
 	private static ServiceLifecycleProvider<FrameCombiner>
-	buildFrameCombinerLauncher(Robot.Id robotId) {
+	buildFrameCombinerLauncher(
+			Robot.Id robotId, CombinerType combinerType) {
 		Properties props = new Properties();
 		props.put(Robot.PROP_ID, robotId.getRobtIdString());
 		props.put(Blender.PROP_POSITION_MAP_TYPE,
 				RobotPositionMap.class.getName());
 		return new SimpleLifecycle<>(
-				getFrameCombiner(), FrameCombiner.class, props);
+				getFrameCombiner(combinerType), FrameCombiner.class, props);
 	}
 
-	private static FrameCombiner getFrameCombiner() {
+	private static FrameCombiner getFrameCombiner(CombinerType combinerType) {
 		Source<RobotPositionMap> factory = new Source<RobotPositionMap>() {
 			@Override
 			public RobotPositionMap getValue() {
 				return new RobotPositionHashMap();
 			}
 		};
+		if (combinerType == CombinerType.VELOCITY) {
+			return new VelocityCombiner<>(factory);
+		}
 		return new NaiveMotionFrameAverager<>(factory);
 	}
 }
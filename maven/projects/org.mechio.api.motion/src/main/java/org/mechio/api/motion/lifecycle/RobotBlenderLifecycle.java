@@ -17,26 +17,45 @@ package org.mechio.api.motion.lifecycle;
 
 import java.util.Map;
 import java.util.Properties;
+import org.jflux.api.core.Source;
 import org.jflux.impl.services.rk.lifecycle.AbstractLifecycleProvider;
 import org.jflux.impl.services.rk.lifecycle.utils.DescriptorListBuilder;
 import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.Robot.RobotPositionHashMap;
 import org.mechio.api.motion.Robot.RobotPositionMap;
 import org.mechio.api.motion.blending.Blender;
 import org.mechio.api.motion.blending.BlenderOutput;
 import org.mechio.api.motion.blending.DefaultBlender;
 import org.mechio.api.motion.blending.FrameCombiner;
+import org.mechio.api.motion.blending.IndexedBlender;
+import org.mechio.api.motion.blending.IndexedFrameAverager;
+import org.mechio.api.motion.blending.IndexedFrameCombiner;
+import org.mechio.api.motion.blending.NaiveMotionFrameAverager;
 
 /**
+ * ServiceLifecycleProvider for a Robot's Blender.  Creates a DefaultBlender,
+ * or an IndexedBlender if indexed blending is enabled.
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
 @Deprecated
 public class RobotBlenderLifecycle extends
-        AbstractLifecycleProvider<Blender, DefaultBlender>{
+        AbstractLifecycleProvider<Blender, Blender>{
     private final static String theBlenderOutputId = "blenderOutput";
     private final static String theFrameCombinerId = "frameCombiner";
+    private boolean myIndexedFlag;
 
     public RobotBlenderLifecycle(Robot.Id robotId){
+        this(robotId, false);
+    }
+
+    /**
+     * Creates a RobotBlenderLifecycle.
+     * @param robotId id of the Robot to blend for
+     * @param indexed true to create an IndexedBlender which reuses its
+     * PositionMaps, false to create a DefaultBlender
+     */
+    public RobotBlenderLifecycle(Robot.Id robotId, boolean indexed){
         super(new DescriptorListBuilder()
                 .dependency(theBlenderOutputId, BlenderOutput.class)
                     .with(Robot.PROP_ID, robotId.getRobtIdString())
@@ -53,26 +72,60 @@ public class RobotBlenderLifecycle extends
         myRegistrationProperties.put(Robot.PROP_ID, robotId.getRobtIdString());
         myRegistrationProperties.put(Blender.PROP_POSITION_MAP_TYPE,
                 RobotPositionMap.class.getName());
+        myIndexedFlag = indexed;
     }
 
     @Override
-    protected DefaultBlender create(Map<String, Object> services) {
+    protected Blender create(Map<String, Object> services) {
         BlenderOutput output = (BlenderOutput)services.get(theBlenderOutputId);
         FrameCombiner combiner =
                 (FrameCombiner)services.get(theFrameCombinerId);
-        DefaultBlender blender = new DefaultBlender();
+        Blender blender;
+        if(myIndexedFlag){
+            IndexedBlender indexed = new IndexedBlender(
+                    new Source<RobotPositionMap>() {
+                        @Override
+                        public RobotPositionMap getValue() {
+                            return new RobotPositionHashMap();
+                        }
+                    });
+            indexed.setReuseOutputMaps(true);
+            blender = indexed;
+        }else{
+            blender = new DefaultBlender();
+        }
         blender.setOutput(output);
-        blender.setFrameCombiner(combiner);
+        setFrameCombiner(blender, combiner);
         return blender;
     }
 
+    /**
+     * FrameCombiners which are also IndexedFrameCombiners are used directly,
+     * and the IndexedFrameAverager stands in for a NaiveMotionFrameAverager.
+     * Any other FrameCombiner is used through the IndexedBlender's map path.
+     */
+    private static void setFrameCombiner(
+            Blender blender, FrameCombiner combiner){
+        blender.setFrameCombiner(combiner);
+        if(!(blender instanceof IndexedBlender)){
+            return;
+        }
+        IndexedFrameCombiner indexed = null;
+        if(combiner instanceof IndexedFrameCombiner){
+            indexed = (IndexedFrameCombiner)combiner;
+        }else if(combiner instanceof NaiveMotionFrameAverager){
+            indexed = new IndexedFrameAverager();
+        }
+        ((IndexedBlender)blender).setIndexedFrameCombiner(indexed);
+    }
+
     @Override
     protected void handleChange(
             String serviceId, Object service, Map<String,Object> dependencies) {
         if(theBlenderOutputId.equals(serviceId)){
             myService.setOutput((BlenderOutput)service);
         }else if(theFrameCombinerId.equals(serviceId)){
-            myService.setFrameCombiner((FrameCombiner)service);
+            setFrameCombiner(myService, (FrameCombiner)service);
         }
     }
 
@@ -15,27 +15,62 @@
  */
 package org.mechio.api.motion.lifecycle;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Properties;
+import org.jflux.api.core.Source;
 import org.jflux.impl.services.rk.lifecycle.AbstractLifecycleProvider;
 import org.jflux.impl.services.rk.lifecycle.utils.DescriptorListBuilder;
 import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.Robot.RobotPositionHashMap;
 import org.mechio.api.motion.Robot.RobotPositionMap;
 import org.mechio.api.motion.blending.Blender;
 import org.mechio.api.motion.blending.BlenderOutput;
+import org.mechio.api.motion.blending.DeadbandOutput;
+import org.mechio.api.motion.blending.MotionJournalRecorder;
+import org.mechio.api.motion.blending.PipelinedOutput;
 import org.mechio.api.motion.blending.RobotOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * ServiceLifecycleProvider for a RobotOutput
+ * ServiceLifecycleProvider for a RobotOutput.  If a deadband is given, the
+ * RobotOutput is wrapped in a DeadbandOutput.  If a pipeline depth is set,
+ * the output is written from its own thread through a PipelinedOutput.  If a
+ * journal file is set, the blended positions are recorded by a
+ * MotionJournalRecorder wrapping the other outputs.
  * 
  * @author Matthew Stevenson <www.mechio.org>
  */
 public class RobotOutputLifecycle extends 
-        AbstractLifecycleProvider<BlenderOutput, RobotOutput>{
+        AbstractLifecycleProvider<BlenderOutput, BlenderOutput>{
+    private static final Logger theLogger = LoggerFactory.getLogger(RobotOutputLifecycle.class);
     private final static String theRobot = "robot";
-    
+    private Robot.Id myRobotId;
+    private double myDeadband;
+    private long myRefreshIntervalMillisec;
+    private int myPipelineDepth;
+    private int myLookaheadTicks;
+    private RobotOutput myRobotOutput;
+    private File myJournalFile;
+    private long myJournalCapacity;
+    private long myJournalFlushMillisec;
 
     public RobotOutputLifecycle(Robot.Id robotId){
+        this(robotId, 0.0, 0);
+    }
+
+    /**
+     * Creates a RobotOutputLifecycle which only forwards joints which have
+     * changed.
+     * @param robotId id of the Robot to output to
+     * @param deadband joint position deadband, 0 or less to forward all
+     * positions
+     * @param refreshIntervalMillisec milliseconds between full refreshes
+     */
+    public RobotOutputLifecycle(Robot.Id robotId,
+            double deadband, long refreshIntervalMillisec){
         super(new DescriptorListBuilder()
                 .dependency(theRobot, Robot.class)
                     .with(Robot.PROP_ID, robotId.getRobtIdString())
@@ -46,21 +81,99 @@ public class RobotOutputLifecycle extends
         myRegistrationProperties.put(Robot.PROP_ID, robotId.getRobtIdString());
         myRegistrationProperties.put(Blender.PROP_POSITION_MAP_TYPE, 
                 RobotPositionMap.class.getName());
+        myRobotId = robotId;
+        myDeadband = deadband;
+        myRefreshIntervalMillisec = refreshIntervalMillisec;
+    }
+
+    /**
+     * Configures the created output to record blended positions to a motion
+     * journal.  The journal is opened when the service is created and
+     * closed when it is removed.  Must be called before the service is
+     * created.
+     * @param file journal file, replaced if it exists, null to not record
+     * @param capacity number of records kept in the journal ring
+     * @param flushIntervalMillisec milliseconds between flushes to disk
+     */
+    public void setJournal(
+            File file, long capacity, long flushIntervalMillisec){
+        myJournalFile = file;
+        myJournalCapacity = capacity;
+        myJournalFlushMillisec = flushIntervalMillisec;
+    }
+
+    /**
+     * Configures the created output to be written from its own thread
+     * through a PipelinedOutput.  The TimedBlenderDriver reads the lookahead
+     * from the pipeline and blends that many ticks ahead.  Must be called
+     * before the service is created.
+     * @param depth number of frames which can be queued, 0 to write on the
+     * blender's thread
+     * @param lookaheadTicks number of ticks ahead to blend for
+     */
+    public void setPipeline(int depth, int lookaheadTicks){
+        myPipelineDepth = depth;
+        myLookaheadTicks = lookaheadTicks;
     }
 
     @Override
-    protected RobotOutput create(Map<String, Object> services) {
+    protected BlenderOutput create(Map<String, Object> services) {
         Robot robot = (Robot)services.get(theRobot);
         RobotOutput ro = new RobotOutput();
         ro.setRobot(robot);
-        return ro;
+        myRobotOutput = ro;
+        Source<RobotPositionMap> factory = new Source<RobotPositionMap>() {
+            @Override
+            public RobotPositionMap getValue() {
+                return new RobotPositionHashMap();
+            }
+        };
+        BlenderOutput<RobotPositionMap> out = ro;
+        if(myDeadband > 0.0){
+            out = new DeadbandOutput<>(
+                    out, factory, myDeadband, myRefreshIntervalMillisec);
+        }
+        if(myPipelineDepth > 0){
+            PipelinedOutput<Robot.JointId,RobotPositionMap> pipeline =
+                    new PipelinedOutput<>(
+                            out, factory, myPipelineDepth, myLookaheadTicks);
+            pipeline.start();
+            out = pipeline;
+        }
+        if(myJournalFile != null){
+            MotionJournalRecorder journal = new MotionJournalRecorder(
+                    myJournalFile, myRobotId, out,
+                    myJournalCapacity, myJournalFlushMillisec);
+            try{
+                journal.open();
+                out = journal;
+            }catch(IOException ex){
+                theLogger.warn("Unable to open motion journal {}, "
+                        + "positions will not be recorded.", myJournalFile, ex);
+            }
+        }
+        return out;
+    }
+
+    @Override
+    protected void cleanupService(BlenderOutput service) {
+        BlenderOutput out = service;
+        if(out instanceof MotionJournalRecorder){
+            MotionJournalRecorder journal = (MotionJournalRecorder)out;
+            journal.close();
+            out = journal.getOutput();
+        }
+        if(out instanceof PipelinedOutput){
+            ((PipelinedOutput)out).stop();
+        }
+        super.cleanupService(service);
     }
 
     @Override
     protected void handleChange(
             String serviceId, Object service, Map<String,Object> dependencies) {
         if(theRobot.equals(serviceId)){
-            myService.setRobot((Robot)service);
+            myRobotOutput.setRobot((Robot)service);
         }
     }
 
@@ -17,11 +17,17 @@ package org.mechio.api.motion.lifecycle;
 
 import java.util.Map;
 import java.util.Properties;
+import org.jflux.api.core.Source;
 import org.jflux.impl.services.rk.lifecycle.AbstractLifecycleProvider;
 import org.jflux.impl.services.rk.lifecycle.utils.DescriptorListBuilder;
 import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.Robot.RobotPositionHashMap;
+import org.mechio.api.motion.Robot.RobotPositionMap;
 import org.mechio.api.motion.blending.Blender;
+import org.mechio.api.motion.blending.BlenderClock;
+import org.mechio.api.motion.blending.BlenderMetrics;
 import org.mechio.api.motion.blending.FrameSourceTracker;
+import org.mechio.api.motion.blending.ParallelFrameCollector;
 import org.mechio.api.motion.blending.TimedBlenderDriver;
 
 /**
@@ -33,9 +39,31 @@ public class TimedBlenderDriverLifecycle extends
     private final static String theBlender = "blender";
     private final static String theFrameTracker = "frameTracker";
     private long myBlenderInterval;
+    private String myMetricsName;
+    private BlenderClock.OverrunPolicy myClockPolicy;
+    private int myCollectorThreads;
+    private long myCollectorDeadline;
+    private ParallelFrameCollector.MissPolicy myMissPolicy;
+    private boolean myMetricsFlag;
+    private boolean myRegisterMBeanFlag;
 
     public TimedBlenderDriverLifecycle(
             Robot.Id robotId, long blenderIntervalMillisec){
+        this(robotId, blenderIntervalMillisec, null);
+    }
+
+    /**
+     * Creates a TimedBlenderDriverLifecycle which runs the driver from a
+     * BlenderClock with the given OverrunPolicy.  If the policy is null, the
+     * driver's TimerLoop is used.
+     * @param robotId id of the Robot to blend for
+     * @param blenderIntervalMillisec milliseconds between blending
+     * @param clockPolicy BlenderClock OverrunPolicy, or null to use the
+     * TimerLoop
+     */
+    public TimedBlenderDriverLifecycle(Robot.Id robotId, 
+            long blenderIntervalMillisec, 
+            BlenderClock.OverrunPolicy clockPolicy){
         super(new DescriptorListBuilder()
                 .dependency(theBlender, Blender.class)
                     .with(Robot.PROP_ID, robotId.getRobtIdString())
@@ -47,12 +75,40 @@ public class TimedBlenderDriverLifecycle extends
                             Robot.RobotPositionMap.class.getName())
                 .getDescriptors());
         myBlenderInterval = blenderIntervalMillisec;
+        myMetricsName = "robot/" + robotId.getRobtIdString() + "/blender";
+        myClockPolicy = clockPolicy;
         if(myRegistrationProperties == null){
             myRegistrationProperties = new Properties();
         }
         myRegistrationProperties.put(Robot.PROP_ID, robotId.getRobtIdString());
     }
 
+    /**
+     * Configures the created TimedBlenderDriver to collect frames in
+     * parallel.  Must be called before the service is created.
+     * @param threadCount number of collector threads
+     * @param deadlineMillisec milliseconds to wait for FrameSources each tick
+     * @param policy behavior when a FrameSource misses the deadline, null to
+     * collect frames on the driver's thread
+     */
+    public void setParallelCollection(int threadCount, long deadlineMillisec,
+            ParallelFrameCollector.MissPolicy policy){
+        myCollectorThreads = threadCount;
+        myCollectorDeadline = deadlineMillisec;
+        myMissPolicy = policy;
+    }
+
+    /**
+     * Configures the BlenderMetrics of the created TimedBlenderDriver.  Must
+     * be called before the service is created.  Metrics are off by default.
+     * @param enabled false to not record metrics at all
+     * @param registerMBean true to register the metrics as an MBean
+     */
+    public void setMetrics(boolean enabled, boolean registerMBean){
+        myMetricsFlag = enabled;
+        myRegisterMBeanFlag = registerMBean;
+    }
+
     @Override
     protected TimedBlenderDriver create(Map<String, Object> services) {
         Blender blender = (Blender)services.get(theBlender);
@@ -61,10 +117,46 @@ public class TimedBlenderDriverLifecycle extends
                 new TimedBlenderDriver(myBlenderInterval);
         driver.setBlender(blender);
         driver.setFrameSourceTracker(tracker);
-        driver.start();
+        if(myMetricsFlag){
+            BlenderMetrics metrics = new BlenderMetrics();
+            if(myRegisterMBeanFlag){
+                metrics.register(myMetricsName);
+            }
+            driver.setMetrics(metrics);
+        }
+        if(myMissPolicy != null){
+            driver.setFrameCollector(new ParallelFrameCollector(
+                    myCollectorThreads, myCollectorDeadline, myMissPolicy,
+                    new Source<RobotPositionMap>() {
+                        @Override
+                        public RobotPositionMap getValue() {
+                            return new RobotPositionHashMap();
+                        }
+                    }));
+        }
+        if(myClockPolicy != null){
+            driver.startClock(myClockPolicy);
+        }else{
+            driver.start();
+        }
         return driver;
     }
 
+    @Override
+    protected void cleanupService(TimedBlenderDriver service) {
+        service.stopClock();
+        service.stop();
+        ParallelFrameCollector collector = service.getFrameCollector();
+        if(collector != null){
+            collector.shutdown();
+        }
+        BlenderMetrics metrics = service.getMetrics();
+        if(metrics != null){
+            metrics.unregister();
+        }
+        super.cleanupService(service);
+    }
+
     @Override
     protected void handleChange(
             String serviceId, Object service, Map<String,Object> dependencies) {
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.utils;
+
+import java.util.List;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.Robot.JointId;
+import org.mechio.api.motion.Robot.RobotPositionHashMap;
+import org.mechio.api.motion.Robot.RobotPositionMap;
+import org.mechio.api.motion.blending.MotionJournalReader;
+import org.mechio.api.motion.protocol.DefaultMotionFrame;
+import org.mechio.api.motion.protocol.MotionFrame;
+
+/**
+ * A FrameSource which replays a motion journal recorded by a
+ * MotionJournalRecorder.
+ * Each frame moves from the journal positions at the start of the frame to
+ * the journal positions at the end of the frame, so the replay passes
+ * through the Blender like any other FrameSource.  The journal can be
+ * replayed at its recorded speed or faster.
+ */
+public class MotionJournalFrameSource implements RobotFrameSource {
+	private final MotionJournalReader myReader;
+	private Robot myRobot;
+	private JointId[] myJointIds;
+	private double myPlaybackRate;
+	private long myStartTime;
+	private long myJournalStartTime;
+	private boolean myFinishedFlag;
+
+	/**
+	 * Creates a new MotionJournalFrameSource.
+	 *
+	 * @param reader journal to replay
+	 * @param robot  Robot to replay to, the journal's joint numbers are used
+	 *               with the Robot's id
+	 */
+	public MotionJournalFrameSource(MotionJournalReader reader, Robot robot) {
+		if (reader == null) {
+			throw new NullPointerException();
+		}
+		myReader = reader;
+		myPlaybackRate = 1.0;
+		setRobot(robot);
+	}
+
+	@Override
+	public final void setRobot(Robot robot) {
+		myRobot = robot;
+		readJointIds();
+	}
+
+	private void readJointIds() {
+		Robot robot = myRobot;
+		List<JointId> ids = myReader.getJointIds();
+		myJointIds = new JointId[ids.size()];
+		for (int i = 0; i < myJointIds.length; i++) {
+			JointId id = ids.get(i);
+			myJointIds[i] = robot == null ? id
+					: new JointId(robot.getRobotId(), id.getJointId());
+		}
+	}
+
+	@Override
+	public Robot getRobot() {
+		return myRobot;
+	}
+
+	/**
+	 * Sets the playback rate.  Rates below 1.0 are replayed at 1.0.
+	 *
+	 * @param rate journal milliseconds played per millisecond
+	 */
+	public void setPlaybackRate(double rate) {
+		myPlaybackRate = Math.max(1.0, rate);
+	}
+
+	/**
+	 * Returns the playback rate.
+	 *
+	 * @return journal milliseconds played per millisecond
+	 */
+	public double getPlaybackRate() {
+		return myPlaybackRate;
+	}
+
+	/**
+	 * Restarts the replay from the oldest available record.  Playback begins
+	 * on the next call to getMovements.
+	 */
+	public void restart() {
+		myStartTime = 0L;
+		myFinishedFlag = false;
+	}
+
+	/**
+	 * Returns true once the replay has passed the newest record.
+	 *
+	 * @return true if the replay is finished
+	 */
+	public boolean isFinished() {
+		return myFinishedFlag;
+	}
+
+	@Override
+	public MotionFrame getMovements(long currentTimeUTC, long moveLengthMilliSec) {
+		if (myRobot == null || myFinishedFlag) {
+			return null;
+		}
+		long first = myReader.getFirstSequence();
+		long count = myReader.getRecordCount();
+		if (first >= count) {
+			return null;
+		}
+		if (myStartTime == 0L) {
+			myStartTime = currentTimeUTC;
+			myJournalStartTime = myReader.getTime(first);
+		}
+		long start = myJournalStartTime
+				+ (long) ((currentTimeUTC - myStartTime) * myPlaybackRate);
+		long end = start + (long) (moveLengthMilliSec * myPlaybackRate);
+		if (start > myReader.getTime(count - 1)) {
+			myFinishedFlag = true;
+			return null;
+		}
+		long prevSeq = Math.max(first, myReader.findRecord(start));
+		long goalSeq = Math.max(first, myReader.findRecord(end));
+		if (myReader.getJointIds().size() != myJointIds.length) {
+			readJointIds();
+		}
+		MotionFrame frame = new DefaultMotionFrame();
+		frame.setTimestampMillisecUTC(currentTimeUTC);
+		frame.setFrameLengthMillisec(moveLengthMilliSec);
+		frame.setPreviousPositions(readPositions(prevSeq));
+		frame.setGoalPositions(readPositions(goalSeq));
+		return frame;
+	}
+
+	private RobotPositionMap readPositions(long seq) {
+		RobotPositionMap positions = new RobotPositionHashMap(myJointIds.length);
+		for (int i = 0; i < myJointIds.length; i++) {
+			double val = myReader.getPosition(seq, i);
+			if (Double.isNaN(val)) {
+				continue;
+			}
+			positions.put(myJointIds[i], new NormalizedDouble(val));
+		}
+		return positions;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.mechio.api.motion.blending.BlenderClock.OverrunPolicy;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests BlenderClock scheduling and overrun accounting, driven from a fake
+ * TimeSource so no real time passes.
+ */
+public class BlenderClockTest {
+    private final static long PERIOD = 10;
+    private final static long START = 1000;
+
+    @Test
+    public void onTimeTicksShouldFollowSchedule() {
+        FakeTicks ticks = run(OverrunPolicy.CATCH_UP, 4, 5, -1, 0);
+        assertEquals(Arrays.asList(10L, 20L, 30L, 40L, 50L), ticks.myTimes);
+        assertEquals(Arrays.asList(10L, 10L, 10L, 10L, 10L), ticks.myIntervals);
+        assertEquals(5, ticks.myClock.getTickCount());
+        assertEquals(0, ticks.myClock.getOverrunCount());
+        assertEquals(0, ticks.myClock.getMaxJitterNanos());
+    }
+
+    @Test
+    public void catchUpShouldRunMissedTicks() {
+        FakeTicks ticks = run(OverrunPolicy.CATCH_UP, 4, 6, 1, 35);
+        assertEquals(Arrays.asList(10L, 20L, 30L, 40L, 50L, 60L), ticks.myTimes);
+        //the missed ticks run back to back and integrate the elapsed time
+        assertEquals(Arrays.asList(10L, 10L, 35L, 0L, 0L, 5L), ticks.myIntervals);
+        //each caught up tick which is still behind counts as an overrun
+        assertEquals(3, ticks.myClock.getOverrunCount());
+        assertEquals(0, ticks.myClock.getSkippedTickCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(25),
+                ticks.myClock.getMaxJitterNanos());
+    }
+
+    @Test
+    public void catchUpShouldSkipTicksPastLimit() {
+        FakeTicks ticks = run(OverrunPolicy.CATCH_UP, 2, 5, 1, 35);
+        assertEquals(Arrays.asList(10L, 20L, 40L, 50L, 60L), ticks.myTimes);
+        assertEquals(2, ticks.myClock.getOverrunCount());
+        assertEquals(1, ticks.myClock.getSkippedTickCount());
+    }
+
+    @Test
+    public void skipShouldDropMissedTicks() {
+        FakeTicks ticks = run(OverrunPolicy.SKIP, 4, 4, 1, 35);
+        assertEquals(Arrays.asList(10L, 20L, 60L, 70L), ticks.myTimes);
+        assertEquals(Arrays.asList(10L, 10L, 40L, 10L), ticks.myIntervals);
+        assertEquals(1, ticks.myClock.getOverrunCount());
+        assertEquals(3, ticks.myClock.getSkippedTickCount());
+        assertEquals(4, ticks.myClock.getTickCount());
+    }
+
+    /**
+     * Runs a clock for the given number of ticks.  The tick with index
+     * slowTick takes slowMillis to run, all other ticks take no time.
+     */
+    private static FakeTicks run(OverrunPolicy policy, int maxCatchUp,
+            int tickCount, int slowTick, long slowMillis) {
+        FakeTicks ticks = new FakeTicks(tickCount, slowTick, slowMillis);
+        BlenderClock clock = new BlenderClock(
+                TimeUnit.MILLISECONDS.toNanos(PERIOD), policy, ticks);
+        clock.setSpinNanos(0);
+        clock.setMaxCatchUpTicks(maxCatchUp);
+        clock.setTimeSource(ticks);
+        ticks.myClock = clock;
+        clock.runOnCurrentThread();
+        return ticks;
+    }
+
+    /**
+     * A TimeSource whose time only moves when the clock waits or a tick
+     * runs, recording the ticks it receives.
+     */
+    private static class FakeTicks implements
+            BlenderClock.TimeSource, BlenderClock.TickHandler {
+        private final int myTickCount;
+        private final int mySlowTick;
+        private final long mySlowNanos;
+        private final List<Long> myTimes = new ArrayList<>();
+        private final List<Long> myIntervals = new ArrayList<>();
+        private long myNanos = TimeUnit.MILLISECONDS.toNanos(START);
+        private BlenderClock myClock;
+
+        FakeTicks(int tickCount, int slowTick, long slowMillis) {
+            myTickCount = tickCount;
+            mySlowTick = slowTick;
+            mySlowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        }
+
+        @Override
+        public void handleTick(long time, long interval) {
+            if(myTimes.size() == mySlowTick){
+                myNanos += mySlowNanos;
+            }
+            myTimes.add(time - START);
+            myIntervals.add(interval);
+            if(myTimes.size() == myTickCount){
+                myClock.stop();
+            }
+        }
+
+        @Override
+        public long nanoTime() {
+            return myNanos;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(myNanos);
+        }
+
+        @Override
+        public void parkNanos(Object blocker, long nanos) {
+            myNanos += nanos;
+        }
+    }
+}
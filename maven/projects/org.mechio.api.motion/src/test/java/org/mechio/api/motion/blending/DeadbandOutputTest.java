@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.api.motion.blending;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.jflux.api.core.Source;
+import org.junit.Test;
+import org.mechio.api.motion.protocol.DefaultMotionFrame;
+import org.mechio.api.motion.protocol.JointPositionMap;
+import org.mechio.api.motion.protocol.MotionFrame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a DeadbandOutput feeds suppressed positions back to the Blender,
+ * so slow movements pass through the deadband instead of stalling.
+ */
+public class DeadbandOutputTest {
+    private final static String JOINT = "joint";
+    private final static double DEADBAND = 0.01;
+    private final static long INTERVAL = 10;
+
+    @Test
+    public void slowMotionShouldPassThroughDeadband() {
+        JointOutput robot = new JointOutput(0.5);
+        DeadbandOutput<String,PosMap> output =
+                new DeadbandOutput<>(robot, new PosMapSource(), DEADBAND, 0);
+        double step = DEADBAND / 10;
+        List<Double> written = new ArrayList<>();
+        for(int i=1; i<=100; i++){
+            blendVelocity(output, i*INTERVAL, step);
+            written.add(robot.getPosition());
+        }
+
+        double blended = 0.5 + 100*step;
+        assertEquals(blended, getPosition(output.getPositions()), 1e-9);
+        assertTrue(Math.abs(blended - robot.getPosition()) <= DEADBAND + 1e-9);
+        double prev = 0.5;
+        for(double pos : written){
+            assertTrue(pos - prev <= DEADBAND + step + 1e-9);
+            prev = pos;
+        }
+        assertTrue(robot.getWriteCount() < 20);
+    }
+
+    @Test
+    public void suppressedPositionsShouldBeReturned() {
+        JointOutput robot = new JointOutput(0.5);
+        DeadbandOutput<String,PosMap> output =
+                new DeadbandOutput<>(robot, new PosMapSource(), DEADBAND, 0);
+        output.write(createPositions(0.5), INTERVAL);
+        output.write(createPositions(0.505), INTERVAL);
+
+        assertEquals(0.5, robot.getPosition(), 1e-9);
+        assertEquals(0.505, getPosition(output.getPositions()), 1e-9);
+
+        output.write(createPositions(0.52), INTERVAL);
+        assertEquals(0.52, robot.getPosition(), 1e-9);
+        assertEquals(0.52, getPosition(output.getPositions()), 1e-9);
+    }
+
+    /**
+     * Blends a single frame moving the joint by step through a
+     * VelocityCombiner, the way a Blender does each tick.
+     */
+    private static void blendVelocity(
+            BlenderOutput<PosMap> output, long time, double step) {
+        VelocityCombiner<String,PosMap> combiner =
+                new VelocityCombiner<>(new PosMapSource());
+        MotionFrame<PosMap> frame = new DefaultMotionFrame<>();
+        frame.setTimestampMillisecUTC(time);
+        frame.setFrameLengthMillisec(INTERVAL);
+        frame.setPreviousPositions(createPositions(0.5));
+        frame.setGoalPositions(createPositions(0.5 + step));
+        Map<MotionFrame<PosMap>,FrameSource<PosMap>> frames =
+                Collections.<MotionFrame<PosMap>,FrameSource<PosMap>>
+                        singletonMap(frame, new EmptySource());
+        PosMap pos = combiner.combineFrames(
+                time, INTERVAL, output.getPositions(), frames);
+        output.write(pos, INTERVAL);
+    }
+
+    private static PosMap createPositions(double value) {
+        PosMap pos = new PosMap();
+        pos.put(JOINT, new NormalizedDouble(value));
+        return pos;
+    }
+
+    private static double getPosition(PosMap positions) {
+        return positions.get(JOINT).getValue();
+    }
+
+    private static class PosMap extends
+            JointPositionMap.HashMap<String,NormalizedDouble> {}
+
+    private static class PosMapSource implements Source<PosMap> {
+        @Override
+        public PosMap getValue() {
+            return new PosMap();
+        }
+    }
+
+    private static class EmptySource implements FrameSource<PosMap> {
+        @Override
+        public MotionFrame<PosMap> getMovements(
+                long currentTimeUTC, long moveLengthMilliSec) {
+            return null;
+        }
+    }
+
+    /**
+     * Keeps the written positions as its current positions, like a Robot.
+     */
+    private static class JointOutput implements BlenderOutput<PosMap> {
+        private final PosMap myPositions;
+        private int myWriteCount;
+
+        JointOutput(double position) {
+            myPositions = createPositions(position);
+        }
+
+        @Override
+        public void write(PosMap positions, long lenMillisec) {
+            myPositions.putAll(positions);
+            myWriteCount++;
+        }
+
+        @Override
+        public PosMap getPositions() {
+            return myPositions;
+        }
+
+        double getPosition() {
+            return DeadbandOutputTest.getPosition(myPositions);
+        }
+
+        int getWriteCount() {
+            return myWriteCount;
+        }
+    }
+}
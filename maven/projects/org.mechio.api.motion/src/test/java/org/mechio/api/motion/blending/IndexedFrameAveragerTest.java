@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.jflux.api.core.Source;
+import org.junit.Test;
+import org.mechio.api.motion.protocol.DefaultMotionFrame;
+import org.mechio.api.motion.protocol.JointPositionMap;
+import org.mechio.api.motion.protocol.MotionFrame;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that an IndexedBlender with an IndexedFrameAverager writes the same
+ * positions as the NaiveMotionFrameAverager.
+ */
+public class IndexedFrameAveragerTest {
+    private final static long INTERVAL = 10;
+
+    @Test
+    public void overlappingFramesShouldMatchNaiveAverager() {
+        assertMatchesNaive(
+                createFrame("a", 0.2, "b", 0.4),
+                createFrame("a", 0.6, "b", 0.9),
+                createFrame("a", 1.0, "b", 0.5));
+    }
+
+    @Test
+    public void partialFramesShouldMatchNaiveAverager() {
+        assertMatchesNaive(
+                createFrame("a", 0.2),
+                createFrame("b", 0.8, "c", 0.3),
+                createFrame("a", 0.7, "c", 0.1));
+    }
+
+    @Test
+    public void emptyFramesShouldMatchNaiveAverager() {
+        assertMatchesNaive(createFrame(), createFrame("b", 0.5));
+        assertMatchesNaive(createFrame(), createFrame());
+    }
+
+    @Test
+    public void reusedOutputMapsShouldMatchNaiveAverager() {
+        RecordingOutput output = new RecordingOutput();
+        IndexedBlender<String,PosMap> blender =
+                new IndexedBlender<>(new PosMapSource());
+        blender.setReuseOutputMaps(true);
+        blender.setOutput(output);
+        Map<MotionFrame<PosMap>,FrameSource<PosMap>>[] ticks = new Map[]{
+            createFrames(createFrame("a", 0.2, "b", 0.4)),
+            createFrames(createFrame("b", 0.6), createFrame("c", 0.3)),
+            createFrames(createFrame("a", 0.9))
+        };
+        for(int i=0; i<ticks.length; i++){
+            blender.blend(i*INTERVAL, INTERVAL, ticks[i]);
+            assertPositions(average(ticks[i], output), output.myWritten);
+        }
+    }
+
+    private static void assertMatchesNaive(MotionFrame<PosMap>... frames) {
+        Map<MotionFrame<PosMap>,FrameSource<PosMap>> map = createFrames(frames);
+        RecordingOutput output = new RecordingOutput();
+        IndexedBlender<String,PosMap> blender =
+                new IndexedBlender<>(new PosMapSource());
+        blender.setOutput(output);
+        blender.blend(0, INTERVAL, map);
+        assertPositions(average(map, output), output.myWritten);
+        assertEquals(1, output.myWriteCount);
+    }
+
+    private static void assertPositions(PosMap expected, PosMap actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for(Map.Entry<String,NormalizedDouble> e : expected.entrySet()){
+            assertEquals(e.getValue().getValue(),
+                    actual.get(e.getKey()).getValue(), 1e-12);
+        }
+    }
+
+    private static PosMap average(
+            Map<MotionFrame<PosMap>,FrameSource<PosMap>> frames,
+            RecordingOutput output) {
+        return new NaiveMotionFrameAverager<String,PosMap>(new PosMapSource())
+                .combineFrames(0, INTERVAL, output.getPositions(), frames);
+    }
+
+    private static Map<MotionFrame<PosMap>,FrameSource<PosMap>> createFrames(
+            MotionFrame<PosMap>... frames) {
+        Map<MotionFrame<PosMap>,FrameSource<PosMap>> map = new LinkedHashMap<>();
+        for(MotionFrame<PosMap> frame : frames){
+            map.put(frame, new EmptySource());
+        }
+        return map;
+    }
+
+    /**
+     * Creates a frame from alternating joint names and goal positions.
+     */
+    private static MotionFrame<PosMap> createFrame(Object... goals) {
+        PosMap pos = new PosMap();
+        for(int i=0; i<goals.length; i+=2){
+            pos.put((String)goals[i], new NormalizedDouble((Double)goals[i+1]));
+        }
+        MotionFrame<PosMap> frame = new DefaultMotionFrame<>();
+        frame.setTimestampMillisecUTC(1);
+        frame.setFrameLengthMillisec(INTERVAL);
+        frame.setPreviousPositions(new PosMap());
+        frame.setGoalPositions(pos);
+        return frame;
+    }
+
+    private static class PosMap extends
+            JointPositionMap.HashMap<String,NormalizedDouble> {}
+
+    private static class PosMapSource implements Source<PosMap> {
+        @Override
+        public PosMap getValue() {
+            return new PosMap();
+        }
+    }
+
+    private static class EmptySource implements FrameSource<PosMap> {
+        @Override
+        public MotionFrame<PosMap> getMovements(
+                long currentTimeUTC, long moveLengthMilliSec) {
+            return null;
+        }
+    }
+
+    /**
+     * Keeps a copy of the last written positions.
+     */
+    private static class RecordingOutput implements BlenderOutput<PosMap> {
+        private final PosMap myPositions;
+        private PosMap myWritten;
+        private int myWriteCount;
+
+        RecordingOutput() {
+            myPositions = new PosMap();
+            myPositions.put("a", new NormalizedDouble(0.5));
+        }
+
+        @Override
+        public void write(PosMap positions, long lenMillisec) {
+            myWritten = new PosMap();
+            myWritten.putAll(positions);
+            myWriteCount++;
+        }
+
+        @Override
+        public PosMap getPositions() {
+            return myPositions;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.junit.Test;
+import org.mechio.api.motion.Joint;
+import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.Robot.RobotPositionHashMap;
+import org.mechio.api.motion.Robot.RobotPositionMap;
+import org.mechio.api.motion.protocol.MotionFrame;
+import org.mechio.api.motion.utils.MotionJournalFrameSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that positions written through a MotionJournalRecorder can be read
+ * back and replayed, and that the journal ring keeps only the newest
+ * records once it is full.
+ */
+public class MotionJournalRecorderTest {
+    private final static Robot.Id ROBOT = new Robot.Id("journalRobot");
+    private final static Robot.JointId JOINT_A =
+            new Robot.JointId(ROBOT, new Joint.Id(1));
+    private final static Robot.JointId JOINT_B =
+            new Robot.JointId(ROBOT, new Joint.Id(2));
+    private final static long INTERVAL = 10;
+    private final static long RECORD_GAP = 20;
+
+    @Test
+    public void recordedPositionsShouldReplay()
+            throws IOException, InterruptedException {
+        File file = createJournalFile();
+        RecordingOutput output = new RecordingOutput();
+        MotionJournalRecorder recorder = new MotionJournalRecorder(
+                file, ROBOT, output, 16, 4, 1000);
+        double[][] written = {{0.1, 0.9}, {0.4, 0.6}, {0.8, 0.2}};
+        try{
+            recorder.open();
+            for(int i=0; i<written.length; i++){
+                if(i > 0){
+                    Thread.sleep(RECORD_GAP);
+                }
+                recorder.write(
+                        createPositions(written[i][0], written[i][1]),
+                        INTERVAL);
+                assertEquals(written[i][0],
+                        output.myPositions.get(JOINT_A).getValue(), 1e-9);
+            }
+        }finally{
+            recorder.close();
+        }
+        assertEquals(written.length, recorder.getRecordCount());
+
+        MotionJournalReader reader = new MotionJournalReader(file);
+        try{
+            assertEquals(ROBOT, reader.getRobotId());
+            assertEquals(2, reader.getJointIds().size());
+            assertEquals(JOINT_A, reader.getJointIds().get(0));
+            assertEquals(JOINT_B, reader.getJointIds().get(1));
+            assertEquals(0, reader.getFirstSequence());
+            assertEquals(written.length, reader.getRecordCount());
+            for(int i=0; i<written.length; i++){
+                assertEquals(INTERVAL, reader.getInterval(i));
+                assertEquals(written[i][0], reader.getPosition(i, 0), 1e-6);
+                assertEquals(written[i][1], reader.getPosition(i, 1), 1e-6);
+                if(i > 0){
+                    assertTrue(reader.getTime(i) - reader.getTime(i-1)
+                            >= RECORD_GAP);
+                }
+            }
+
+            MotionJournalFrameSource replay =
+                    new MotionJournalFrameSource(reader, createRobot());
+            long start = 1000000;
+            MotionFrame<RobotPositionMap> frame =
+                    replay.getMovements(start, INTERVAL);
+            assertPositions(written[0], frame.getPreviousPositions());
+            assertPositions(written[0], frame.getGoalPositions());
+            long last = start + reader.getTime(2) - reader.getTime(0);
+            frame = replay.getMovements(last, INTERVAL);
+            assertPositions(written[2], frame.getGoalPositions());
+            assertFalse(replay.isFinished());
+            assertEquals(null, replay.getMovements(last + RECORD_GAP, INTERVAL));
+            assertTrue(replay.isFinished());
+        }finally{
+            reader.close();
+        }
+    }
+
+    @Test
+    public void fullRingShouldOverwriteOldestRecords() throws IOException {
+        File file = createJournalFile();
+        long capacity = 4;
+        int total = 10;
+        MotionJournalRecorder recorder = new MotionJournalRecorder(
+                file, ROBOT, new RecordingOutput(), capacity, 4, 1000);
+        long fileLength;
+        try{
+            recorder.open();
+            fileLength = file.length();
+            for(int i=0; i<total; i++){
+                recorder.write(createPositions(i/10.0, 1.0 - i/10.0), INTERVAL);
+            }
+        }finally{
+            recorder.close();
+        }
+        assertEquals(total, recorder.getRecordCount());
+        assertEquals(fileLength, file.length());
+
+        MotionJournalReader reader = new MotionJournalReader(file);
+        try{
+            assertEquals(capacity, reader.getCapacity());
+            assertEquals(total, reader.getRecordCount());
+            assertEquals(total - capacity, reader.getFirstSequence());
+            for(long seq=total-capacity; seq<total; seq++){
+                assertEquals(seq/10.0, reader.getPosition(seq, 0), 1e-6);
+                assertEquals(1.0 - seq/10.0, reader.getPosition(seq, 1), 1e-6);
+            }
+            try{
+                reader.getPosition(total - capacity - 1, 0);
+                fail("Overwritten record should not be available.");
+            }catch(IndexOutOfBoundsException ex){
+            }
+            try{
+                reader.getTime(total);
+                fail("Unwritten record should not be available.");
+            }catch(IndexOutOfBoundsException ex){
+            }
+        }finally{
+            reader.close();
+        }
+    }
+
+    private static File createJournalFile() throws IOException {
+        File file = File.createTempFile("motion", ".journal");
+        file.deleteOnExit();
+        new File(file.getPath() + MotionJournalRecorder.SOURCES_SUFFIX)
+                .deleteOnExit();
+        return file;
+    }
+
+    private static RobotPositionMap createPositions(double a, double b) {
+        RobotPositionMap pos = new RobotPositionHashMap();
+        pos.put(JOINT_A, new NormalizedDouble(a));
+        pos.put(JOINT_B, new NormalizedDouble(b));
+        return pos;
+    }
+
+    private static void assertPositions(
+            double[] expected, RobotPositionMap actual) {
+        assertEquals(2, actual.size());
+        assertEquals(expected[0], actual.get(JOINT_A).getValue(), 1e-6);
+        assertEquals(expected[1], actual.get(JOINT_B).getValue(), 1e-6);
+    }
+
+    /**
+     * Creates a Robot which only provides its id, which is all the replay
+     * needs.
+     */
+    private static Robot createRobot() {
+        return (Robot)Proxy.newProxyInstance(
+                Robot.class.getClassLoader(), new Class[]{Robot.class},
+                new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if("getRobotId".equals(method.getName())){
+                    return ROBOT;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Keeps the written positions as its current positions, like a Robot.
+     * Both joints start in the current positions, so the recorder gives them
+     * the first slots in joint number order.
+     */
+    private static class RecordingOutput
+            implements BlenderOutput<RobotPositionMap> {
+        private final RobotPositionMap myPositions = createPositions(0.5, 0.5);
+
+        @Override
+        public void write(RobotPositionMap positions, long lenMillisec) {
+            myPositions.putAll(positions);
+        }
+
+        @Override
+        public RobotPositionMap getPositions() {
+            return myPositions;
+        }
+    }
+}
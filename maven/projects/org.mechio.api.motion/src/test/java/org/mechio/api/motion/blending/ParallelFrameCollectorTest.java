@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.jflux.api.core.Source;
+import org.junit.Test;
+import org.mechio.api.motion.blending.ParallelFrameCollector.MissPolicy;
+import org.mechio.api.motion.protocol.DefaultMotionFrame;
+import org.mechio.api.motion.protocol.JointPositionMap;
+import org.mechio.api.motion.protocol.MotionFrame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the deadline and miss policies of a ParallelFrameCollector.
+ */
+public class ParallelFrameCollectorTest {
+    private final static long DEADLINE = 50;
+    private final static long INTERVAL = 10;
+
+    @Test
+    public void collectionShouldStopAtDeadline() throws Exception {
+        ParallelFrameCollector collector = new ParallelFrameCollector(
+                2, DEADLINE, MissPolicy.DROP, new PosMapSource());
+        TestSource fast = new TestSource(0.2);
+        TestSource slow = new TestSource(0.8);
+        slow.block();
+        try{
+            long start = System.nanoTime();
+            Map<MotionFrame,FrameSource> frames = collector.collectFrames(
+                    1, INTERVAL, Arrays.asList(fast, slow));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsed >= DEADLINE - 1);
+            assertTrue(elapsed < DEADLINE + 1000);
+            assertEquals(1, frames.size());
+            assertTrue(frames.containsValue(fast));
+            assertEquals(1, collector.getStats(slow).getMissCount());
+            assertEquals(0, collector.getStats(fast).getMissCount());
+        }finally{
+            slow.release();
+            collector.shutdown();
+        }
+    }
+
+    @Test
+    public void dropShouldLeaveOutSlowSource() throws Exception {
+        ParallelFrameCollector collector = new ParallelFrameCollector(
+                2, DEADLINE, MissPolicy.DROP, new PosMapSource());
+        TestSource slow = new TestSource(0.8);
+        try{
+            assertEquals(1, collector.collectFrames(
+                    1, INTERVAL, Arrays.asList(slow)).size());
+            slow.block();
+            assertTrue(collector.collectFrames(
+                    2, INTERVAL, Arrays.asList(slow)).isEmpty());
+        }finally{
+            slow.release();
+            collector.shutdown();
+        }
+    }
+
+    @Test
+    public void reuseLastShouldCopyLastFrame() throws Exception {
+        ParallelFrameCollector collector = new ParallelFrameCollector(
+                2, DEADLINE, MissPolicy.REUSE_LAST, new PosMapSource());
+        TestSource slow = new TestSource(0.8);
+        try{
+            Map<MotionFrame,FrameSource> frames = collector.collectFrames(
+                    1, INTERVAL, Arrays.asList(slow));
+            MotionFrame first = frames.keySet().iterator().next();
+            slow.block();
+            frames = collector.collectFrames(2, INTERVAL, Arrays.asList(slow));
+            assertEquals(1, frames.size());
+            MotionFrame reused = frames.keySet().iterator().next();
+            assertNotSame(first, reused);
+            assertEquals(0.8, getGoal(reused), 0.0);
+            assertEquals(1, collector.getStats(slow).getMissCount());
+        }finally{
+            slow.release();
+            collector.shutdown();
+        }
+    }
+
+    @Test
+    public void reuseLastWithoutFactoryShouldDrop() throws Exception {
+        ParallelFrameCollector collector = new ParallelFrameCollector(
+                2, DEADLINE, MissPolicy.REUSE_LAST);
+        TestSource slow = new TestSource(0.8);
+        try{
+            collector.collectFrames(1, INTERVAL, Arrays.asList(slow));
+            slow.block();
+            assertTrue(collector.collectFrames(
+                    2, INTERVAL, Arrays.asList(slow)).isEmpty());
+        }finally{
+            slow.release();
+            collector.shutdown();
+        }
+    }
+
+    @Test
+    public void slowSourceShouldNotBeCalledUntilFinished() throws Exception {
+        ParallelFrameCollector collector = new ParallelFrameCollector(
+                2, DEADLINE, MissPolicy.DROP, new PosMapSource());
+        TestSource fast = new TestSource(0.2);
+        TestSource slow = new TestSource(0.8);
+        slow.block();
+        try{
+            for(int i=1; i<=3; i++){
+                Map<MotionFrame,FrameSource> frames = collector.collectFrames(
+                        i, INTERVAL, Arrays.asList(fast, slow));
+                assertFalse(frames.containsValue(slow));
+            }
+            assertEquals(1, slow.myCallCount.get());
+            assertEquals(3, fast.myCallCount.get());
+            assertEquals(3, collector.getStats(slow).getMissCount());
+
+            //the late frame is discarded, and the source is called again
+            //once its worker has finished
+            slow.release();
+            assertTrue(slow.awaitFinished());
+            MotionFrame frame = null;
+            long time = 3;
+            while(frame == null && time < 100){
+                time++;
+                Map<MotionFrame,FrameSource> frames = collector.collectFrames(
+                        time, INTERVAL, Arrays.asList(fast, slow));
+                for(Map.Entry<MotionFrame,FrameSource> e : frames.entrySet()){
+                    if(e.getValue() == slow){
+                        frame = e.getKey();
+                    }
+                }
+            }
+            assertNotNull(frame);
+            assertEquals(time, frame.getTimestampMillisecUTC());
+            assertEquals(2, slow.myCallCount.get());
+        }finally{
+            slow.release();
+            collector.shutdown();
+        }
+    }
+
+    private static double getGoal(MotionFrame frame) {
+        PosMap goals = (PosMap)frame.getGoalPositions();
+        return goals.get("joint").getValue();
+    }
+
+    private static class PosMap extends
+            JointPositionMap.HashMap<String,NormalizedDouble> {}
+
+    private static class PosMapSource implements Source<PosMap> {
+        @Override
+        public PosMap getValue() {
+            return new PosMap();
+        }
+    }
+
+    /**
+     * Returns a frame with a single goal position, optionally blocking
+     * until released.
+     */
+    private static class TestSource implements FrameSource<PosMap> {
+        private final double myPosition;
+        private final AtomicInteger myCallCount = new AtomicInteger();
+        private volatile CountDownLatch myBlock;
+        private volatile CountDownLatch myFinished = new CountDownLatch(0);
+
+        TestSource(double position) {
+            myPosition = position;
+        }
+
+        void block() {
+            myBlock = new CountDownLatch(1);
+            myFinished = new CountDownLatch(1);
+        }
+
+        void release() {
+            CountDownLatch block = myBlock;
+            if(block != null){
+                block.countDown();
+            }
+        }
+
+        boolean awaitFinished() throws InterruptedException {
+            return myFinished.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public MotionFrame<PosMap> getMovements(
+                long currentTimeUTC, long moveLengthMilliSec) {
+            myCallCount.incrementAndGet();
+            CountDownLatch block = myBlock;
+            if(block != null){
+                try{
+                    block.await(5, TimeUnit.SECONDS);
+                }catch(InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                }
+                myBlock = null;
+            }
+            PosMap goals = new PosMap();
+            goals.put("joint", new NormalizedDouble(myPosition));
+            MotionFrame<PosMap> frame = new DefaultMotionFrame<>();
+            frame.setTimestampMillisecUTC(currentTimeUTC);
+            frame.setFrameLengthMillisec(moveLengthMilliSec);
+            frame.setPreviousPositions(new PosMap());
+            frame.setGoalPositions(goals);
+            myFinished.countDown();
+            return frame;
+        }
+    }
+}
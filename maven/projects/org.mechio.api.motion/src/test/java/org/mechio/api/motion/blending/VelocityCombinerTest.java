@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.api.motion.blending;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.jflux.api.core.Source;
+import org.junit.Test;
+import org.mechio.api.motion.protocol.DefaultMotionFrame;
+import org.mechio.api.motion.protocol.JointPositionMap;
+import org.mechio.api.motion.protocol.MotionFrame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a VelocityCombiner integrates the weighted sum of frame
+ * velocities from the current positions and keeps the result in [0,1].
+ */
+public class VelocityCombinerTest {
+    private final static long INTERVAL = 10;
+
+    @Test
+    public void weightedVelocitiesShouldBeIntegrated() {
+        VelocityCombiner<String,PosMap> combiner =
+                new VelocityCombiner<>(new PosMapSource());
+        EmptySource halfSource = new EmptySource();
+        EmptySource doubleSource = new EmptySource();
+        combiner.setSourceWeight(halfSource, 0.5);
+        combiner.setSourceWeight(doubleSource, 2.0);
+        Map<MotionFrame<PosMap>,FrameSource<PosMap>> frames =
+                new LinkedHashMap<>();
+        // a: 0.1 over 20ms at half weight, b: 0.05 over 10ms at double weight
+        frames.put(createFrame(20, createPositions("a", 0.2, "b", 0.5),
+                createPositions("a", 0.3, "b", 0.5)), halfSource);
+        frames.put(createFrame(10, createPositions("b", 0.5),
+                createPositions("b", 0.55)), doubleSource);
+        // c is only in a frame with the default weight
+        frames.put(createFrame(10, createPositions("c", 0.6),
+                createPositions("c", 0.5)), new EmptySource());
+
+        PosMap pos = combiner.combineFrames(100, INTERVAL,
+                createPositions("a", 0.4, "b", 0.4, "c", 0.4), frames);
+
+        assertEquals(3, pos.size());
+        assertEquals(0.4 + 0.1/20*0.5*INTERVAL, value(pos, "a"), 1e-9);
+        assertEquals(0.4 + 0.05/10*2.0*INTERVAL, value(pos, "b"), 1e-9);
+        assertEquals(0.4 - 0.1/10*INTERVAL, value(pos, "c"), 1e-9);
+    }
+
+    @Test
+    public void overlappingVelocitiesShouldBeSummed() {
+        VelocityCombiner<String,PosMap> combiner =
+                new VelocityCombiner<>(new PosMapSource());
+        combiner.setDefaultWeight(0.5);
+        Map<MotionFrame<PosMap>,FrameSource<PosMap>> frames =
+                new LinkedHashMap<>();
+        frames.put(createFrame(10, createPositions("a", 0.2),
+                createPositions("a", 0.3)), new EmptySource());
+        frames.put(createFrame(10, createPositions("a", 0.6),
+                createPositions("a", 0.5)), new EmptySource());
+        frames.put(createFrame(10, createPositions("a", 0.1),
+                createPositions("a", 0.3)), new EmptySource());
+
+        PosMap pos = combiner.combineFrames(
+                100, INTERVAL, createPositions("a", 0.5), frames);
+
+        assertEquals(0.5 + (0.1 - 0.1 + 0.2)*0.5, value(pos, "a"), 1e-9);
+    }
+
+    @Test
+    public void positionsShouldBeClampedToRange() {
+        VelocityCombiner<String,PosMap> combiner =
+                new VelocityCombiner<>(new PosMapSource());
+        Map<MotionFrame<PosMap>,FrameSource<PosMap>> frames =
+                new LinkedHashMap<>();
+        frames.put(createFrame(10, createPositions("up", 0.2, "down", 0.8),
+                createPositions("up", 0.7, "down", 0.3)), new EmptySource());
+
+        PosMap pos = combiner.combineFrames(100, INTERVAL * 2,
+                createPositions("up", 0.9, "down", 0.1), frames);
+
+        assertEquals(1.0, value(pos, "up"), 0.0);
+        assertEquals(0.0, value(pos, "down"), 0.0);
+    }
+
+    @Test
+    public void unmovableJointsShouldBeSkipped() {
+        VelocityCombiner<String,PosMap> combiner =
+                new VelocityCombiner<>(new PosMapSource());
+        EmptySource ignored = new EmptySource();
+        combiner.setSourceWeight(ignored, 0.0);
+        Map<MotionFrame<PosMap>,FrameSource<PosMap>> frames =
+                new LinkedHashMap<>();
+        // zero weight, zero length, missing previous and missing current
+        frames.put(createFrame(10, createPositions("a", 0.2),
+                createPositions("a", 0.3)), ignored);
+        frames.put(createFrame(0, createPositions("b", 0.2),
+                createPositions("b", 0.3)), new EmptySource());
+        frames.put(createFrame(10, createPositions(),
+                createPositions("c", 0.3)), new EmptySource());
+        frames.put(createFrame(10, createPositions("d", 0.2),
+                createPositions("d", 0.3)), new EmptySource());
+
+        PosMap pos = combiner.combineFrames(100, INTERVAL,
+                createPositions("a", 0.5, "b", 0.5, "c", 0.5), frames);
+
+        assertTrue(pos.isEmpty());
+        assertFalse(pos.containsKey("d"));
+    }
+
+    private static double value(PosMap pos, String joint) {
+        return pos.get(joint).getValue();
+    }
+
+    private static MotionFrame<PosMap> createFrame(
+            long length, PosMap prev, PosMap goal) {
+        MotionFrame<PosMap> frame = new DefaultMotionFrame<>();
+        frame.setTimestampMillisecUTC(100);
+        if(length > 0){
+            frame.setFrameLengthMillisec(length);
+        }
+        frame.setPreviousPositions(prev);
+        frame.setGoalPositions(goal);
+        return frame;
+    }
+
+    private static PosMap createPositions(Object... jointsAndValues) {
+        PosMap pos = new PosMap();
+        for(int i=0; i<jointsAndValues.length; i+=2){
+            pos.put((String)jointsAndValues[i],
+                    new NormalizedDouble((Double)jointsAndValues[i+1]));
+        }
+        return pos;
+    }
+
+    private static class PosMap extends
+            JointPositionMap.HashMap<String,NormalizedDouble> {}
+
+    private static class PosMapSource implements Source<PosMap> {
+        @Override
+        public PosMap getValue() {
+            return new PosMap();
+        }
+    }
+
+    private static class EmptySource implements FrameSource<PosMap> {
+        @Override
+        public MotionFrame<PosMap> getMovements(
+                long currentTimeUTC, long moveLengthMilliSec) {
+            return null;
+        }
+    }
+}
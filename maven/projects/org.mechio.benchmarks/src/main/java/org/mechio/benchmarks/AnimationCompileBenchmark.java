@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.compiled.ParallelMapCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures compiling an Animation into a CompiledMap, serially and with the
+ * default ParallelMapCompiler.  Interpolated points are cached by the
+ * MotionPaths, so this measures combining and sampling the interpolations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnimationCompileBenchmark {
+	@Param({"8", "24", "48"})
+	public int channels;
+
+	@Param({BenchmarkAnimations.LINEAR, BenchmarkAnimations.CSPLINE})
+	public String interpolator;
+
+	private Animation myAnimation;
+
+	@Setup
+	public void setUp() {
+		myAnimation = BenchmarkAnimations.createAnimation(channels, 100,
+				BenchmarkAnimations.getFactory(interpolator));
+	}
+
+	@Benchmark
+	public Object compileMap() {
+		return myAnimation.compileMap(-1, -1, BenchmarkAnimations.STEP_LENGTH);
+	}
+
+	@Benchmark
+	public Object compileMapParallel() {
+		return myAnimation.compileMap(-1, -1, BenchmarkAnimations.STEP_LENGTH,
+				ParallelMapCompiler.getDefault());
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.mechio.api.animation.Animation;
+import org.mechio.impl.animation.xml.AnimationXMLReader;
+import org.mechio.impl.animation.xml.StaxAnimationXMLReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading an Animation file with dense control points using the
+ * AnimationXMLReader and the StaxAnimationXMLReader.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnimationXMLReaderBenchmark {
+	@Param({"20"})
+	public int channels;
+
+	@Param({"200", "2000"})
+	public int points;
+
+	private File myFile;
+	private String myPath;
+	private AnimationXMLReader myConfigReader;
+	private StaxAnimationXMLReader myStaxReader;
+
+	@Setup
+	public void setUp() throws IOException {
+		myFile = writeAnimation(channels, points);
+		myPath = myFile.getAbsolutePath();
+		myConfigReader = new AnimationXMLReader();
+		myStaxReader = new StaxAnimationXMLReader();
+	}
+
+	@TearDown
+	public void tearDown() {
+		myFile.delete();
+	}
+
+	@Benchmark
+	public Animation configurationReader() throws Exception {
+		return myConfigReader.readAnimation(myPath);
+	}
+
+	@Benchmark
+	public Animation staxReader() throws Exception {
+		return myStaxReader.readAnimation(myPath);
+	}
+
+	private static File writeAnimation(int channels, int points) throws IOException {
+		File file = File.createTempFile("benchmark", ".anim.xml");
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+			w.write("<?xml version=\"1.0\"?>\n<Animation>\n");
+			w.write("\t<Version type=\"Animation\"><Name>benchmark</Name><Number>1.0</Number></Version>\n");
+			w.write("\t<Channels>\n");
+			for (int c = 0; c < channels; c++) {
+				w.write("\t\t<Channel id=\"" + c + "\" name=\"channel" + c + "\">\n");
+				w.write("\t\t\t<MotionPaths>\n\t\t\t\t<MotionPath name=\"path\">\n");
+				w.write("\t\t\t\t\t<Version type=\"Interpolation\"><Name>Linear Interpolation</Name><Number>1.0</Number></Version>\n");
+				w.write("\t\t\t\t\t<ControlPoints>\n");
+				for (int p = 0; p < points; p++) {
+					double pos = 0.5 + 0.5 * Math.sin(p * 0.01 + c);
+					w.write("\t\t\t\t\t\t<ControlPoint><Time>" + (p * 10.0)
+							+ "</Time><Position>" + pos + "</Position></ControlPoint>\n");
+				}
+				w.write("\t\t\t\t\t</ControlPoints>\n");
+				w.write("\t\t\t\t</MotionPath>\n\t\t\t</MotionPaths>\n\t\t</Channel>\n");
+			}
+			w.write("\t</Channels>\n\t<SyncPointGroups />\n</Animation>\n");
+		}
+		return file;
+	}
+}
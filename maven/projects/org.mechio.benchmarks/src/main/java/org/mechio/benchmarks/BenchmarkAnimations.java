@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.benchmarks;
+
+import java.util.Random;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.interpolation.InterpolatorFactory;
+import org.mechio.api.interpolation.bezier.BezierInterpolatorFactory;
+import org.mechio.api.interpolation.cspline.CSplineInterpolatorFactory;
+import org.mechio.api.interpolation.linear.LinearInterpolatorFactory;
+
+/**
+ * Creates the Animations and MotionPaths used by the benchmarks.  Paths are
+ * generated from a fixed seed, so every run measures the same data.
+ */
+public final class BenchmarkAnimations {
+	/**
+	 * Interpolator name for LinearInterpolators.
+	 */
+	public final static String LINEAR = "linear";
+	/**
+	 * Interpolator name for CSplineInterpolators.
+	 */
+	public final static String CSPLINE = "cspline";
+	/**
+	 * Interpolator name for BezierInterpolators.
+	 */
+	public final static String BEZIER = "bezier";
+	/**
+	 * Milliseconds between compiled positions, matching the default
+	 * AnimationPlayer step length.
+	 */
+	public final static long STEP_LENGTH = 40L;
+	private final static long SEED = 42L;
+	private final static int MIN_SPACING = 100;
+	private final static int SPACING_RANGE = 400;
+
+	private BenchmarkAnimations() {
+	}
+
+	/**
+	 * Returns a new InterpolatorFactory for the given interpolator name.
+	 *
+	 * @param name one of LINEAR, CSPLINE or BEZIER
+	 * @return InterpolatorFactory for the name
+	 */
+	public static InterpolatorFactory getFactory(String name) {
+		switch (name) {
+			case LINEAR:
+				return new LinearInterpolatorFactory();
+			case CSPLINE:
+				return new CSplineInterpolatorFactory();
+			case BEZIER:
+				return new BezierInterpolatorFactory();
+			default:
+				throw new IllegalArgumentException("Unknown interpolator: " + name);
+		}
+	}
+
+	/**
+	 * Creates an Animation with one MotionPath per Channel.
+	 *
+	 * @param channels number of Channels
+	 * @param points   number of control points in each MotionPath
+	 * @param factory  InterpolatorFactory for the MotionPaths
+	 * @return new Animation
+	 */
+	public static Animation createAnimation(
+			int channels, int points, InterpolatorFactory factory) {
+		Random random = new Random(SEED);
+		Animation anim = new Animation();
+		for (int i = 0; i < channels; i++) {
+			Channel channel = new Channel(i, "channel" + i);
+			channel.addPath(createPath(factory, points, random));
+			anim.addChannel(channel);
+		}
+		return anim;
+	}
+
+	/**
+	 * Creates a MotionPath with randomly spaced control points.
+	 *
+	 * @param factory InterpolatorFactory for the MotionPath
+	 * @param points  number of control points
+	 * @return new MotionPath
+	 */
+	public static MotionPath createPath(InterpolatorFactory factory, int points) {
+		return createPath(factory, points, new Random(SEED));
+	}
+
+	private static MotionPath createPath(
+			InterpolatorFactory factory, int points, Random random) {
+		MotionPath path = new MotionPath(factory);
+		double x = 0;
+		for (int i = 0; i < points; i++) {
+			path.addPoint(x, 0.1 + 0.8 * random.nextDouble());
+			x += MIN_SPACING + random.nextInt(SPACING_RANGE);
+		}
+		return path;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.compiled.CompiledMap;
+import org.mechio.api.animation.compiled.CompiledPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures reading one frame of positions from the CompiledPaths of an
+ * Animation with CompiledPath.estimatePosition, from full precision and
+ * compact paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledPathBenchmark {
+	@Param({"8", "24", "48"})
+	public int channels;
+
+	@Param({"false", "true"})
+	public boolean compact;
+
+	private CompiledPath[] myPaths;
+	private long myStartTime;
+	private long myLength;
+	private long myTime;
+
+	@Setup
+	public void setUp() {
+		Animation anim = BenchmarkAnimations.createAnimation(channels, 100,
+				BenchmarkAnimations.getFactory(BenchmarkAnimations.CSPLINE));
+		CompiledMap map = anim.compileMap(-1, -1, BenchmarkAnimations.STEP_LENGTH);
+		if (compact) {
+			map.compact();
+		}
+		myPaths = map.values().toArray(new CompiledPath[map.size()]);
+		myStartTime = map.getStartTime();
+		myLength = map.getEndTime() - myStartTime;
+	}
+
+	@Benchmark
+	public void estimatePosition(Blackhole bh) {
+		//advance by less than a step so positions are interpolated
+		myTime = (myTime + 7) % myLength;
+		long t = myStartTime + myTime;
+		for (CompiledPath path : myPaths) {
+			bh.consume(path.estimatePosition(t));
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jflux.api.common.rk.utils.Utils;
+import org.mechio.impl.motion.dynamixel.DynamixelMultiReader;
+import org.mechio.impl.motion.dynamixel.DynamixelPacket;
+import org.mechio.impl.motion.dynamixel.enums.Register;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing a feedback read of the position through temperature
+ * registers, as done by DynamixelMultiReader.getFeedback.  parsePackets
+ * measures DynamixelMultiReader.parsePackets alone, and parseResponse also
+ * includes parsing the packets from the received bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamixelParseBenchmark {
+	private final static Register FIRST = Register.CurrentPosition;
+	private final static Register LAST = Register.CurrentTemperature;
+	private final static byte BYTE_COUNT =
+			(byte) (LAST.getByte() - FIRST.getByte() + LAST.getLength());
+	//2 header, 1 id, 1 length, 1 error and 1 checksum byte
+	private final static int PACKET_OVERHEAD = 6;
+
+	@Param({"8", "24"})
+	public int servos;
+
+	private byte[] myResponse;
+	private DynamixelPacket[] myPackets;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		int packetLen = BYTE_COUNT + PACKET_OVERHEAD;
+		myResponse = new byte[servos * packetLen];
+		for (int i = 0; i < servos; i++) {
+			writePacket(myResponse, i * packetLen, i + 1, random);
+		}
+		myPackets = readPackets();
+	}
+
+	private static void writePacket(byte[] data, int offset, int id, Random random) {
+		data[offset] = (byte) 0xff;
+		data[offset + 1] = (byte) 0xff;
+		data[offset + 2] = (byte) id;
+		data[offset + 3] = (byte) (BYTE_COUNT + 2);
+		data[offset + 4] = 0;
+		for (int i = 0; i < BYTE_COUNT; i++) {
+			data[offset + 5 + i] = (byte) random.nextInt(256);
+		}
+		data[offset + 5 + BYTE_COUNT] =
+				Utils.checksum(data, offset + 2, BYTE_COUNT + 3, true);
+	}
+
+	@Benchmark
+	public Object parsePackets() {
+		return DynamixelMultiReader.parsePackets(myPackets, FIRST, LAST, BYTE_COUNT);
+	}
+
+	@Benchmark
+	public Object parseResponse() {
+		return DynamixelMultiReader.parsePackets(readPackets(), FIRST, LAST, BYTE_COUNT);
+	}
+
+	private DynamixelPacket[] readPackets() {
+		DynamixelPacket[] packets = new DynamixelPacket[servos];
+		int packetLen = BYTE_COUNT + PACKET_OVERHEAD;
+		for (int i = 0; i < servos; i++) {
+			packets[i] = DynamixelPacket.parsePacket(myResponse, i * packetLen);
+		}
+		return packets;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.jflux.api.core.Source;
+import org.mechio.api.motion.Joint;
+import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.Robot.RobotPositionHashMap;
+import org.mechio.api.motion.Robot.RobotPositionMap;
+import org.mechio.api.motion.blending.FrameSource;
+import org.mechio.api.motion.blending.NaiveMotionFrameAverager;
+import org.mechio.api.motion.protocol.DefaultMotionFrame;
+import org.mechio.api.motion.protocol.MotionFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures blending one tick of MotionFrames from several FrameSources with
+ * NaiveMotionFrameAverager.combineFrames.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCombinerBenchmark {
+	private final static long FRAME_LENGTH = 40L;
+
+	@Param({"24", "48"})
+	public int joints;
+
+	@Param({"1", "4"})
+	public int sources;
+
+	private NaiveMotionFrameAverager<Robot.JointId, RobotPositionMap> myAverager;
+	private Map<MotionFrame<RobotPositionMap>, FrameSource<RobotPositionMap>> myFrames;
+	private RobotPositionMap myCurrentPositions;
+	private long myTime;
+
+	@Setup
+	public void setUp() {
+		myAverager = new NaiveMotionFrameAverager<>(new Source<RobotPositionMap>() {
+			@Override
+			public RobotPositionMap getValue() {
+				return new RobotPositionHashMap();
+			}
+		});
+		Random random = new Random(42);
+		Robot.Id robotId = new Robot.Id("benchmark");
+		myCurrentPositions = createPositions(robotId, random);
+		myFrames = new HashMap<>();
+		myTime = System.currentTimeMillis();
+		for (int i = 0; i < sources; i++) {
+			MotionFrame<RobotPositionMap> frame = new DefaultMotionFrame<>();
+			frame.setTimestampMillisecUTC(myTime);
+			frame.setFrameLengthMillisec(FRAME_LENGTH);
+			frame.setPreviousPositions(createPositions(robotId, random));
+			frame.setGoalPositions(createPositions(robotId, random));
+			myFrames.put(frame, new IdleFrameSource());
+		}
+	}
+
+	private RobotPositionMap createPositions(Robot.Id robotId, Random random) {
+		RobotPositionMap positions = new RobotPositionHashMap(joints);
+		for (int i = 0; i < joints; i++) {
+			Robot.JointId id = new Robot.JointId(robotId, new Joint.Id(i));
+			positions.put(id, new NormalizedDouble(random.nextDouble()));
+		}
+		return positions;
+	}
+
+	@Benchmark
+	public Object combineFrames() {
+		return myAverager.combineFrames(myTime, FRAME_LENGTH, myCurrentPositions, myFrames);
+	}
+
+	private static class IdleFrameSource implements FrameSource<RobotPositionMap> {
+		@Override
+		public MotionFrame<RobotPositionMap> getMovements(
+				long currentTimeUTC, long moveLengthMilliSec) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.mechio.api.interpolation.EvaluableInterpolator;
+import org.mechio.api.interpolation.Interpolator;
+import org.mechio.api.interpolation.InterpolatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures each Interpolator implementation: interpolating a full set of
+ * control points, re-interpolating after moving one point, and evaluating
+ * the curve directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpolatorBenchmark {
+	@Param({BenchmarkAnimations.LINEAR, BenchmarkAnimations.CSPLINE,
+			BenchmarkAnimations.BEZIER})
+	public String interpolator;
+
+	@Param({"16", "64"})
+	public int points;
+
+	private InterpolatorFactory myFactory;
+	private List<Point2D> myControlPoints;
+	private Interpolator myInterpolator;
+	private double myEndTime;
+	private int myEditIndex;
+	private double myTime;
+
+	@Setup
+	public void setUp() {
+		myFactory = BenchmarkAnimations.getFactory(interpolator);
+		myControlPoints = BenchmarkAnimations.createPath(myFactory, points).getControlPoints();
+		myInterpolator = myFactory.getValue();
+		//copied since movePoint edits the points in place
+		for (Point2D p : myControlPoints) {
+			myInterpolator.addPoint(p.getX(), p.getY());
+		}
+		myInterpolator.getInterpolatedPoints();
+		myEndTime = myControlPoints.get(points - 1).getX();
+	}
+
+	@Benchmark
+	public Object interpolate() {
+		Interpolator interp = myFactory.getValue();
+		interp.addPoints(myControlPoints);
+		return interp.getInterpolatedPoints();
+	}
+
+	@Benchmark
+	public Object movePoint() {
+		myEditIndex = myEditIndex % (points - 2) + 1;
+		Point2D p = myInterpolator.getControlPoints().get(myEditIndex);
+		myInterpolator.setPoint(myEditIndex, p.getX(), 1.0 - p.getY());
+		return myInterpolator.getInterpolatedPoints();
+	}
+
+	@Benchmark
+	public void evaluate(Blackhole bh) {
+		myTime = (myTime + 7.0) % myEndTime;
+		bh.consume(((EvaluableInterpolator) myInterpolator).evaluate(myTime));
+	}
+}
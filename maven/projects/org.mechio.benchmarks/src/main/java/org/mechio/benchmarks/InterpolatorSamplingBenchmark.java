@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.mechio.api.animation.compiled.CompiledPath;
+import org.mechio.api.interpolation.InterpolatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares fixed and adaptive sampling of the CSpline and Bezier
+ * interpolators by interpolating and compiling a new MotionPath.  A
+ * tolerance of 0 uses fixed sampling.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpolatorSamplingBenchmark {
+	@Param({BenchmarkAnimations.CSPLINE, BenchmarkAnimations.BEZIER})
+	public String interpolator;
+
+	@Param({"0", "0.001"})
+	public double tolerance;
+
+	@Param({"16", "64"})
+	public int points;
+
+	private InterpolatorFactory myFactory;
+
+	@Setup
+	public void setUp() {
+		myFactory = BenchmarkAnimations.getFactory(interpolator);
+		myFactory.setTolerance(tolerance);
+	}
+
+	@Benchmark
+	public CompiledPath compile() {
+		return BenchmarkAnimations.createPath(myFactory, points)
+				.getCompiledPath(BenchmarkAnimations.STEP_LENGTH);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.integration.animation_motion;
+
+import java.util.concurrent.TimeUnit;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.blending.IndexedFrame;
+import org.mechio.api.motion.blending.JointIndex;
+import org.mechio.benchmarks.BenchmarkAnimations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures AnimationJobFrameSource.getMovements for one Blender tick, from a
+ * CompiledMap and with direct evaluation.  getIndexedMovements measures the
+ * path used by the IndexedBlender, writing into a reused IndexedFrame.
+ * <p>
+ * This is in the animation_motion package to use the AnimationJobFrameSource
+ * constructor without an OSGi AnimationPlayer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnimationJobBenchmark {
+	private final static long TICK_LENGTH = 40L;
+
+	@Param({"8", "24", "48"})
+	public int channels;
+
+	@Param({"false", "true"})
+	public boolean evaluate;
+
+	private AnimationJobFrameSource myJob;
+	private JointIndex<Robot.JointId> myJointIndex;
+	private IndexedFrame myFrame;
+	private long myStartTime;
+	private long myLength;
+	private long myTime;
+
+	@Setup
+	public void setUp() {
+		Animation anim = BenchmarkAnimations.createAnimation(channels, 100,
+				BenchmarkAnimations.getFactory(BenchmarkAnimations.CSPLINE));
+		myJob = new AnimationJobFrameSource(null, new Robot.Id("benchmark"),
+				anim, BenchmarkAnimations.STEP_LENGTH, null, null, null, evaluate);
+		myJointIndex = new JointIndex<>();
+		myFrame = new IndexedFrame(channels);
+		myLength = myJob.getAnimationLength() - TICK_LENGTH;
+		myStartTime = System.currentTimeMillis();
+		myJob.start(myStartTime);
+	}
+
+	@Benchmark
+	public Object getMovements() {
+		//stay within the Animation so the job never completes
+		myTime = (myTime + TICK_LENGTH) % myLength;
+		return myJob.getMovements(myStartTime + myTime, TICK_LENGTH);
+	}
+
+	@Benchmark
+	public boolean getIndexedMovements() {
+		myTime = (myTime + TICK_LENGTH) % myLength;
+		myFrame.clear();
+		return myJob.getMovements(
+				myStartTime + myTime, TICK_LENGTH, myJointIndex, myFrame);
+	}
+}
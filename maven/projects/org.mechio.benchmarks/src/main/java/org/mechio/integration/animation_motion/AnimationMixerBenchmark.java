@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.integration.animation_motion;
+
+import java.util.concurrent.TimeUnit;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.blending.IndexedFrame;
+import org.mechio.api.motion.blending.JointIndex;
+import org.mechio.benchmarks.BenchmarkAnimations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one AnimationMixer tick with an Animation playing on each of
+ * several alternating override and additive layers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnimationMixerBenchmark {
+	private final static long TICK_LENGTH = 40L;
+
+	@Param({"24"})
+	public int channels;
+
+	@Param({"1", "4", "8"})
+	public int jobs;
+
+	private AnimationMixer myMixer;
+	private JointIndex<Robot.JointId> myJointIndex;
+	private IndexedFrame myFrame;
+	private long myStartTime;
+	private long myLength;
+	private long myTime;
+
+	@Setup
+	public void setUp() {
+		Animation anim = BenchmarkAnimations.createAnimation(channels, 100,
+				BenchmarkAnimations.getFactory(BenchmarkAnimations.CSPLINE));
+		myMixer = new AnimationMixer(new Robot.Id("benchmark"));
+		myMixer.setStepLength(BenchmarkAnimations.STEP_LENGTH);
+		myStartTime = System.currentTimeMillis();
+		for (int i = 0; i < jobs; i++) {
+			String layer = "layer" + i;
+			myMixer.addLayer(layer, i % 2 == 0 ?
+					MixerLayer.BlendMode.OVERRIDE : MixerLayer.BlendMode.ADDITIVE);
+			myMixer.playAnimation(layer, anim, myStartTime, 0);
+		}
+		myJointIndex = new JointIndex<>();
+		myFrame = new IndexedFrame(channels);
+		myLength = anim.getLength() - TICK_LENGTH;
+	}
+
+	@Benchmark
+	public boolean getMovements() {
+		//stay within the Animation so the jobs never complete
+		myTime = (myTime + TICK_LENGTH) % myLength;
+		myFrame.clear();
+		return myMixer.getMovements(
+				myStartTime + myTime, TICK_LENGTH, myJointIndex, myFrame);
+	}
+}
@@ -10,7 +10,7 @@ import org.mechio.impl.animation.cleanup.AnimationStopper;
 import org.mechio.impl.animation.cleanup.AnimationStopperLifecycle;
 import org.mechio.impl.animation.cleanup.OSGIAnimationCleanupHost;
 import org.mechio.impl.animation.cleanup.TemporaryMessageReceiverLifecycle;
-import org.mechio.impl.animation.xml.AnimationXMLReader;
+import org.mechio.impl.animation.xml.StaxAnimationXMLReader;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
@@ -112,7 +112,7 @@ public class Activator implements BundleActivator {
 	}
 
 	static Animation loadAnimation(final URL filepath) throws Exception {
-		return new AnimationXMLReader().readAnimation(filepath);
+		return new StaxAnimationXMLReader().readAnimation(filepath);
 	}
 
 	@Override
@@ -33,7 +33,7 @@ import org.mechio.api.vision.config.CameraServiceConfig;
 import org.mechio.api.vision.config.FaceDetectServiceConfig;
 import org.mechio.api.vision.messaging.RemoteImageRegionServiceClient;
 import org.mechio.api.vision.messaging.RemoteImageServiceClient;
-import org.mechio.impl.animation.xml.AnimationXMLReader;
+import org.mechio.impl.animation.xml.StaxAnimationXMLReader;
 import org.mechio.impl.animation.xml.XPP3AnimationXMLWriter;
 import org.mechio.impl.sensor.HeaderRecord;
 import org.slf4j.Logger;
@@ -363,7 +363,7 @@ public final class MechIO {
 	 */
 	public static Animation loadAnimation(String filepath) {
 		try {
-			return new AnimationXMLReader().readAnimation(filepath);
+			return new StaxAnimationXMLReader().readAnimation(filepath);
 		} catch (Exception ex) {
 			theLogger.warn("Unable to load animation.", ex);
 			return null;
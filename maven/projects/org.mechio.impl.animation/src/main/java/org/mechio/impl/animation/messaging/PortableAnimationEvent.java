@@ -47,16 +47,22 @@ public class PortableAnimationEvent implements AnimationEvent{
         buildRecord(event.getSourceId(), 
                     event.getDestinationId(), 
                     event.getCurrentTimeMillisec(), 
-                    event.getAnimation());
+                    event.getAnimation(),
+                    event.getPlaybackRate());
     }
     
     public PortableAnimationEvent(String sourceId, String destinationId, 
             long currentTime, Animation anim){
-        buildRecord(sourceId, destinationId, currentTime, anim);
+        buildRecord(sourceId, destinationId, currentTime, anim, null);
+    }
+    
+    public PortableAnimationEvent(String sourceId, String destinationId, 
+            long currentTime, Animation anim, Double playbackRate){
+        buildRecord(sourceId, destinationId, currentTime, anim, playbackRate);
     }
     
     private void buildRecord(String sourceId, String destinationId, 
-            long currentTime, Animation anim){
+            long currentTime, Animation anim, Double playbackRate){
         if(sourceId == null || destinationId == null || anim == null){
             throw new NullPointerException();
         }
@@ -66,6 +72,7 @@ public class PortableAnimationEvent implements AnimationEvent{
         eventRec.setCurrentTimeMillisec(currentTime);
         AnimationRecord animRec = AnimationMessagingUtils.packAnimation(anim);
         eventRec.setAnimation(animRec);
+        eventRec.setPlaybackRate(playbackRate);
         myAnimationEventRecord = eventRec;
         myCachedAnimation = anim;
     }
@@ -94,6 +101,11 @@ public class PortableAnimationEvent implements AnimationEvent{
         }
         return myCachedAnimation;
     }
+
+    @Override
+    public Double getPlaybackRate() {
+        return myAnimationEventRecord.getPlaybackRate();
+    }
     
     public AnimationEventRecord getRecord(){
         return myAnimationEventRecord;
@@ -109,6 +121,17 @@ public class PortableAnimationEvent implements AnimationEvent{
             return new PortableAnimationEvent(
                     clientId, hostId, TimeUtils.now(), animation);
         }
+
+        @Override
+        public AnimationEvent createPlaybackRateEvent(
+                String clientId, String hostId, Animation animation,
+                double rate) {
+            if(clientId == null || hostId == null || animation == null){
+                throw new NullPointerException();
+            }
+            return new PortableAnimationEvent(
+                    clientId, hostId, TimeUtils.now(), animation, rate);
+        }
     }
     
     public static class MessageRecordAdapter 
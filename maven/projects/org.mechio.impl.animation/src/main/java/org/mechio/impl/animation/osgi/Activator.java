@@ -33,7 +33,7 @@ import org.mechio.impl.animation.messaging.PlayRequestRecord;
 import org.mechio.impl.animation.messaging.PortableAnimationEvent;
 import org.mechio.impl.animation.messaging.PortableAnimationSignal;
 import org.mechio.impl.animation.messaging.PortablePlayRequest;
-import org.mechio.impl.animation.xml.AnimationXMLReader;
+import org.mechio.impl.animation.xml.StaxAnimationXMLReader;
 import org.mechio.impl.animation.xml.XPP3AnimationXMLWriter;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -50,7 +50,7 @@ public class Activator implements BundleActivator {
 	public void start(final BundleContext context) throws Exception {
 		theLogger.info("AnimationImpl Activation Begin.");
 		new OSGiComponent(context, new SimpleLifecycle(
-				new AnimationXMLReader(), AnimationFileReader.class)).start();
+				new StaxAnimationXMLReader(), AnimationFileReader.class)).start();
 
 		new OSGiComponent(context, new SimpleLifecycle(
 				new XPP3AnimationXMLWriter(), AnimationFileWriter.class)).start();
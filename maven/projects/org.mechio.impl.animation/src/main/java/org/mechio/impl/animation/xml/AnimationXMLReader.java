@@ -281,6 +281,12 @@ public class AnimationXMLReader implements AnimationFileReader {
 		final VersionProperty configFormat =
 				vers.get(Constants.CONFIG_FORMAT_VERSION);
 		final String path = config.getString(ADDON_FILE);
+		return loadAddOn(serviceVers, configFormat, path, drivers);
+	}
+
+	static ServiceAddOn<Playable> loadAddOn(final VersionProperty serviceVers,
+			final VersionProperty configFormat, final String path,
+			final List<ServiceAddOnDriver<Playable>> drivers) {
 		if (serviceVers == null || configFormat == null || path == null) {
 			return null;
 		}
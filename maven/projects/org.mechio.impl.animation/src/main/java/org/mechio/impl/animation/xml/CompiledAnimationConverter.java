@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.impl.animation.xml;
+
+import org.mechio.api.animation.library.AnimationLibraryLoader;
+
+/**
+ * Command line converter which writes a precompiled Animation alongside each
+ * Animation XML file in a folder.
+ * <p>
+ * Usage: CompiledAnimationConverter &lt;folder&gt; [stepLength] [-r]
+ */
+public class CompiledAnimationConverter {
+	/**
+	 * Step length used by the DefaultAnimationPlayer.
+	 */
+	public final static long DEFAULT_STEP_LENGTH = 40L;
+
+	public static void main(String[] args) {
+		String folder = null;
+		long stepLength = DEFAULT_STEP_LENGTH;
+		boolean recursive = false;
+		for (String arg : args) {
+			if ("-r".equals(arg)) {
+				recursive = true;
+			} else if (folder == null) {
+				folder = arg;
+			} else {
+				try {
+					stepLength = Long.parseLong(arg);
+				} catch (NumberFormatException ex) {
+					usage();
+					return;
+				}
+			}
+		}
+		if (folder == null || stepLength <= 0) {
+			usage();
+			return;
+		}
+		int count = convertFolder(folder, stepLength, recursive);
+		System.out.println("Wrote " + count + " compiled animations.");
+	}
+
+	/**
+	 * Writes a precompiled Animation alongside each Animation XML file in the
+	 * folder.
+	 *
+	 * @param folder     folder containing Animation XML files
+	 * @param stepLength milliseconds between compiled positions
+	 * @param recursive  if true, sub-folders are also converted
+	 * @return number of precompiled Animations written
+	 */
+	public static int convertFolder(
+			String folder, long stepLength, boolean recursive) {
+		return AnimationLibraryLoader.writeCompiledAnimations(
+				new StaxAnimationXMLReader(), folder, recursive, stepLength);
+	}
+
+	private static void usage() {
+		System.out.println("Usage: CompiledAnimationConverter "
+				+ "<folder> [stepLength] [-r]");
+	}
+}
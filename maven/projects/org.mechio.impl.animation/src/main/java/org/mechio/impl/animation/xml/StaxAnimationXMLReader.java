@@ -0,0 +1,464 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.impl.animation.xml;
+
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.jflux.api.common.rk.playable.Playable;
+import org.jflux.api.common.rk.services.Constants;
+import org.jflux.api.common.rk.services.addon.AddOnUtils;
+import org.jflux.api.common.rk.services.addon.ServiceAddOn;
+import org.jflux.api.common.rk.services.addon.ServiceAddOnDriver;
+import org.jflux.impl.services.rk.osgi.OSGiUtils;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.animation.editor.features.SyncPointGroupConfig.SyncGroupConfig;
+import org.mechio.api.animation.editor.features.SyncPointGroupConfig.SyncPointConfig;
+import org.mechio.api.animation.xml.AnimationFileReader;
+import org.mechio.api.interpolation.InterpolatorDirectory;
+import org.mechio.api.interpolation.InterpolatorFactory;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mechio.api.animation.xml.AnimationXML.ADDON;
+import static org.mechio.api.animation.xml.AnimationXML.ADDONS;
+import static org.mechio.api.animation.xml.AnimationXML.ADDON_FILE;
+import static org.mechio.api.animation.xml.AnimationXML.ANIMATION_VERSION_TYPE;
+import static org.mechio.api.animation.xml.AnimationXML.CHANNEL;
+import static org.mechio.api.animation.xml.AnimationXML.CHANNELS;
+import static org.mechio.api.animation.xml.AnimationXML.CHANNEL_ID;
+import static org.mechio.api.animation.xml.AnimationXML.CHANNEL_NAME;
+import static org.mechio.api.animation.xml.AnimationXML.CONTROL_POINT;
+import static org.mechio.api.animation.xml.AnimationXML.CONTROL_POINTS;
+import static org.mechio.api.animation.xml.AnimationXML.INTERPOLATION_VERSION_TYPE;
+import static org.mechio.api.animation.xml.AnimationXML.MOTION_PATH;
+import static org.mechio.api.animation.xml.AnimationXML.MOTION_PATHS;
+import static org.mechio.api.animation.xml.AnimationXML.MOTION_PATH_NAME;
+import static org.mechio.api.animation.xml.AnimationXML.POSITION;
+import static org.mechio.api.animation.xml.AnimationXML.SYNC_POINT;
+import static org.mechio.api.animation.xml.AnimationXML.SYNC_POINT_CHANNEL_ID;
+import static org.mechio.api.animation.xml.AnimationXML.SYNC_POINT_CONTROL_POINT_ID;
+import static org.mechio.api.animation.xml.AnimationXML.SYNC_POINT_GROUP;
+import static org.mechio.api.animation.xml.AnimationXML.SYNC_POINT_GROUPS;
+import static org.mechio.api.animation.xml.AnimationXML.SYNC_POINT_MOTION_PATH_ID;
+import static org.mechio.api.animation.xml.AnimationXML.TIME;
+
+/**
+ * Reads Animation XML files in a single streaming pass with StAX.
+ * <p>
+ * Animations, Channels and MotionPaths are built directly as elements are
+ * read, without building a configuration tree first.  The result is the
+ * same as the AnimationXMLReader.  ChannelsParameters are skipped, as they
+ * are by the AnimationXMLReader.
+ */
+public class StaxAnimationXMLReader implements AnimationFileReader {
+	private static final Logger theLogger = LoggerFactory.getLogger(StaxAnimationXMLReader.class);
+	private final static String VERSION = "Version";
+	private final static String VERSION_TYPE = "type";
+	private final static String VERSION_NAME = "Name";
+	private final static String VERSION_NUMBER = "Number";
+	private static XMLInputFactory theInputFactory;
+
+	private synchronized static XMLInputFactory getInputFactory() {
+		if (theInputFactory == null) {
+			theInputFactory = XMLInputFactory.newInstance();
+			theInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			theInputFactory.setProperty(
+					XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		}
+		return theInputFactory;
+	}
+
+	@Override
+	public Animation readAnimation(final String path) throws Exception {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(path))) {
+			return readAnimation(in);
+		} catch (final IOException | XMLStreamException ex) {
+			theLogger.warn("Cannot open XML animation file at: {}", path);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Adding support for URLs so we can load animations from bundles.
+	 */
+	public Animation readAnimation(final URL url) throws Exception {
+		try (InputStream in = new BufferedInputStream(url.openStream())) {
+			return readAnimation(in);
+		} catch (final IOException | XMLStreamException ex) {
+			theLogger.warn("Cannot open XML animation file at: {}", url);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Reads an Animation from a stream.  The stream is not closed.
+	 *
+	 * @param in stream to read
+	 * @return Animation read from the stream
+	 * @throws XMLStreamException if the XML cannot be parsed
+	 */
+	public Animation readAnimation(final InputStream in) throws XMLStreamException {
+		final XMLStreamReader reader = getInputFactory().createXMLStreamReader(in);
+		try {
+			if (nextElement(reader) != XMLStreamConstants.START_ELEMENT) {
+				throw new XMLStreamException("Missing Animation element.");
+			}
+			return readAnimation(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads an Animation.  The reader must be positioned on the Animation
+	 * start tag and is left on its end tag.
+	 *
+	 * @param reader reader positioned on the Animation element
+	 * @return Animation read
+	 * @throws XMLStreamException if the XML cannot be parsed
+	 */
+	public static Animation readAnimation(final XMLStreamReader reader)
+			throws XMLStreamException {
+		VersionProperty version = null;
+		List<Channel> channels = null;
+		List<SyncGroupConfig> groups = null;
+		boolean hasGroups = false;
+		List<AddOnEntry> addons = null;
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			final String name = reader.getLocalName();
+			if (VERSION.equals(name) && version == null
+					&& ANIMATION_VERSION_TYPE.equals(getAttribute(reader, VERSION_TYPE))) {
+				version = readVersion(reader);
+			} else if (CHANNELS.equals(name)) {
+				channels = readChannels(reader);
+			} else if (SYNC_POINT_GROUPS.equals(name)) {
+				groups = readSyncPointGroupConfigs(reader);
+				hasGroups = true;
+			} else if (ADDONS.equals(name)) {
+				addons = readAddOnEntries(reader);
+			} else {
+				skipElement(reader);
+			}
+		}
+		final Animation anim = new Animation(version);
+		if (channels != null && !channels.isEmpty()) {
+			anim.addChannels(channels);
+		}
+		if (hasGroups) {
+			anim.setSyncGroupConfigs(groups);
+		}
+		if (addons != null) {
+			for (final ServiceAddOn<Playable> addon : loadAddOns(addons)) {
+				anim.addAddOn(addon);
+			}
+		}
+		return anim;
+	}
+
+	private static List<Channel> readChannels(final XMLStreamReader reader)
+			throws XMLStreamException {
+		final List<Channel> channels = new ArrayList();
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (!CHANNEL.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+			final Channel channel = readChannel(reader);
+			if (channel != null) {
+				channels.add(channel);
+			}
+		}
+		return channels;
+	}
+
+	private static Channel readChannel(final XMLStreamReader reader)
+			throws XMLStreamException {
+		final String idStr = getAttribute(reader, CHANNEL_ID);
+		Integer id = idStr == null ? null : Integer.valueOf(idStr.trim());
+		if (id == null) {
+			theLogger.warn("Unable to find {} attribute for Channel, using -1.", CHANNEL_ID);
+			id = -1;
+		}
+		final String name = getAttribute(reader, CHANNEL_NAME);
+		final Channel channel = new Channel(id, name);
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (!MOTION_PATHS.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+			final List<MotionPath> paths = readMotionPaths(reader);
+			if (!paths.isEmpty()) {
+				channel.addPaths(paths);
+			}
+		}
+		return channel;
+	}
+
+	private static List<MotionPath> readMotionPaths(final XMLStreamReader reader)
+			throws XMLStreamException {
+		final List<MotionPath> paths = new ArrayList();
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (!MOTION_PATH.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+			paths.add(readMotionPath(reader));
+		}
+		return paths;
+	}
+
+	private static MotionPath readMotionPath(final XMLStreamReader reader)
+			throws XMLStreamException {
+		final String name = getAttribute(reader, MOTION_PATH_NAME);
+		VersionProperty version = null;
+		List<Point2D> points = null;
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			final String elem = reader.getLocalName();
+			if (VERSION.equals(elem) && version == null
+					&& INTERPOLATION_VERSION_TYPE.equals(getAttribute(reader, VERSION_TYPE))) {
+				version = readVersion(reader);
+			} else if (CONTROL_POINTS.equals(elem)) {
+				points = readControlPoints(reader);
+			} else {
+				skipElement(reader);
+			}
+		}
+		final InterpolatorFactory factory =
+				InterpolatorDirectory.instance().getFactory(version);
+		final MotionPath path = new MotionPath(factory);
+		path.setName(name);
+		if (points != null && !points.isEmpty()) {
+			path.addPoints(points);
+		}
+		return path;
+	}
+
+	private static List<Point2D> readControlPoints(final XMLStreamReader reader)
+			throws XMLStreamException {
+		final List<Point2D> points = new ArrayList();
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (!CONTROL_POINT.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+			double x = -1;
+			double y = -1;
+			while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+				final String elem = reader.getLocalName();
+				if (TIME.equals(elem)) {
+					x = Double.parseDouble(reader.getElementText().trim());
+				} else if (POSITION.equals(elem)) {
+					y = Double.parseDouble(reader.getElementText().trim());
+				} else {
+					skipElement(reader);
+				}
+			}
+			if (x < 0.0 || y < 0.0 || y > 1.0) {
+				continue;
+			}
+			points.add(new Point2D.Double(x, y));
+		}
+		return points;
+	}
+
+	private static List<SyncGroupConfig> readSyncPointGroupConfigs(
+			final XMLStreamReader reader) throws XMLStreamException {
+		List<SyncGroupConfig> groups = null;
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (!SYNC_POINT_GROUP.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+			if (groups == null) {
+				groups = new ArrayList();
+			}
+			final SyncGroupConfig group = readSyncPointGroup(reader);
+			if (group != null) {
+				groups.add(group);
+			}
+		}
+		return groups;
+	}
+
+	private static SyncGroupConfig readSyncPointGroup(final XMLStreamReader reader)
+			throws XMLStreamException {
+		final List<SyncPointConfig> points = new ArrayList();
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (!SYNC_POINT.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+			int chanId = -1;
+			int pathId = -1;
+			int pointId = -1;
+			while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+				final String elem = reader.getLocalName();
+				if (SYNC_POINT_CHANNEL_ID.equals(elem)) {
+					chanId = Integer.parseInt(reader.getElementText().trim());
+				} else if (SYNC_POINT_MOTION_PATH_ID.equals(elem)) {
+					pathId = Integer.parseInt(reader.getElementText().trim());
+				} else if (SYNC_POINT_CONTROL_POINT_ID.equals(elem)) {
+					pointId = Integer.parseInt(reader.getElementText().trim());
+				} else {
+					skipElement(reader);
+				}
+			}
+			if (chanId < 0 || pathId < 0 || pointId < 0) {
+				continue;
+			}
+			points.add(new SyncPointConfig(chanId, pathId, pointId));
+		}
+		if (points.isEmpty()) {
+			return null;
+		}
+		return new SyncGroupConfig(points);
+	}
+
+	private static List<AddOnEntry> readAddOnEntries(final XMLStreamReader reader)
+			throws XMLStreamException {
+		final List<AddOnEntry> entries = new ArrayList();
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (!ADDON.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+			final AddOnEntry entry = new AddOnEntry();
+			while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+				final String elem = reader.getLocalName();
+				final String type = getAttribute(reader, VERSION_TYPE);
+				if (VERSION.equals(elem) && entry.myServiceVersion == null
+						&& Constants.SERVICE_VERSION.equals(type)) {
+					entry.myServiceVersion = readVersion(reader);
+				} else if (VERSION.equals(elem) && entry.myConfigFormat == null
+						&& Constants.CONFIG_FORMAT_VERSION.equals(type)) {
+					entry.myConfigFormat = readVersion(reader);
+				} else if (ADDON_FILE.equals(elem)) {
+					entry.myPath = reader.getElementText().trim();
+				} else {
+					skipElement(reader);
+				}
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	private static List<ServiceAddOn<Playable>> loadAddOns(
+			final List<AddOnEntry> entries) {
+		if (entries.isEmpty()) {
+			return Collections.EMPTY_LIST;
+		}
+		final BundleContext context = OSGiUtils.getBundleContext(ServiceAddOnDriver.class);
+		if (context == null) {
+			return Collections.EMPTY_LIST;
+		}
+		final ServiceReference[] refs = AddOnUtils.getAddOnDriverReferences(context);
+		final List<ServiceAddOnDriver<Playable>> drivers =
+				AnimationXMLReader.getAddOnDrivers(context, refs);
+		final List<ServiceAddOn<Playable>> addons = new ArrayList(entries.size());
+		for (final AddOnEntry entry : entries) {
+			final ServiceAddOn<Playable> addon = AnimationXMLReader.loadAddOn(
+					entry.myServiceVersion, entry.myConfigFormat, entry.myPath, drivers);
+			if (addon != null) {
+				addons.add(addon);
+			}
+		}
+		return addons;
+	}
+
+	private static VersionProperty readVersion(final XMLStreamReader reader)
+			throws XMLStreamException {
+		String name = null;
+		String number = null;
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			final String elem = reader.getLocalName();
+			if (VERSION_NAME.equals(elem)) {
+				name = reader.getElementText();
+			} else if (VERSION_NUMBER.equals(elem)) {
+				number = reader.getElementText();
+			} else {
+				skipElement(reader);
+			}
+		}
+		if (name == null || number == null) {
+			return null;
+		}
+		return new VersionProperty(name, number);
+	}
+
+	private static String getAttribute(
+			final XMLStreamReader reader, final String name) {
+		return reader.getAttributeValue(null, name);
+	}
+
+	/**
+	 * Advances to the next start or end tag, skipping text and comments.
+	 */
+	private static int nextElement(final XMLStreamReader reader)
+			throws XMLStreamException {
+		while (reader.hasNext()) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT
+					|| event == XMLStreamConstants.END_ELEMENT) {
+				return event;
+			}
+		}
+		return XMLStreamConstants.END_DOCUMENT;
+	}
+
+	/**
+	 * Skips the current element and its children, leaving the reader on its
+	 * end tag.
+	 */
+	private static void skipElement(final XMLStreamReader reader)
+			throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			final int event = nextElement(reader);
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else {
+				throw new XMLStreamException("Unexpected end of document.");
+			}
+		}
+	}
+
+	private static class AddOnEntry {
+		private VersionProperty myServiceVersion;
+		private VersionProperty myConfigFormat;
+		private String myPath;
+	}
+}
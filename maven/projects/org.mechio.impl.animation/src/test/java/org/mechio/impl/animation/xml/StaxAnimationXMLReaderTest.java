@@ -0,0 +1,153 @@
+/*
+ *   Copyright 2014 by the MechIO Project. (www.mechio.org).
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.mechio.impl.animation.xml;
+
+import org.junit.Test;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.animation.editor.features.SyncPointGroupConfig.SyncGroupConfig;
+import org.mechio.api.animation.editor.features.SyncPointGroupConfig.SyncPointConfig;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link StaxAnimationXMLReader}
+ */
+public class StaxAnimationXMLReaderTest {
+	private final static String ANIMATION_XML =
+			"<?xml version=\"1.0\"?>\n"
+			+ "<Animation>\n"
+			+ "  <Version type=\"Animation\"><Name>wave</Name><Number>1.2</Number></Version>\n"
+			+ "  <Channels>\n"
+			+ "    <Channel id=\"200\" name=\"Head_Yaw\">\n"
+			+ "      <MotionPaths>\n"
+			+ "        <MotionPath name=\"first\">\n"
+			+ "          <Version type=\"Interpolation\"><Name>Linear Interpolation</Name><Number>1.0</Number></Version>\n"
+			+ "          <ControlPoints>\n"
+			+ "            <ControlPoint><Time>41.6667</Time><Position>0.5</Position></ControlPoint>\n"
+			+ "            <ControlPoint><Time>541.667</Time><Position>0.25</Position></ControlPoint>\n"
+			+ "            <ControlPoint><Time>900.0</Time><Position>1.5</Position></ControlPoint>\n"
+			+ "            <ControlPoint><Time>1416.67</Time><Position>0.75</Position></ControlPoint>\n"
+			+ "          </ControlPoints>\n"
+			+ "        </MotionPath>\n"
+			+ "        <MotionPath>\n"
+			+ "          <ControlPoints>\n"
+			+ "            <ControlPoint><Time>2000.0</Time><Position>0.1</Position></ControlPoint>\n"
+			+ "            <ControlPoint><Time>3000.0</Time><Position>0.9</Position></ControlPoint>\n"
+			+ "          </ControlPoints>\n"
+			+ "        </MotionPath>\n"
+			+ "      </MotionPaths>\n"
+			+ "    </Channel>\n"
+			+ "    <Channel id=\"202\">\n"
+			+ "      <MotionPaths />\n"
+			+ "    </Channel>\n"
+			+ "  </Channels>\n"
+			+ "  <AddOns />\n"
+			+ "  <ChannelsParameters>\n"
+			+ "    <ChannelsParameter><ChannelId>200</ChannelId><ChannelName>Head_Yaw</ChannelName></ChannelsParameter>\n"
+			+ "  </ChannelsParameters>\n"
+			+ "  <SyncPointGroups>\n"
+			+ "    <SyncPointGroup>\n"
+			+ "      <SyncPoint><ChannelId>200</ChannelId><MotionPathId>0</MotionPathId><ControlPointId>1</ControlPointId></SyncPoint>\n"
+			+ "      <SyncPoint><ChannelId>200</ChannelId><MotionPathId>1</MotionPathId><ControlPointId>0</ControlPointId></SyncPoint>\n"
+			+ "    </SyncPointGroup>\n"
+			+ "  </SyncPointGroups>\n"
+			+ "</Animation>\n";
+
+	private static File writeTempFile(String xml) throws Exception {
+		final File file = File.createTempFile("anim", ".xml");
+		file.deleteOnExit();
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+			w.write(xml);
+		}
+		return file;
+	}
+
+	@Test
+	public void readAnimationShouldMatchAnimationXMLReader() throws Exception {
+		final File file = writeTempFile(ANIMATION_XML);
+		final Animation expected = AnimationXMLReader.loadAnimation(file.getAbsolutePath());
+		final Animation actual = new StaxAnimationXMLReader().readAnimation(file.getAbsolutePath());
+
+		assertEquals(expected.getVersion(), actual.getVersion());
+		assertEquals(expected.getChannels().size(), actual.getChannels().size());
+		for (int i = 0; i < expected.getChannels().size(); i++) {
+			final Channel e = expected.getChannels().get(i);
+			final Channel a = actual.getChannels().get(i);
+			assertEquals(e.getId(), a.getId());
+			assertEquals(e.getName(), a.getName());
+			assertEquals(e.getMotionPaths().size(), a.getMotionPaths().size());
+			for (int j = 0; j < e.getMotionPaths().size(); j++) {
+				final MotionPath ep = e.getMotionPaths().get(j);
+				final MotionPath ap = a.getMotionPaths().get(j);
+				assertEquals(ep.getName(), ap.getName());
+				assertEquals(ep.getInterpolatorVersion(), ap.getInterpolatorVersion());
+				assertEquals(ep.getControlPoints(), ap.getControlPoints());
+			}
+		}
+		assertEquals(expected, actual);
+		assertSyncGroupsEqual(expected.getSyncGroupConfigs(), actual.getSyncGroupConfigs());
+	}
+
+	@Test
+	public void readAnimationShouldSkipInvalidControlPoints() throws Exception {
+		final File file = writeTempFile(ANIMATION_XML);
+		final Animation anim = new StaxAnimationXMLReader().readAnimation(file.getAbsolutePath());
+		final MotionPath path = anim.getChannelByLogicalId(200).getMotionPaths().get(0);
+		assertEquals(3, path.getControlPoints().size());
+		assertEquals("path", anim.getChannelByLogicalId(200).getMotionPaths().get(1).getName());
+		assertEquals(0, anim.getChannelByLogicalId(202).getMotionPaths().size());
+	}
+
+	@Test
+	public void readAnimationShouldHandleEmptySyncGroups() throws Exception {
+		final File file = writeTempFile(
+				"<Animation><Version type=\"Animation\"><Name>a</Name><Number>1.0</Number></Version>"
+				+ "<Channels /><SyncPointGroups /></Animation>");
+		final Animation anim = new StaxAnimationXMLReader().readAnimation(file.getAbsolutePath());
+		assertEquals("a", anim.getVersion().getName());
+		assertEquals(0, anim.getChannels().size());
+		assertNull(anim.getSyncGroupConfigs());
+	}
+
+	private static void assertSyncGroupsEqual(
+			List<SyncGroupConfig> expected, List<SyncGroupConfig> actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final List<SyncPointConfig> e = expected.get(i).points;
+			final List<SyncPointConfig> a = actual.get(i).points;
+			assertEquals(e.size(), a.size());
+			for (int j = 0; j < e.size(); j++) {
+				assertEquals(e.get(j).channelId, a.get(j).channelId);
+				assertEquals(e.get(j).motionPathId, a.get(j).motionPathId);
+				assertEquals(e.get(j).controlPointId, a.get(j).controlPointId);
+			}
+		}
+	}
+}
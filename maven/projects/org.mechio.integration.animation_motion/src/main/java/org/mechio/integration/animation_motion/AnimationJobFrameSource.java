@@ -23,23 +23,34 @@ import org.jflux.api.common.rk.position.NormalizedDouble;
 import org.jflux.api.common.rk.services.addon.ServiceAddOn;
 import org.mechio.api.animation.Animation;
 import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.animation.compiled.CompiledAnimationCache;
 import org.mechio.api.animation.compiled.CompiledMap;
 import org.mechio.api.animation.compiled.CompiledPath;
+import org.mechio.api.animation.compiled.ParallelMapCompiler;
 import org.mechio.api.animation.player.AnimationJob;
 import org.mechio.api.animation.player.AnimationJobListener;
 import org.mechio.api.animation.player.AnimationPlayer;
+import org.mechio.api.animation.player.PlaybackClock;
+import org.mechio.api.animation.player.RateControllable;
+import org.mechio.api.animation.player.TimeWarp;
 import org.mechio.api.animation.protocol.AnimationSignal;
 import org.mechio.api.animation.protocol.AnimationSignal.AnimationSignalFactory;
 import org.mechio.api.motion.Joint;
 import org.mechio.api.motion.Robot;
 import org.mechio.api.motion.Robot.RobotPositionMap;
-import org.mechio.api.motion.blending.FrameSource;
+import org.mechio.api.motion.blending.IndexedFrame;
+import org.mechio.api.motion.blending.IndexedFrameSource;
+import org.mechio.api.motion.blending.IndexedPositions;
+import org.mechio.api.motion.blending.JointIndex;
 import org.mechio.api.motion.protocol.DefaultMotionFrame;
 import org.mechio.api.motion.protocol.MotionFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -47,15 +58,43 @@ import java.util.Map.Entry;
 /**
  * An implementation of an AnimationJob which expects to be queried for new
  * positions as a FrameSource.
+ * <p>
+ * Positions are normally read from a CompiledMap.  In direct evaluation
+ * mode nothing is compiled, and each position is evaluated from the
+ * Animation's MotionPaths at the requested time.  This avoids the compile
+ * latency and memory of long Animations, and works at any tick rate.
+ * <p>
+ * The JointIds, CompiledPaths and Channels being played are resolved once
+ * when the job is created.  Each tick evaluates every joint once for the
+ * previous and goal positions, and when ticks are contiguous the last goal
+ * positions are reused as the previous positions.  The IndexedBlender writes
+ * positions straight into its reusable IndexedFrames through
+ * IndexedFrameSource, so playback does not allocate per joint.  Each call to
+ * getMovements(long, long) returns a new MotionFrame, which the caller may
+ * keep or modify.
+ * <p>
+ * The playback rate and TimeWarp remap the time used to read positions, so
+ * they can be changed while playing without recompiling.
  *
  * @author Matthew Stevenson <www.mechio.org>
  */
 public class AnimationJobFrameSource extends AbstractPlayable implements
-		AnimationJob, FrameSource<RobotPositionMap> {
+		AnimationJob, RateControllable, IndexedFrameSource<Robot.JointId, RobotPositionMap> {
 	private static final Logger theLogger = LoggerFactory.getLogger(AnimationJobFrameSource.class);
-	private RobotPositionMap myPreviousPositions;
 	private Animation myAnimation;
 	private CompiledMap myAnimationMap;
+	private Robot.JointId[] myJointIds;
+	private CompiledPath[] myPaths;
+	private Channel[] myChannels;
+	private double[] myPreviousBuffer;
+	private double[] myGoalCache;
+	private long myGoalCacheTime;
+	private NormalizedDouble[] myGoalValues;
+	private JointIndex<Robot.JointId> myJointIndex;
+	private int[] mySlots;
+	private long myAnimationStartTime;
+	private long myAnimationEndTime;
+	private PlaybackClock myClock;
 	private List<AnimationJobListener> myAnimationListeners;
 	private AnimationPlayer mySource;
 	private Robot.Id myRobotId;
@@ -64,6 +103,18 @@ public class AnimationJobFrameSource extends AbstractPlayable implements
 
 	AnimationJobFrameSource(AnimationPlayer source, Robot.Id robotId,
 							Animation anim, long stepLength, Long start, Long stop) {
+		this(source, robotId, anim, stepLength, start, stop, null);
+	}
+
+	AnimationJobFrameSource(AnimationPlayer source, Robot.Id robotId,
+							Animation anim, long stepLength, Long start, Long stop,
+							CompiledAnimationCache cache) {
+		this(source, robotId, anim, stepLength, start, stop, cache, false);
+	}
+
+	AnimationJobFrameSource(AnimationPlayer source, Robot.Id robotId,
+							Animation anim, long stepLength, Long start, Long stop,
+							CompiledAnimationCache cache, boolean evaluate) {
 		if (robotId == null) {
 			throw new NullPointerException();
 		}
@@ -74,33 +125,112 @@ public class AnimationJobFrameSource extends AbstractPlayable implements
 			throw new IllegalArgumentException("stepLength must be greater than zero");
 		}
 		myLoopFlag = false;
+		myClock = new PlaybackClock();
 		myRobotId = robotId;
 		myAnimationListeners = new ArrayList();
 		mySource = source;
 		myAnimation = anim;
 		long s = start == null ? -1 : start;
 		long e = stop == null ? -1 : stop;
-		myAnimationMap = anim.compileMap(s, e, stepLength);
 		List<Channel> channels = myAnimation.getChannels();
-		myPreviousPositions = new Robot.RobotPositionHashMap(channels.size());
+		if (evaluate) {
+			setEvaluatedChannels(channels);
+			setEvaluatedTimes(s, e);
+		} else {
+			if (cache != null) {
+				myAnimationMap = cache.getCompiledMap(anim, s, e, stepLength);
+			} else {
+				myAnimationMap = anim.compileMap(s, e, stepLength,
+						ParallelMapCompiler.getDefault());
+			}
+			setCompiledPaths();
+			myAnimationStartTime = myAnimationMap.getStartTime();
+			myAnimationEndTime = myAnimationMap.getEndTime();
+		}
+		int count = myJointIds.length;
+		myPreviousBuffer = new double[count];
+		myGoalCache = new double[count];
+		myGoalCacheTime = -1;
+		myGoalValues = new NormalizedDouble[count];
+	}
+
+	/**
+	 * Resolves the JointId for each Channel with an id.
+	 */
+	private void setEvaluatedChannels(List<Channel> channels) {
+		myJointIds = new Robot.JointId[channels.size()];
+		myChannels = new Channel[channels.size()];
+		int count = 0;
 		for (Channel c : channels) {
-			if (c == null) {
+			if (c == null || c.getId() == null) {
 				continue;
 			}
-			CompiledPath path = myAnimationMap.get(c.getId());
-			if (path == null) {
+			myJointIds[count] = createJointId(c.getId());
+			myChannels[count] = c;
+			count++;
+		}
+		myJointIds = Arrays.copyOf(myJointIds, count);
+		myChannels = Arrays.copyOf(myChannels, count);
+	}
+
+	/**
+	 * Resolves the JointId for each CompiledPath in the CompiledMap.
+	 */
+	private void setCompiledPaths() {
+		myJointIds = new Robot.JointId[myAnimationMap.size()];
+		myPaths = new CompiledPath[myAnimationMap.size()];
+		int count = 0;
+		for (Entry<Integer, CompiledPath> e : myAnimationMap.entrySet()) {
+			if (e.getKey() == null || e.getValue() == null) {
 				continue;
 			}
-			Integer id = c.getId();
-			double v = path.estimatePosition(0);
-			if (id == null || !NormalizedDouble.isValid(v)) {
+			myJointIds[count] = createJointId(e.getKey());
+			myPaths[count] = e.getValue();
+			count++;
+		}
+		myJointIds = Arrays.copyOf(myJointIds, count);
+		myPaths = Arrays.copyOf(myPaths, count);
+	}
+
+	private Robot.JointId createJointId(int id) {
+		return new Robot.JointId(myRobotId, new Joint.Id(id));
+	}
+
+	/**
+	 * Sets the start and end times for direct evaluation.  Unset times are
+	 * taken from the first and last control points of the Animation.
+	 */
+	private void setEvaluatedTimes(long start, long end) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = 0;
+		for (Channel c : myChannels) {
+			if (c == null) {
 				continue;
 			}
-			NormalizedDouble val = new NormalizedDouble(v);
-			Joint.Id jId = new Joint.Id(id);
-			Robot.JointId djId = new Robot.JointId(myRobotId, jId);
-			myPreviousPositions.put(djId, val);
+			for (MotionPath mp : c.getMotionPaths()) {
+				List<Point2D> points = mp.getControlPoints();
+				if (points.isEmpty()) {
+					continue;
+				}
+				min = Math.min(min, points.get(0).getX());
+				max = Math.max(max, points.get(points.size() - 1).getX());
+			}
+		}
+		if (min == Double.POSITIVE_INFINITY) {
+			min = 0;
 		}
+		myAnimationStartTime = start != -1 ? start : (long) min;
+		myAnimationEndTime = end != -1 ? end : (long) Math.ceil(max);
+	}
+
+	/**
+	 * Returns true if positions are evaluated directly from the Animation's
+	 * MotionPaths instead of a CompiledMap.
+	 *
+	 * @return true if positions are evaluated directly
+	 */
+	public boolean isDirectEvaluation() {
+		return myChannels != null;
 	}
 
 	/**
@@ -145,11 +275,7 @@ public class AnimationJobFrameSource extends AbstractPlayable implements
 		if (l == null) {
 			return null;
 		}
-		Long s = myAnimationMap.getStartTime();
-		if (s == null) {
-			return l;
-		}
-		return l + s;
+		return myClock.getAnimationOffset(l) + myAnimationStartTime;
 	}
 
 	@Override
@@ -163,54 +289,175 @@ public class AnimationJobFrameSource extends AbstractPlayable implements
 
 	@Override
 	public MotionFrame getMovements(long time, long interval) {
-		if (myPlayState != PlayState.RUNNING) {
+		if (!getMovements(time, interval, myPreviousBuffer, myGoalCache)) {
 			return null;
 		}
+		int count = myJointIds.length;
+		RobotPositionMap prevPositions = new Robot.RobotPositionHashMap(count);
+		RobotPositionMap goalPositions = new Robot.RobotPositionHashMap(count);
+		for (int i = 0; i < count; i++) {
+			NormalizedDouble prevVal =
+					toNormalized(myPreviousBuffer[i], myGoalValues[i]);
+			NormalizedDouble goalVal = toNormalized(myGoalCache[i], prevVal);
+			putPosition(prevPositions, myJointIds[i], prevVal);
+			putPosition(goalPositions, myJointIds[i], goalVal);
+			myGoalValues[i] = goalVal;
+		}
 		MotionFrame frame = new DefaultMotionFrame();
 		frame.setTimestampMillisecUTC(time);
 		frame.setFrameLengthMillisec(interval);
-		myPreviousPositions.clear();
-		long cur = getCurrentTime(time);
-		for (Entry<Integer, CompiledPath> e : myAnimationMap.entrySet()) {
-			CompiledPath path = e.getValue();
-			Integer id = e.getKey();
-			double pos = path.estimatePosition(cur);
-			if (id == null || !NormalizedDouble.isValid(pos)) {
-				continue;
+		frame.setPreviousPositions(prevPositions);
+		frame.setGoalPositions(goalPositions);
+		return frame;
+	}
+
+	@Override
+	public boolean getMovements(long time, long interval,
+			JointIndex<Robot.JointId> index, IndexedFrame frame) {
+		if (!getMovements(time, interval, myPreviousBuffer, myGoalCache)) {
+			return false;
+		}
+		int[] slots = getSlots(index);
+		frame.setTimestampMillisecUTC(time);
+		frame.setFrameLengthMillisec(interval);
+		IndexedPositions prevPositions = frame.getPreviousPositions();
+		IndexedPositions goalPositions = frame.getGoalPositions();
+		for (int i = 0; i < slots.length; i++) {
+			if (NormalizedDouble.isValid(myPreviousBuffer[i])) {
+				prevPositions.set(slots[i], myPreviousBuffer[i]);
 			}
-			NormalizedDouble val = new NormalizedDouble(pos);
-			Joint.Id jId = new Joint.Id(id);
-			Robot.JointId djId =
-					new Robot.JointId(myRobotId, jId);
-			myPreviousPositions.put(djId, val);
-		}
-		frame.setPreviousPositions(myPreviousPositions);
-		myPreviousPositions.clear();
-		cur = getCurrentTime(time + interval);
-		for (Entry<Integer, CompiledPath> e : myAnimationMap.entrySet()) {
-			CompiledPath path = e.getValue();
-			Integer id = e.getKey();
-			double pos = path.estimatePosition(cur);
-			if (id == null || !NormalizedDouble.isValid(pos)) {
-				continue;
+			if (NormalizedDouble.isValid(myGoalCache[i])) {
+				goalPositions.set(slots[i], myGoalCache[i]);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluates the previous and goal position of each joint for a tick,
+	 * ordered as getJointId.  Invalid positions are left as they were
+	 * evaluated, and should be checked with NormalizedDouble.isValid.
+	 *
+	 * @param time      time of the move request
+	 * @param interval  length of the movement
+	 * @param prev      array for the previous positions
+	 * @param goal      array for the goal positions
+	 * @return true if the job is running and the positions were evaluated
+	 */
+	boolean getMovements(long time, long interval,
+			double[] prev, double[] goal) {
+		if (myPlayState != PlayState.RUNNING) {
+			return false;
+		}
+		long prevTime = getAnimationTime(time);
+		long goalTime = getAnimationTime(time + interval);
+		boolean cached = prevTime == myGoalCacheTime;
+		for (int i = 0; i < myJointIds.length; i++) {
+			prev[i] = cached ? myGoalCache[i] : getPosition(i, prevTime);
+			goal[i] = getPosition(i, goalTime);
+		}
+		if (goal != myGoalCache) {
+			System.arraycopy(goal, 0, myGoalCache, 0, myJointIds.length);
+		}
+		myGoalCacheTime = goalTime;
+		finishMovement(time, goalTime);
+		return true;
+	}
+
+	/**
+	 * Returns the number of joints played by this job.
+	 *
+	 * @return number of joints played
+	 */
+	int getJointCount() {
+		return myJointIds.length;
+	}
+
+	/**
+	 * Returns the JointId of a joint played by this job.
+	 *
+	 * @param i index of the joint, less than getJointCount
+	 * @return JointId of the joint
+	 */
+	Robot.JointId getJointId(int i) {
+		return myJointIds[i];
+	}
+
+	/**
+	 * Returns the position of a joint at the start of the Animation.
+	 *
+	 * @param i index of the joint, less than getJointCount
+	 * @return position at the start of the Animation, may be invalid
+	 */
+	double getStartPosition(int i) {
+		return getPosition(i, myAnimationStartTime);
+	}
+
+	/**
+	 * Returns the slot of each joint in the given JointIndex.  Slots never
+	 * change once assigned, so they are only resolved when the JointIndex
+	 * changes.
+	 */
+	private int[] getSlots(JointIndex<Robot.JointId> index) {
+		if (index != myJointIndex) {
+			int[] slots = new int[myJointIds.length];
+			for (int i = 0; i < slots.length; i++) {
+				slots[i] = index.addJoint(myJointIds[i]);
 			}
-			NormalizedDouble val = new NormalizedDouble(pos);
-			Joint.Id jId = new Joint.Id(id);
-			Robot.JointId djId =
-					new Robot.JointId(myRobotId, jId);
-			myPreviousPositions.put(djId, val);
-		}
-		frame.setGoalPositions(myPreviousPositions);
-		if (isComplete(cur)) {
+			mySlots = slots;
+			myJointIndex = index;
+		}
+		return mySlots;
+	}
+
+	private long getAnimationTime(long time) {
+		return myClock.getAnimationOffset(getElapsedPlayTime(time))
+				+ myAnimationStartTime;
+	}
+
+	private double getPosition(int i, long time) {
+		if (myChannels != null) {
+			return myChannels[i].evaluate(time);
+		}
+		return myPaths[i].estimatePosition(time);
+	}
+
+	/**
+	 * Returns the position as a NormalizedDouble, reusing the given value
+	 * if it holds the same position.
+	 */
+	private static NormalizedDouble toNormalized(
+			double pos, NormalizedDouble reuse) {
+		if (!NormalizedDouble.isValid(pos)) {
+			return null;
+		}
+		if (reuse != null && reuse.getValue() == pos) {
+			return reuse;
+		}
+		return new NormalizedDouble(pos);
+	}
+
+	private static void putPosition(RobotPositionMap positions,
+			Robot.JointId id, NormalizedDouble val) {
+		if (val != null) {
+			positions.put(id, val);
+		}
+	}
+
+	private void finishMovement(long time, long goalTime) {
+		if (isComplete(goalTime)) {
 			complete(time);
 		}
 		advance(time);
-		return frame;
 	}
 
 	private boolean isComplete(long currentTime) {
-		for (Entry<Integer, CompiledPath> e : myAnimationMap.entrySet()) {
-			CompiledPath path = e.getValue();
+		if (myClock.isReversed()) {
+			return currentTime < myAnimationStartTime;
+		} else if (myChannels != null) {
+			return currentTime > myAnimationEndTime;
+		}
+		for (CompiledPath path : myPaths) {
 			if (currentTime < path.getEndTime()) {
 				return false;
 			}
@@ -219,23 +466,25 @@ public class AnimationJobFrameSource extends AbstractPlayable implements
 	}
 
 	private void advance(long time) {
-		if (myAnimationListeners == null) {
+		if (myAnimationListeners == null || myAnimationListeners.isEmpty()) {
 			return;
 		}
+		Long current = getCurrentTime(time);
 		for (AnimationJobListener listener : myAnimationListeners) {
-			listener.animationAdvanced(getCurrentTime(time));
+			listener.animationAdvanced(current);
 		}
 	}
 
 	@Override
 	public boolean onStart(long time) {
+		myClock.reset(myAnimationEndTime - myAnimationStartTime);
 		for (ServiceAddOn<Playable> addon : myAnimation.getAddOns()) {
 			Playable p = addon.getAddOn();
 			p.start(time);
 		}
 		if (myAnimationListeners != null) {
 			for (AnimationJobListener listener : myAnimationListeners) {
-				listener.animationStart(myAnimationMap.getStartTime(), myAnimationMap.getEndTime());
+				listener.animationStart(myAnimationStartTime, myAnimationEndTime);
 			}
 		}
 
@@ -262,14 +511,33 @@ public class AnimationJobFrameSource extends AbstractPlayable implements
 
 	@Override
 	public Long getAnimationLength() {
-		return myAnimationMap.getEndTime() - myAnimationMap.getStartTime();
+		return myAnimationEndTime - myAnimationStartTime;
 	}
 
 	@Override
 	public Long getRemainingTime(long time) {
-		long now = getElapsedPlayTime(time);
-		long end = getAnimationLength();
-		return end - now;
+		return myClock.getRemainingTime(getElapsedPlayTime(time));
+	}
+
+	@Override
+	public void setPlaybackRate(long time, double rate) {
+		Long elapsed = getElapsedPlayTime(time);
+		myClock.setRate(elapsed == null ? 0 : elapsed, rate);
+	}
+
+	@Override
+	public double getPlaybackRate() {
+		return myClock.getRate();
+	}
+
+	@Override
+	public void setTimeWarp(TimeWarp warp) {
+		myClock.setTimeWarp(warp);
+	}
+
+	@Override
+	public TimeWarp getTimeWarp() {
+		return myClock.getTimeWarp();
 	}
 
 	@Override
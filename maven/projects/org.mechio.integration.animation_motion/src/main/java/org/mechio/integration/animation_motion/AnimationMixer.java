@@ -0,0 +1,537 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.integration.animation_motion;
+
+import org.jflux.api.common.rk.playable.PlayState;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.jflux.api.common.rk.utils.Utils;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.compiled.CompiledAnimationCache;
+import org.mechio.api.animation.player.AnimationJob;
+import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.Robot.RobotPositionMap;
+import org.mechio.api.motion.blending.IndexedFrame;
+import org.mechio.api.motion.blending.IndexedFrameSource;
+import org.mechio.api.motion.blending.IndexedPositions;
+import org.mechio.api.motion.blending.JointIndex;
+import org.mechio.api.motion.protocol.DefaultMotionFrame;
+import org.mechio.api.motion.protocol.MotionFrame;
+import org.mechio.integration.animation_motion.MixerLayer.BlendMode;
+import org.mechio.integration.animation_motion.MixerLayer.MixedJob;
+import org.mechio.integration.animation_motion.MixerLayer.WeightFade;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Plays layered Animations for a Robot and mixes them into a single
+ * FrameSource.
+ * <p>
+ * Each AnimationJob is evaluated into primitive arrays, and the layers are
+ * combined joint by joint into shared arrays, from the first layer added to
+ * the last.  Only one frame is given to the Blender, so the cost of mixing
+ * grows with the number of joints played rather than with the number of
+ * jobs.  Playing an Animation on a layer crossfades from the Animations
+ * already playing on it.
+ * <p>
+ * A layer with a weight below 1, or whose Animations' crossfade weights sum
+ * to less than 1, is blended with the layers below it.  Joints which no
+ * lower layer plays are blended with their rest position instead.  Joints
+ * without a rest position take the layer's position at full weight, since
+ * there is nothing to blend them with.
+ * <p>
+ * The AnimationJobs are owned by the mixer and are not registered as
+ * FrameSources themselves.
+ */
+public class AnimationMixer implements
+		IndexedFrameSource<Robot.JointId, RobotPositionMap> {
+	private final static long theStepLength = 40L;
+	private final Robot.Id myRobotId;
+	private final List<MixerLayer> myLayers;
+	private long myStepLength;
+	private CompiledAnimationCache myCompiledCache;
+	private double[] myPrevious;
+	private double[] myGoal;
+	private double[] myLayerPrevious;
+	private double[] myLayerGoal;
+	private double[] myLayerWeight;
+	private int[] myTouched;
+	private double[] myRest;
+	private final BitSet myMixedJoints;
+	private final BitSet myResolvedRest;
+	private RobotPositionMap myRestPositions;
+	private JointIndex<Robot.JointId> myRestIndex;
+	private JointIndex<Robot.JointId> myJointIndex;
+	private IndexedFrame myFrame;
+
+	/**
+	 * Creates a new AnimationMixer with no layers.
+	 *
+	 * @param robotId id of the Robot to play Animations on
+	 */
+	public AnimationMixer(Robot.Id robotId) {
+		if (robotId == null) {
+			throw new NullPointerException();
+		}
+		myRobotId = robotId;
+		myLayers = new ArrayList<>();
+		myStepLength = theStepLength;
+		myCompiledCache = CompiledAnimationCache.getDefault();
+		myPrevious = new double[0];
+		myGoal = new double[0];
+		myLayerPrevious = new double[0];
+		myLayerGoal = new double[0];
+		myLayerWeight = new double[0];
+		myTouched = new int[0];
+		myRest = new double[0];
+		myMixedJoints = new BitSet();
+		myResolvedRest = new BitSet();
+	}
+
+	/**
+	 * Returns the id of the Robot Animations are played on.
+	 *
+	 * @return Robot id
+	 */
+	public Robot.Id getRobotId() {
+		return myRobotId;
+	}
+
+	/**
+	 * Sets the step length for Animations played by the mixer.
+	 *
+	 * @param val new step length in milliseconds
+	 */
+	public synchronized void setStepLength(long val) {
+		myStepLength = val;
+	}
+
+	/**
+	 * Returns the step length for Animations played by the mixer.
+	 *
+	 * @return step length in milliseconds
+	 */
+	public synchronized long getStepLength() {
+		return myStepLength;
+	}
+
+	/**
+	 * Sets the CompiledAnimationCache used for Animations played by the
+	 * mixer.
+	 *
+	 * @param cache CompiledAnimationCache to use, null to compile each
+	 *              Animation when it is played
+	 */
+	public synchronized void setCompiledAnimationCache(
+			CompiledAnimationCache cache) {
+		myCompiledCache = cache;
+	}
+
+	/**
+	 * Returns the CompiledAnimationCache used for Animations played by the
+	 * mixer.
+	 *
+	 * @return CompiledAnimationCache used by the mixer
+	 */
+	public synchronized CompiledAnimationCache getCompiledAnimationCache() {
+		return myCompiledCache;
+	}
+
+	/**
+	 * Sets the rest positions of the Robot's joints.  Layers are blended
+	 * with the rest position of joints which no lower layer plays.
+	 *
+	 * @param positions rest positions, null to clear them
+	 */
+	public synchronized void setRestPositions(RobotPositionMap positions) {
+		myRestPositions = positions == null
+				? null : new Robot.RobotPositionHashMap(positions);
+		myResolvedRest.clear();
+	}
+
+	/**
+	 * Returns the rest positions of the Robot's joints.
+	 *
+	 * @return copy of the rest positions, null if none are set
+	 */
+	public synchronized RobotPositionMap getRestPositions() {
+		return myRestPositions == null
+				? null : new Robot.RobotPositionHashMap(myRestPositions);
+	}
+
+	/**
+	 * Adds a layer above the existing layers.
+	 *
+	 * @param name name of the layer
+	 * @param mode how the layer is applied over the layers below it
+	 * @return the new layer
+	 * @throws IllegalArgumentException if a layer with the name exists
+	 */
+	public synchronized MixerLayer addLayer(String name, BlendMode mode) {
+		if (getLayer(name) != null) {
+			throw new IllegalArgumentException(
+					"A layer named " + name + " already exists.");
+		}
+		MixerLayer layer = new MixerLayer(this, name, mode);
+		myLayers.add(layer);
+		return layer;
+	}
+
+	/**
+	 * Returns the layer with the given name.
+	 *
+	 * @param name name of the layer
+	 * @return layer with the name, null if there is none
+	 */
+	public synchronized MixerLayer getLayer(String name) {
+		for (MixerLayer layer : myLayers) {
+			if (layer.getName().equals(name)) {
+				return layer;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the layers, from the bottom layer to the top.
+	 *
+	 * @return layers of the mixer
+	 */
+	public synchronized List<MixerLayer> getLayers() {
+		return new ArrayList<>(myLayers);
+	}
+
+	/**
+	 * Removes a layer and stops its Animations.
+	 *
+	 * @param name name of the layer
+	 * @param time time to stop the Animations
+	 * @return true if the layer was removed
+	 */
+	public synchronized boolean removeLayer(String name, long time) {
+		MixerLayer layer = getLayer(name);
+		if (layer == null) {
+			return false;
+		}
+		for (MixedJob j : layer.myJobs) {
+			j.myJob.stop(time);
+		}
+		layer.myJobs.clear();
+		myLayers.remove(layer);
+		return true;
+	}
+
+	/**
+	 * Plays an Animation on a layer, crossfading from the Animations already
+	 * playing on the layer.
+	 *
+	 * @param layerName        name of the layer
+	 * @param animation        Animation to play
+	 * @param time             time to start playing
+	 * @param crossfadeMillisec length of the crossfade, 0 to replace the
+	 *                         playing Animations immediately
+	 * @return AnimationJob for the Animation
+	 */
+	public AnimationJob playAnimation(String layerName, Animation animation,
+			long time, long crossfadeMillisec) {
+		return playAnimation(
+				layerName, animation, null, null, time, crossfadeMillisec);
+	}
+
+	/**
+	 * Plays part of an Animation on a layer, crossfading from the Animations
+	 * already playing on the layer.
+	 *
+	 * @param layerName        name of the layer
+	 * @param animation        Animation to play
+	 * @param start            Animation time to start from, null for the
+	 *                         start of the Animation
+	 * @param stop             Animation time to stop at, null for the end of
+	 *                         the Animation
+	 * @param time             time to start playing
+	 * @param crossfadeMillisec length of the crossfade, 0 to replace the
+	 *                         playing Animations immediately
+	 * @return AnimationJob for the Animation
+	 * @throws IllegalArgumentException if there is no layer with the name
+	 */
+	public synchronized AnimationJob playAnimation(String layerName,
+			Animation animation, Long start, Long stop, long time,
+			long crossfadeMillisec) {
+		MixerLayer layer = getLayer(layerName);
+		if (layer == null) {
+			throw new IllegalArgumentException(
+					"There is no layer named " + layerName + ".");
+		}
+		AnimationJobFrameSource job = new AnimationJobFrameSource(
+				null, myRobotId, animation, myStepLength, start, stop,
+				myCompiledCache);
+		for (MixedJob j : layer.myJobs) {
+			j.myWeight.fadeTo(0.0, time, crossfadeMillisec);
+		}
+		WeightFade weight = new WeightFade(0.0);
+		weight.fadeTo(1.0, time, crossfadeMillisec);
+		layer.myJobs.add(new MixedJob(job, weight));
+		job.start(time);
+		return job;
+	}
+
+	/**
+	 * Fades out an AnimationJob and stops it once it has faded out.
+	 *
+	 * @param job          AnimationJob to stop
+	 * @param time         time to start fading out
+	 * @param fadeMillisec length of the fade, 0 to stop immediately
+	 * @return true if the job was playing on the mixer
+	 */
+	public synchronized boolean stopAnimation(
+			AnimationJob job, long time, long fadeMillisec) {
+		for (MixerLayer layer : myLayers) {
+			for (MixedJob j : layer.myJobs) {
+				if (j.myJob == job) {
+					j.myWeight.fadeTo(0.0, time, fadeMillisec);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the AnimationJobs playing on every layer.
+	 *
+	 * @return AnimationJobs playing on the mixer
+	 */
+	public synchronized List<AnimationJob> getAnimationJobs() {
+		List<AnimationJob> jobs = new ArrayList<>();
+		for (MixerLayer layer : myLayers) {
+			for (MixedJob j : layer.myJobs) {
+				jobs.add(j.myJob);
+			}
+		}
+		return jobs;
+	}
+
+	@Override
+	public synchronized MotionFrame getMovements(long time, long interval) {
+		if (myJointIndex == null) {
+			myJointIndex = new JointIndex<>();
+			myFrame = new IndexedFrame(0);
+		}
+		myFrame.clear();
+		if (!getMovements(time, interval, myJointIndex, myFrame)) {
+			return null;
+		}
+		MotionFrame frame = new DefaultMotionFrame();
+		frame.setTimestampMillisecUTC(time);
+		frame.setFrameLengthMillisec(interval);
+		frame.setPreviousPositions(toPositionMap(myFrame.getPreviousPositions()));
+		frame.setGoalPositions(toPositionMap(myFrame.getGoalPositions()));
+		return frame;
+	}
+
+	private RobotPositionMap toPositionMap(IndexedPositions positions) {
+		BitSet mask = positions.getMask();
+		double[] vals = positions.getValues();
+		RobotPositionMap map =
+				new Robot.RobotPositionHashMap(mask.cardinality());
+		for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1)) {
+			map.put(myJointIndex.getId(i), new NormalizedDouble(vals[i]));
+		}
+		return map;
+	}
+
+	@Override
+	public synchronized boolean getMovements(long time, long interval,
+			JointIndex<Robot.JointId> index, IndexedFrame frame) {
+		myMixedJoints.clear();
+		for (MixerLayer layer : myLayers) {
+			double weight = layer.getWeight(time);
+			int touched = accumulateLayer(layer, time, interval, index);
+			if (weight > 0.0) {
+				applyLayer(layer.getBlendMode(), weight, touched, index);
+			}
+			clearLayer(touched);
+		}
+		if (myMixedJoints.isEmpty()) {
+			return false;
+		}
+		frame.setTimestampMillisecUTC(time);
+		frame.setFrameLengthMillisec(interval);
+		IndexedPositions prevPositions = frame.getPreviousPositions();
+		IndexedPositions goalPositions = frame.getGoalPositions();
+		for (int i = myMixedJoints.nextSetBit(0); i >= 0;
+				i = myMixedJoints.nextSetBit(i + 1)) {
+			prevPositions.set(i, Utils.bound(myPrevious[i], 0.0, 1.0));
+			goalPositions.set(i, Utils.bound(myGoal[i], 0.0, 1.0));
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluates the jobs of a layer and sums their weighted positions into
+	 * the layer arrays.  Jobs which have finished or faded out are removed.
+	 * Every job is advanced, even if the layer has no weight, so the jobs
+	 * keep time.
+	 *
+	 * @return number of joints touched by the layer
+	 */
+	private int accumulateLayer(MixerLayer layer, long time, long interval,
+			JointIndex<Robot.JointId> index) {
+		boolean additive = layer.getBlendMode() == BlendMode.ADDITIVE;
+		int touched = 0;
+		Iterator<MixedJob> it = layer.myJobs.iterator();
+		while (it.hasNext()) {
+			MixedJob j = it.next();
+			AnimationJobFrameSource job = j.myJob;
+			if (j.myWeight.isFadedOut(time)) {
+				job.stop(time);
+				it.remove();
+				continue;
+			}
+			if (!job.getMovements(time, interval, j.myPrevious, j.myGoal)) {
+				if (isFinished(job.getPlayState())) {
+					it.remove();
+				}
+				continue;
+			}
+			double weight = j.myWeight.get(time);
+			if (weight <= 0.0) {
+				continue;
+			}
+			int[] slots = j.getSlots(index);
+			double[] mask = layer.getMask(j);
+			ensureCapacity(index.size());
+			for (int k = 0; k < slots.length; k++) {
+				double w = weight * mask[k];
+				double prev = j.myPrevious[k];
+				double goal = j.myGoal[k];
+				if (w <= 0.0 || !NormalizedDouble.isValid(prev)
+						|| !NormalizedDouble.isValid(goal)) {
+					continue;
+				}
+				if (additive) {
+					double ref = j.myReference[k];
+					if (!NormalizedDouble.isValid(ref)) {
+						continue;
+					}
+					prev -= ref;
+					goal -= ref;
+				}
+				int s = slots[k];
+				if (myLayerWeight[s] == 0.0) {
+					myTouched[touched++] = s;
+				}
+				myLayerPrevious[s] += w * prev;
+				myLayerGoal[s] += w * goal;
+				myLayerWeight[s] += w;
+			}
+		}
+		return touched;
+	}
+
+	private static boolean isFinished(PlayState state) {
+		return state == PlayState.COMPLETED || state == PlayState.STOPPED
+				|| state == PlayState.ABORTED;
+	}
+
+	/**
+	 * Applies the summed layer positions over the mixed positions.  Joints
+	 * no lower layer has written start from their rest position.  The job
+	 * weights are only normalized when they sum to more than 1, otherwise
+	 * the remaining weight is left to the positions below.
+	 */
+	private void applyLayer(BlendMode mode, double layerWeight, int touched,
+			JointIndex<Robot.JointId> index) {
+		for (int t = 0; t < touched; t++) {
+			int s = myTouched[t];
+			double sum = myLayerWeight[s];
+			if (!myMixedJoints.get(s)) {
+				double rest = getRestPosition(index, s);
+				if (NormalizedDouble.isValid(rest)) {
+					myPrevious[s] = rest;
+					myGoal[s] = rest;
+				} else if (mode == BlendMode.OVERRIDE) {
+					myPrevious[s] = myLayerPrevious[s] / sum;
+					myGoal[s] = myLayerGoal[s] / sum;
+					myMixedJoints.set(s);
+					continue;
+				} else {
+					continue;
+				}
+				myMixedJoints.set(s);
+			}
+			if (mode == BlendMode.ADDITIVE) {
+				myPrevious[s] += layerWeight * myLayerPrevious[s];
+				myGoal[s] += layerWeight * myLayerGoal[s];
+				continue;
+			}
+			double covered = Math.min(1.0, sum);
+			double scale = covered / sum;
+			myPrevious[s] += layerWeight
+					* (scale * myLayerPrevious[s] - covered * myPrevious[s]);
+			myGoal[s] += layerWeight
+					* (scale * myLayerGoal[s] - covered * myGoal[s]);
+		}
+	}
+
+	/**
+	 * Returns the rest position of the joint in a slot, resolving it from
+	 * the rest positions the first time the slot is used.
+	 *
+	 * @return rest position, NaN if the joint has none
+	 */
+	private double getRestPosition(JointIndex<Robot.JointId> index, int s) {
+		if (index != myRestIndex) {
+			myResolvedRest.clear();
+			myRestIndex = index;
+		}
+		if (!myResolvedRest.get(s)) {
+			NormalizedDouble val = myRestPositions == null
+					? null : myRestPositions.get(index.getId(s));
+			myRest[s] = val == null ? Double.NaN : val.getValue();
+			myResolvedRest.set(s);
+		}
+		return myRest[s];
+	}
+
+	private void clearLayer(int touched) {
+		for (int t = 0; t < touched; t++) {
+			int s = myTouched[t];
+			myLayerPrevious[s] = 0.0;
+			myLayerGoal[s] = 0.0;
+			myLayerWeight[s] = 0.0;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (myPrevious.length >= capacity) {
+			return;
+		}
+		int len = Math.max(capacity, myPrevious.length * 2);
+		myPrevious = Arrays.copyOf(myPrevious, len);
+		myGoal = Arrays.copyOf(myGoal, len);
+		myLayerPrevious = Arrays.copyOf(myLayerPrevious, len);
+		myLayerGoal = Arrays.copyOf(myLayerGoal, len);
+		myLayerWeight = Arrays.copyOf(myLayerWeight, len);
+		myTouched = Arrays.copyOf(myTouched, len);
+		myRest = Arrays.copyOf(myRest, len);
+	}
+}
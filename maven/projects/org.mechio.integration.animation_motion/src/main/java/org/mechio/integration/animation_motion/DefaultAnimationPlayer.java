@@ -20,6 +20,7 @@ import org.jflux.api.common.rk.utils.TimeUtils;
 import org.jflux.api.core.Listener;
 import org.jflux.api.core.util.DefaultNotifier;
 import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.compiled.CompiledAnimationCache;
 import org.mechio.api.animation.player.AnimationJob;
 import org.mechio.api.animation.player.AnimationPlayer;
 import org.mechio.api.animation.protocol.AnimationSignal;
@@ -55,6 +56,8 @@ public class DefaultAnimationPlayer extends DefaultNotifier<AnimationSignal>
 	private List<AnimationJob> myAnimationJobs;
 	private long myStepLength;
 	private Robot.Id myRobotId;
+	private CompiledAnimationCache myCompiledCache;
+	private boolean myDirectEvaluationFlag;
 	private static AnimationSignalFactory theSignalFactory =
 			new PortableAnimationSignal.Factory();
 
@@ -72,6 +75,7 @@ public class DefaultAnimationPlayer extends DefaultNotifier<AnimationSignal>
 		myAnimationJobs = new ArrayList();
 		myStepLength = theStepLength;
 		myRegistry = new HashMap();
+		myCompiledCache = CompiledAnimationCache.getDefault();
 	}
 
 	public void setRobotId(Robot.Id robotId) {
@@ -113,6 +117,45 @@ public class DefaultAnimationPlayer extends DefaultNotifier<AnimationSignal>
 		return myStepLength;
 	}
 
+	/**
+	 * Sets the CompiledAnimationCache used by new AnimationJobs.
+	 *
+	 * @param cache CompiledAnimationCache to use, null to compile each
+	 *              Animation when it is played
+	 */
+	public void setCompiledAnimationCache(CompiledAnimationCache cache) {
+		myCompiledCache = cache;
+	}
+
+	/**
+	 * Returns the CompiledAnimationCache used by new AnimationJobs.
+	 *
+	 * @return CompiledAnimationCache used by new AnimationJobs
+	 */
+	public CompiledAnimationCache getCompiledAnimationCache() {
+		return myCompiledCache;
+	}
+
+	/**
+	 * Sets whether new AnimationJobs evaluate the Animation's MotionPaths
+	 * directly instead of playing a compiled Animation.
+	 *
+	 * @param val true to evaluate directly, false to compile
+	 */
+	public void setDirectEvaluation(boolean val) {
+		myDirectEvaluationFlag = val;
+	}
+
+	/**
+	 * Returns true if new AnimationJobs evaluate the Animation's MotionPaths
+	 * directly.
+	 *
+	 * @return true if new AnimationJobs evaluate directly
+	 */
+	public boolean isDirectEvaluation() {
+		return myDirectEvaluationFlag;
+	}
+
 	@Override
 	public AnimationJob playAnimation(Animation animation) {
 		return playAnimation(animation, null, null);
@@ -147,7 +190,8 @@ public class DefaultAnimationPlayer extends DefaultNotifier<AnimationSignal>
 				FrameSource.class.getName()
 		};
 		AnimationJob job = new AnimationJobFrameSource(
-				this, myRobotId, animation, myStepLength, start, stop);
+				this, myRobotId, animation, myStepLength, start, stop,
+				myCompiledCache, myDirectEvaluationFlag);
 		Dictionary props = new Properties();
 		props.put(Robot.PROP_ID, myRobotId.toString());
 		ServiceRegistration reg = myContext.registerService(names, job, props);
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mechio.integration.animation_motion;
+
+import org.mechio.api.animation.player.AnimationJob;
+import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.blending.JointIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A layer of an AnimationMixer.  The Animations playing on a layer are
+ * combined by their crossfade weights, and the result is applied over the
+ * layers below it with the layer's weight.
+ * <p>
+ * An OVERRIDE layer moves the joints it plays towards its positions, fully
+ * replacing the layers below at a weight of 1.  An ADDITIVE layer adds the
+ * change of each joint from the first position of its Animation to the
+ * layers below, so it can only move joints which are also played below it
+ * or have a rest position in the AnimationMixer.
+ * <p>
+ * Channel weights mask the channels a layer affects.  Channels without their
+ * own weight use the default channel weight.
+ */
+public class MixerLayer {
+	/**
+	 * How a layer is applied over the layers below it.
+	 */
+	public static enum BlendMode {
+		/**
+		 * Moves joints towards the layer's positions.
+		 */
+		OVERRIDE,
+		/**
+		 * Adds the layer's change in position from the start of each
+		 * Animation.
+		 */
+		ADDITIVE
+	}
+
+	private final Object myLock;
+	private final String myName;
+	private final BlendMode myBlendMode;
+	private final WeightFade myWeight;
+	private final Map<Integer, Double> myChannelWeights;
+	private double myDefaultChannelWeight;
+	private int myMaskVersion;
+	final List<MixedJob> myJobs;
+
+	MixerLayer(Object lock, String name, BlendMode mode) {
+		if (name == null || mode == null) {
+			throw new NullPointerException();
+		}
+		myLock = lock;
+		myName = name;
+		myBlendMode = mode;
+		myWeight = new WeightFade(1.0);
+		myChannelWeights = new HashMap<>();
+		myDefaultChannelWeight = 1.0;
+		myJobs = new ArrayList<>();
+	}
+
+	/**
+	 * Returns the name of the layer.
+	 *
+	 * @return name of the layer
+	 */
+	public String getName() {
+		return myName;
+	}
+
+	/**
+	 * Returns how the layer is applied over the layers below it.
+	 *
+	 * @return blend mode of the layer
+	 */
+	public BlendMode getBlendMode() {
+		return myBlendMode;
+	}
+
+	/**
+	 * Sets the weight of the layer immediately.
+	 *
+	 * @param weight layer weight, between 0 and 1
+	 */
+	public void setWeight(double weight) {
+		synchronized (myLock) {
+			myWeight.set(weight);
+		}
+	}
+
+	/**
+	 * Fades the weight of the layer from its current weight.
+	 *
+	 * @param weight       layer weight to fade to, between 0 and 1
+	 * @param time         time to start the fade
+	 * @param fadeMillisec length of the fade
+	 */
+	public void fadeWeight(double weight, long time, long fadeMillisec) {
+		synchronized (myLock) {
+			myWeight.fadeTo(weight, time, fadeMillisec);
+		}
+	}
+
+	/**
+	 * Returns the weight of the layer at the given time.
+	 *
+	 * @param time time of the weight
+	 * @return layer weight at the time
+	 */
+	public double getWeight(long time) {
+		synchronized (myLock) {
+			return myWeight.get(time);
+		}
+	}
+
+	/**
+	 * Sets the weight of a single channel.
+	 *
+	 * @param channel channel id
+	 * @param weight  channel weight, between 0 and 1
+	 */
+	public void setChannelWeight(int channel, double weight) {
+		synchronized (myLock) {
+			myChannelWeights.put(channel, weight);
+			myMaskVersion++;
+		}
+	}
+
+	/**
+	 * Limits the layer to the given channels.  Other channels are given a
+	 * weight of 0.
+	 *
+	 * @param channels channels the layer affects
+	 */
+	public void setChannelMask(Collection<Integer> channels) {
+		synchronized (myLock) {
+			myChannelWeights.clear();
+			for (Integer c : channels) {
+				myChannelWeights.put(c, 1.0);
+			}
+			myDefaultChannelWeight = 0.0;
+			myMaskVersion++;
+		}
+	}
+
+	/**
+	 * Removes all channel weights, so the layer affects every channel.
+	 */
+	public void clearChannelWeights() {
+		synchronized (myLock) {
+			myChannelWeights.clear();
+			myDefaultChannelWeight = 1.0;
+			myMaskVersion++;
+		}
+	}
+
+	/**
+	 * Returns the weight of a channel.
+	 *
+	 * @param channel channel id
+	 * @return channel weight
+	 */
+	public double getChannelWeight(int channel) {
+		synchronized (myLock) {
+			Double weight = myChannelWeights.get(channel);
+			return weight == null ? myDefaultChannelWeight : weight;
+		}
+	}
+
+	/**
+	 * Returns the AnimationJobs playing on the layer, including those
+	 * fading out.
+	 *
+	 * @return AnimationJobs playing on the layer
+	 */
+	public List<AnimationJob> getAnimationJobs() {
+		synchronized (myLock) {
+			List<AnimationJob> jobs = new ArrayList<>(myJobs.size());
+			for (MixedJob j : myJobs) {
+				jobs.add(j.myJob);
+			}
+			return jobs;
+		}
+	}
+
+	/**
+	 * Returns the channel weight for each joint of a job, refreshing it if
+	 * the channel weights have changed.
+	 */
+	double[] getMask(MixedJob job) {
+		if (job.myMaskVersion != myMaskVersion || job.myMask == null) {
+			double[] mask = new double[job.myJob.getJointCount()];
+			for (int i = 0; i < mask.length; i++) {
+				int channel = job.myJob.getJointId(i)
+						.getJointId().getLogicalJointNumber();
+				Double weight = myChannelWeights.get(channel);
+				mask[i] = weight == null ? myDefaultChannelWeight : weight;
+			}
+			job.myMask = mask;
+			job.myMaskVersion = myMaskVersion;
+		}
+		return job.myMask;
+	}
+
+	/**
+	 * A weight which can be faded linearly over time.
+	 */
+	static class WeightFade {
+		private double myFrom;
+		private double myTo;
+		private long myStart;
+		private long myLength;
+
+		WeightFade(double weight) {
+			set(weight);
+		}
+
+		void set(double weight) {
+			myFrom = weight;
+			myTo = weight;
+			myLength = 0;
+		}
+
+		void fadeTo(double weight, long time, long length) {
+			myFrom = get(time);
+			myTo = weight;
+			myStart = time;
+			myLength = length;
+		}
+
+		double get(long time) {
+			if (myLength <= 0 || time - myStart >= myLength) {
+				return myTo;
+			} else if (time <= myStart) {
+				return myFrom;
+			}
+			return myFrom + (myTo - myFrom) * (time - myStart) / myLength;
+		}
+
+		boolean isFadedOut(long time) {
+			return myTo <= 0.0 && get(time) <= 0.0;
+		}
+	}
+
+	/**
+	 * An AnimationJob playing on a layer, with its crossfade weight and the
+	 * buffers it is evaluated into.
+	 */
+	static class MixedJob {
+		final AnimationJobFrameSource myJob;
+		final WeightFade myWeight;
+		final double[] myPrevious;
+		final double[] myGoal;
+		final double[] myReference;
+		double[] myMask;
+		int myMaskVersion;
+		private JointIndex<Robot.JointId> myJointIndex;
+		private int[] mySlots;
+
+		MixedJob(AnimationJobFrameSource job, WeightFade weight) {
+			myJob = job;
+			myWeight = weight;
+			int count = job.getJointCount();
+			myPrevious = new double[count];
+			myGoal = new double[count];
+			myReference = new double[count];
+			for (int i = 0; i < count; i++) {
+				myReference[i] = job.getStartPosition(i);
+			}
+		}
+
+		int[] getSlots(JointIndex<Robot.JointId> index) {
+			if (index != myJointIndex) {
+				int[] slots = new int[myPrevious.length];
+				for (int i = 0; i < slots.length; i++) {
+					slots[i] = index.addJoint(myJob.getJointId(i));
+				}
+				mySlots = slots;
+				myJointIndex = index;
+			}
+			return mySlots;
+		}
+	}
+}
@@ -26,9 +26,13 @@ import org.mechio.api.animation.Animation;
 import org.mechio.api.animation.MotionPath;
 import org.mechio.api.animation.compiled.CompiledMap;
 import org.mechio.api.animation.compiled.CompiledPath;
+import org.mechio.api.animation.compiled.ParallelMapCompiler;
 import org.mechio.api.animation.player.AnimationJob;
 import org.mechio.api.animation.player.AnimationJobListener;
 import org.mechio.api.animation.player.AnimationPlayer;
+import org.mechio.api.animation.player.PlaybackClock;
+import org.mechio.api.animation.player.RateControllable;
+import org.mechio.api.animation.player.TimeWarp;
 import org.mechio.api.animation.protocol.AnimationSignal;
 import org.mechio.api.animation.protocol.AnimationSignal.AnimationSignalFactory;
 import org.mechio.api.interpolation.InterpolatorFactory;
@@ -53,7 +57,7 @@ import java.util.Map.Entry;
  * @author Matthew Stevenson <www.mechio.org>
  */
 public class RampedAnimationJob extends AbstractPlayable implements
-		AnimationJob, FrameSource<RobotPositionMap> {
+		AnimationJob, RateControllable, FrameSource<RobotPositionMap> {
 	private static final Logger theLogger = LoggerFactory.getLogger(RampedAnimationJob.class);
 	private BundleContext myContext;
 	private RobotPositionMap myPreviousPositions;
@@ -67,6 +71,7 @@ public class RampedAnimationJob extends AbstractPlayable implements
 	private long myRampTimeMillisec;
 	private long myMaxRampTimeMillisec;
 	private boolean myLoopFlag;
+	private PlaybackClock myClock;
 	private AnimationSignalFactory mySignalFactory;
 
 	RampedAnimationJob(
@@ -82,6 +87,7 @@ public class RampedAnimationJob extends AbstractPlayable implements
 		}
 		myContext = context;
 		myLoopFlag = false;
+		myClock = new PlaybackClock();
 		myRobotId = robotId;
 		myAnimationListeners = new ArrayList();
 		mySource = source;
@@ -90,7 +96,8 @@ public class RampedAnimationJob extends AbstractPlayable implements
 		myMaxRampTimeMillisec = maxRampMillisec;
 		long s = start == null ? -1 : start;
 		long e = stop == null ? -1 : stop;
-		myAnimationMap = anim.compileMap(s, e, myStepLengthMillisec);
+		myAnimationMap = anim.compileMap(s, e, myStepLengthMillisec,
+				ParallelMapCompiler.getDefault());
 	}
 
 	private void addRamping(Map<Integer, Double> curPos) {
@@ -147,8 +154,10 @@ public class RampedAnimationJob extends AbstractPlayable implements
 	}
 
 	private double getStart(CompiledPath path) {
-		for (Double d : path) {
-			if (d == null || d == -1) {
+		int len = path.size();
+		for (int i = 0; i < len; i++) {
+			double d = path.getPosition(i);
+			if (d == -1) {
 				continue;
 			}
 			return d;
@@ -194,10 +203,11 @@ public class RampedAnimationJob extends AbstractPlayable implements
 	}
 
 	public Long getCurrentTime(long time) {
-		Long l = getElapsedPlayTime(time) + myRampTimeMillisec;
-		if (l == null) {
+		Long elapsed = getElapsedPlayTime(time);
+		if (elapsed == null) {
 			return null;
 		}
+		long l = myClock.getAnimationOffset(elapsed) + myRampTimeMillisec;
 		Long s = myAnimationMap.getStartTime();
 		if (s == null) {
 			return l;
@@ -263,6 +273,9 @@ public class RampedAnimationJob extends AbstractPlayable implements
 	}
 
 	private boolean isComplete(long currentTime) {
+		if (myClock.isReversed()) {
+			return currentTime < myAnimationMap.getStartTime();
+		}
 		for (Entry<Integer, CompiledPath> e : myAnimationMap.entrySet()) {
 			CompiledPath path = e.getValue();
 			if (currentTime < path.getEndTime()) {
@@ -291,6 +304,7 @@ public class RampedAnimationJob extends AbstractPlayable implements
 
 	@Override
 	public boolean onStart(long time) {
+		myClock.reset(getAnimationLength());
 		for (ServiceAddOn<Playable> addon : myAnimation.getAddOns()) {
 			Playable p = addon.getAddOn();
 			p.start(time);
@@ -332,9 +346,28 @@ public class RampedAnimationJob extends AbstractPlayable implements
 
 	@Override
 	public Long getRemainingTime(long time) {
-		long now = getElapsedPlayTime(time);
-		long end = getAnimationLength();// + myRampTimeMillisec;
-		return end - now;
+		return myClock.getRemainingTime(getElapsedPlayTime(time));
+	}
+
+	@Override
+	public void setPlaybackRate(long time, double rate) {
+		Long elapsed = getElapsedPlayTime(time);
+		myClock.setRate(elapsed == null ? 0 : elapsed, rate);
+	}
+
+	@Override
+	public double getPlaybackRate() {
+		return myClock.getRate();
+	}
+
+	@Override
+	public void setTimeWarp(TimeWarp warp) {
+		myClock.setTimeWarp(warp);
+	}
+
+	@Override
+	public TimeWarp getTimeWarp() {
+		return myClock.getTimeWarp();
 	}
 
 	@Override
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 the MechIO Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mechio.integration.animation_motion;
+
+import org.jflux.api.common.rk.config.VersionProperty;
+import org.jflux.api.common.rk.position.NormalizedDouble;
+import org.junit.Test;
+import org.mechio.api.animation.Animation;
+import org.mechio.api.animation.Channel;
+import org.mechio.api.animation.MotionPath;
+import org.mechio.api.animation.player.AnimationJob;
+import org.mechio.api.motion.Joint;
+import org.mechio.api.motion.Robot;
+import org.mechio.api.motion.Robot.RobotPositionMap;
+import org.mechio.api.motion.protocol.MotionFrame;
+import org.mechio.integration.animation_motion.MixerLayer.BlendMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests how AnimationMixer applies layer weights and crossfades.
+ */
+public class AnimationMixerTest {
+	private final static double EPSILON = 1e-6;
+	private final static long INTERVAL = 40;
+	private final static Robot.Id ROBOT = new Robot.Id("robot");
+	private final static Robot.JointId JOINT =
+			new Robot.JointId(ROBOT, new Joint.Id(0));
+
+	@Test
+	public void partialLayerWeightShouldBlendWithRestPosition() {
+		AnimationMixer mixer = createMixer(0.2);
+		mixer.addLayer("base", BlendMode.OVERRIDE).setWeight(0.5);
+		mixer.playAnimation("base", createAnimation(0.8), 0, 0);
+		assertEquals(0.5, getGoal(mixer, 0), EPSILON);
+	}
+
+	@Test
+	public void partialLayerWeightWithoutRestShouldUseLayerPosition() {
+		AnimationMixer mixer = createMixer(-1);
+		mixer.addLayer("base", BlendMode.OVERRIDE).setWeight(0.5);
+		mixer.playAnimation("base", createAnimation(0.8), 0, 0);
+		assertEquals(0.8, getGoal(mixer, 0), EPSILON);
+	}
+
+	@Test
+	public void partialLayerWeightShouldBlendWithLowerLayer() {
+		AnimationMixer mixer = createMixer(-1);
+		mixer.addLayer("base", BlendMode.OVERRIDE);
+		mixer.addLayer("upper", BlendMode.OVERRIDE).setWeight(0.25);
+		mixer.playAnimation("base", createAnimation(0.2), 0, 0);
+		mixer.playAnimation("upper", createAnimation(0.6), 0, 0);
+		assertEquals(0.3, getGoal(mixer, 0), EPSILON);
+	}
+
+	@Test
+	public void fadingOutShouldReturnToRestPosition() {
+		AnimationMixer mixer = createMixer(0.2);
+		mixer.addLayer("base", BlendMode.OVERRIDE);
+		AnimationJob job =
+				mixer.playAnimation("base", createAnimation(0.8), 0, 0);
+		assertEquals(0.8, getGoal(mixer, 0), EPSILON);
+		mixer.stopAnimation(job, 1000, 1000);
+		assertEquals(0.5, getGoal(mixer, 1500), EPSILON);
+		assertEquals(0.2, getGoal(mixer, 1900), 0.1);
+	}
+
+	@Test
+	public void fadingInShouldBlendWithLowerLayer() {
+		AnimationMixer mixer = createMixer(-1);
+		mixer.addLayer("base", BlendMode.OVERRIDE);
+		mixer.addLayer("upper", BlendMode.OVERRIDE);
+		mixer.playAnimation("base", createAnimation(0.2), 0, 0);
+		mixer.playAnimation("upper", createAnimation(0.6), 1000, 1000);
+		assertEquals(0.2, getGoal(mixer, 1000), EPSILON);
+		assertEquals(0.4, getGoal(mixer, 1500), EPSILON);
+		assertEquals(0.6, getGoal(mixer, 2000), EPSILON);
+	}
+
+	@Test
+	public void crossfadeShouldBlendJobsOnLayer() {
+		AnimationMixer mixer = createMixer(-1);
+		mixer.addLayer("base", BlendMode.OVERRIDE);
+		mixer.playAnimation("base", createAnimation(0.2), 0, 0);
+		mixer.playAnimation("base", createAnimation(0.8), 1000, 1000);
+		assertEquals(0.2, getGoal(mixer, 1000), EPSILON);
+		assertEquals(0.5, getGoal(mixer, 1500), EPSILON);
+		assertEquals(0.8, getGoal(mixer, 2000), EPSILON);
+		assertEquals(1, mixer.getAnimationJobs().size());
+	}
+
+	@Test
+	public void additiveLayerShouldApplyOverRestPosition() {
+		AnimationMixer mixer = createMixer(0.2);
+		mixer.addLayer("add", BlendMode.ADDITIVE).setWeight(0.5);
+		Animation anim = createAnimation(0.4);
+		MotionPath mp = anim.getChannels().get(0).getMotionPaths().get(0);
+		mp.addPoint(4000, 0.8);
+		mixer.playAnimation("add", anim, 0, 0);
+		assertEquals(0.4, getGoal(mixer, 4000 - INTERVAL), 0.01);
+	}
+
+	@Test
+	public void additiveLayerWithoutRestShouldNotMoveJoint() {
+		AnimationMixer mixer = createMixer(-1);
+		mixer.addLayer("add", BlendMode.ADDITIVE);
+		mixer.playAnimation("add", createAnimation(0.4), 0, 0);
+		assertNull(mixer.getMovements(0, INTERVAL));
+	}
+
+	private static AnimationMixer createMixer(double rest) {
+		AnimationMixer mixer = new AnimationMixer(ROBOT);
+		mixer.setCompiledAnimationCache(null);
+		if (rest >= 0) {
+			RobotPositionMap positions = new Robot.RobotPositionHashMap();
+			positions.put(JOINT, new NormalizedDouble(rest));
+			mixer.setRestPositions(positions);
+		}
+		return mixer;
+	}
+
+	private static Animation createAnimation(double position) {
+		Animation anim = new Animation(new VersionProperty("anim", "1.0"));
+		Channel c = new Channel(0, "joint");
+		MotionPath mp = new MotionPath();
+		mp.addPoint(0, position);
+		mp.addPoint(10000, position);
+		c.addPath(mp);
+		anim.addChannel(c);
+		return anim;
+	}
+
+	private static double getGoal(AnimationMixer mixer, long time) {
+		MotionFrame<RobotPositionMap> frame =
+				mixer.getMovements(time, INTERVAL);
+		return frame.getGoalPositions().get(JOINT).getValue();
+	}
+}